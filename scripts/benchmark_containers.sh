@@ -0,0 +1,21 @@
+#! /usr/bin/env sh
+
+# Compares the per-embedding overhead of computation containers (scala
+# closures and EmbeddingPredicates) against a computation class, see
+# io.arabesque.computation.ContainerBenchmark.
+#
+# usage: benchmark_containers.sh [graph file] [max size]
+# defaults to citeseer and embeddings with up to 4 vertices
+
+ARABESQUE_JAR_DIR="`pwd`"
+ARABESQUE_JAR=`find $ARABESQUE_JAR_DIR -maxdepth 1 -name "arabesque-*-jar-with-dependencies.jar" | head -1`
+
+if [ -z "$ARABESQUE_JAR" ] ; then
+  echo "No Arabesque jar found in $ARABESQUE_JAR_DIR. Did you compile it?"
+  exit 66
+fi
+
+graph=${1:-data/citeseer.graph}
+maxsize=${2:-4}
+
+java -cp $ARABESQUE_JAR io.arabesque.computation.ContainerBenchmark $graph $maxsize
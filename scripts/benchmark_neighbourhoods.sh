@@ -0,0 +1,35 @@
+#! /usr/bin/env sh
+
+# Compares memory and probe throughput of the hybrid neighbourhoods (sorted
+# arrays/bitsets, see BasicMainGraph.compactNeighbourhoods) against hash maps.
+#
+# usage: benchmark_neighbourhoods.sh [graph files or gen:numVertices ...]
+# defaults to citeseer and a generated power-law (preferential attachment)
+# graph with 200000 vertices. Reports the heap of the graph and the probes/s.
+
+ARABESQUE_JAR_DIR="`pwd`"
+ARABESQUE_JAR=`find $ARABESQUE_JAR_DIR -maxdepth 1 -name "arabesque-*-jar-with-dependencies.jar" | head -1`
+
+if [ -z "$ARABESQUE_JAR" ] ; then
+  echo "No Arabesque jar found in $ARABESQUE_JAR_DIR. Did you compile it?"
+  exit 66
+fi
+
+if ! command -v perf > /dev/null; then
+  echo "perf not found, reporting memory and times only"
+  PERF=""
+else
+  PERF="perf stat -e cache-references,cache-misses"
+fi
+
+graphs="$@"
+if [ -z "$graphs" ]; then
+  graphs="data/citeseer.graph gen:200000"
+fi
+
+for graph in $graphs; do
+  for representation in hash hybrid; do
+    echo "=== $graph ($representation)"
+    $PERF java -cp $ARABESQUE_JAR io.arabesque.data.NeighbourhoodBenchmark $graph $representation
+  done
+done
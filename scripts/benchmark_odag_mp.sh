@@ -0,0 +1,59 @@
+#! /usr/bin/env sh
+
+# Compares single-pattern (odag_sp) and multi-pattern (odag_mp) ODAGs on FSM
+# over a graph relabelled with many vertex labels, where odag_sp builds one
+# (small) ODAG per pattern. Reports the runtime, the number of ODAGs
+# aggregated over all supersteps and the bytes shuffled (from the spark event
+# log, as benchmark_serialization.sh).
+#
+# usage: benchmark_odag_mp.sh [graph file] [num labels] [support]
+# defaults to citeseer with 100 labels and support 20. Requires SPARK_HOME,
+# see run_arabesque_spark.sh
+
+DIR="$( cd "$( dirname "$0" )" && pwd )"
+
+graph=${1:-data/citeseer.graph}
+num_labels=${2:-100}
+support=${3:-20}
+
+labelled_graph="`pwd`/`basename $graph .graph`-$num_labels-labels.graph"
+awk -v labels=$num_labels '{ $2 = $1 % labels; print }' $graph > $labelled_graph
+
+run() {
+  config=$(mktemp arabesque-odag-mp.XXXXXX)
+  event_dir=$(mktemp -d arabesque-events.XXXXXX)
+  cat > $config <<EOC
+execution_engine: spark
+spark_master: local[*]
+log_level: info
+output_active: no
+computation: io.arabesque.gmlib.fsm.FSMComputation
+master_computation: io.arabesque.examples.fsm.FSMMasterComputation
+input_graph_path: $labelled_graph
+input_graph_local: true
+arabesque.fsm.support: $support
+arabesque.fsm.maxsize: 4
+comm_strategy: $1
+flush_method: $2
+max_odags: $3
+EOC
+  echo "=== $1 ($2, max_odags=$3)"
+  SPARK_SUBMIT_OPTS="-Dspark.eventLog.enabled=true -Dspark.eventLog.dir=file://`pwd`/$event_dir" \
+    $DIR/run_arabesque.sh $config > $config.log 2>&1
+
+  grep "Computation has finished" $config.log
+  grep -o "Number of aggregated ODAGs = [0-9]*" $config.log | \
+    awk '{ odags += $NF; steps++ } END { printf "aggregated odags: %d in %d supersteps\n", odags, steps }'
+  cat $event_dir/* | grep -o '"Shuffle Bytes Written":[0-9]*' | \
+    awk -F: '{ bytes += $2 } END { printf "shuffle bytes: %d\n", bytes }'
+
+  rm -r $config $config.log $event_dir
+}
+
+run odag_sp flush_by_parts 0
+for max_odags in 10 100 1000; do
+  run odag_mp flush_by_pattern $max_odags
+  run odag_mp flush_by_parts $max_odags
+done
+
+rm $labelled_graph
@@ -0,0 +1,22 @@
+#! /usr/bin/env sh
+
+# Compares the size and the scan time of the output formats (plain_text,
+# sequence_file and columnar) on the embeddings of motifs, see
+# io.arabesque.embedding.OutputScanBenchmark.
+#
+# usage: benchmark_output_scan.sh [graph file] [max size] [spark master]
+# defaults to citeseer, motifs with up to 4 vertices and local[*]
+
+ARABESQUE_JAR_DIR="`pwd`"
+ARABESQUE_JAR=`find $ARABESQUE_JAR_DIR -maxdepth 1 -name "arabesque-*-jar-with-dependencies.jar" | head -1`
+
+if [ -z "$ARABESQUE_JAR" ] ; then
+  echo "No Arabesque jar found in $ARABESQUE_JAR_DIR. Did you compile it?"
+  exit 66
+fi
+
+graph=${1:-data/citeseer.graph}
+maxsize=${2:-4}
+master=${3:-local[*]}
+
+java -cp $ARABESQUE_JAR io.arabesque.embedding.OutputScanBenchmark $graph $maxsize "$master"
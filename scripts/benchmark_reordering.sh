@@ -0,0 +1,34 @@
+#! /usr/bin/env sh
+
+# Compares cache misses of adjacency probes with and without vertex reordering
+# (see io.arabesque.optimization.VertexReorderingOptimization).
+#
+# usage: benchmark_reordering.sh [graph files or gen:numVertices ...]
+# defaults to citeseer and a generated graph with 200000 vertices
+
+ARABESQUE_JAR_DIR="`pwd`"
+ARABESQUE_JAR=`find $ARABESQUE_JAR_DIR -maxdepth 1 -name "arabesque-*-jar-with-dependencies.jar" | head -1`
+
+if [ -z "$ARABESQUE_JAR" ] ; then
+  echo "No Arabesque jar found in $ARABESQUE_JAR_DIR. Did you compile it?"
+  exit 66
+fi
+
+if ! command -v perf > /dev/null; then
+  echo "perf not found, reporting times only"
+  PERF=""
+else
+  PERF="perf stat -e cache-references,cache-misses,L1-dcache-load-misses,LLC-load-misses"
+fi
+
+graphs="$@"
+if [ -z "$graphs" ]; then
+  graphs="data/citeseer.graph gen:200000"
+fi
+
+for graph in $graphs; do
+  for method in none rcm gorder; do
+    echo "=== $graph ($method)"
+    $PERF java -cp $ARABESQUE_JAR io.arabesque.data.VertexReorderingBenchmark $graph $method
+  done
+done
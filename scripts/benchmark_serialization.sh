@@ -0,0 +1,44 @@
+#! /usr/bin/env sh
+
+# Compares the bytes shuffled and broadcast by a computation with the java
+# serializer (kryo_serializer: no) and with Kryo and the arabesque types
+# registered (kryo_serializer: yes). Shuffle bytes are read from the spark
+# event log, broadcast bytes from the block manager messages of the driver.
+#
+# usage: benchmark_serialization.sh [config file] [comm strategy]
+# defaults to motifs.yaml and odag_sp. Requires SPARK_HOME, see
+# run_arabesque_spark.sh
+
+DIR="$( cd "$( dirname "$0" )" && pwd )"
+
+base_config=${1:-$DIR/motifs.yaml}
+comm_strategy=${2:-odag_sp}
+
+run() {
+  config=$(mktemp arabesque-serialization.XXXXXX)
+  event_dir=$(mktemp -d arabesque-events.XXXXXX)
+  grep -v "execution_engine\|kryo_serializer\|comm_strategy\|log_level" $base_config > $config
+  cat >> $config <<EOC
+execution_engine: spark
+comm_strategy: $comm_strategy
+kryo_serializer: $1
+log_level: info
+EOC
+  echo "=== kryo_serializer: $1 ($comm_strategy)"
+  SPARK_SUBMIT_OPTS="-Dspark.eventLog.enabled=true -Dspark.eventLog.dir=file://`pwd`/$event_dir" \
+    $DIR/run_arabesque.sh $config 2>&1 | tee $config.log | grep "Computation has finished"
+
+  cat $event_dir/* | grep -o '"Shuffle Bytes Written":[0-9]*' | \
+    awk -F: '{ bytes += $2 } END { printf "shuffle bytes: %d\n", bytes }'
+  grep -o "Added broadcast_[0-9]*_piece[0-9]* in memory on [^ ]* (size: [0-9.]* [KMGB]*" $config.log | \
+    awk '{ size = $(NF-1); unit = $NF;
+           if (unit == "KB") size *= 1024; else if (unit == "MB") size *= 1048576;
+           else if (unit == "GB") size *= 1073741824;
+           bytes += size }
+         END { printf "broadcast bytes: %d\n", bytes }'
+
+  rm -r $config $config.log $event_dir
+}
+
+run no
+run yes
@@ -4,6 +4,7 @@ DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 # add another execution engines here
 SPARK_EXEC_ENGINE="spark"; SPARK_CMD="$DIR/run_arabesque_spark.sh"
 GIRAPH_EXEC_ENGINE="giraph"; GIRAPH_CMD="$DIR/run_arabesque_giraph.sh"
+LOCAL_EXEC_ENGINE="local"; LOCAL_CMD="$DIR/run_arabesque_local.sh"
 
 execution_engine=$(echo -n `cat $@ | grep execution_engine | cut -d":" -f2`)
 
@@ -20,6 +21,12 @@ case $execution_engine in
       $GIRAPH_CMD $@
       ;;
 
+   $LOCAL_EXEC_ENGINE)
+      echo "Running $LOCAL_EXEC_ENGINE execution engine"
+      echo "$LOCAL_CMD $@"
+      exec $LOCAL_CMD $@
+      ;;
+
    *)
       echo "Please inform execution_engine in the YAML files"
       ;;
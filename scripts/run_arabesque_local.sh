@@ -0,0 +1,14 @@
+#! /usr/bin/env sh
+
+# arabesque executable
+ARABESQUE_JAR_DIR="`pwd`"
+ARABESQUE_JAR=`find $ARABESQUE_JAR_DIR -maxdepth 1 -name "arabesque-*-jar-with-dependencies.jar" | head -1`
+
+if [ -z "$ARABESQUE_JAR" ] ; then
+  echo "No Arabesque jar found in $ARABESQUE_JAR_DIR. Did you compile it?"
+  exit 66
+fi
+
+# supersteps run in this jvm (no spark or giraph installation needed), the
+# yaml files are read from the working directory
+java $JAVA_OPTS -cp ".:${ARABESQUE_JAR}" io.arabesque.ArabesqueRunner -y $@
@@ -46,6 +46,8 @@ public class ArabesqueRunner implements Tool {
            return runSpark (yamlConfig);
         else if (yamlConfig.isGiraphExecutionEngine())
            return runGiraph (yamlConfig);
+        else if (yamlConfig.isLocalExecutionEngine())
+           return runLocal (yamlConfig);
         else return 1;
     }
 
@@ -64,6 +66,20 @@ public class ArabesqueRunner implements Tool {
        return 0;
     }
 
+    private int runLocal(YamlConfiguration yamlConfig) throws Exception {
+       SparkConfiguration config = new SparkConfiguration (
+             JavaConversions.mapAsScalaMap(yamlConfig.getProperties())
+       );
+
+       // no spark context: supersteps run in this jvm
+       LocalMasterEngine masterEngine = new LocalMasterEngine (config);
+       masterEngine.init();
+
+       masterEngine.compute();
+       masterEngine.finalizeComputation();
+       return 0;
+    }
+
     private int runGiraph(YamlConfiguration yamlConfig) throws Exception {
         if (null == getConf()) {
             conf = new Configuration();
@@ -0,0 +1,163 @@
+package io.arabesque.aggregation;
+
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Count estimated from sampled roots (see {@link io.arabesque.computation.RootSampler}).
+ *
+ * Embeddings are weighted by the inverse inclusion probability of their root
+ * (Horvitz-Thompson) and their weights are summed per bucket, a random group
+ * of roots. The estimate is the sum of all buckets and its variance is that of
+ * the estimates of the individual buckets (random groups method), which gives
+ * a normal confidence interval.
+ */
+public class ApproximateCount implements Writable {
+    private double[] bucketSums;
+    private long numSamples;
+    private float confidence;
+
+    public ApproximateCount() {
+        bucketSums = new double[0];
+    }
+
+    public ApproximateCount(int numBuckets, float confidence) {
+        bucketSums = new double[numBuckets];
+        this.confidence = confidence;
+    }
+
+    /**
+     * Sets this count to numSamples embeddings of a root of the given bucket,
+     * each one weighted by weight.
+     */
+    public void set(int bucket, double weight, long numSamples) {
+        Arrays.fill(bucketSums, 0.0);
+        bucketSums[bucket] = weight * numSamples;
+        this.numSamples = numSamples;
+    }
+
+    public void aggregate(ApproximateCount other) {
+        if (bucketSums.length == 0) {
+            bucketSums = new double[other.bucketSums.length];
+            confidence = other.confidence;
+        } else if (bucketSums.length != other.bucketSums.length) {
+            throw new RuntimeException("Aggregating approximate counts with " +
+                    "different number of buckets: " + bucketSums.length +
+                    " vs " + other.bucketSums.length);
+        }
+
+        for (int i = 0; i < bucketSums.length; ++i) {
+            bucketSums[i] += other.bucketSums[i];
+        }
+
+        numSamples += other.numSamples;
+    }
+
+    public double getEstimate() {
+        double estimate = 0;
+
+        for (double bucketSum : bucketSums) {
+            estimate += bucketSum;
+        }
+
+        return estimate;
+    }
+
+    public long get() {
+        return Math.round(getEstimate());
+    }
+
+    /**
+     * Number of sampled embeddings the estimate comes from.
+     */
+    public long getNumSamples() {
+        return numSamples;
+    }
+
+    public double getStandardError() {
+        int numBuckets = bucketSums.length;
+
+        if (numBuckets < 2) {
+            return 0;
+        }
+
+        double estimate = getEstimate();
+        double sumSquares = 0;
+
+        for (double bucketSum : bucketSums) {
+            double deviation = numBuckets * bucketSum - estimate;
+            sumSquares += deviation * deviation;
+        }
+
+        return Math.sqrt(sumSquares / (numBuckets * (numBuckets - 1.0)));
+    }
+
+    public double getLowerBound() {
+        // Sampled embeddings do exist
+        return Math.max(getEstimate() - z(confidence) * getStandardError(), numSamples);
+    }
+
+    public double getUpperBound() {
+        return getEstimate() + z(confidence) * getStandardError();
+    }
+
+    public float getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Two-sided standard normal quantile (e.g. 1.96 for 0.95), after
+     * Abramowitz and Stegun 26.2.23 (absolute error below 4.5e-4).
+     */
+    static double z(double confidence) {
+        double p = (1 - confidence) / 2;
+
+        if (p <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double t = Math.sqrt(-2 * Math.log(p));
+
+        return t - (2.515517 + 0.802853 * t + 0.010328 * t * t) /
+                (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        dataOutput.writeInt(bucketSums.length);
+
+        for (double bucketSum : bucketSums) {
+            dataOutput.writeDouble(bucketSum);
+        }
+
+        dataOutput.writeLong(numSamples);
+        dataOutput.writeFloat(confidence);
+    }
+
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        int numBuckets = dataInput.readInt();
+
+        if (bucketSums.length != numBuckets) {
+            bucketSums = new double[numBuckets];
+        }
+
+        for (int i = 0; i < numBuckets; ++i) {
+            bucketSums[i] = dataInput.readDouble();
+        }
+
+        numSamples = dataInput.readLong();
+        confidence = dataInput.readFloat();
+    }
+
+    @Override
+    public String toString() {
+        return get() + " [" + Math.round(getLowerBound()) + ", " +
+                Math.round(getUpperBound()) + "] (" + confidence + " confidence, " +
+                numSamples + " samples)";
+    }
+}
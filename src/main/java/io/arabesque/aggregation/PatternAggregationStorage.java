@@ -1,6 +1,7 @@
 package io.arabesque.aggregation;
 
 import io.arabesque.pattern.Pattern;
+import io.arabesque.pattern.PatternKey;
 import com.koloboke.collect.map.hash.HashObjByteMap;
 import com.koloboke.collect.map.hash.HashObjByteMaps;
 import org.apache.hadoop.io.Writable;
@@ -8,6 +9,7 @@ import org.apache.log4j.Logger;
 
 import java.io.*;
 import java.lang.reflect.Constructor;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -16,8 +18,9 @@ import java.util.concurrent.ConcurrentHashMap;
 public class PatternAggregationStorage<K extends Pattern, V extends Writable> extends AggregationStorage<K, V> {
     private static final Logger LOG = Logger.getLogger(PatternAggregationStorage.class);
 
-    private final HashObjByteMap<K> reservations;
-    private final ConcurrentHashMap<K, K> quick2CanonicalMap;
+    // Keyed by the packed form of quick patterns
+    private final HashObjByteMap<PatternKey> reservations;
+    private final ConcurrentHashMap<PatternKey, K> quick2CanonicalMap;
 
     public PatternAggregationStorage() {
         this(null);
@@ -47,7 +50,7 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
         K superKey = super.getKey(key);
 
         if (superKey == null) {
-            superKey = quick2CanonicalMap.get(key);
+            superKey = quick2CanonicalMap.get(key.getKey());
         }
 
         return superKey;
@@ -61,7 +64,7 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
         // quick2CanonicalMappings, we can attempt to translate the request to the canonical
         // pattern
         if (value == null && !quick2CanonicalMap.isEmpty()) {
-            K canonical = quick2CanonicalMap.get(key);
+            K canonical = quick2CanonicalMap.get(key.getKey());
 
             if (canonical != null) {
                 value = super.getValue(canonical);
@@ -79,12 +82,13 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
         // Key may represent a quick or canonical pattern.
         // We need to clean all keys and values matching it.
         if (!quick2CanonicalMap.isEmpty()) {
-            Iterator<Map.Entry<K, K>> quick2CanonicalIterator = quick2CanonicalMap.entrySet().iterator();
+            PatternKey patternKey = key.getKey();
+            Iterator<Map.Entry<PatternKey, K>> quick2CanonicalIterator = quick2CanonicalMap.entrySet().iterator();
 
             while (quick2CanonicalIterator.hasNext()) {
-                Map.Entry<K, K> entry = quick2CanonicalIterator.next();
+                Map.Entry<PatternKey, K> entry = quick2CanonicalIterator.next();
 
-                if (entry.getKey().equals(key) || entry.getValue().equals(key)) {
+                if (entry.getKey().equals(patternKey) || entry.getValue().equals(key)) {
                     quick2CanonicalIterator.remove();
                 }
             }
@@ -101,15 +105,21 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
         // Key may represent a quick or canonical pattern.
         // We need to clean all keys and values matching it.
         if (!quick2CanonicalMap.isEmpty()) {
-            Iterator<Map.Entry<K, K>> quick2CanonicalIterator = quick2CanonicalMap.entrySet().iterator();
+            Set<PatternKey> patternKeys = new HashSet<>(keys.size());
+
+            for (K key : keys) {
+                patternKeys.add(key.getKey());
+            }
+
+            Iterator<Map.Entry<PatternKey, K>> quick2CanonicalIterator = quick2CanonicalMap.entrySet().iterator();
 
             while (quick2CanonicalIterator.hasNext()) {
-                Map.Entry<K, K> entry = quick2CanonicalIterator.next();
+                Map.Entry<PatternKey, K> entry = quick2CanonicalIterator.next();
 
-                K quickPattern = entry.getKey();
+                PatternKey quickPattern = entry.getKey();
                 K canonicalPattern = entry.getValue();
 
-                if (keys.contains(quickPattern) || keys.contains(canonicalPattern)) {
+                if (patternKeys.contains(quickPattern) || keys.contains(canonicalPattern)) {
                     quick2CanonicalIterator.remove();
                 }
             }
@@ -148,8 +158,8 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
 
         PatternAggregationStorage<K, V> otherPatternStorage = (PatternAggregationStorage<K, V>) otherStorage;
 
-        for (Map.Entry<K, K> otherQuick2CanonicalMapEntry : otherPatternStorage.quick2CanonicalMap.entrySet()) {
-            K quickPattern = otherQuick2CanonicalMapEntry.getKey();
+        for (Map.Entry<PatternKey, K> otherQuick2CanonicalMapEntry : otherPatternStorage.quick2CanonicalMap.entrySet()) {
+            PatternKey quickPattern = otherQuick2CanonicalMapEntry.getKey();
             K canonicalPattern = otherQuick2CanonicalMapEntry.getValue();
 
             quick2CanonicalMap.putIfAbsent(quickPattern, canonicalPattern);
@@ -162,7 +172,7 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
 
         dataOutput.writeInt(quick2CanonicalMap.size());
 
-        for (Map.Entry<K, K> quick2CanonicalEntry : quick2CanonicalMap.entrySet()) {
+        for (Map.Entry<PatternKey, K> quick2CanonicalEntry : quick2CanonicalMap.entrySet()) {
             quick2CanonicalEntry.getKey().write(dataOutput);
             quick2CanonicalEntry.getValue().write(dataOutput);
         }
@@ -174,7 +184,7 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
 
         objOutput.writeInt(quick2CanonicalMap.size());
 
-        for (Map.Entry<K, K> quick2CanonicalEntry : quick2CanonicalMap.entrySet()) {
+        for (Map.Entry<PatternKey, K> quick2CanonicalEntry : quick2CanonicalMap.entrySet()) {
             quick2CanonicalEntry.getKey().write(objOutput);
             quick2CanonicalEntry.getValue().write(objOutput);
         }
@@ -190,7 +200,7 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
             int sizeQuick2CanonicalMap = dataInput.readInt();
 
             for (int i = 0; i < sizeQuick2CanonicalMap; ++i) {
-                K quick = keyClassConstructor.newInstance();
+                PatternKey quick = new PatternKey();
                 quick.readFields(dataInput);
 
                 K canonical = keyClassConstructor.newInstance();
@@ -212,7 +222,7 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
             int sizeQuick2CanonicalMap = objInput.readInt();
 
             for (int i = 0; i < sizeQuick2CanonicalMap; ++i) {
-                K quick = keyClassConstructor.newInstance();
+                PatternKey quick = new PatternKey();
                 quick.readFields(objInput);
 
                 K canonical = keyClassConstructor.newInstance();
@@ -248,18 +258,20 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
 
     // Thread-safe
     private K getCanonicalPattern(K quickPattern) {
-        K canonicalPattern = quick2CanonicalMap.get(quickPattern);
+        PatternKey quickKey = quickPattern.getKey();
+        K canonicalPattern = quick2CanonicalMap.get(quickKey);
 
         if (canonicalPattern == null) {
             byte currentReservation;
 
             synchronized (reservations) {
-                currentReservation = reservations.getByte(quickPattern);
+                currentReservation = reservations.getByte(quickKey);
 
                 if (currentReservation != 0) {
                     return null;
                 } else {
-                    reservations.put(quickPattern, (byte) 1);
+                    quickKey = quickKey.copy();
+                    reservations.put(quickKey, (byte) 1);
                 }
 
                 //LOG.info("Quick 2 canonical map: ");
@@ -274,7 +286,7 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
             canonicalPattern.turnCanonical();
             //LOG.info("Canonical pattern: " + canonicalPattern);
 
-            quick2CanonicalMap.put(quickPattern, canonicalPattern);
+            quick2CanonicalMap.put(quickKey, canonicalPattern);
         }
 
         return canonicalPattern;
@@ -285,8 +297,8 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
         if (otherAggregationStorage instanceof PatternAggregationStorage) {
             PatternAggregationStorage<K, V> otherPatternAggStorage = (PatternAggregationStorage<K, V>) otherAggregationStorage;
 
-            for (Map.Entry<K, K> quick2CanonicalEntry : otherPatternAggStorage.quick2CanonicalMap.entrySet()) {
-                K quickPattern = quick2CanonicalEntry.getKey();
+            for (Map.Entry<PatternKey, K> quick2CanonicalEntry : otherPatternAggStorage.quick2CanonicalMap.entrySet()) {
+                PatternKey quickPattern = quick2CanonicalEntry.getKey();
                 K canonicalPattern = quick2CanonicalEntry.getValue();
 
                 if (canonicalPattern.equals(key)) {
@@ -317,7 +329,7 @@ public class PatternAggregationStorage<K extends Pattern, V extends Writable> ex
         // If we didn't find in normal mapping, key might be quick and
         // normal mapping might only have canonicals. Lets do the translation
         if (!quick2CanonicalMap.isEmpty()) {
-            K canonical = quick2CanonicalMap.get(key);
+            K canonical = quick2CanonicalMap.get(key.getKey());
 
             if (canonical != null) {
                 result = super.containsKey(canonical);
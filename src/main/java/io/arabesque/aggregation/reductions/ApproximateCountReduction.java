@@ -0,0 +1,14 @@
+package io.arabesque.aggregation.reductions;
+
+import io.arabesque.aggregation.ApproximateCount;
+
+public class ApproximateCountReduction extends ReductionFunction<ApproximateCount> {
+    @Override
+    public ApproximateCount reduce(ApproximateCount k1, ApproximateCount k2) {
+        if (k1 != null && k2 != null) {
+            k1.aggregate(k2);
+        }
+
+        return k1;
+    }
+}
@@ -2,26 +2,27 @@ package io.arabesque.cache;
 
 import io.arabesque.conf.Configuration;
 import io.arabesque.misc.WritableObject;
-import net.jpountz.lz4.LZ4Compressor;
-import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.lz4.LZ4FastDecompressor;
-import org.apache.giraph.utils.ExtendedByteArrayDataOutput;
+import io.arabesque.utils.compression.Codec;
+import io.arabesque.utils.compression.Codecs;
+import io.arabesque.utils.compression.CompressionPolicy;
+import io.arabesque.utils.compression.NoCodec;
 import org.apache.log4j.Logger;
 
 import java.io.*;
-import java.nio.ByteBuffer;
 
+/**
+ * Object cache compressed when serialized, with the codec of the "caches"
+ * data path (LZ4 by default when arabesque.caches.compress is set, see
+ * Configuration.getCompressionPolicy).
+ */
 public class LZ4ObjectCache extends ByteArrayObjectCache {
     private static final Logger LOG = Logger.getLogger(LZ4ObjectCache.class);
-    private static final int MB = 1024 * 1024;
 
     private boolean uncompressed;
     private int uncompressedSize;
-
-    private LZ4Factory lz4factory;
+    private byte codecId;
 
     public LZ4ObjectCache() {
-        lz4factory = LZ4Factory.fastestInstance();
         reset();
     }
 
@@ -47,30 +48,29 @@ public class LZ4ObjectCache extends ByteArrayObjectCache {
     public void reset() {
         uncompressed = true;
         uncompressedSize = 0;
+        codecId = NoCodec.ID;
         super.reset();
     }
 
     private void compressDataOutput() {
-        if (!Configuration.get().isUseCompressedCaches() || !uncompressed) {
+        if (!uncompressed) {
             return;
         }
 
+        CompressionPolicy compression = Configuration.get().getCompressionPolicy(Configuration.COMPRESSION_CACHES);
+        Codec codec = compression.nextCodec();
+
         uncompressedSize = byteArrayOutputCache.getPos();
-        LZ4Compressor lz4Compressor = lz4factory.fastCompressor();
-        int maxCompressedLength = lz4Compressor.maxCompressedLength(uncompressedSize);
-        ByteBuffer compressed = ByteBuffer.wrap(new byte[maxCompressedLength]);
-        int compressedLength = lz4Compressor.compress(ByteBuffer.wrap(byteArrayOutputCache.getByteArray()), 0,
-                uncompressedSize, compressed, 0, maxCompressedLength);
-        byteArrayOutputCache = new ExtendedByteArrayDataOutput(compressed.array(), compressedLength);
+        byteArrayOutputCache = compression.compress(codec, byteArrayOutputCache);
+        codecId = codec.getId();
         uncompressed = false;
     }
 
     @Override
     public void write(DataOutput dataOutput) throws IOException {
-        if (Configuration.get().isUseCompressedCaches()) {
-            compressDataOutput();
-            dataOutput.writeInt(uncompressedSize);
-        }
+        compressDataOutput();
+        dataOutput.writeByte(codecId);
+        dataOutput.writeInt(uncompressedSize);
         super.write(dataOutput);
     }
 
@@ -80,32 +80,19 @@ public class LZ4ObjectCache extends ByteArrayObjectCache {
     }
 
     private void decompressDataInput() {
-        if (!Configuration.get().isUseCompressedCaches() || uncompressed) {
+        if (uncompressed) {
             return;
         }
 
-        //LOG.info("Big no no");
-
-        LZ4FastDecompressor decompressor = lz4factory.fastDecompressor();
-
-        ByteBuffer dest = ByteBuffer.allocate(uncompressedSize);
-        ByteBuffer src = ByteBuffer.wrap(byteArrayOutputCache.getByteArray(), 0, byteArrayOutputCache.getPos());
-
-        decompressor.decompress(src, 0, dest, 0, uncompressedSize);
-
-        byteArrayOutputCache = new ExtendedByteArrayDataOutput(dest.array(), uncompressedSize);
+        byteArrayOutputCache = Codecs.decompress(codecId, byteArrayOutputCache, uncompressedSize);
         uncompressed = true;
     }
 
     @Override
     public void readFields(DataInput dataInput) throws IOException {
-        if (Configuration.get().isUseCompressedCaches()) {
-            uncompressedSize = dataInput.readInt();
-            uncompressed = false;
-        } else {
-            uncompressedSize = 0;
-            uncompressed = true;
-        }
+        codecId = dataInput.readByte();
+        uncompressedSize = dataInput.readInt();
+        uncompressed = false;
         super.readFields(dataInput);
     }
 
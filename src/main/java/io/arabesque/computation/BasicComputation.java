@@ -5,7 +5,10 @@ import io.arabesque.conf.Configuration;
 import io.arabesque.embedding.Embedding;
 import io.arabesque.graph.MainGraph;
 import io.arabesque.pattern.Pattern;
+import io.arabesque.pattern.PatternKey;
+import io.arabesque.utils.collection.IntArrayList;
 import com.koloboke.collect.IntCollection;
+import com.koloboke.collect.set.IntSet;
 import com.koloboke.collect.set.hash.HashIntSet;
 import com.koloboke.collect.set.hash.HashIntSets;
 import com.koloboke.function.IntConsumer;
@@ -13,6 +16,9 @@ import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Writable;
 import org.apache.log4j.Logger;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public abstract class BasicComputation<E extends Embedding> implements Computation<E>, java.io.Serializable {
     private static final Logger LOG = Logger.getLogger(BasicComputation.class);
 
@@ -22,14 +28,23 @@ public abstract class BasicComputation<E extends Embedding> implements Computati
     private MainGraph mainGraph;
     private Configuration configuration;
     private IntConsumer expandConsumer;
+    private IntConsumer leafConsumer;
+    private IntArrayList leafWords;
     private long numChildrenEvaluated = 0;
+    private RootSampler rootSampler;
     private E currentEmbedding;
+    private boolean antiMonotone;
+    private Map<PatternKey, Boolean> patternPruningDecisions;
 
     @Override
     public final void setUnderlyingExecutionEngine(CommonExecutionEngine<E> underlyingExecutionEngine) {
         this.underlyingExecutionEngine = underlyingExecutionEngine;
     }
 
+    protected CommonExecutionEngine<E> getUnderlyingExecutionEngine() {
+        return underlyingExecutionEngine;
+    }
+
     public MainGraph getMainGraph() {
         return mainGraph;
     }
@@ -47,10 +62,25 @@ public abstract class BasicComputation<E extends Embedding> implements Computati
             }
         };
 
+        leafConsumer = new IntConsumer() {
+            @Override
+            public void accept(int wordId) {
+                if (filter(currentEmbedding, wordId)) {
+                    leafWords.add(wordId);
+                }
+            }
+        };
+
+        leafWords = new IntArrayList();
+
         mainGraph = Configuration.get().getMainGraph();
         numChildrenEvaluated = 0;
+        rootSampler = RootSampler.create(Configuration.get(), mainGraph);
 
         outputEnabled = Configuration.get().isOutputActive();
+
+        antiMonotone = isAntiMonotone();
+        patternPruningDecisions = new HashMap<>();
     }
 
     @Override
@@ -79,26 +109,92 @@ public abstract class BasicComputation<E extends Embedding> implements Computati
             return;
         }
 
+        // expansions may be expanded right away (depth-first exploration), so
+        // the embedding being expanded is restored once its children are done
+        E parentEmbedding = currentEmbedding;
         currentEmbedding = embedding;
-        possibleExtensions.forEach(expandConsumer);
+
+        if (shouldCountLeaves(embedding)) {
+            leafWords.clear();
+            possibleExtensions.forEach(leafConsumer);
+
+            if (!leafWords.isEmpty()) {
+                numChildrenEvaluated += processLeaves(embedding, leafWords);
+            }
+        } else {
+            possibleExtensions.forEach(expandConsumer);
+        }
+
+        currentEmbedding = parentEmbedding;
     }
 
-    private void doExpandFilter(int wordId) {
-        if (filter(currentEmbedding, wordId)) {
-            currentEmbedding.addWord(wordId);
+    /**
+     * Whether the children of embedding are the last level of the exploration,
+     * in which case the words that pass {@link #filter(Embedding, int)} are
+     * handed in bulk to {@link #processLeaves(Embedding, IntArrayList)}
+     * instead of being built one by one (addWord, filter, process,
+     * removeLastWord).
+     *
+     * Children handled this way are never expanded, so this must only hold
+     * when {@link #shouldExpand(Embedding)} is false for all of them.
+     */
+    protected boolean shouldCountLeaves(E embedding) {
+        return false;
+    }
 
-            if (filter(currentEmbedding)) {
-                if (shouldExpand(currentEmbedding)) {
-                    underlyingExecutionEngine.processExpansion(currentEmbedding);
-                }
+    /**
+     * Processes in bulk the children of embedding when
+     * {@link #shouldCountLeaves(Embedding)} holds. Overrides replace both
+     * {@link #filter(Embedding)} and {@link #process(Embedding)} for them,
+     * which are not called. By default each child is built and processed as
+     * in the regular expansion.
+     *
+     * @param leafWords words that passed {@link #filter(Embedding, int)}
+     * @return number of children that passed the filter (i.e., counted)
+     */
+    protected long processLeaves(E embedding, IntArrayList leafWords) {
+        int numLeaves = leafWords.size();
+        long numProcessed = 0;
+
+        for (int i = 0; i < numLeaves; ++i) {
+            if (processChild(embedding, leafWords.getUnchecked(i))) {
+                ++numProcessed;
+            }
+        }
 
-                numChildrenEvaluated++;
-                process(currentEmbedding);
+        return numProcessed;
+    }
+
+    private void doExpandFilter(int wordId) {
+        if (filter(currentEmbedding, wordId) && processChild(currentEmbedding, wordId)) {
+            numChildrenEvaluated++;
+        }
+    }
+
+    /**
+     * Builds the child of embedding with wordId, which passed
+     * {@link #filter(Embedding, int)}, and expands and processes it if it
+     * passes the filters.
+     *
+     * @return whether the child was processed
+     */
+    private boolean processChild(E embedding, int wordId) {
+        boolean processed = false;
+
+        embedding.addWord(wordId);
+
+        if (filter(embedding) && mayPassAggregationFilter(embedding)) {
+            if (shouldExpand(embedding)) {
+                underlyingExecutionEngine.processExpansion(embedding);
             }
 
-            currentEmbedding.removeLastWord();
+            processed = true;
+            process(embedding);
         }
 
+        embedding.removeLastWord();
+
+        return processed;
     }
 
     @Override
@@ -106,8 +202,14 @@ public abstract class BasicComputation<E extends Embedding> implements Computati
         // Empty by default
     }
 
-    private IntCollection getPossibleExtensions(E embedding) {
+    protected IntCollection getPossibleExtensions(E embedding) {
         if (embedding.getNumWords() > 0) {
+            IntSet extensionLabels = getExtensionLabels(embedding);
+
+            if (extensionLabels != null) {
+                return embedding.getExtensibleWordIds(extensionLabels);
+            }
+
             return embedding.getExtensibleWordIds();
         } else {
             // TODO: put getInitialExtensions into embedding class
@@ -115,6 +217,18 @@ public abstract class BasicComputation<E extends Embedding> implements Computati
         }
     }
 
+    /**
+     * Labels that new vertices (or new edge endpoints) must have for the given
+     * embedding to be extended with them, so that extensions can be generated
+     * from label-indexed neighbourhoods instead of being rejected in
+     * {@link #filter(Embedding, int)}.
+     *
+     * @return the allowed labels, or null if extensions are not restricted by label
+     */
+    protected IntSet getExtensionLabels(E embedding) {
+        return null;
+    }
+
     protected HashIntSet getInitialExtensions() {
         int totalNumWords = getInitialNumWords();
         int numPartitions = getNumberPartitions();
@@ -133,7 +247,9 @@ public abstract class BasicComputation<E extends Embedding> implements Computati
         HashIntSet initialExtensions = HashIntSets.newMutableSet(numWordsPerPartition);
 
         for (int i = startMyWordRange; i < endMyWordRange; ++i) {
-            initialExtensions.add(i);
+            if (rootSampler == null || rootSampler.isSampled(i)) {
+                initialExtensions.add(i);
+            }
         }
 
         return initialExtensions;
@@ -141,6 +257,17 @@ public abstract class BasicComputation<E extends Embedding> implements Computati
 
     protected abstract int getInitialNumWords();
 
+    /**
+     * Sampler of the initial words when the computation runs in approximate
+     * mode, in which case counts must be weighted by their root (see
+     * {@link RootSampler#setCount}).
+     *
+     * @return the sampler, or null for exact computations
+     */
+    protected RootSampler getRootSampler() {
+        return rootSampler;
+    }
+
     @Override
     public boolean shouldExpand(E embedding) {
         return true;
@@ -209,6 +336,69 @@ public abstract class BasicComputation<E extends Embedding> implements Computati
         // Empty by default
     }
 
+    /**
+     * Whether this computation is anti-monotone, i.e., a pattern may only pass
+     * {@link #aggregationFilter(Pattern)} if its sub-patterns passed it in
+     * previous supersteps (e.g. frequent subgraph mining). If so, new
+     * embeddings are checked by {@link #patternMayPassAggregationFilter(Embedding)}
+     * before being processed and expanded.
+     */
+    protected boolean isAntiMonotone() {
+        return false;
+    }
+
+    /**
+     * Early-pruning hook of anti-monotone computations: whether the pattern of
+     * newEmbedding may still pass {@link #aggregationFilter(Pattern)} once the
+     * aggregations of this superstep are done, given the aggregations read so
+     * far. Embeddings of patterns that cannot are neither processed nor added
+     * to the outbound odags. It is called once per quick pattern in each
+     * partition, for the first embedding of that pattern.
+     */
+    protected boolean patternMayPassAggregationFilter(E newEmbedding) {
+        return true;
+    }
+
+    private boolean mayPassAggregationFilter(E newEmbedding) {
+        if (!antiMonotone) {
+            return true;
+        }
+
+        PatternKey patternKey = newEmbedding.getPattern().getKey();
+        Boolean mayPass = patternPruningDecisions.get(patternKey);
+
+        if (mayPass == null) {
+            mayPass = patternMayPassAggregationFilter(newEmbedding);
+            patternPruningDecisions.put(patternKey.copy(), mayPass);
+        }
+
+        return mayPass;
+    }
+
+    /**
+     * Whether the aggregations of this computation hold vertex ids, which are
+     * not translated back to the input ones when the main graph is reordered
+     * after loading: {@link io.arabesque.optimization.VertexReorderingOptimization}
+     * leaves the graph as it is for such computations.
+     *
+     * Conservative by default, like {@link #dependsOnAggregations()}:
+     * computations whose aggregations do not depend on vertex ids should
+     * override this to allow the reordering.
+     */
+    public boolean aggregatesVertexIds() {
+        return true;
+    }
+
+    /**
+     * Conservative by default: computations that neither filter nor process
+     * embeddings by the aggregations of previous supersteps should override
+     * this to allow depth-first exploration.
+     */
+    @Override
+    public boolean dependsOnAggregations() {
+        return true;
+    }
+
     @Override
     public void finish() {
         LongWritable longWritable = new LongWritable();
@@ -218,6 +408,15 @@ public abstract class BasicComputation<E extends Embedding> implements Computati
         //underlyingExecutionEngine.aggregate(MasterExecutionEngine.AGG_CHILDREN_EVALUATED, longWritable);
     }
 
+    /**
+     * Whether {@link #output(Embedding)} keeps embeddings, e.g. for
+     * {@link #processLeaves(Embedding, IntArrayList)} to build only the
+     * children that are output.
+     */
+    protected boolean isOutputEnabled() {
+        return outputEnabled;
+    }
+
     @Override
     public void output(Embedding embedding) {
         if (outputEnabled) {
@@ -25,4 +25,6 @@ public interface CommonExecutionEngine<O extends Embedding> {
     
     void output(Embedding embedding);
 
+    void output(String outputName, Embedding embedding);
+
 }
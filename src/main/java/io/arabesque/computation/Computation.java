@@ -47,6 +47,14 @@ public interface Computation<E extends Embedding> {
 
     <K extends Writable, V extends Writable> void map(String name, K key, V value);
 
+    /**
+     * Whether expanding an embedding depends on the aggregations of previous
+     * supersteps (aggregationFilter, aggregationProcess, readAggregation).
+     * Computations that do not may be explored depth-first, see
+     * {@link io.arabesque.conf.Configuration#CONF_DEPTH_FIRST_SUPERSTEP}.
+     */
+    boolean dependsOnAggregations();
+
     // }}}
 
     // {{{ Misc
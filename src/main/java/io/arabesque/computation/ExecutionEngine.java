@@ -114,6 +114,15 @@ public class ExecutionEngine<O extends Embedding>
        outputString(embedding.toOutputString());
     }
 
+    /**
+     * Giraph jobs have a single output format, so named outputs are written
+     * along with the default one.
+     */
+    @Override
+    public void output(String outputName, Embedding embedding) {
+       output(embedding);
+    }
+
     @Override
     public void postSuperstep() {
         super.postSuperstep();
@@ -0,0 +1,699 @@
+package io.arabesque.computation;
+
+import io.arabesque.aggregation.AggregationStorage;
+import io.arabesque.conf.Configuration;
+import io.arabesque.embedding.Embedding;
+import io.arabesque.pattern.Pattern;
+import io.arabesque.utils.collection.IntArrayList;
+import com.koloboke.collect.IntCollection;
+import com.koloboke.collect.set.hash.HashIntSet;
+import com.koloboke.collect.set.hash.HashIntSets;
+import com.koloboke.function.IntConsumer;
+import org.apache.giraph.utils.ReflectionUtils;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs several computations (queries) over a single exploration tree.
+ *
+ * Every embedding is generated once and evaluated against the filter/process
+ * of each query that is still interested in it. A branch is expanded while at
+ * least one query accepts it in both filter and shouldExpand. Since filters
+ * are required to be anti-monotonic, the set of queries interested in an
+ * embedding read from the previous superstep is rebuilt by re-evaluating it
+ * against each query instead of being shipped along with the embedding. ODAG
+ * readers only apply the union of the word filters of the queries, so the
+ * words of such an embedding are checked again against the filters of each
+ * query.
+ *
+ * Queries that filter the extensions of an embedding as a whole
+ * ({@link Computation#filter(Embedding, IntCollection)}) filter their own copy
+ * of them while other queries are active on the same branch.
+ *
+ * Queries share the aggregation namespace (their aggregation names must be
+ * distinct) and write their embeddings to the output named after them, unless
+ * their output is off.
+ */
+public class FusedComputation<E extends Embedding> extends BasicComputation<E> {
+    private static final Logger LOG = Logger.getLogger(FusedComputation.class);
+
+    private static final int MAX_QUERIES = Long.SIZE;
+
+    private List<Computation<E>> queries;
+    private List<String> queryNames;
+    // null when every query outputs its embeddings
+    private List<Boolean> queryOutputsActive;
+
+    private transient long allQueriesMask;
+    private transient long defaultWordFilterMask;
+    private transient long extensionsFilterMask;
+    private transient boolean recheckReadWords;
+    private transient long[] numChildrenProcessed;
+
+    private transient IntConsumer fusedExpandConsumer;
+    private transient E currentEmbedding;
+    private transient long currentParentMask;
+    private transient IntCollection[] currentQueryExtensions;
+
+    private transient IntArrayList readWords;
+    private transient HashIntSet singletonExtension;
+
+    public FusedComputation() {
+    }
+
+    public FusedComputation(List<Computation<E>> queries, List<String> queryNames) {
+        this(queries, queryNames, null);
+    }
+
+    /**
+     * @param queryOutputsActive whether each query outputs its embeddings, null
+     *                           if all of them do
+     */
+    public FusedComputation(List<Computation<E>> queries, List<String> queryNames,
+            List<Boolean> queryOutputsActive) {
+        if (queries.size() != queryNames.size()) {
+            throw new IllegalArgumentException("Expected one name per query: "
+                    + queries.size() + " queries, " + queryNames.size() + " names");
+        }
+
+        if (queryOutputsActive != null && queryOutputsActive.size() != queries.size()) {
+            throw new IllegalArgumentException("Expected one output flag per query: "
+                    + queries.size() + " queries, " + queryOutputsActive.size() + " flags");
+        }
+
+        this.queries = queries;
+        this.queryNames = queryNames;
+        this.queryOutputsActive = queryOutputsActive;
+    }
+
+    /**
+     * Name of the i-th query, which also names its output.
+     */
+    public static String queryName(int i) {
+        return "query-" + i;
+    }
+
+    public List<Computation<E>> getQueries() {
+        ensureQueries();
+        return Collections.unmodifiableList(queries);
+    }
+
+    public List<String> getQueryNames() {
+        ensureQueries();
+        return Collections.unmodifiableList(queryNames);
+    }
+
+    /**
+     * Queries can be given directly (Scala API) or as a comma separated list of
+     * computation classes in {@link Configuration#CONF_FUSED_COMPUTATION_CLASSES}.
+     */
+    private void ensureQueries() {
+        if (queries != null) {
+            return;
+        }
+
+        String classNames = Configuration.get().getString(
+                Configuration.CONF_FUSED_COMPUTATION_CLASSES,
+                Configuration.CONF_FUSED_COMPUTATION_CLASSES_DEFAULT);
+
+        queries = new ArrayList<>();
+        queryNames = new ArrayList<>();
+
+        for (String className : classNames.split(",")) {
+            className = className.trim();
+
+            if (className.isEmpty()) {
+                continue;
+            }
+
+            try {
+                Class<? extends Computation> queryClass =
+                        (Class<? extends Computation>) Class.forName(className);
+                queryNames.add(queryName(queries.size()));
+                queries.add(ReflectionUtils.newInstance(queryClass));
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException("Unable to load fused computation " + className, e);
+            }
+        }
+    }
+
+    @Override
+    public void init() {
+        super.init();
+
+        ensureQueries();
+
+        int numQueries = queries.size();
+
+        if (numQueries == 0) {
+            throw new RuntimeException("Fused computation without queries");
+        }
+
+        if (numQueries > MAX_QUERIES) {
+            throw new RuntimeException("At most " + MAX_QUERIES +
+                    " queries can be fused, got " + numQueries);
+        }
+
+        Class<? extends Embedding> embeddingClass = getEmbeddingClass();
+
+        allQueriesMask = 0;
+        defaultWordFilterMask = 0;
+        extensionsFilterMask = 0;
+        numChildrenProcessed = new long[numQueries];
+
+        for (int i = 0; i < numQueries; ++i) {
+            Computation<E> query = queries.get(i);
+
+            if (!(query instanceof BasicComputation)) {
+                throw new RuntimeException("Fused queries must extend BasicComputation: " + query);
+            }
+
+            if (query.getEmbeddingClass() != embeddingClass) {
+                throw new RuntimeException("Fused queries must explore the same embedding class: "
+                        + embeddingClass + " vs " + query.getEmbeddingClass());
+            }
+
+            boolean outputActive = queryOutputsActive == null || queryOutputsActive.get(i);
+            query.setUnderlyingExecutionEngine(new QueryExecutionEngine(queryNames.get(i), outputActive));
+            query.init();
+
+            allQueriesMask |= 1L << i;
+
+            if (usesDefaultWordFilter(query)) {
+                defaultWordFilterMask |= 1L << i;
+            }
+
+            if (filtersExtensions(query)) {
+                extensionsFilterMask |= 1L << i;
+            }
+        }
+
+        // a single query, or queries that all keep the default word filter,
+        // get exactly the embeddings their own filters would read
+        recheckReadWords = numQueries > 1 &&
+                (defaultWordFilterMask != allQueriesMask || extensionsFilterMask != 0);
+        readWords = new IntArrayList();
+        singletonExtension = HashIntSets.newMutableSet();
+
+        fusedExpandConsumer = new IntConsumer() {
+            @Override
+            public void accept(int wordId) {
+                doFusedExpandFilter(wordId);
+            }
+        };
+    }
+
+    /**
+     * Queries that keep the default (canonicality) word filter share a single
+     * evaluation of it per extension.
+     */
+    private boolean usesDefaultWordFilter(Computation<E> query) {
+        try {
+            return query.getClass().getMethod("filter", Embedding.class, int.class)
+                    .getDeclaringClass() == BasicComputation.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Queries that override the (empty by default) filter of the extensions
+     * of an embedding as a whole.
+     */
+    private boolean filtersExtensions(Computation<E> query) {
+        try {
+            return query.getClass().getMethod("filter", Embedding.class, IntCollection.class)
+                    .getDeclaringClass() != BasicComputation.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public void initAggregations() {
+        super.initAggregations();
+
+        ensureQueries();
+
+        for (Computation<E> query : queries) {
+            query.initAggregations();
+        }
+    }
+
+    @Override
+    public void expand(E embedding) {
+        long parentMask = allQueriesMask;
+
+        if (getStep() > 0) {
+            parentMask = 0;
+
+            // embeddings are read from the odags of patterns that pass the
+            // aggregation filter of some query, not necessarily of this one,
+            // and are made of words that pass the filters of some query
+            long readMask = getReadQueriesMask(embedding);
+            Pattern pattern = embedding.getPattern();
+
+            for (int i = 0; i < queries.size(); ++i) {
+                Computation<E> query = queries.get(i);
+
+                if ((readMask & (1L << i)) == 0 ||
+                        !query.aggregationFilter(pattern) || !query.aggregationFilter(embedding)) {
+                    continue;
+                }
+
+                query.aggregationProcess(embedding);
+
+                if (query.filter(embedding) && query.shouldExpand(embedding)) {
+                    parentMask |= 1L << i;
+                }
+            }
+
+            if (parentMask == 0) {
+                return;
+            }
+        }
+
+        IntCollection possibleExtensions = getPossibleExtensions(embedding);
+        IntCollection[] queryExtensions = null;
+
+        // Extension filters mutate the collection they are given: a single
+        // query still active on this branch filters the shared one, otherwise
+        // each filtering query gets its own copy
+        if (possibleExtensions != null && (parentMask & extensionsFilterMask) != 0) {
+            if (Long.bitCount(parentMask) == 1) {
+                queries.get(Long.numberOfTrailingZeros(parentMask))
+                        .filter(embedding, possibleExtensions);
+            } else {
+                queryExtensions = filterQueryExtensions(embedding, possibleExtensions, parentMask);
+
+                for (int i = 0; i < queries.size(); ++i) {
+                    if (queryExtensions[i] != null && queryExtensions[i].isEmpty()) {
+                        queries.get(i).handleNoExpansions(embedding);
+                        parentMask &= ~(1L << i);
+                    }
+                }
+
+                if (parentMask == 0) {
+                    return;
+                }
+            }
+        }
+
+        if (possibleExtensions == null || possibleExtensions.isEmpty()) {
+            for (int i = 0; i < queries.size(); ++i) {
+                if ((parentMask & (1L << i)) != 0) {
+                    queries.get(i).handleNoExpansions(embedding);
+                }
+            }
+
+            return;
+        }
+
+        // restored once the children are done, as in BasicComputation
+        E parentEmbedding = currentEmbedding;
+        long parentParentMask = currentParentMask;
+        IntCollection[] parentQueryExtensions = currentQueryExtensions;
+
+        currentEmbedding = embedding;
+        currentParentMask = parentMask;
+        currentQueryExtensions = queryExtensions;
+        possibleExtensions.forEach(fusedExpandConsumer);
+
+        currentEmbedding = parentEmbedding;
+        currentParentMask = parentParentMask;
+        currentQueryExtensions = parentQueryExtensions;
+    }
+
+    /**
+     * Applies the extension filter of each active query that has one to its
+     * own copy of possibleExtensions.
+     *
+     * @return the extensions allowed by each of those queries, null for the
+     * other ones
+     */
+    private IntCollection[] filterQueryExtensions(E embedding,
+            IntCollection possibleExtensions, long parentMask) {
+        IntCollection[] queryExtensions = new IntCollection[queries.size()];
+
+        for (int i = 0; i < queries.size(); ++i) {
+            if ((parentMask & extensionsFilterMask & (1L << i)) != 0) {
+                HashIntSet extensions = HashIntSets.newMutableSet(possibleExtensions);
+                queries.get(i).filter(embedding, extensions);
+                queryExtensions[i] = extensions;
+            }
+        }
+
+        return queryExtensions;
+    }
+
+    /**
+     * Queries whose word (and extension) filters accept every word of an
+     * embedding read from the odags, in the order the words were added. The
+     * embedding is rebuilt word by word to check them.
+     */
+    private long getReadQueriesMask(E embedding) {
+        if (!recheckReadWords) {
+            return allQueriesMask;
+        }
+
+        readWords.clear();
+        readWords.addAll(embedding.getWords());
+
+        int numWords = readWords.size();
+
+        for (int i = 0; i < numWords; ++i) {
+            embedding.removeLastWord();
+        }
+
+        long mask = allQueriesMask;
+
+        for (int i = 0; i < numWords; ++i) {
+            int wordId = readWords.getUnchecked(i);
+
+            if (mask != 0) {
+                mask = getWordFilterMask(embedding, wordId, mask);
+                mask &= ~getExtensionRejectedMask(embedding, wordId, mask);
+            }
+
+            embedding.addWord(wordId);
+        }
+
+        return mask;
+    }
+
+    /**
+     * Queries in mask whose word filter accepts wordId as an extension of
+     * embedding. Queries with the default filter share its evaluation.
+     */
+    private long getWordFilterMask(E embedding, int wordId, long mask) {
+        long acceptedMask = 0;
+
+        if ((mask & defaultWordFilterMask) != 0 &&
+                embedding.isCanonicalEmbeddingWithWord(wordId)) {
+            acceptedMask = mask & defaultWordFilterMask;
+        }
+
+        long customWordFilterMask = mask & ~defaultWordFilterMask;
+
+        for (int i = 0; i < queries.size(); ++i) {
+            long queryBit = 1L << i;
+
+            if ((customWordFilterMask & queryBit) != 0 &&
+                    queries.get(i).filter(embedding, wordId)) {
+                acceptedMask |= queryBit;
+            }
+        }
+
+        return acceptedMask;
+    }
+
+    /**
+     * Queries in mask whose extension filter removes wordId from the
+     * extensions of embedding, evaluated on a singleton as the odag readers do.
+     */
+    private long getExtensionRejectedMask(E embedding, int wordId, long mask) {
+        long rejectedMask = 0;
+
+        for (int i = 0; i < queries.size(); ++i) {
+            long queryBit = 1L << i;
+
+            if ((mask & extensionsFilterMask & queryBit) != 0) {
+                singletonExtension.clear();
+                singletonExtension.add(wordId);
+                queries.get(i).filter(embedding, singletonExtension);
+
+                if (singletonExtension.isEmpty()) {
+                    rejectedMask |= queryBit;
+                }
+            }
+        }
+
+        return rejectedMask;
+    }
+
+    private void doFusedExpandFilter(int wordId) {
+        long parentMask = currentParentMask;
+
+        if (currentQueryExtensions != null) {
+            for (int i = 0; i < queries.size(); ++i) {
+                if (currentQueryExtensions[i] != null &&
+                        !currentQueryExtensions[i].contains(wordId)) {
+                    parentMask &= ~(1L << i);
+                }
+            }
+        }
+
+        long childMask = getWordFilterMask(currentEmbedding, wordId, parentMask);
+
+        if (childMask == 0) {
+            return;
+        }
+
+        currentEmbedding.addWord(wordId);
+
+        boolean expand = false;
+
+        for (int i = 0; i < queries.size(); ++i) {
+            long queryBit = 1L << i;
+
+            if ((childMask & queryBit) == 0) {
+                continue;
+            }
+
+            Computation<E> query = queries.get(i);
+
+            if (!query.filter(currentEmbedding)) {
+                childMask &= ~queryBit;
+            } else if (!expand && query.shouldExpand(currentEmbedding)) {
+                expand = true;
+            }
+        }
+
+        if (expand) {
+            getUnderlyingExecutionEngine().processExpansion(currentEmbedding);
+        }
+
+        for (int i = 0; i < queries.size(); ++i) {
+            if ((childMask & (1L << i)) != 0) {
+                numChildrenProcessed[i]++;
+                queries.get(i).process(currentEmbedding);
+            }
+        }
+
+        currentEmbedding.removeLastWord();
+    }
+
+    /*
+     * The methods below give the union of the queries and are used wherever an
+     * embedding is not expanded through expand(), e.g. when ODAGs are read.
+     */
+
+    @Override
+    public boolean dependsOnAggregations() {
+        ensureQueries();
+
+        for (Computation<E> query : queries) {
+            if (query.dependsOnAggregations()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean aggregatesVertexIds() {
+        ensureQueries();
+
+        for (Computation<E> query : queries) {
+            if (query instanceof BasicComputation &&
+                    ((BasicComputation<E>) query).aggregatesVertexIds()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean filter(E existingEmbedding, int newWord) {
+        boolean canonical = false;
+        boolean canonicalEvaluated = false;
+
+        for (int i = 0; i < queries.size(); ++i) {
+            if ((defaultWordFilterMask & (1L << i)) != 0) {
+                if (!canonicalEvaluated) {
+                    canonical = existingEmbedding.isCanonicalEmbeddingWithWord(newWord);
+                    canonicalEvaluated = true;
+                }
+
+                if (canonical) {
+                    return true;
+                }
+            } else if (queries.get(i).filter(existingEmbedding, newWord)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void filter(E existingEmbedding, IntCollection extensionPoints) {
+        if (queries.size() == 1) {
+            queries.get(0).filter(existingEmbedding, extensionPoints);
+        }
+    }
+
+    @Override
+    public boolean filter(E embedding) {
+        for (Computation<E> query : queries) {
+            if (query.filter(embedding)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * An embedding is worth expanding if some query accepts it in both its
+     * filter and its shouldExpand.
+     */
+    @Override
+    public boolean shouldExpand(E embedding) {
+        for (Computation<E> query : queries) {
+            if (query.filter(embedding) && query.shouldExpand(embedding)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void process(E embedding) {
+        for (Computation<E> query : queries) {
+            if (query.filter(embedding)) {
+                query.process(embedding);
+            }
+        }
+    }
+
+    @Override
+    public boolean aggregationFilter(E embedding) {
+        for (Computation<E> query : queries) {
+            if (query.aggregationFilter(embedding)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean aggregationFilter(Pattern pattern) {
+        for (Computation<E> query : queries) {
+            if (query.aggregationFilter(pattern)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void finish() {
+        super.finish();
+
+        for (int i = 0; i < queries.size(); ++i) {
+            LOG.info("Query " + queryNames.get(i) + " processed " + numChildrenProcessed[i] + " embeddings");
+            queries.get(i).finish();
+        }
+    }
+
+    @Override
+    protected int getInitialNumWords() {
+        ensureQueries();
+        return ((BasicComputation<E>) queries.get(0)).getInitialNumWords();
+    }
+
+    @Override
+    public Class<? extends Embedding> getEmbeddingClass() {
+        ensureQueries();
+        return queries.get(0).getEmbeddingClass();
+    }
+
+    /**
+     * Execution engine seen by each query: everything is shared except the
+     * output, which is named after the query.
+     */
+    private class QueryExecutionEngine implements CommonExecutionEngine<E> {
+        private final String queryName;
+        private final boolean outputActive;
+
+        public QueryExecutionEngine(String queryName, boolean outputActive) {
+            this.queryName = queryName;
+            this.outputActive = outputActive;
+        }
+
+        @Override
+        public void processExpansion(E expansion) {
+            // Expansions are decided by the fused computation
+        }
+
+        @Override
+        public <A extends Writable> A getAggregatedValue(String name) {
+            return getUnderlyingExecutionEngine().getAggregatedValue(name);
+        }
+
+        @Override
+        public <K extends Writable, V extends Writable> AggregationStorage<K, V> getAggregationStorage(String name) {
+            return getUnderlyingExecutionEngine().getAggregationStorage(name);
+        }
+
+        @Override
+        public <K extends Writable, V extends Writable> void map(String name, K key, V value) {
+            getUnderlyingExecutionEngine().map(name, key, value);
+        }
+
+        @Override
+        public int getPartitionId() {
+            return getUnderlyingExecutionEngine().getPartitionId();
+        }
+
+        @Override
+        public int getNumberPartitions() {
+            return getUnderlyingExecutionEngine().getNumberPartitions();
+        }
+
+        @Override
+        public long getSuperstep() {
+            return getUnderlyingExecutionEngine().getSuperstep();
+        }
+
+        @Override
+        public void aggregate(String name, LongWritable value) {
+            getUnderlyingExecutionEngine().aggregate(name, value);
+        }
+
+        @Override
+        public void output(Embedding embedding) {
+            if (outputActive) {
+                getUnderlyingExecutionEngine().output(queryName, embedding);
+            }
+        }
+
+        @Override
+        public void output(String outputName, Embedding embedding) {
+            if (outputActive) {
+                getUnderlyingExecutionEngine().output(queryName + "-" + outputName, embedding);
+            }
+        }
+    }
+}
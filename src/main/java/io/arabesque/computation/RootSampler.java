@@ -0,0 +1,171 @@
+package io.arabesque.computation;
+
+import com.koloboke.collect.IntCollection;
+import io.arabesque.aggregation.ApproximateCount;
+import io.arabesque.conf.Configuration;
+import io.arabesque.graph.MainGraph;
+import org.apache.log4j.Logger;
+
+/**
+ * Samples the roots (initial vertices) of the exploration for approximate
+ * counting. Every embedding descends from a single root (its first word), so
+ * exploring only the subtrees of sampled roots and weighting embeddings by the
+ * inverse inclusion probability of their root gives unbiased counts.
+ *
+ * Decisions are a hash of the vertex id and the seed, thus every partition
+ * and superstep agrees on them without communication. Roots are also assigned
+ * to buckets (random groups) so that counts carry their own variance, see
+ * {@link ApproximateCount}.
+ */
+public class RootSampler {
+    private static final Logger LOG = Logger.getLogger(RootSampler.class);
+
+    public static final String MODE_UNIFORM = "uniform";
+    public static final String MODE_DEGREE = "degree";
+
+    private static final long SAMPLING_SALT = 0;
+    private static final long BUCKET_SALT = 0x632be59bd9b4e019L;
+
+    private final MainGraph mainGraph;
+    private final boolean degreeWeighted;
+    private final long seed;
+    private final int numBuckets;
+    private final float confidence;
+
+    // inclusion probability of a root: scale (times degree / average degree if
+    // degree weighted) capped at 1
+    private double scale;
+    private double averageDegree;
+
+    private RootSampler(Configuration conf, MainGraph mainGraph) {
+        this.mainGraph = mainGraph;
+
+        String mode = conf.getSamplingMode();
+
+        switch (mode) {
+            case MODE_UNIFORM:
+                degreeWeighted = false;
+                break;
+            case MODE_DEGREE:
+                degreeWeighted = true;
+                break;
+            default:
+                throw new RuntimeException("Unknown sampling mode: " + mode);
+        }
+
+        seed = conf.getSamplingSeed();
+        numBuckets = conf.getSamplingBuckets();
+        confidence = conf.getSamplingConfidence();
+
+        int numVertices = mainGraph.getNumberVertices();
+        averageDegree = numVertices > 0 ? 2.0 * mainGraph.getNumberEdges() / numVertices : 0;
+        scale = Math.min(conf.getSamplingRate(), 1.0);
+
+        long maxRoots = conf.getSamplingMaxRoots();
+
+        if (maxRoots > 0) {
+            double expectedRoots = getExpectedRoots();
+
+            if (expectedRoots > maxRoots) {
+                // Approximately, capped probabilities do not shrink
+                scale *= maxRoots / expectedRoots;
+            }
+        }
+    }
+
+    /**
+     * @return a sampler as configured, or null if sampling is disabled (or
+     * there is no graph to sample from, e.g. in the master)
+     */
+    public static RootSampler create(Configuration conf, MainGraph mainGraph) {
+        if (!conf.isSamplingEnabled() || mainGraph == null) {
+            return null;
+        }
+
+        RootSampler rootSampler = new RootSampler(conf, mainGraph);
+
+        LOG.info("Sampling roots: " + rootSampler);
+
+        return rootSampler;
+    }
+
+    private double getExpectedRoots() {
+        int numVertices = mainGraph.getNumberVertices();
+
+        if (!degreeWeighted) {
+            return scale * numVertices;
+        }
+
+        double expectedRoots = 0;
+
+        for (int vertexId = 0; vertexId < numVertices; ++vertexId) {
+            expectedRoots += getInclusionProbability(vertexId);
+        }
+
+        return expectedRoots;
+    }
+
+    public double getInclusionProbability(int vertexId) {
+        if (!degreeWeighted) {
+            return scale;
+        }
+
+        if (averageDegree == 0) {
+            return 0;
+        }
+
+        IntCollection neighbours = mainGraph.getVertexNeighbours(vertexId);
+        int degree = neighbours != null ? neighbours.size() : 0;
+
+        return Math.min(scale * degree / averageDegree, 1.0);
+    }
+
+    public boolean isSampled(int vertexId) {
+        double probability = getInclusionProbability(vertexId);
+
+        if (probability >= 1.0) {
+            return true;
+        }
+
+        // 53 random bits, uniform in [0, 1)
+        return (hash(vertexId, SAMPLING_SALT) >>> 11) * 0x1.0p-53 < probability;
+    }
+
+    public int getBucket(int vertexId) {
+        return (int) ((hash(vertexId, BUCKET_SALT) >>> 1) % numBuckets);
+    }
+
+    /**
+     * Sets count to numSamples embeddings whose root is vertexId.
+     */
+    public void setCount(ApproximateCount count, int rootVertexId, long numSamples) {
+        count.set(getBucket(rootVertexId), 1.0 / getInclusionProbability(rootVertexId), numSamples);
+    }
+
+    public ApproximateCount createCount() {
+        return new ApproximateCount(numBuckets, confidence);
+    }
+
+    // SplitMix64 of the vertex id, salted so that sampling and buckets are
+    // independent
+    private long hash(int vertexId, long salt) {
+        return mix(seed + salt + (vertexId + 1L) * 0x9e3779b97f4a7c15L);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        return "RootSampler{" +
+                "mode=" + (degreeWeighted ? MODE_DEGREE : MODE_UNIFORM) +
+                ", scale=" + scale +
+                ", seed=" + seed +
+                ", numBuckets=" + numBuckets +
+                ", confidence=" + confidence +
+                '}';
+    }
+}
@@ -1,16 +1,152 @@
 package io.arabesque.computation;
 
+import com.koloboke.collect.set.hash.HashIntSet;
+import com.koloboke.collect.set.hash.HashIntSets;
 import io.arabesque.embedding.Embedding;
 import io.arabesque.embedding.VertexInducedEmbedding;
+import io.arabesque.graph.DeltaMainGraph;
+import io.arabesque.graph.MainGraph;
+import io.arabesque.utils.collection.IntArrayList;
 
 public abstract class VertexInducedComputation<E extends VertexInducedEmbedding> extends BasicComputation<E> {
+    private DeltaMainGraph deltaMainGraph;
+
+    @Override
+    public void init() {
+        super.init();
+
+        MainGraph mainGraph = getMainGraph();
+        deltaMainGraph = mainGraph instanceof DeltaMainGraph ? (DeltaMainGraph) mainGraph : null;
+    }
+
     @Override
     protected final int getInitialNumWords() {
         return getMainGraph().getNumberVertices();
     }
 
+    /**
+     * Incremental mode: the main graph has a batch of edge changes overlaid
+     * (see {@link DeltaMainGraph}) and only the embeddings that contain a
+     * changed pair should be counted, with the sign of
+     * {@link #getIncrementalSign()}. Summing the counts of the updated graph
+     * and those of the base graph gives the change the batch brings.
+     */
+    protected boolean isIncremental() {
+        return deltaMainGraph != null;
+    }
+
+    /**
+     * +1 for the updated graph, -1 for the base one, +1 if not incremental.
+     */
+    protected int getIncrementalSign() {
+        return deltaMainGraph == null || deltaMainGraph.isApplied() ? 1 : -1;
+    }
+
+    /**
+     * Number of vertices of the embeddings counted in incremental mode, which
+     * bounds how far from the changed pairs their roots can be.
+     */
+    protected int getIncrementalNumVertices() {
+        throw new UnsupportedOperationException("Computation does not support incremental mode");
+    }
+
+    /**
+     * In incremental mode roots are seeded from the changed pairs: a connected
+     * embedding with n vertices that contains both vertices of a changed pair
+     * has all its vertices, and so its root, at most n - 2 hops away from them.
+     * Roots are dealt round-robin among partitions.
+     */
+    @Override
+    protected HashIntSet getInitialExtensions() {
+        if (deltaMainGraph == null) {
+            return super.getInitialExtensions();
+        }
+
+        IntArrayList roots = deltaMainGraph.getVerticesNearChanges(
+                Math.max(getIncrementalNumVertices() - 2, 0));
+        int numPartitions = getNumberPartitions();
+        HashIntSet initialExtensions = HashIntSets.newMutableSet(roots.size() / numPartitions + 1);
+
+        for (int i = getPartitionId(); i < roots.size(); i += numPartitions) {
+            initialExtensions.add(roots.getUnchecked(i));
+        }
+
+        return initialExtensions;
+    }
+
+    /**
+     * Vertices that embedding still needs to contain a changed pair: 0 if it
+     * contains one, 1 if it contains a changed vertex (whose pair may be added
+     * next), 2 otherwise. Each new vertex lowers it by at most 1, so embeddings
+     * with fewer vertices left to add can be filtered out.
+     */
+    protected int getNumMissingForChange(E embedding) {
+        IntArrayList vertices = embedding.getVertices();
+        int numVertices = vertices.size();
+        int numMissing = 2;
+
+        for (int i = 0; i < numVertices; ++i) {
+            int vertexId = vertices.getUnchecked(i);
+
+            if (!deltaMainGraph.isChangedVertex(vertexId)) {
+                continue;
+            }
+
+            numMissing = 1;
+
+            for (int j = i + 1; j < numVertices; ++j) {
+                if (deltaMainGraph.isChangedPair(vertexId, vertices.getUnchecked(j))) {
+                    return 0;
+                }
+            }
+        }
+
+        return numMissing;
+    }
+
+    /**
+     * Whether adding vertexId to embedding brings a changed pair.
+     */
+    protected boolean completesChange(E embedding, int vertexId) {
+        if (!deltaMainGraph.isChangedVertex(vertexId)) {
+            return false;
+        }
+
+        IntArrayList vertices = embedding.getVertices();
+        int numVertices = vertices.size();
+
+        for (int i = 0; i < numVertices; ++i) {
+            if (deltaMainGraph.isChangedPair(vertices.getUnchecked(i), vertexId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     @Override
     public Class<? extends Embedding> getEmbeddingClass() {
         return VertexInducedEmbedding.class;
     }
+
+    /**
+     * Positions of the vertices of embedding that are neighbours of vertexId
+     * (bit i set for the i-th vertex), i.e., the edges that adding vertexId to
+     * embedding would bring. Meant for leaf counting, which needs the shape of
+     * a child without building it (embeddings of at most 32 vertices).
+     */
+    protected int getAdjacencyMask(E embedding, int vertexId) {
+        MainGraph mainGraph = getMainGraph();
+        IntArrayList vertices = embedding.getVertices();
+        int numVertices = vertices.size();
+        int mask = 0;
+
+        for (int i = 0; i < numVertices; ++i) {
+            if (mainGraph.isNeighborVertex(vertices.getUnchecked(i), vertexId)) {
+                mask |= 1 << i;
+            }
+        }
+
+        return mask;
+    }
 }
@@ -15,15 +15,19 @@ import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Writable;
+import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class ODAGCommunicationStrategy<O extends Embedding> extends CommunicationStrategy<O> {
+    private static final Logger LOG = Logger.getLogger(ODAGCommunicationStrategy.class);
+
     private boolean splitEzips = true;
     private int numberEzipAggregators = 0;
     private int numBlocks;
@@ -242,25 +246,43 @@ public class ODAGCommunicationStrategy<O extends Embedding> extends Communicatio
         nextEmbeddingStash.addEmbedding(expansion);
     }
 
+    /**
+     * Merges the ODAG parts received by this worker and hands them to the
+     * partitions in micro steps. Each micro step holds the patterns whose parts
+     * fit in the merge budget (CONF_ODAG_MERGE_BUDGET); while partitions
+     * enumerate one micro step, the next one is decompressed, merged and
+     * finalized in the background.
+     */
     private static class ODAGLocalCoordinationObject extends WorkerContext.LocalCoordinationObject {
         private ODAGCommunicationStrategy communicationStrategy;
         private WorkerContext workerContext;
         private int numEzipAggregators;
         private int numPartitionsPerWorker;
+        private long mergeBudget;
         private SinglePatternODAGStash currentUnserializedStash;
         private LinkedHashMap<Pattern, ArrayList<ODAGPartLZ4Wrapper>> receivedParts;
         private Iterator<Map.Entry<Pattern, ArrayList<ODAGPartLZ4Wrapper>>> receivedPartsIterator;
         private ExecutorService mergingPool;
+        private ExecutorService preparingPool;
+        private Future<SinglePatternODAGStash> nextStashFuture;
 
         private AtomicLong totalSizeODAGs;
         private MergingTask[] reusableMergingTasks;
         private ArrayList<Future> futures;
 
+        // Per-phase timings (ms): merge time spent in total and the part of it
+        // partitions had to wait for
+        private long totalMergeTime;
+        private long exposedMergeTime;
+        private int numMicroSteps;
+
         public ODAGLocalCoordinationObject(WorkerContext workerContext, ODAGCommunicationStrategy communicationStrategy, int numEzipAggregators) {
             this.workerContext = workerContext;
             this.communicationStrategy = communicationStrategy;
             this.numEzipAggregators = numEzipAggregators;
             numPartitionsPerWorker = workerContext.getNumberPartitionsPerWorker();
+            mergeBudget = Configuration.get().getLong(Configuration.CONF_ODAG_MERGE_BUDGET,
+                    Configuration.CONF_ODAG_MERGE_BUDGET_DEFAULT);
             mergingPool = Executors.newFixedThreadPool(numPartitionsPerWorker);
             totalSizeODAGs = new AtomicLong(0);
 
@@ -285,7 +307,11 @@ public class ODAGCommunicationStrategy<O extends Embedding> extends Communicatio
         public void reset() {
             receivedParts = null;
             receivedPartsIterator = null;
+            nextStashFuture = null;
             totalSizeODAGs.set(0);
+            totalMergeTime = 0;
+            exposedMergeTime = 0;
+            numMicroSteps = 0;
         }
 
         @Override
@@ -317,60 +343,113 @@ public class ODAGCommunicationStrategy<O extends Embedding> extends Communicatio
                         existingPartsForPattern.add(receivedPart);
                     }
                 }
+
+                receivedPartsIterator = receivedParts.entrySet().iterator();
             }
 
             try {
-                if (receivedPartsIterator == null) {
-                    receivedPartsIterator = receivedParts.entrySet().iterator();
+                long waitStart = System.currentTimeMillis();
+
+                if (nextStashFuture == null) {
+                    // Nothing prepared in the background (first micro step or
+                    // pipelining disabled)
+                    currentUnserializedStash = prepareNextStash();
+                } else {
+                    currentUnserializedStash = nextStashFuture.get();
+                    nextStashFuture = null;
                 }
 
-                long currentEnumerationsInNextMicroStep = 0;
+                exposedMergeTime += System.currentTimeMillis() - waitStart;
+
+                if (currentUnserializedStash != null) {
+                    ++numMicroSteps;
+
+                    if (mergeBudget > 0 && receivedPartsIterator.hasNext()) {
+                        if (preparingPool == null) {
+                            preparingPool = Executors.newSingleThreadExecutor();
+                        }
 
-                if (currentUnserializedStash == null) {
-                    currentUnserializedStash = new SinglePatternODAGStash();
+                        nextStashFuture = preparingPool.submit(new Callable<SinglePatternODAGStash>() {
+                            @Override
+                            public SinglePatternODAGStash call() throws Exception {
+                                return prepareNextStash();
+                            }
+                        });
+                    }
                 } else {
-                    currentUnserializedStash.clear();
-                }
+                    LOG.info("ODAG merge: " + numMicroSteps + " micro steps, " +
+                            totalMergeTime + "ms merging, " + exposedMergeTime + "ms exposed, " +
+                            Math.max(totalMergeTime - exposedMergeTime, 0) + "ms hidden behind enumeration");
 
-                while (receivedPartsIterator.hasNext()) {
-                    Map.Entry<Pattern, ArrayList<ODAGPartLZ4Wrapper>> receivedPartsEntry
-                            = receivedPartsIterator.next();
+                    shutdownPools();
+                }
+            } catch (Throwable e) {
+                throw new RuntimeException("Error initializing next stash", e);
+            }
+        }
 
-                    Pattern pattern = receivedPartsEntry.getKey();
-                    ArrayList<ODAGPartLZ4Wrapper> parts = receivedPartsEntry.getValue();
+        /**
+         * Decompresses, merges and finalizes the ODAGs of the next patterns
+         * until their parts exceed the merge budget (everything when the budget
+         * is 0).
+         *
+         * @return the stash with those ODAGs, or null if there is nothing left
+         * to enumerate.
+         */
+        private SinglePatternODAGStash prepareNextStash() throws Exception {
+            long start = System.currentTimeMillis();
 
-                    SinglePatternODAG finalEzip = new SinglePatternODAG(true);
+            SinglePatternODAGStash stash = new SinglePatternODAGStash();
+            long enumerations = 0;
+            long batchSize = 0;
 
-                    finalEzip.setPattern(pattern);
+            while (receivedPartsIterator.hasNext() &&
+                    (mergeBudget <= 0 || batchSize < mergeBudget || enumerations == 0)) {
+                Map.Entry<Pattern, ArrayList<ODAGPartLZ4Wrapper>> receivedPartsEntry
+                        = receivedPartsIterator.next();
 
-                    futures.clear();
+                Pattern pattern = receivedPartsEntry.getKey();
+                ArrayList<ODAGPartLZ4Wrapper> parts = receivedPartsEntry.getValue();
 
-                    int i = 0;
-                    for (ODAGPartLZ4Wrapper part : parts) {
-                        MergingTask mergingTask = reusableMergingTasks[i];
-                        mergingTask.setPart(part);
-                        mergingTask.setTargetEzip(finalEzip);
-                        futures.add(mergingPool.submit(mergingTask));
-                        ++i;
-                    }
+                SinglePatternODAG finalEzip = new SinglePatternODAG(true);
 
-                    for (Future future : futures) {
-                        future.get();
-                    }
+                finalEzip.setPattern(pattern);
 
-                    finalEzip.finalizeConstruction(mergingPool, numPartitionsPerWorker);
+                futures.clear();
 
-                    currentUnserializedStash.aggregate(finalEzip);
-                    currentEnumerationsInNextMicroStep += finalEzip.getNumberOfEnumerations();
+                int i = 0;
+                for (ODAGPartLZ4Wrapper part : parts) {
+                    batchSize += part.getUncompressedSize();
 
-                    receivedPartsIterator.remove();
+                    MergingTask mergingTask = reusableMergingTasks[i];
+                    mergingTask.setPart(part);
+                    mergingTask.setTargetEzip(finalEzip);
+                    futures.add(mergingPool.submit(mergingTask));
+                    ++i;
                 }
 
-                if (currentEnumerationsInNextMicroStep == 0) {
-                    currentUnserializedStash = null;
+                for (Future future : futures) {
+                    future.get();
                 }
-            } catch (Throwable e) {
-                throw new RuntimeException("Error initializing next stash", e);
+
+                finalEzip.finalizeConstruction(mergingPool, numPartitionsPerWorker);
+
+                stash.aggregate(finalEzip);
+                enumerations += finalEzip.getNumberOfEnumerations();
+
+                receivedPartsIterator.remove();
+            }
+
+            totalMergeTime += System.currentTimeMillis() - start;
+
+            return enumerations == 0 ? null : stash;
+        }
+
+        private void shutdownPools() {
+            mergingPool.shutdown();
+
+            if (preparingPool != null) {
+                preparingPool.shutdown();
             }
         }
 
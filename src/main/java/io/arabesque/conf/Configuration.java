@@ -11,11 +11,14 @@ import io.arabesque.computation.WorkerContext;
 import io.arabesque.computation.comm.CommunicationStrategy;
 import io.arabesque.computation.comm.CommunicationStrategyFactory;
 import io.arabesque.embedding.Embedding;
+import io.arabesque.graph.BasicMainGraph;
+import io.arabesque.graph.DeltaMainGraph;
 import io.arabesque.graph.MainGraph;
 import io.arabesque.optimization.OptimizationSet;
 import io.arabesque.optimization.OptimizationSetDescriptor;
 import io.arabesque.pattern.Pattern;
 import io.arabesque.pattern.VICPattern;
+import io.arabesque.utils.compression.CompressionPolicy;
 import io.arabesque.utils.pool.Pool;
 import io.arabesque.utils.pool.PoolRegistry;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
@@ -24,10 +27,12 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Writable;
 import org.apache.log4j.Logger;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Configuration<O extends Embedding> implements java.io.Serializable {
     
@@ -59,12 +64,34 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
     public static final boolean CONF_MAINGRAPH_EDGE_LABELLED_DEFAULT = false;
     public static final String CONF_MAINGRAPH_MULTIGRAPH = "arabesque.graph.multigraph";
     public static final boolean CONF_MAINGRAPH_MULTIGRAPH_DEFAULT = false;
+    // Whether neighbourhoods of the loaded main graph get the representation
+    // that best fits their degree (see BasicMainGraph#compactNeighbourhoods)
+    // or stay as the hash maps built while reading it
+    public static final String CONF_MAINGRAPH_COMPACT_NEIGHBOURHOODS = "arabesque.graph.compact_neighbourhoods";
+    public static final boolean CONF_MAINGRAPH_COMPACT_NEIGHBOURHOODS_DEFAULT = true;
+    // Batch of edge changes overlaid on the main graph (see DeltaMainGraph),
+    // either applied (updated graph) or not (base graph, changes only known)
+    public static final String CONF_MAINGRAPH_DELTA_PATH = "arabesque.graph.delta.location";
+    public static final String CONF_MAINGRAPH_DELTA_PATH_DEFAULT = null;
+    public static final String CONF_MAINGRAPH_DELTA_APPLIED = "arabesque.graph.delta.applied";
+    public static final boolean CONF_MAINGRAPH_DELTA_APPLIED_DEFAULT = true;
 
     public static final String CONF_OPTIMIZATIONSETDESCRIPTOR_CLASS = "arabesque.optimizations.descriptor";
     public static final String CONF_OPTIMIZATIONSETDESCRIPTOR_CLASS_DEFAULT = "io.arabesque.optimization.ConfigBasedOptimizationSetDescriptor";
 
     private static final String CONF_COMPRESSED_CACHES = "arabesque.caches.compress";
     private static final boolean CONF_COMPRESSED_CACHES_DEFAULT = false;
+    // Codec per data path: arabesque.compression.<data path> = [adaptive:]<codec>[:level]
+    // with codec one of none, lz4, lz4hc, deflate (see Codecs)
+    public static final String CONF_COMPRESSION_PREFIX = "arabesque.compression.";
+    public static final String COMPRESSION_CACHES = "caches";
+    public static final String COMPRESSION_ODAG = "odag";
+    public static final String COMPRESSION_OUTPUT = "output";
+    public static final String CONF_COMPRESSION_ODAG_DEFAULT = "lz4";
+    public static final String CONF_COMPRESSION_ADAPTIVE_THRESHOLD = "arabesque.compression.adaptive.threshold";
+    public static final float CONF_COMPRESSION_ADAPTIVE_THRESHOLD_DEFAULT = 1.5f;
+    public static final String CONF_COMPRESSION_ADAPTIVE_PERIOD = "arabesque.compression.adaptive.period";
+    public static final int CONF_COMPRESSION_ADAPTIVE_PERIOD_DEFAULT = 16;
     private static final String CONF_CACHE_THRESHOLD_SIZE = "arabesque.cache.threshold";
     private static final int CONF_CACHE_THRESHOLD_SIZE_DEFAULT = 1 * MB;
 
@@ -72,6 +99,10 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
     public static final boolean CONF_OUTPUT_ACTIVE_DEFAULT = true;
     public static final String CONF_OUTPUT_FORMAT = "arabesque.output.format";
     public static final String CONF_OUTPUT_FORMAT_DEFAULT = "plain_text";
+    public static final String CONF_OUTPUT_COLUMNAR_PATTERNS = "arabesque.output.columnar.patterns";
+    public static final boolean CONF_OUTPUT_COLUMNAR_PATTERNS_DEFAULT = false;
+    public static final String CONF_OUTPUT_COLUMNAR_BLOCK_ROWS = "arabesque.output.columnar.block_rows";
+    public static final int CONF_OUTPUT_COLUMNAR_BLOCK_ROWS_DEFAULT = 65536;
 
     public static final String INFO_PERIOD = "arabesque.info.period";
     public static final long INFO_PERIOD_DEFAULT = 60000;
@@ -79,6 +110,9 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
     public static final String CONF_COMPUTATION_CLASS = "arabesque.computation.class";
     public static final String CONF_COMPUTATION_CLASS_DEFAULT = "io.arabesque.computation.ComputationContainer";
 
+    public static final String CONF_FUSED_COMPUTATION_CLASSES = "arabesque.fused.computations";
+    public static final String CONF_FUSED_COMPUTATION_CLASSES_DEFAULT = "";
+
     public static final String CONF_MASTER_COMPUTATION_CLASS = "arabesque.master_computation.class";
     public static final String CONF_MASTER_COMPUTATION_CLASS_DEFAULT = "io.arabesque.computation.MasterComputation";
 
@@ -88,6 +122,11 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
     public static final String CONF_COMM_STRATEGY_ODAGMP_MAX = "arabesque.comm.strategy.odagmp.max";
     public static final int CONF_COMM_STRATEGY_ODAGMP_MAX_DEFAULT = 100;
 
+    // "auto" strategy (spark): raw embeddings are replaced by ODAGs once the
+    // embeddings of the next superstep are expected to exceed this many bytes
+    public static final String CONF_COMM_STRATEGY_AUTO_MAX_BYTES = "arabesque.comm.strategy.auto.max_bytes";
+    public static final long CONF_COMM_STRATEGY_AUTO_MAX_BYTES_DEFAULT = 1L << 30;
+
     public static final String CONF_COMM_STRATEGY_FACTORY_CLASS = "arabesque.comm.factory.class";
     public static final String CONF_COMM_STRATEGY_FACTORY_CLASS_DEFAULT = "io.arabesque.computation.comm.ODAGCommunicationStrategyFactory";
 
@@ -102,6 +141,16 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
     public static final String CONF_ODAG_FLUSH_METHOD = "arabesque.odag.flush.method";
     public static final String CONF_ODAG_FLUSH_METHOD_DEFAULT = "flush_by_parts";
 
+    // "auto" flush method (spark): ODAGs are flushed by pattern while the
+    // largest pattern stays below max_skew times the fair share of a partition
+    public static final String CONF_ODAG_FLUSH_AUTO_MAX_SKEW = "arabesque.odag.flush.auto.max_skew";
+    public static final float CONF_ODAG_FLUSH_AUTO_MAX_SKEW_DEFAULT = 2.0f;
+
+    // Uncompressed bytes of received ODAG parts merged ahead of the enumeration
+    // of the current ones (Giraph). 0 merges everything before enumerating.
+    public static final String CONF_ODAG_MERGE_BUDGET = "arabesque.odag.merge.budget";
+    public static final long CONF_ODAG_MERGE_BUDGET_DEFAULT = 128L * 1024 * 1024;
+
     private static final String CONF_2LEVELAGG_ENABLED = "arabesque.2levelagg.enabled";
     private static final boolean CONF_2LEVELAGG_ENABLED_DEFAULT = true;
     private static final String CONF_FORCE_GC = "arabesque.forcegc";
@@ -116,9 +165,45 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
     public static final String CONF_INCREMENTAL_AGGREGATION = "arabesque.aggregation.incremental";
     public static final boolean CONF_INCREMENTAL_AGGREGATION_DEFAULT = false;
 
+    // Depth-first exploration: from this superstep on (>= 1, -1 disables it),
+    // partitions expand the embeddings they read to completion in memory
+    // instead of passing the expansions on to the next superstep. Only for
+    // computations that do not depend on aggregations of previous supersteps.
+    public static final String CONF_DEPTH_FIRST_SUPERSTEP = "arabesque.depth_first.superstep";
+    public static final int CONF_DEPTH_FIRST_SUPERSTEP_DEFAULT = -1;
+
+    // Leaf counting: computations that support it (motifs, cliques, triangles)
+    // process the last level of the exploration in bulk instead of building
+    // each child (see io.arabesque.computation.BasicComputation#shouldCountLeaves)
+    public static final String CONF_COUNT_LEAVES = "arabesque.count_leaves";
+    public static final boolean CONF_COUNT_LEAVES_DEFAULT = false;
+
+    // Bound on the bytes of the reclaimed objects that object pools share
+    // between threads (see io.arabesque.utils.pool.Pool)
+    public static final String CONF_POOL_MAX_BYTES = "arabesque.pool.max_bytes";
+    public static final long CONF_POOL_MAX_BYTES_DEFAULT = 64L * 1024 * 1024;
+
     public static final String CONF_AGGREGATION_STORAGE_CLASS = "arabesque.aggregation.storage.class";
     public static final String CONF_AGGREGATION_STORAGE_CLASS_DEFAULT = "io.arabesque.aggregation.AggregationStorage";
 
+    // Approximate counting: roots (initial vertices) are sampled with the
+    // given rate, uniformly or proportionally to their degree, and at most
+    // max_roots are expected (0 for no budget). Counts are scaled by the
+    // inverse inclusion probability of their root and split in buckets (random
+    // groups of roots) from which confidence intervals are derived.
+    public static final String CONF_SAMPLING_RATE = "arabesque.sampling.rate";
+    public static final float CONF_SAMPLING_RATE_DEFAULT = 1.0f;
+    public static final String CONF_SAMPLING_MODE = "arabesque.sampling.mode";
+    public static final String CONF_SAMPLING_MODE_DEFAULT = "uniform";
+    public static final String CONF_SAMPLING_MAX_ROOTS = "arabesque.sampling.max_roots";
+    public static final long CONF_SAMPLING_MAX_ROOTS_DEFAULT = 0;
+    public static final String CONF_SAMPLING_BUCKETS = "arabesque.sampling.buckets";
+    public static final int CONF_SAMPLING_BUCKETS_DEFAULT = 16;
+    public static final String CONF_SAMPLING_CONFIDENCE = "arabesque.sampling.confidence";
+    public static final float CONF_SAMPLING_CONFIDENCE_DEFAULT = 0.95f;
+    public static final String CONF_SAMPLING_SEED = "arabesque.sampling.seed";
+    public static final long CONF_SAMPLING_SEED_DEFAULT = 0;
+
     protected static Configuration instance = null;
     private ImmutableClassesGiraphConfiguration giraphConfiguration;
 
@@ -143,6 +228,9 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
 
     private transient Map<String, AggregationStorageMetadata> aggregationsMetadata;
     private transient MainGraph mainGraph;
+    // Input id of each vertex when the main graph has been reordered, null otherwise
+    private transient int[] originalVertexIds;
+    private transient ConcurrentHashMap<String, CompressionPolicy> compressionPolicies;
     private boolean isGraphEdgeLabelled;
     protected boolean initialized = false;
     private boolean isGraphMulti;
@@ -202,6 +290,8 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
 
         LOG.info("Initializing Configuration...");
 
+        PoolRegistry.instance().setMaxBytes(getPoolMaxBytes());
+
         useCompressedCaches = getBoolean(CONF_COMPRESSED_CACHES, CONF_COMPRESSED_CACHES_DEFAULT);
         cacheThresholdSize = getInteger(CONF_CACHE_THRESHOLD_SIZE, CONF_CACHE_THRESHOLD_SIZE_DEFAULT);
         infoPeriod = getLong(INFO_PERIOD, INFO_PERIOD_DEFAULT);
@@ -249,6 +339,7 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
         }
 
         optimizationSet.applyAfterGraphLoad();
+        applyGraphDelta();
         initialized = true;
         LOG.info("Configuration initialized");
     }
@@ -321,6 +412,48 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
         return useCompressedCaches;
     }
 
+    /**
+     * Compression of the given data path (COMPRESSION_CACHES, COMPRESSION_ODAG,
+     * COMPRESSION_OUTPUT),
+     * shared by all its writers in this JVM. Caches keep honouring
+     * arabesque.caches.compress when no codec is configured for them.
+     */
+    public CompressionPolicy getCompressionPolicy(String dataPath) {
+        if (compressionPolicies == null) {
+            synchronized (this) {
+                if (compressionPolicies == null) {
+                    compressionPolicies = new ConcurrentHashMap<>();
+                }
+            }
+        }
+
+        CompressionPolicy policy = compressionPolicies.get(dataPath);
+
+        if (policy == null) {
+            String defaultSpec;
+
+            if (COMPRESSION_CACHES.equals(dataPath)) {
+                defaultSpec = isUseCompressedCaches() ? "lz4" : "none";
+            } else {
+                // odags and columnar output
+                defaultSpec = CONF_COMPRESSION_ODAG_DEFAULT;
+            }
+
+            policy = new CompressionPolicy(dataPath,
+                    getString(CONF_COMPRESSION_PREFIX + dataPath, defaultSpec),
+                    getFloat(CONF_COMPRESSION_ADAPTIVE_THRESHOLD, CONF_COMPRESSION_ADAPTIVE_THRESHOLD_DEFAULT),
+                    getInteger(CONF_COMPRESSION_ADAPTIVE_PERIOD, CONF_COMPRESSION_ADAPTIVE_PERIOD_DEFAULT));
+
+            CompressionPolicy existingPolicy = compressionPolicies.putIfAbsent(dataPath, policy);
+
+            if (existingPolicy != null) {
+                policy = existingPolicy;
+            }
+        }
+
+        return policy;
+    }
+
     public int getCacheThresholdSize() {
         return cacheThresholdSize;
     }
@@ -357,22 +490,71 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
         this.mainGraph = mainGraph;
     }
 
+    public int[] getOriginalVertexIds() {
+        return originalVertexIds;
+    }
+
+    /**
+     * Registers the input id of each vertex of a main graph whose vertices were
+     * renumbered after loading, so that outputs refer to the input ids.
+     */
+    public void setOriginalVertexIds(int[] originalVertexIds) {
+        this.originalVertexIds = originalVertexIds;
+    }
+
     protected MainGraph createGraph() {
         boolean useLocalGraph = getBoolean(CONF_MAINGRAPH_LOCAL, CONF_MAINGRAPH_LOCAL_DEFAULT);
+        MainGraph graph;
 
         try {
             Constructor<? extends MainGraph> constructor;
 
             if (useLocalGraph) {
                 constructor = mainGraphClass.getConstructor(java.nio.file.Path.class, boolean.class, boolean.class);
-                return constructor.newInstance(Paths.get(getMainGraphPath()), isGraphEdgeLabelled, isGraphMulti);
+                graph = constructor.newInstance(Paths.get(getMainGraphPath()), isGraphEdgeLabelled, isGraphMulti);
             } else {
                 constructor = mainGraphClass.getConstructor(Path.class, boolean.class, boolean.class);
-                return constructor.newInstance(new Path(getMainGraphPath()), isGraphEdgeLabelled, isGraphMulti);
+                graph = constructor.newInstance(new Path(getMainGraphPath()), isGraphEdgeLabelled, isGraphMulti);
             }
         } catch (NoSuchMethodException | IllegalAccessException | InstantiationException | InvocationTargetException e) {
             throw new RuntimeException("Could not load main graph", e);
         }
+
+        if (graph instanceof BasicMainGraph && isCompactNeighbourhoods()) {
+            ((BasicMainGraph) graph).compactNeighbourhoods();
+        }
+
+        return graph;
+    }
+
+    public String getMainGraphDeltaPath() {
+        return getString(CONF_MAINGRAPH_DELTA_PATH, CONF_MAINGRAPH_DELTA_PATH_DEFAULT);
+    }
+
+    /**
+     * Overlays the batch of edge changes in {@link #CONF_MAINGRAPH_DELTA_PATH},
+     * if any, on the main graph. Called once the optimizations are applied, so
+     * the vertex ids of the batch go through {@link #getOriginalVertexIds()}.
+     */
+    public void applyGraphDelta() {
+        String deltaPath = getMainGraphDeltaPath();
+
+        if (deltaPath == null || mainGraph == null || mainGraph instanceof DeltaMainGraph) {
+            return;
+        }
+
+        boolean useLocalGraph = getBoolean(CONF_MAINGRAPH_LOCAL, CONF_MAINGRAPH_LOCAL_DEFAULT);
+        boolean applied = getBoolean(CONF_MAINGRAPH_DELTA_APPLIED, CONF_MAINGRAPH_DELTA_APPLIED_DEFAULT);
+
+        try {
+            if (useLocalGraph) {
+                mainGraph = new DeltaMainGraph(mainGraph, Paths.get(deltaPath), applied, originalVertexIds);
+            } else {
+                mainGraph = new DeltaMainGraph(mainGraph, new Path(deltaPath), applied, originalVertexIds);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not load main graph delta", e);
+        }
     }
 
     public boolean isOutputActive() {
@@ -387,6 +569,10 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
        return getString(CONF_ODAG_FLUSH_METHOD, CONF_ODAG_FLUSH_METHOD_DEFAULT);
     }
 
+    public float getOdagFlushAutoMaxSkew() {
+       return getFloat(CONF_ODAG_FLUSH_AUTO_MAX_SKEW, CONF_ODAG_FLUSH_AUTO_MAX_SKEW_DEFAULT);
+    }
+
     public int getMaxEnumerationsPerMicroStep() {
         return 10000000;
     }
@@ -520,6 +706,24 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
        return getBoolean (CONF_INCREMENTAL_AGGREGATION, CONF_INCREMENTAL_AGGREGATION_DEFAULT);
     }
 
+    public int getDepthFirstSuperstep() {
+       int depthFirstSuperstep = getInteger (CONF_DEPTH_FIRST_SUPERSTEP, CONF_DEPTH_FIRST_SUPERSTEP_DEFAULT);
+       // superstep 0 only expands the empty embedding, it is never depth-first
+       return depthFirstSuperstep < 0 ? -1 : Math.max(depthFirstSuperstep, 1);
+    }
+
+    public boolean isCountLeaves() {
+       return getBoolean (CONF_COUNT_LEAVES, CONF_COUNT_LEAVES_DEFAULT);
+    }
+
+    public boolean isCompactNeighbourhoods() {
+       return getBoolean (CONF_MAINGRAPH_COMPACT_NEIGHBOURHOODS, CONF_MAINGRAPH_COMPACT_NEIGHBOURHOODS_DEFAULT);
+    }
+
+    public long getPoolMaxBytes() {
+       return getLong (CONF_POOL_MAX_BYTES, CONF_POOL_MAX_BYTES_DEFAULT);
+    }
+
     public int getMaxOdags() {
        return getInteger (CONF_COMM_STRATEGY_ODAGMP_MAX, CONF_COMM_STRATEGY_ODAGMP_MAX_DEFAULT);
     }
@@ -528,5 +732,45 @@ public class Configuration<O extends Embedding> implements java.io.Serializable
        return getString (CONF_COMM_STRATEGY, CONF_COMM_STRATEGY_DEFAULT);
     }
 
+    public long getCommStrategyAutoMaxBytes() {
+       return getLong (CONF_COMM_STRATEGY_AUTO_MAX_BYTES, CONF_COMM_STRATEGY_AUTO_MAX_BYTES_DEFAULT);
+    }
+
+    public boolean isOutputColumnarPatterns() {
+       return getBoolean(CONF_OUTPUT_COLUMNAR_PATTERNS, CONF_OUTPUT_COLUMNAR_PATTERNS_DEFAULT);
+    }
+
+    public int getOutputColumnarBlockRows() {
+       return getInteger(CONF_OUTPUT_COLUMNAR_BLOCK_ROWS, CONF_OUTPUT_COLUMNAR_BLOCK_ROWS_DEFAULT);
+    }
+
+    public boolean isSamplingEnabled() {
+       return getSamplingRate() < 1.0f || getSamplingMaxRoots() > 0;
+    }
+
+    public float getSamplingRate() {
+       return getFloat(CONF_SAMPLING_RATE, CONF_SAMPLING_RATE_DEFAULT);
+    }
+
+    public String getSamplingMode() {
+       return getString(CONF_SAMPLING_MODE, CONF_SAMPLING_MODE_DEFAULT);
+    }
+
+    public long getSamplingMaxRoots() {
+       return getLong(CONF_SAMPLING_MAX_ROOTS, CONF_SAMPLING_MAX_ROOTS_DEFAULT);
+    }
+
+    public int getSamplingBuckets() {
+       return getInteger(CONF_SAMPLING_BUCKETS, CONF_SAMPLING_BUCKETS_DEFAULT);
+    }
+
+    public float getSamplingConfidence() {
+       return getFloat(CONF_SAMPLING_CONFIDENCE, CONF_SAMPLING_CONFIDENCE_DEFAULT);
+    }
+
+    public long getSamplingSeed() {
+       return getLong(CONF_SAMPLING_SEED, CONF_SAMPLING_SEED_DEFAULT);
+    }
+
 }
 
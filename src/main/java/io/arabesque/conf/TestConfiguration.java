@@ -21,7 +21,13 @@ public class TestConfiguration<O extends Embedding> extends Configuration<O> {
     @Override
     public MainGraph createGraph() {
         try {
-            return new BasicMainGraph(Paths.get(getMainGraphPath()), false, false);
+            BasicMainGraph graph = new BasicMainGraph(Paths.get(getMainGraphPath()), false, false);
+
+            if (isCompactNeighbourhoods()) {
+                graph.compactNeighbourhoods();
+            }
+
+            return graph;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -42,6 +42,7 @@ public class YamlConfiguration {
     private static final String EXECUTION_ENGINE = "execution_engine";
     private static final String SPARK = "spark";
     private static final String GIRAPH = "giraph";
+    private static final String LOCAL = "local";
 
 
     private static final Options CMDLINE_OPTIONS;
@@ -171,6 +172,10 @@ public class YamlConfiguration {
        return getString(EXECUTION_ENGINE).equals(GIRAPH);
     }
 
+    public boolean isLocalExecutionEngine() {
+       return getString(EXECUTION_ENGINE).equals(LOCAL);
+    }
+
     public String getExecutionEngine() {
        return getString (EXECUTION_ENGINE);
     }
@@ -0,0 +1,116 @@
+package io.arabesque.data;
+
+import io.arabesque.graph.BasicMainGraph;
+import io.arabesque.graph.Edge;
+import io.arabesque.graph.MainGraph;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Memory/throughput trade-off of the neighbourhood representations chosen by
+ * BasicMainGraph: "hybrid" is the graph as loaded (sorted arrays, bitsets for
+ * hubs and hash maps in between), "hash" rebuilds it edge by edge so that every
+ * neighbourhood stays a hash map. Reports the heap taken by the graph and the
+ * time and throughput of the wedge probes of {@link VertexReorderingBenchmark}.
+ * Generated graphs (gen:numVertices) are preferential attachment graphs, whose
+ * degrees follow a power law, so that every representation is exercised.
+ *
+ *   java -cp arabesque.jar io.arabesque.data.NeighbourhoodBenchmark data/citeseer.graph hybrid
+ *   java -cp arabesque.jar io.arabesque.data.NeighbourhoodBenchmark gen:200000 hash
+ *
+ * Run each representation in its own JVM (see scripts/benchmark_neighbourhoods.sh)
+ * so that heap measurements do not interfere.
+ */
+public class NeighbourhoodBenchmark {
+    static final int REPETITIONS = 3;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: NeighbourhoodBenchmark <graph file|gen:numVertices> <hybrid|hash>");
+            System.exit(1);
+        }
+
+        String input = args[0];
+        String representation = args[1];
+
+        Path graphPath;
+
+        if (input.startsWith("gen:")) {
+            graphPath = Files.createTempFile("neighbourhood-benchmark", ".graph");
+            VertexReorderingBenchmark.generateGraph(Integer.parseInt(input.substring(4)), graphPath);
+        } else {
+            graphPath = Paths.get(input);
+        }
+
+        long heapBefore = usedHeap();
+        MainGraph mainGraph = loadGraph(graphPath);
+
+        switch (representation) {
+            case "hybrid":
+                break;
+            case "hash":
+                // the loaded graph is unreachable once rebuilt, so that only
+                // the hash maps are measured
+                mainGraph = rebuildWithHashMaps(mainGraph);
+                break;
+            default:
+                throw new RuntimeException("Unknown representation: " + representation);
+        }
+
+        System.out.println("Graph heap (" + representation + "): " +
+                ((usedHeap() - heapBefore) >> 20) + "MB");
+
+        for (int i = 0; i < REPETITIONS; ++i) {
+            long start = System.currentTimeMillis();
+            long numProbes = VertexReorderingBenchmark.probeWedges(mainGraph);
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            System.out.println("Probes: " + numProbes + " in " + elapsed + "ms (" +
+                    (numProbes * 1000 / elapsed) + " probes/s)");
+        }
+
+        if (input.startsWith("gen:")) {
+            Files.delete(graphPath);
+        }
+    }
+
+    static MainGraph loadGraph(Path graphPath) throws IOException {
+        BasicMainGraph basicMainGraph = new BasicMainGraph(graphPath, false, false);
+        basicMainGraph.compactNeighbourhoods();
+        return basicMainGraph;
+    }
+
+    /**
+     * Copies the graph through addEdge only, which keeps the neighbourhoods as
+     * hash maps since they are not compacted afterwards.
+     */
+    static MainGraph rebuildWithHashMaps(MainGraph mainGraph) {
+        BasicMainGraph hashMainGraph = new BasicMainGraph(mainGraph.toString());
+
+        int numVertices = mainGraph.getNumberVertices();
+        int numEdges = mainGraph.getNumberEdges();
+
+        for (int vertexId = 0; vertexId < numVertices; ++vertexId) {
+            hashMainGraph.addVertex(mainGraph.getVertex(vertexId));
+        }
+
+        for (int edgeId = 0; edgeId < numEdges; ++edgeId) {
+            Edge edge = mainGraph.getEdge(edgeId);
+            hashMainGraph.addEdge(new Edge(edge.getSourceId(), edge.getDestinationId()));
+        }
+
+        return hashMainGraph;
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
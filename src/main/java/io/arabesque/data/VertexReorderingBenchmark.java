@@ -0,0 +1,191 @@
+package io.arabesque.data;
+
+import io.arabesque.graph.BasicMainGraph;
+import io.arabesque.graph.MainGraph;
+import io.arabesque.optimization.VertexReordering;
+import com.koloboke.collect.IntCollection;
+import com.koloboke.function.IntConsumer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the effect of vertex reordering on the adjacency probes done when
+ * vertices are added to vertex-induced embeddings: for every wedge u - v - w
+ * it checks whether u and w are neighbours and visits the edges between them,
+ * like VertexInducedEmbedding.updateEdges does.
+ *
+ * Meant to be run under perf to compare cache misses, see
+ * scripts/benchmark_reordering.sh:
+ *
+ *   java -cp arabesque.jar io.arabesque.data.VertexReorderingBenchmark data/citeseer.graph rcm
+ *   java -cp arabesque.jar io.arabesque.data.VertexReorderingBenchmark gen:200000 gorder
+ *
+ * The generated graphs follow preferential attachment and have their ids
+ * shuffled, so that the input order carries no locality.
+ */
+public class VertexReorderingBenchmark {
+    static final Charset charset = Charset.defaultCharset();
+    static final int ATTACHMENT_EDGES = 5;
+    static final long SEED = 42;
+    static final int REPETITIONS = 3;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: VertexReorderingBenchmark <graph file|gen:numVertices> <none|rcm|gorder> [numThreads]");
+            System.exit(1);
+        }
+
+        String input = args[0];
+        String method = args[1];
+        int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Path graphPath;
+
+        if (input.startsWith("gen:")) {
+            graphPath = Files.createTempFile("reordering-benchmark", ".graph");
+            generateGraph(Integer.parseInt(input.substring(4)), graphPath);
+        } else {
+            graphPath = Paths.get(input);
+        }
+
+        BasicMainGraph basicMainGraph = new BasicMainGraph(graphPath, false, false);
+        basicMainGraph.compactNeighbourhoods();
+        MainGraph mainGraph = basicMainGraph;
+
+        long start = System.currentTimeMillis();
+        VertexReordering reordering = new VertexReordering(mainGraph, numThreads);
+
+        switch (method) {
+            case "none":
+                break;
+            case "rcm":
+                mainGraph = reordering.reorder(reordering.reverseCuthillMcKee());
+                break;
+            case "gorder":
+                mainGraph = reordering.reorder(reordering.gorder(5));
+                break;
+            default:
+                throw new RuntimeException("Unknown vertex reordering: " + method);
+        }
+
+        System.out.println("Reordering (" + method + "): " + (System.currentTimeMillis() - start) + "ms");
+
+        for (int i = 0; i < REPETITIONS; ++i) {
+            start = System.currentTimeMillis();
+            long numProbes = probeWedges(mainGraph);
+            System.out.println("Probes: " + numProbes + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+
+        if (input.startsWith("gen:")) {
+            Files.delete(graphPath);
+        }
+    }
+
+    static long probeWedges(final MainGraph mainGraph) {
+        final long[] counters = new long[2];
+        IntConsumer edgeCounter = new IntConsumer() {
+            @Override
+            public void accept(int edgeId) {
+                counters[1] += edgeId;
+            }
+        };
+
+        int numVertices = mainGraph.getNumberVertices();
+
+        for (int v = 0; v < numVertices; ++v) {
+            IntCollection neighbours = mainGraph.getVertexNeighbours(v);
+
+            if (neighbours == null) {
+                continue;
+            }
+
+            int[] neighbourArray = neighbours.toIntArray();
+
+            for (int i = 0; i < neighbourArray.length; ++i) {
+                for (int j = i + 1; j < neighbourArray.length; ++j) {
+                    int u = neighbourArray[i];
+                    int w = neighbourArray[j];
+
+                    if (mainGraph.isNeighborVertex(u, w)) {
+                        mainGraph.forEachEdgeId(u, w, edgeCounter);
+                    }
+
+                    counters[0]++;
+                }
+            }
+        }
+
+        return counters[0];
+    }
+
+    /**
+     * Preferential attachment graph (each new vertex connects to
+     * ATTACHMENT_EDGES existing ones) with shuffled vertex ids.
+     */
+    static void generateGraph(int numVertices, Path output) throws IOException {
+        Random random = new Random(SEED);
+        List<List<Integer>> adjacency = new ArrayList<>(numVertices);
+        // Every edge endpoint, so that sampling it is proportional to the degree
+        List<Integer> endpoints = new ArrayList<>();
+
+        for (int v = 0; v < numVertices; ++v) {
+            adjacency.add(new ArrayList<Integer>());
+
+            List<Integer> targets = new ArrayList<>();
+
+            while (targets.size() < Math.min(ATTACHMENT_EDGES, v)) {
+                int target = endpoints.isEmpty() ? random.nextInt(v) : endpoints.get(random.nextInt(endpoints.size()));
+
+                if (!targets.contains(target)) {
+                    targets.add(target);
+                }
+            }
+
+            for (int target : targets) {
+                adjacency.get(v).add(target);
+                adjacency.get(target).add(v);
+                endpoints.add(v);
+                endpoints.add(target);
+            }
+        }
+
+        int[] permutation = new int[numVertices];
+
+        for (int v = 0; v < numVertices; ++v) {
+            permutation[v] = v;
+        }
+
+        for (int v = numVertices - 1; v > 0; --v) {
+            int other = random.nextInt(v + 1);
+            int tmp = permutation[v];
+            permutation[v] = permutation[other];
+            permutation[other] = tmp;
+        }
+
+        int[] inverse = new int[numVertices];
+
+        for (int v = 0; v < numVertices; ++v) {
+            inverse[permutation[v]] = v;
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(output, charset)) {
+            for (int newId = 0; newId < numVertices; ++newId) {
+                writer.write(newId + " 1");
+
+                for (int neighbour : adjacency.get(inverse[newId])) {
+                    writer.write(" " + permutation[neighbour]);
+                }
+
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import io.arabesque.utils.collection.IntCollectionAddConsumer;
 import io.arabesque.utils.collection.ObjArrayList;
 import io.arabesque.utils.pool.IntArrayListPool;
 import com.koloboke.collect.IntCollection;
+import com.koloboke.collect.set.IntSet;
 import com.koloboke.collect.set.hash.HashIntSet;
 import com.koloboke.collect.set.hash.HashIntSets;
 import com.koloboke.function.IntConsumer;
@@ -28,6 +29,7 @@ public abstract class BasicEmbedding implements Embedding {
     protected boolean dirtyExtensionWordIds;
     protected ObjArrayList<IntArrayList> extensionWordIdsPerPos;
     protected IntArrayList previousExtensionCalculationVertices;
+    protected HashIntSet restrictedExtensionWordIds;
 
     private IntConsumer extensionWordIdsAdder = new IntConsumer() {
         @Override
@@ -36,6 +38,13 @@ public abstract class BasicEmbedding implements Embedding {
         }
     };
 
+    private IntConsumer restrictedExtensionWordIdsAdder = new IntConsumer() {
+        @Override
+        public void accept(int i) {
+            restrictedExtensionWordIds.add(i);
+        }
+    };
+
     private IntPredicate existsInExtensionWordIds = new IntPredicate() {
         @Override
         public boolean test(int i) {
@@ -66,6 +75,7 @@ public abstract class BasicEmbedding implements Embedding {
 
     // Helpers {{
     protected MainGraph mainGraph;
+    protected int[] originalVertexIds;
     // }}
 
     public BasicEmbedding() {
@@ -76,9 +86,12 @@ public abstract class BasicEmbedding implements Embedding {
         vertices = new IntArrayList();
         edges = new IntArrayList();
 
-        mainGraph = Configuration.get().getMainGraph();
+        Configuration conf = Configuration.get();
+        mainGraph = conf.getMainGraph();
+        originalVertexIds = conf.getOriginalVertexIds();
 
         extensionWordIds = HashIntSets.newMutableSet();
+        restrictedExtensionWordIds = HashIntSets.newMutableSet();
         previousExtensionCalculationVertices = new IntArrayList();
 
         extensionWordIdsPerPos = new ObjArrayList<>();
@@ -117,7 +130,7 @@ public abstract class BasicEmbedding implements Embedding {
 
     @Override
     public int getNumEdges() {
-        return edges.size();
+        return getEdges().size();
     }
 
     @Override
@@ -164,6 +177,28 @@ public abstract class BasicEmbedding implements Embedding {
         }
     }
 
+    @Override
+    public IntCollection getExtensibleWordIds(IntSet labels) {
+        IntArrayList vertices = getVertices();
+        int numVertices = getNumVertices();
+
+        restrictedExtensionWordIds.clear();
+
+        for (int i = 0; i < numVertices; ++i) {
+            forEachValidNeighbourForExpansion(vertices.getUnchecked(i), labels, restrictedExtensionWordIdsAdder);
+        }
+
+        IntArrayList words = getWords();
+        int numWords = getNumWords();
+
+        // Clean the words that are already in the embedding
+        for (int i = 0; i < numWords; ++i) {
+            restrictedExtensionWordIds.removeInt(words.getUnchecked(i));
+        }
+
+        return restrictedExtensionWordIds;
+    }
+
     @Override
     public boolean isCanonicalEmbeddingWithWord(int wordId) {
         IntArrayList words = getWords();
@@ -200,10 +235,24 @@ public abstract class BasicEmbedding implements Embedding {
         return true;
     }
 
+    /**
+     * @return the id of the vertex in the input graph, which differs from the
+     * internal one if the main graph was reordered after loading
+     */
+    protected int getOutputVertexId(int vertexId) {
+        if (originalVertexIds == null) {
+            return vertexId;
+        }
+
+        return originalVertexIds[vertexId];
+    }
+
     protected abstract boolean areWordsNeighbours(int wordId1, int wordId2);
 
     protected abstract IntCollection getValidNeighboursForExpansion(int vId);
 
+    protected abstract void forEachValidNeighbourForExpansion(int vId, IntSet labels, IntConsumer intConsumer);
+
     @Override
     public void addWord(int word) {
         setDirty();
@@ -218,7 +267,7 @@ public abstract class BasicEmbedding implements Embedding {
     public String toString() {
         return "Embedding{" +
                 "vertices=" + vertices + ", " +
-                "edges=" + edges +
+                "edges=" + getEdges() +
                 "} " + super.toString();
     }
 
@@ -242,11 +291,11 @@ public abstract class BasicEmbedding implements Embedding {
         if (o == null || getClass() != o.getClass()) return false;
         BasicEmbedding that = (BasicEmbedding) o;
         return Objects.equals(vertices, that.vertices) &&
-                Objects.equals(edges, that.edges);
+                Objects.equals(getEdges(), that.getEdges());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(vertices, edges);
+        return Objects.hash(vertices, getEdges());
     }
 }
@@ -1,8 +1,12 @@
 package io.arabesque.embedding;
 
 import io.arabesque.graph.Edge;
+import io.arabesque.graph.LabelIndexedMainGraph;
 import io.arabesque.utils.collection.IntArrayList;
 import com.koloboke.collect.IntCollection;
+import com.koloboke.collect.IntCursor;
+import com.koloboke.collect.set.IntSet;
+import com.koloboke.function.IntConsumer;
 
 import java.io.DataInput;
 import java.io.IOException;
@@ -43,9 +47,9 @@ public class EdgeInducedEmbedding extends BasicEmbedding {
 
         for (int i = 0; i < numEdges; ++i) {
             Edge edge = mainGraph.getEdge(edges.getUnchecked(i));
-            sb.append(edge.getSourceId());
+            sb.append(getOutputVertexId(edge.getSourceId()));
             sb.append("-");
-            sb.append(edge.getDestinationId());
+            sb.append(getOutputVertexId(edge.getDestinationId()));
             sb.append(" ");
         }
 
@@ -71,6 +75,26 @@ public class EdgeInducedEmbedding extends BasicEmbedding {
         return mainGraph.getVertexNeighbourhood(vertexId).getNeighbourEdges();
     }
 
+    @Override
+    protected void forEachValidNeighbourForExpansion(int vertexId, IntSet labels, IntConsumer intConsumer) {
+        if (mainGraph instanceof LabelIndexedMainGraph) {
+            ((LabelIndexedMainGraph) mainGraph).forEachNeighbourEdge(vertexId, labels, intConsumer);
+            return;
+        }
+
+        IntCursor cursor = getValidNeighboursForExpansion(vertexId).cursor();
+
+        while (cursor.moveNext()) {
+            int edgeId = cursor.elem();
+            Edge edge = mainGraph.getEdge(edgeId);
+            int neighbourId = edge.getSourceId() == vertexId ? edge.getDestinationId() : edge.getSourceId();
+
+            if (labels.contains(mainGraph.getVertex(neighbourId).getVertexLabel())) {
+                intConsumer.accept(edgeId);
+            }
+        }
+    }
+
     @Override
     protected boolean areWordsNeighbours(int wordId1, int wordId2) {
         return mainGraph.areEdgesNeighbors(wordId1, wordId2);
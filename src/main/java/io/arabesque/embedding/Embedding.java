@@ -4,6 +4,7 @@ import io.arabesque.misc.WritableObject;
 import io.arabesque.pattern.Pattern;
 import io.arabesque.utils.collection.IntArrayList;
 import com.koloboke.collect.IntCollection;
+import com.koloboke.collect.set.IntSet;
 
 import java.io.Externalizable;
 
@@ -32,6 +33,15 @@ public interface Embedding extends WritableObject, Externalizable {
 
     IntCollection getExtensibleWordIds();
 
+    /**
+     * Extensions restricted to words that connect the embedding to a vertex
+     * whose label is in the given set: the new vertex itself for vertex-induced
+     * embeddings, the endpoint of the new edge for edge-induced ones.
+     *
+     * The returned collection is reused by subsequent calls.
+     */
+    IntCollection getExtensibleWordIds(IntSet labels);
+
     boolean isCanonicalEmbeddingWithWord(int wordId);
 
     String toOutputString();
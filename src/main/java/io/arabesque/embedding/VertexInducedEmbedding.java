@@ -1,7 +1,10 @@
 package io.arabesque.embedding;
 
+import io.arabesque.graph.LabelIndexedMainGraph;
 import io.arabesque.utils.collection.IntArrayList;
 import com.koloboke.collect.IntCollection;
+import com.koloboke.collect.IntCursor;
+import com.koloboke.collect.set.IntSet;
 import com.koloboke.function.IntConsumer;
 
 import java.io.DataInput;
@@ -9,17 +12,30 @@ import java.io.IOException;
 import java.io.ObjectInput;
 
 public class VertexInducedEmbedding extends BasicEmbedding {
+    // Vertices beyond this position are not in the adjacency matrix, their
+    // edges are resolved as soon as they are added
+    private static final int MAX_ADJACENCY_POSITIONS = Long.SIZE;
+
     // Consumers {{
     private UpdateEdgesConsumer updateEdgesConsumer;
     // }}
 
+    // Adjacency bit-matrix: bit j of adjacency[i] is set iff the vertices at
+    // positions j < i are neighbours. Filled with one probe per previous vertex
+    // when a vertex is added, edge ids are only resolved when asked for.
+    private long[] adjacency;
+    // }}
+
     // Edge tracking for incremental modifications {{
     private IntArrayList numEdgesAddedWithWord;
+    // Number of (first) vertices whose edges are in the edges list
+    private int numVerticesWithEdges;
     // }}
 
     @Override
     protected void init() {
         updateEdgesConsumer = new UpdateEdgesConsumer();
+        adjacency = new long[MAX_ADJACENCY_POSITIONS];
         numEdgesAddedWithWord = new IntArrayList();
 
         super.init();
@@ -29,6 +45,7 @@ public class VertexInducedEmbedding extends BasicEmbedding {
     public void reset() {
         super.reset();
         numEdgesAddedWithWord.clear();
+        numVerticesWithEdges = 0;
     }
 
     @Override
@@ -41,6 +58,20 @@ public class VertexInducedEmbedding extends BasicEmbedding {
         return getNumVertices();
     }
 
+    @Override
+    public IntArrayList getEdges() {
+        resolveEdges(vertices.size());
+        return edges;
+    }
+
+    /**
+     * Positions (as bits) of the vertices before position that are neighbours
+     * of the vertex at position, which must be below 64.
+     */
+    public long getAdjacency(int position) {
+        return adjacency[position];
+    }
+
     @Override
     public String toOutputString() {
         StringBuilder sb = new StringBuilder();
@@ -48,7 +79,7 @@ public class VertexInducedEmbedding extends BasicEmbedding {
         IntArrayList vertices = getVertices();
 
         for (int i = 0; i < vertices.size(); ++i) {
-            sb.append(vertices.getUnchecked(i));
+            sb.append(getOutputVertexId(vertices.getUnchecked(i)));
             sb.append(" ");
         }
 
@@ -67,6 +98,19 @@ public class VertexInducedEmbedding extends BasicEmbedding {
 
     @Override
     public int getNumEdgesAddedWithExpansion() {
+        int lastPosition = vertices.size() - 1;
+
+        if (lastPosition < 0) {
+            return 0;
+        }
+
+        // Neighbours may be connected by several edges in multigraphs
+        if (lastPosition < MAX_ADJACENCY_POSITIONS && !mainGraph.isMultiGraph()) {
+            return Long.bitCount(adjacency[lastPosition]);
+        }
+
+        resolveEdges(lastPosition + 1);
+
         return numEdgesAddedWithWord.getLastOrDefault(0);
     }
 
@@ -74,6 +118,30 @@ public class VertexInducedEmbedding extends BasicEmbedding {
         return mainGraph.getVertexNeighbours(vertexId);
     }
 
+    @Override
+    protected void forEachValidNeighbourForExpansion(int vertexId, IntSet labels, IntConsumer intConsumer) {
+        if (mainGraph instanceof LabelIndexedMainGraph) {
+            ((LabelIndexedMainGraph) mainGraph).forEachVertexNeighbour(vertexId, labels, intConsumer);
+            return;
+        }
+
+        IntCollection neighbours = getValidNeighboursForExpansion(vertexId);
+
+        if (neighbours == null) {
+            return;
+        }
+
+        IntCursor cursor = neighbours.cursor();
+
+        while (cursor.moveNext()) {
+            int neighbourId = cursor.elem();
+
+            if (labels.contains(mainGraph.getVertex(neighbourId).getVertexLabel())) {
+                intConsumer.accept(neighbourId);
+            }
+        }
+    }
+
     @Override
     protected boolean areWordsNeighbours(int wordId1, int wordId2) {
         return mainGraph.isNeighborVertex(wordId1, wordId2);
@@ -83,7 +151,7 @@ public class VertexInducedEmbedding extends BasicEmbedding {
     public void addWord(int word) {
         super.addWord(word);
         vertices.add(word);
-        updateEdges(word, vertices.size() - 1);
+        updateAdjacency(word, vertices.size() - 1);
     }
 
     @Override
@@ -92,8 +160,12 @@ public class VertexInducedEmbedding extends BasicEmbedding {
             return;
         }
 
-        int numEdgesToRemove = numEdgesAddedWithWord.pop();
-        edges.removeLast(numEdgesToRemove);
+        if (numVerticesWithEdges == vertices.size()) {
+            int numEdgesToRemove = numEdgesAddedWithWord.pop();
+            edges.removeLast(numEdgesToRemove);
+            --numVerticesWithEdges;
+        }
+
         vertices.removeLast();
 
         super.removeLastWord();
@@ -108,7 +180,7 @@ public class VertexInducedEmbedding extends BasicEmbedding {
         int numVertices = vertices.size();
 
         for (int i = 0; i < numVertices; ++i) {
-            updateEdges(vertices.getUnchecked(i), i);
+            updateAdjacency(vertices.getUnchecked(i), i);
         }
     }
 
@@ -117,6 +189,49 @@ public class VertexInducedEmbedding extends BasicEmbedding {
        readFields(objInput);
     }
 
+    private void updateAdjacency(int newVertexId, int positionAdded) {
+        if (positionAdded >= MAX_ADJACENCY_POSITIONS) {
+            resolveEdges(positionAdded);
+            updateEdges(newVertexId, positionAdded);
+            ++numVerticesWithEdges;
+            return;
+        }
+
+        IntArrayList vertices = getVertices();
+        long neighbours = 0;
+
+        for (int i = 0; i < positionAdded; ++i) {
+            if (mainGraph.isNeighborVertex(vertices.getUnchecked(i), newVertexId)) {
+                neighbours |= 1L << i;
+            }
+        }
+
+        adjacency[positionAdded] = neighbours;
+    }
+
+    /**
+     * Brings the list of edges up to date with the first numVertices vertices.
+     */
+    private void resolveEdges(int numVertices) {
+        for (; numVerticesWithEdges < numVertices; ++numVerticesWithEdges) {
+            int position = numVerticesWithEdges;
+            int vertexId = vertices.getUnchecked(position);
+            long neighbours = adjacency[position];
+            int addedEdges = 0;
+
+            while (neighbours != 0) {
+                int i = Long.numberOfTrailingZeros(neighbours);
+                neighbours &= neighbours - 1;
+
+                updateEdgesConsumer.reset();
+                mainGraph.forEachEdgeId(vertices.getUnchecked(i), vertexId, updateEdgesConsumer);
+                addedEdges += updateEdgesConsumer.getNumAdded();
+            }
+
+            numEdgesAddedWithWord.add(addedEdges);
+        }
+    }
+
     /**
      * Updates the list of edges of this embedding based on the addition of a new vertex.
      *
@@ -1,19 +1,71 @@
 package io.arabesque.gmlib.clique;
 
+import io.arabesque.aggregation.ApproximateCount;
+import io.arabesque.aggregation.reductions.ApproximateCountReduction;
+import io.arabesque.aggregation.reductions.LongSumReduction;
+import io.arabesque.computation.RootSampler;
 import io.arabesque.computation.VertexInducedComputation;
 import io.arabesque.conf.Configuration;
 import io.arabesque.embedding.VertexInducedEmbedding;
+import io.arabesque.utils.collection.IntArrayList;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 
+/**
+ * Finds the cliques with maxsize vertices and, with leaf counting on (see
+ * {@link Configuration#CONF_COUNT_LEAVES}), counts them in
+ * {@link #AGG_CLIQUES}. In approximate mode (see
+ * {@link Configuration#CONF_SAMPLING_RATE}) the count is an
+ * {@link ApproximateCount} instead of a LongWritable.
+ */
 public class CliqueComputation extends VertexInducedComputation<VertexInducedEmbedding> {
+    public static final String AGG_CLIQUES = "cliques";
     private static final String MAXSIZE = "arabesque.clique.maxsize";
     private static final int MAXSIZE_DEFAULT = 4;
 
+    private static LongWritable reusableLongWritableUnit = new LongWritable(1);
+
     int maxsize;
 
+    private boolean countLeaves;
+    private transient IntWritable reusableSizeWritable;
+    private transient LongWritable reusableLongWritableCount;
+
+    private transient RootSampler rootSampler;
+    private transient ApproximateCount reusableApproximateCount;
+
     @Override
     public void init() {
         super.init();
         maxsize = Configuration.get().getInteger(MAXSIZE, MAXSIZE_DEFAULT);
+        countLeaves = Configuration.get().isCountLeaves();
+        reusableSizeWritable = new IntWritable(maxsize);
+        reusableLongWritableCount = new LongWritable();
+
+        rootSampler = getRootSampler();
+
+        if (rootSampler != null) {
+            reusableApproximateCount = rootSampler.createCount();
+        }
+    }
+
+    @Override
+    public void initAggregations() {
+        super.initAggregations();
+
+        Configuration conf = Configuration.get();
+
+        if (!conf.isCountLeaves()) {
+            return;
+        }
+
+        if (conf.isSamplingEnabled()) {
+            conf.registerAggregation(AGG_CLIQUES, IntWritable.class,
+                    ApproximateCount.class, true, new ApproximateCountReduction());
+        } else {
+            conf.registerAggregation(AGG_CLIQUES, IntWritable.class,
+                    LongWritable.class, true, new LongSumReduction());
+        }
     }
 
     @Override
@@ -25,6 +77,17 @@ public class CliqueComputation extends VertexInducedComputation<VertexInducedEmb
         return embedding.getNumEdgesAddedWithExpansion() == embedding.getNumVertices() - 1;
     }
 
+    @Override
+    public boolean dependsOnAggregations() {
+        return false;
+    }
+
+    // cliques are counted by size
+    @Override
+    public boolean aggregatesVertexIds() {
+        return false;
+    }
+
     @Override
     public boolean shouldExpand(VertexInducedEmbedding embedding) {
         return embedding.getNumVertices() < maxsize;
@@ -34,6 +97,59 @@ public class CliqueComputation extends VertexInducedComputation<VertexInducedEmb
     public void process(VertexInducedEmbedding embedding) {
         if (embedding.getNumVertices() == maxsize) {
             output(embedding);
+
+            if (countLeaves) {
+                mapCount(embedding, 1);
+            }
+        }
+    }
+
+    private void mapCount(VertexInducedEmbedding embedding, long count) {
+        if (rootSampler != null) {
+            rootSampler.setCount(reusableApproximateCount, embedding.getVertices().getUnchecked(0), count);
+            map(AGG_CLIQUES, reusableSizeWritable, reusableApproximateCount);
+        } else if (count == 1) {
+            map(AGG_CLIQUES, reusableSizeWritable, reusableLongWritableUnit);
+        } else {
+            reusableLongWritableCount.set(count);
+            map(AGG_CLIQUES, reusableSizeWritable, reusableLongWritableCount);
+        }
+    }
+
+    @Override
+    protected boolean shouldCountLeaves(VertexInducedEmbedding embedding) {
+        return countLeaves && maxsize > 1 && embedding.getNumVertices() == maxsize - 1;
+    }
+
+    /**
+     * Children are cliques iff the new vertex is a common neighbour of all the
+     * vertices of embedding.
+     */
+    @Override
+    protected long processLeaves(VertexInducedEmbedding embedding, IntArrayList leafWords) {
+        int numLeaves = leafWords.size();
+        int allAdjacent = (1 << embedding.getNumVertices()) - 1;
+        boolean outputEnabled = isOutputEnabled();
+        long numCliques = 0;
+
+        for (int i = 0; i < numLeaves; ++i) {
+            int word = leafWords.getUnchecked(i);
+
+            if (getAdjacencyMask(embedding, word) == allAdjacent) {
+                ++numCliques;
+
+                if (outputEnabled) {
+                    embedding.addWord(word);
+                    output(embedding);
+                    embedding.removeLastWord();
+                }
+            }
+        }
+
+        if (numCliques > 0) {
+            mapCount(embedding, numCliques);
         }
+
+        return numCliques;
     }
 }
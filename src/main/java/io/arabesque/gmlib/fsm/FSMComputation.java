@@ -4,7 +4,14 @@ import io.arabesque.aggregation.AggregationStorage;
 import io.arabesque.computation.EdgeInducedComputation;
 import io.arabesque.conf.Configuration;
 import io.arabesque.embedding.EdgeInducedEmbedding;
+import io.arabesque.graph.Edge;
+import io.arabesque.graph.MainGraph;
 import io.arabesque.pattern.Pattern;
+import io.arabesque.pattern.PatternEdge;
+import io.arabesque.pattern.PatternEdgeArrayList;
+import io.arabesque.utils.collection.IntArrayList;
+import com.koloboke.collect.set.IntSet;
+import com.koloboke.collect.set.hash.HashIntSets;
 import org.apache.log4j.Logger;
 
 public class FSMComputation extends EdgeInducedComputation<EdgeInducedEmbedding> {
@@ -21,6 +28,12 @@ public class FSMComputation extends EdgeInducedComputation<EdgeInducedEmbedding>
 
     private AggregationStorage<Pattern, DomainSupport> previousStepAggregation;
 
+    // Vertex labels of the frequent patterns of the previous superstep
+    private IntSet frequentLabels;
+
+    private Pattern reusableSubPattern;
+    private IntArrayList reusableSubPatternVertices;
+
     private int maxSize;
     private int support;
 
@@ -36,6 +49,10 @@ public class FSMComputation extends EdgeInducedComputation<EdgeInducedEmbedding>
         reusableDomainSupport = new DomainSupport(support);
 
         previousStepAggregation = readAggregation(AGG_SUPPORT);
+        frequentLabels = collectFrequentLabels();
+
+        reusableSubPattern = conf.createPattern();
+        reusableSubPatternVertices = new IntArrayList();
     }
 
     @Override
@@ -64,8 +81,146 @@ public class FSMComputation extends EdgeInducedComputation<EdgeInducedEmbedding>
        return previousStepAggregation.containsKey(pattern);
     }
 
+    // support domains hold vertex ids but are only used to count them, which
+    // a reordering of the vertices does not change
+    @Override
+    public boolean aggregatesVertexIds() {
+        return false;
+    }
+
     @Override
     public void aggregationProcess(EdgeInducedEmbedding embedding) {
         output(embedding);
     }
+
+    /**
+     * Every vertex of a frequent pattern belongs to a frequent sub-pattern
+     * with one edge less, so new edges may only reach vertices whose labels
+     * appear in the frequent patterns of the previous superstep.
+     */
+    @Override
+    protected IntSet getExtensionLabels(EdgeInducedEmbedding embedding) {
+        return frequentLabels;
+    }
+
+    private IntSet collectFrequentLabels() {
+        if (previousStepAggregation == null || previousStepAggregation.getNumberMappings() == 0) {
+            return null;
+        }
+
+        IntSet labels = HashIntSets.newMutableSet();
+
+        for (Pattern pattern : previousStepAggregation.getKeys()) {
+            PatternEdgeArrayList edges = pattern.getEdges();
+
+            for (int i = 0; i < edges.size(); ++i) {
+                PatternEdge edge = edges.getUnchecked(i);
+                labels.add(edge.getSrcLabel());
+                labels.add(edge.getDestLabel());
+            }
+        }
+
+        return labels;
+    }
+
+    @Override
+    protected boolean isAntiMonotone() {
+        return true;
+    }
+
+    /**
+     * Support is anti-monotone: a pattern with n edges may only be frequent if
+     * all of its connected sub-patterns with n - 1 edges are. The sub-pattern
+     * without the last edge is the pattern of the parent, so the frequent
+     * patterns of the previous superstep hold the other ones only if they hold
+     * that one.
+     */
+    @Override
+    protected boolean patternMayPassAggregationFilter(EdgeInducedEmbedding newEmbedding) {
+        int numEdges = newEmbedding.getNumWords();
+
+        if (numEdges < 2 || previousStepAggregation == null) {
+            return true;
+        }
+
+        IntArrayList edgeIds = newEmbedding.getWords();
+
+        if (!isSubPatternFrequent(edgeIds, numEdges - 1)) {
+            return true;
+        }
+
+        for (int i = 0; i < numEdges - 1; ++i) {
+            if (isConnectedWithoutEdge(edgeIds, i) && !isSubPatternFrequent(edgeIds, i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether the pattern of the edges in edgeIds but the one at position skip
+     * is among the frequent patterns of the previous superstep
+     */
+    private boolean isSubPatternFrequent(IntArrayList edgeIds, int skip) {
+        reusableSubPattern.reset();
+
+        for (int i = 0; i < edgeIds.size(); ++i) {
+            if (i != skip) {
+                reusableSubPattern.addEdge(edgeIds.getUnchecked(i));
+            }
+        }
+
+        reusableSubPattern.turnCanonical();
+
+        return previousStepAggregation.containsKey(reusableSubPattern);
+    }
+
+    /**
+     * Whether the edges in edgeIds but the one at position skip are connected
+     */
+    private boolean isConnectedWithoutEdge(IntArrayList edgeIds, int skip) {
+        MainGraph mainGraph = getMainGraph();
+        int numEdges = edgeIds.size();
+
+        reusableSubPatternVertices.clear();
+        Edge firstEdge = mainGraph.getEdge(edgeIds.getUnchecked(skip == 0 ? 1 : 0));
+        reusableSubPatternVertices.add(firstEdge.getSourceId());
+        reusableSubPatternVertices.add(firstEdge.getDestinationId());
+
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+
+            for (int i = 0; i < numEdges; ++i) {
+                Edge edge = mainGraph.getEdge(edgeIds.getUnchecked(i));
+                int srcId = edge.getSourceId();
+                int dstId = edge.getDestinationId();
+                boolean hasSrc = reusableSubPatternVertices.contains(srcId);
+                boolean hasDst = reusableSubPatternVertices.contains(dstId);
+
+                if (i == skip || hasSrc == hasDst) {
+                    continue;
+                }
+
+                reusableSubPatternVertices.add(hasSrc ? dstId : srcId);
+                changed = true;
+            }
+        }
+
+        for (int i = 0; i < numEdges; ++i) {
+            if (i == skip) {
+                continue;
+            }
+
+            Edge edge = mainGraph.getEdge(edgeIds.getUnchecked(i));
+
+            if (!reusableSubPatternVertices.contains(edge.getSourceId())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
 }
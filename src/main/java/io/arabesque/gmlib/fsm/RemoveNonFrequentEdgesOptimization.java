@@ -0,0 +1,165 @@
+package io.arabesque.gmlib.fsm;
+
+import io.arabesque.conf.Configuration;
+import io.arabesque.graph.BasicMainGraph;
+import io.arabesque.graph.Edge;
+import io.arabesque.graph.LabelledEdge;
+import io.arabesque.graph.MainGraph;
+import io.arabesque.optimization.BasicOptimization;
+import com.koloboke.collect.set.IntSet;
+import com.koloboke.collect.set.hash.HashIntSets;
+import org.apache.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load-time version of {@link io.arabesque.data.RemoveNonFrequentEdges}: drops
+ * every edge whose single-edge pattern is not frequent, since no frequent
+ * pattern can contain it (support is anti-monotonic). Vertices are kept so
+ * that ids do not change, but vertices whose label is not frequent end up
+ * isolated.
+ *
+ * Should be listed before any optimization that decorates the main graph,
+ * since the graph is rebuilt from scratch.
+ */
+public class RemoveNonFrequentEdgesOptimization extends BasicOptimization {
+    private static final Logger LOG = Logger.getLogger(RemoveNonFrequentEdgesOptimization.class);
+
+    @Override
+    public void applyAfterGraphLoad() {
+        Configuration conf = Configuration.get();
+
+        int support = conf.getInteger(FSMComputation.CONF_SUPPORT, FSMComputation.CONF_SUPPORT_DEFAULT);
+        MainGraph mainGraph = conf.getMainGraph();
+
+        long start = System.currentTimeMillis();
+        MainGraph filteredMainGraph = removeNonFrequentEdges(mainGraph, support);
+
+        LOG.info("Removed " + (mainGraph.getNumberEdges() - filteredMainGraph.getNumberEdges()) +
+                " of " + mainGraph.getNumberEdges() + " edges with support < " + support +
+                " in " + (System.currentTimeMillis() - start) + "ms");
+
+        conf.setMainGraph(filteredMainGraph);
+    }
+
+    public static MainGraph removeNonFrequentEdges(MainGraph mainGraph, int support) {
+        int numEdges = mainGraph.getNumberEdges();
+        Map<EdgeType, EdgeTypeDomains> domainsPerType = new HashMap<>();
+        EdgeType[] edgeTypes = new EdgeType[numEdges];
+
+        for (int edgeId = 0; edgeId < numEdges; ++edgeId) {
+            Edge edge = mainGraph.getEdge(edgeId);
+            EdgeType edgeType = new EdgeType(mainGraph, edge);
+
+            EdgeTypeDomains domains = domainsPerType.get(edgeType);
+
+            if (domains == null) {
+                domains = new EdgeTypeDomains(edgeType);
+                domainsPerType.put(edgeType, domains);
+            } else {
+                edgeType = domains.edgeType;
+            }
+
+            domains.add(mainGraph, edge);
+            edgeTypes[edgeId] = edgeType;
+        }
+
+        BasicMainGraph filteredMainGraph = new BasicMainGraph(mainGraph.toString(),
+                mainGraph.isEdgeLabelled(), mainGraph.isMultiGraph());
+
+        int numVertices = mainGraph.getNumberVertices();
+
+        for (int vertexId = 0; vertexId < numVertices; ++vertexId) {
+            filteredMainGraph.addVertex(mainGraph.getVertex(vertexId));
+        }
+
+        for (int edgeId = 0; edgeId < numEdges; ++edgeId) {
+            if (domainsPerType.get(edgeTypes[edgeId]).getSupport() < support) {
+                continue;
+            }
+
+            Edge edge = mainGraph.getEdge(edgeId);
+
+            if (edge instanceof LabelledEdge) {
+                filteredMainGraph.addEdge(new LabelledEdge(edge.getSourceId(), edge.getDestinationId(),
+                        ((LabelledEdge) edge).getEdgeLabel()));
+            } else {
+                filteredMainGraph.addEdge(new Edge(edge.getSourceId(), edge.getDestinationId()));
+            }
+        }
+
+        filteredMainGraph.compactNeighbourhoodsLike(mainGraph);
+
+        return filteredMainGraph;
+    }
+
+    /**
+     * Labels of a single-edge pattern, with the smallest vertex label first.
+     */
+    private static class EdgeType {
+        private final int label1;
+        private final int label2;
+        private final int edgeLabel;
+
+        EdgeType(MainGraph mainGraph, Edge edge) {
+            int srcLabel = mainGraph.getVertex(edge.getSourceId()).getVertexLabel();
+            int dstLabel = mainGraph.getVertex(edge.getDestinationId()).getVertexLabel();
+
+            label1 = Math.min(srcLabel, dstLabel);
+            label2 = Math.max(srcLabel, dstLabel);
+            edgeLabel = edge instanceof LabelledEdge ? ((LabelledEdge) edge).getEdgeLabel() : 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            EdgeType edgeType = (EdgeType) o;
+
+            return label1 == edgeType.label1 && label2 == edgeType.label2 && edgeLabel == edgeType.edgeLabel;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = label1;
+            result = 31 * result + label2;
+            result = 31 * result + edgeLabel;
+            return result;
+        }
+    }
+
+    /**
+     * Minimum image based support of a single-edge pattern. When both vertex
+     * labels are equal, both positions are equivalent and share a domain.
+     */
+    private static class EdgeTypeDomains {
+        private final EdgeType edgeType;
+        private final IntSet domain1;
+        private final IntSet domain2;
+
+        EdgeTypeDomains(EdgeType edgeType) {
+            this.edgeType = edgeType;
+            this.domain1 = HashIntSets.newMutableSet();
+            this.domain2 = edgeType.label1 == edgeType.label2 ? domain1 : HashIntSets.newMutableSet();
+        }
+
+        void add(MainGraph mainGraph, Edge edge) {
+            int srcId = edge.getSourceId();
+            int dstId = edge.getDestinationId();
+
+            if (mainGraph.getVertex(srcId).getVertexLabel() == edgeType.label1) {
+                domain1.add(srcId);
+                domain2.add(dstId);
+            } else {
+                domain1.add(dstId);
+                domain2.add(srcId);
+            }
+        }
+
+        int getSupport() {
+            return Math.min(domain1.size(), domain2.size());
+        }
+    }
+}
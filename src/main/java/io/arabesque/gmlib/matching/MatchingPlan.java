@@ -0,0 +1,504 @@
+package io.arabesque.gmlib.matching;
+
+import io.arabesque.conf.Configuration;
+import io.arabesque.graph.MainGraph;
+import io.arabesque.pattern.LabelledPatternEdge;
+import io.arabesque.pattern.PatternEdge;
+import io.arabesque.pattern.PatternEdgeArrayList;
+import io.arabesque.pattern.VertexPositionEquivalences;
+import io.arabesque.utils.collection.IntArrayList;
+import com.koloboke.collect.IntCursor;
+import com.koloboke.collect.set.IntSet;
+import com.koloboke.collect.set.hash.HashIntSets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matching plan of a query pattern: the order in which pattern positions are
+ * matched plus, for every matching depth, the checks a candidate vertex must
+ * pass (label, induced adjacency to previously matched vertices, edge labels
+ * and symmetry breaking conditions).
+ *
+ * Symmetry breaking follows the usual stabilizer chain: for each position in
+ * matching order, its matched vertex must be smaller than the ones matched by
+ * the other positions in its orbit, after which the automorphism group is
+ * restricted to the automorphisms fixing that position. This way each match
+ * is produced exactly once.
+ */
+public class MatchingPlan {
+    private static final Pattern EDGE_PATTERN = Pattern.compile(
+            "\\[(\\d+),(-?\\d+)-(\\d+),(-?\\d+)\\]");
+    private static final Pattern LABELLED_EDGE_PATTERN = Pattern.compile(
+            "\\[(\\d+)\\((-?\\d+)\\)--\\((-?\\d+)\\)--(\\d+)\\((-?\\d+)\\)\\]");
+    private static final Pattern VERTEX_PATTERN = Pattern.compile(
+            "\\s*0\\((-?\\d+)\\)\\s*");
+
+    private int numPositions;
+    private int[] labels;
+    private boolean[][] adjacent;
+    // Sorted edge labels between each pair of positions, null for patterns
+    // without edge labels
+    private IntArrayList[][] edgeLabels;
+
+    private int[] order;
+    private int[] anchorDepth;
+    private int[][] neighbourDepths;
+    private int[][] nonNeighbourDepths;
+    private int[][] smallerThanDepths;
+    private int[][] greaterThanDepths;
+
+    /**
+     * Builds the plan of a query pattern.
+     *
+     * @param pattern      query pattern, e.g., one of the patterns found by motifs
+     *                     or FSM. The label of a single vertex pattern is read
+     *                     from the main graph.
+     * @param equivalences optional vertex position equivalences of the pattern,
+     *                     used to prune the search for automorphisms. May be null.
+     */
+    public MatchingPlan(io.arabesque.pattern.Pattern pattern, VertexPositionEquivalences equivalences) {
+        int numVertices = pattern.getNumberOfVertices();
+        int[] vertexLabels = null;
+
+        if (numVertices == 1) {
+            MainGraph mainGraph = Configuration.get().getMainGraph();
+            int vertexId = pattern.getVertices().getUnchecked(0);
+            vertexLabels = new int[]{mainGraph.getVertex(vertexId).getVertexLabel()};
+        }
+
+        setPattern(numVertices, vertexLabels, pattern.getEdges(), pattern.toString());
+        buildOrder();
+        buildChecks(findAutomorphisms(toIntSets(equivalences)));
+    }
+
+    /**
+     * Builds the plan of a pattern given in its output form, i.e., a comma
+     * separated list of edges "[srcPos,srcLabel-dstPos,dstLabel]" (or
+     * "[srcPos(srcLabel)--(edgeLabel)--dstPos(dstLabel)]" with edge labels), or
+     * "0(label)" for a single vertex, as written by
+     * {@link io.arabesque.pattern.Pattern#toOutputString()}.
+     *
+     * @param patternStr   pattern edges
+     * @param equivalences optional vertex position equivalences of the pattern
+     *                     ("pos:pos pos ...;..."), used to prune the search for
+     *                     automorphisms. May be null.
+     */
+    public MatchingPlan(String patternStr, String equivalences) {
+        parsePattern(patternStr);
+        buildOrder();
+        buildChecks(findAutomorphisms(parseEquivalences(equivalences)));
+    }
+
+    private void parsePattern(String patternStr) {
+        Matcher vertexMatcher = VERTEX_PATTERN.matcher(patternStr);
+
+        if (vertexMatcher.matches()) {
+            int[] vertexLabels = new int[]{Integer.parseInt(vertexMatcher.group(1))};
+            setPattern(1, vertexLabels, new PatternEdgeArrayList(), patternStr);
+            return;
+        }
+
+        PatternEdgeArrayList edges = new PatternEdgeArrayList();
+        Matcher matcher = EDGE_PATTERN.matcher(patternStr);
+
+        while (matcher.find()) {
+            edges.add(new PatternEdge(
+                    Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                    Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4))));
+        }
+
+        matcher = LABELLED_EDGE_PATTERN.matcher(patternStr);
+
+        while (matcher.find()) {
+            edges.add(new LabelledPatternEdge(
+                    Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                    Integer.parseInt(matcher.group(4)), Integer.parseInt(matcher.group(5)),
+                    Integer.parseInt(matcher.group(3))));
+        }
+
+        int numVertices = 0;
+
+        for (int i = 0; i < edges.size(); ++i) {
+            PatternEdge edge = edges.getUnchecked(i);
+            numVertices = Math.max(numVertices, Math.max(edge.getSrcPos(), edge.getDestPos()) + 1);
+        }
+
+        setPattern(numVertices, null, edges, patternStr);
+    }
+
+    private void setPattern(int numVertices, int[] vertexLabels, PatternEdgeArrayList edges, String patternStr) {
+        if (numVertices == 0 || (numVertices > 1 && edges.isEmpty())) {
+            throw new IllegalArgumentException("Invalid query pattern: " + patternStr);
+        }
+
+        numPositions = numVertices;
+        labels = vertexLabels != null ? vertexLabels : new int[numPositions];
+        adjacent = new boolean[numPositions][numPositions];
+        boolean[] seen = new boolean[numPositions];
+
+        for (int i = 0; i < edges.size(); ++i) {
+            PatternEdge edge = edges.getUnchecked(i);
+            int src = edge.getSrcPos();
+            int dst = edge.getDestPos();
+
+            labels[src] = edge.getSrcLabel();
+            labels[dst] = edge.getDestLabel();
+            seen[src] = seen[dst] = true;
+            adjacent[src][dst] = adjacent[dst][src] = true;
+
+            if (edge instanceof LabelledPatternEdge) {
+                addEdgeLabel(src, dst, ((LabelledPatternEdge) edge).getLabel());
+            }
+        }
+
+        for (int i = 0; i < numPositions && numPositions > 1; ++i) {
+            if (!seen[i]) {
+                throw new IllegalArgumentException("Query pattern is not connected: " + patternStr);
+            }
+        }
+
+        if (edgeLabels != null) {
+            for (int i = 0; i < numPositions; ++i) {
+                for (int j = 0; j < numPositions; ++j) {
+                    if (edgeLabels[i][j] != null) {
+                        edgeLabels[i][j].sort();
+                    }
+                }
+            }
+        }
+    }
+
+    private void addEdgeLabel(int src, int dst, int label) {
+        if (edgeLabels == null) {
+            edgeLabels = new IntArrayList[numPositions][numPositions];
+        }
+
+        if (edgeLabels[src][dst] == null) {
+            edgeLabels[src][dst] = new IntArrayList();
+            edgeLabels[dst][src] = edgeLabels[src][dst];
+        }
+
+        edgeLabels[src][dst].add(label);
+    }
+
+    private IntSet[] toIntSets(VertexPositionEquivalences equivalences) {
+        if (equivalences == null || equivalences.getNumVertices() != numPositions) {
+            return null;
+        }
+
+        IntSet[] equivalentPositions = new IntSet[numPositions];
+
+        for (int pos = 0; pos < numPositions; ++pos) {
+            equivalentPositions[pos] = equivalences.getEquivalences(pos);
+        }
+
+        return equivalentPositions;
+    }
+
+    private IntSet[] parseEquivalences(String equivalencesStr) {
+        if (equivalencesStr == null || equivalencesStr.isEmpty()) {
+            return null;
+        }
+
+        IntSet[] equivalences = new IntSet[numPositions];
+
+        for (String entry : equivalencesStr.split(";")) {
+            String[] parts = entry.split(":");
+            IntSet equivalentPositions = HashIntSets.newMutableSet();
+
+            for (String position : parts[1].trim().split("\\s+")) {
+                equivalentPositions.add(Integer.parseInt(position));
+            }
+
+            equivalences[Integer.parseInt(parts[0].trim())] = equivalentPositions;
+        }
+
+        return equivalences;
+    }
+
+    /**
+     * Greedy order: start with the position of highest degree and then always
+     * pick the unmatched position with most edges to matched ones, so that the
+     * candidates of each depth are constrained as early as possible.
+     */
+    private void buildOrder() {
+        order = new int[numPositions];
+        anchorDepth = new int[numPositions];
+        boolean[] matched = new boolean[numPositions];
+
+        for (int depth = 0; depth < numPositions; ++depth) {
+            int best = -1;
+            int bestMatchedNeighbours = -1;
+            int bestDegree = -1;
+
+            for (int pos = 0; pos < numPositions; ++pos) {
+                if (matched[pos]) {
+                    continue;
+                }
+
+                int matchedNeighbours = 0;
+                int degree = 0;
+
+                for (int other = 0; other < numPositions; ++other) {
+                    if (adjacent[pos][other]) {
+                        ++degree;
+
+                        if (matched[other]) {
+                            ++matchedNeighbours;
+                        }
+                    }
+                }
+
+                if (depth > 0 && matchedNeighbours == 0) {
+                    continue;
+                }
+
+                if (matchedNeighbours > bestMatchedNeighbours ||
+                        (matchedNeighbours == bestMatchedNeighbours && degree > bestDegree)) {
+                    best = pos;
+                    bestMatchedNeighbours = matchedNeighbours;
+                    bestDegree = degree;
+                }
+            }
+
+            if (best == -1) {
+                throw new IllegalArgumentException("Query pattern is not connected");
+            }
+
+            order[depth] = best;
+            matched[best] = true;
+            anchorDepth[depth] = -1;
+
+            for (int prevDepth = 0; prevDepth < depth; ++prevDepth) {
+                if (adjacent[best][order[prevDepth]]) {
+                    anchorDepth[depth] = prevDepth;
+                    break;
+                }
+            }
+        }
+    }
+
+    private List<int[]> findAutomorphisms(IntSet[] equivalences) {
+        List<int[]> automorphisms = new ArrayList<>();
+        int[] mapping = new int[numPositions];
+        boolean[] used = new boolean[numPositions];
+
+        findAutomorphisms(0, mapping, used, equivalences, automorphisms);
+
+        return automorphisms;
+    }
+
+    private void findAutomorphisms(int pos, int[] mapping, boolean[] used,
+            IntSet[] equivalences, List<int[]> automorphisms) {
+        if (pos == numPositions) {
+            automorphisms.add(Arrays.copyOf(mapping, numPositions));
+            return;
+        }
+
+        for (int target = 0; target < numPositions; ++target) {
+            if (used[target] || labels[target] != labels[pos]) {
+                continue;
+            }
+
+            if (equivalences != null && equivalences[pos] != null &&
+                    !equivalences[pos].contains(target)) {
+                continue;
+            }
+
+            boolean consistent = true;
+
+            for (int prev = 0; prev < pos && consistent; ++prev) {
+                consistent = adjacent[pos][prev] == adjacent[target][mapping[prev]] &&
+                        sameEdgeLabels(pos, prev, target, mapping[prev]);
+            }
+
+            if (consistent) {
+                mapping[pos] = target;
+                used[target] = true;
+                findAutomorphisms(pos + 1, mapping, used, equivalences, automorphisms);
+                used[target] = false;
+            }
+        }
+    }
+
+    private boolean sameEdgeLabels(int pos1, int pos2, int otherPos1, int otherPos2) {
+        if (edgeLabels == null || edgeLabels[pos1][pos2] == null) {
+            return true;
+        }
+
+        return edgeLabels[pos1][pos2].equals(edgeLabels[otherPos1][otherPos2]);
+    }
+
+    private void buildChecks(List<int[]> automorphisms) {
+        int[] depthOfPosition = new int[numPositions];
+
+        for (int depth = 0; depth < numPositions; ++depth) {
+            depthOfPosition[order[depth]] = depth;
+        }
+
+        // smaller[d1][d2]: vertex matched at depth d1 must be smaller than the one at d2
+        boolean[][] smaller = new boolean[numPositions][numPositions];
+
+        for (int depth = 0; depth < numPositions; ++depth) {
+            int pos = order[depth];
+            List<int[]> stabilizer = new ArrayList<>();
+
+            for (int[] automorphism : automorphisms) {
+                int image = automorphism[pos];
+
+                if (image == pos) {
+                    stabilizer.add(automorphism);
+                } else {
+                    smaller[depth][depthOfPosition[image]] = true;
+                }
+            }
+
+            automorphisms = stabilizer;
+        }
+
+        neighbourDepths = new int[numPositions][];
+        nonNeighbourDepths = new int[numPositions][];
+        smallerThanDepths = new int[numPositions][];
+        greaterThanDepths = new int[numPositions][];
+
+        for (int depth = 0; depth < numPositions; ++depth) {
+            IntArrayList neighbours = new IntArrayList();
+            IntArrayList nonNeighbours = new IntArrayList();
+            IntArrayList smallerThan = new IntArrayList();
+            IntArrayList greaterThan = new IntArrayList();
+
+            for (int prevDepth = 0; prevDepth < depth; ++prevDepth) {
+                if (adjacent[order[depth]][order[prevDepth]]) {
+                    neighbours.add(prevDepth);
+                } else {
+                    nonNeighbours.add(prevDepth);
+                }
+
+                if (smaller[depth][prevDepth]) {
+                    smallerThan.add(prevDepth);
+                }
+
+                if (smaller[prevDepth][depth]) {
+                    greaterThan.add(prevDepth);
+                }
+            }
+
+            neighbourDepths[depth] = neighbours.toIntArray();
+            nonNeighbourDepths[depth] = nonNeighbours.toIntArray();
+            smallerThanDepths[depth] = smallerThan.toIntArray();
+            greaterThanDepths[depth] = greaterThan.toIntArray();
+        }
+    }
+
+    public int getNumPositions() {
+        return numPositions;
+    }
+
+    /**
+     * @return the pattern position matched at the given depth
+     */
+    public int getPosition(int depth) {
+        return order[depth];
+    }
+
+    public int getLabel(int depth) {
+        return labels[order[depth]];
+    }
+
+    /**
+     * @return depth of a previously matched pattern neighbour whose graph
+     * neighbours are the candidates at the given depth, or -1 for depth 0
+     */
+    public int getAnchorDepth(int depth) {
+        return anchorDepth[depth];
+    }
+
+    /**
+     * @return depths whose vertices must be neighbours
+     * of the candidate at the given depth
+     */
+    public int[] getNeighbourDepths(int depth) {
+        return neighbourDepths[depth];
+    }
+
+    public boolean hasEdgeLabels() {
+        return edgeLabels != null;
+    }
+
+    /**
+     * @return sorted labels of the edges between the vertices matched at the
+     * given depths, or null if the pattern has no edge labels
+     */
+    public IntArrayList getEdgeLabels(int depth, int otherDepth) {
+        if (edgeLabels == null) {
+            return null;
+        }
+
+        return edgeLabels[order[depth]][order[otherDepth]];
+    }
+
+    /**
+     * @return depths whose vertices must not be neighbours of the candidate at
+     * the given depth (matches are induced)
+     */
+    public int[] getNonNeighbourDepths(int depth) {
+        return nonNeighbourDepths[depth];
+    }
+
+    /**
+     * @return depths whose vertices must be greater than the candidate at the
+     * given depth
+     */
+    public int[] getSmallerThanDepths(int depth) {
+        return smallerThanDepths[depth];
+    }
+
+    /**
+     * @return depths whose vertices must be smaller than the candidate at the
+     * given depth
+     */
+    public int[] getGreaterThanDepths(int depth) {
+        return greaterThanDepths[depth];
+    }
+
+    /**
+     * Formats vertex position equivalences in the form accepted by
+     * {@link #MatchingPlan(String, String)}.
+     */
+    public static String equivalencesToString(io.arabesque.pattern.VertexPositionEquivalences equivalences) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int pos = 0; pos < equivalences.getNumVertices(); ++pos) {
+            if (pos > 0) {
+                sb.append(';');
+            }
+
+            sb.append(pos);
+            sb.append(':');
+
+            IntCursor cursor = equivalences.getEquivalences(pos).cursor();
+
+            while (cursor.moveNext()) {
+                sb.append(' ');
+                sb.append(cursor.elem());
+            }
+        }
+
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "MatchingPlan{" +
+                "order=" + Arrays.toString(order) +
+                ", labels=" + Arrays.toString(labels) +
+                ", anchorDepth=" + Arrays.toString(anchorDepth) +
+                ", smallerThanDepths=" + Arrays.deepToString(smallerThanDepths) +
+                ", greaterThanDepths=" + Arrays.deepToString(greaterThanDepths) +
+                '}';
+    }
+}
@@ -0,0 +1,265 @@
+package io.arabesque.gmlib.matching;
+
+import io.arabesque.computation.VertexInducedComputation;
+import io.arabesque.conf.Configuration;
+import io.arabesque.embedding.VertexInducedEmbedding;
+import io.arabesque.graph.LabelIndexedMainGraph;
+import io.arabesque.graph.LabelledEdge;
+import io.arabesque.graph.MainGraph;
+import io.arabesque.pattern.Pattern;
+import io.arabesque.pattern.VertexPositionEquivalences;
+import io.arabesque.utils.collection.IntArrayList;
+import io.arabesque.utils.collection.IntCollectionAddConsumer;
+import com.koloboke.collect.IntCollection;
+import com.koloboke.function.IntConsumer;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+
+/**
+ * Finds the (induced) occurrences of a single query pattern.
+ *
+ * Instead of exploring every embedding and filtering by pattern, embeddings
+ * are grown following the {@link MatchingPlan} of the query: the word added at
+ * depth d matches pattern position plan.getPosition(d) and its candidates are
+ * the neighbours of an already matched pattern neighbour. Labels, adjacency to
+ * the previously matched vertices and symmetry breaking conditions are checked
+ * before the word is added, so every match is generated exactly once.
+ *
+ * Words are therefore not added in canonical order; the ODAG readers rebuild
+ * embeddings through {@link #filter(VertexInducedEmbedding, int)} as well, so
+ * they follow the same plan.
+ *
+ * The query is either a {@link Pattern} object, shipped in its serialized form
+ * in {@link #CONF_SERIALIZED_PATTERN} (see {@link #serializePattern(Pattern)}),
+ * or a pattern in output form in {@link #CONF_PATTERN}. Edge labels of the
+ * query are matched against the labels of the main graph edges, which must
+ * then be loaded with edge labels.
+ */
+public class PatternMatchingComputation extends VertexInducedComputation<VertexInducedEmbedding> {
+    private static final Logger LOG = Logger.getLogger(PatternMatchingComputation.class);
+
+    public static final String CONF_PATTERN = "arabesque.matching.pattern";
+    public static final String CONF_SERIALIZED_PATTERN = "arabesque.matching.serialized_pattern";
+    public static final String CONF_EQUIVALENCES = "arabesque.matching.equivalences";
+
+    private MatchingPlan plan;
+    private int numPositions;
+    private MainGraph mainGraph;
+    private LabelIndexedMainGraph labelIndexedMainGraph;
+
+    // Candidates of each depth, owned by the computation: extension filters may
+    // change them, and depth-first exploration fills the next depth before the
+    // candidates of a depth are consumed
+    private IntArrayList[] candidatesByDepth;
+    private IntCollectionAddConsumer candidatesAdder;
+
+    // Labels of the graph edges between a candidate and a matched vertex
+    private IntArrayList edgeLabels;
+    private IntConsumer edgeLabelsAdder;
+
+    /**
+     * Serializes a query pattern to be set in {@link #CONF_SERIALIZED_PATTERN}.
+     */
+    public static String serializePattern(Pattern pattern) {
+        DataOutputBuffer output = new DataOutputBuffer();
+
+        try {
+            pattern.write(output);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return StringUtils.byteToHexString(output.getData(), 0, output.getLength());
+    }
+
+    private static Pattern deserializePattern(String serializedPattern) {
+        byte[] bytes = StringUtils.hexStringToByte(serializedPattern);
+        DataInputBuffer input = new DataInputBuffer();
+        input.reset(bytes, bytes.length);
+
+        Pattern pattern = Configuration.get().createPattern();
+
+        try {
+            pattern.readFields(input);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return pattern;
+    }
+
+    private static VertexPositionEquivalences parseEquivalences(String equivalencesStr, int numVertices) {
+        if (equivalencesStr == null || equivalencesStr.isEmpty()) {
+            return null;
+        }
+
+        VertexPositionEquivalences equivalences = new VertexPositionEquivalences();
+        equivalences.setNumVertices(numVertices);
+
+        for (String entry : equivalencesStr.split(";")) {
+            String[] parts = entry.split(":");
+            int pos = Integer.parseInt(parts[0].trim());
+
+            for (String position : parts[1].trim().split("\\s+")) {
+                equivalences.addEquivalence(pos, Integer.parseInt(position));
+            }
+        }
+
+        return equivalences;
+    }
+
+    @Override
+    public void init() {
+        super.init();
+
+        Configuration conf = Configuration.get();
+        String serializedPattern = conf.getString(CONF_SERIALIZED_PATTERN, null);
+        String patternStr = conf.getString(CONF_PATTERN, null);
+        String equivalencesStr = conf.getString(CONF_EQUIVALENCES, null);
+
+        if (serializedPattern != null) {
+            Pattern pattern = deserializePattern(serializedPattern);
+            plan = new MatchingPlan(pattern,
+                    parseEquivalences(equivalencesStr, pattern.getNumberOfVertices()));
+        } else if (patternStr != null) {
+            plan = new MatchingPlan(patternStr, equivalencesStr);
+        } else {
+            throw new RuntimeException("Pattern matching requires a query pattern in " +
+                    CONF_SERIALIZED_PATTERN + " or " + CONF_PATTERN);
+        }
+
+        if (plan.hasEdgeLabels() && !conf.isGraphEdgeLabelled()) {
+            throw new RuntimeException("Query pattern has edge labels but the main graph was loaded without them (" +
+                    Configuration.CONF_MAINGRAPH_EDGE_LABELLED + ")");
+        }
+
+        numPositions = plan.getNumPositions();
+        mainGraph = getMainGraph();
+
+        if (mainGraph instanceof LabelIndexedMainGraph) {
+            labelIndexedMainGraph = (LabelIndexedMainGraph) mainGraph;
+        }
+
+        candidatesByDepth = new IntArrayList[numPositions];
+
+        for (int i = 0; i < numPositions; ++i) {
+            candidatesByDepth[i] = new IntArrayList();
+        }
+
+        candidatesAdder = new IntCollectionAddConsumer();
+
+        edgeLabels = new IntArrayList();
+        edgeLabelsAdder = new IntConsumer() {
+            @Override
+            public void accept(int edgeId) {
+                edgeLabels.add(((LabelledEdge) mainGraph.getEdge(edgeId)).getEdgeLabel());
+            }
+        };
+
+        LOG.info("Matching plan: " + plan);
+    }
+
+    @Override
+    protected IntCollection getPossibleExtensions(VertexInducedEmbedding embedding) {
+        int depth = embedding.getNumWords();
+
+        if (depth == 0 || depth >= numPositions) {
+            return super.getPossibleExtensions(embedding);
+        }
+
+        int anchorVertex = embedding.getWords().getUnchecked(plan.getAnchorDepth(depth));
+        IntArrayList candidates = candidatesByDepth[depth];
+
+        candidates.clear();
+
+        // Only the anchor neighbours with the expected label are candidates
+        if (labelIndexedMainGraph != null) {
+            candidatesAdder.setCollection(candidates);
+            labelIndexedMainGraph.forEachVertexNeighbour(anchorVertex, plan.getLabel(depth), candidatesAdder);
+        } else {
+            // A copy: the neighbourhood belongs to the main graph
+            candidates.addAll(mainGraph.getVertexNeighbours(anchorVertex));
+        }
+
+        return candidates;
+    }
+
+    @Override
+    public boolean filter(VertexInducedEmbedding embedding, int newWord) {
+        int depth = embedding.getNumWords();
+
+        if (depth >= numPositions) {
+            return false;
+        }
+
+        if (mainGraph.getVertex(newWord).getVertexLabel() != plan.getLabel(depth)) {
+            return false;
+        }
+
+        IntArrayList words = embedding.getWords();
+
+        for (int prevDepth : plan.getSmallerThanDepths(depth)) {
+            if (newWord >= words.getUnchecked(prevDepth)) {
+                return false;
+            }
+        }
+
+        for (int prevDepth : plan.getGreaterThanDepths(depth)) {
+            if (newWord <= words.getUnchecked(prevDepth)) {
+                return false;
+            }
+        }
+
+        if (words.contains(newWord)) {
+            return false;
+        }
+
+        for (int prevDepth : plan.getNeighbourDepths(depth)) {
+            int prevWord = words.getUnchecked(prevDepth);
+
+            if (!mainGraph.isNeighborVertex(newWord, prevWord)) {
+                return false;
+            }
+
+            if (plan.hasEdgeLabels() && !hasEdgeLabels(newWord, prevWord, plan.getEdgeLabels(depth, prevDepth))) {
+                return false;
+            }
+        }
+
+        for (int prevDepth : plan.getNonNeighbourDepths(depth)) {
+            if (mainGraph.isNeighborVertex(newWord, words.getUnchecked(prevDepth))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether the edges between the two vertices carry exactly the given
+     * (sorted) labels.
+     */
+    private boolean hasEdgeLabels(int vertex1, int vertex2, IntArrayList expectedLabels) {
+        edgeLabels.clear();
+        mainGraph.forEachEdgeId(vertex1, vertex2, edgeLabelsAdder);
+        edgeLabels.sort();
+
+        return edgeLabels.equals(expectedLabels);
+    }
+
+    @Override
+    public boolean shouldExpand(VertexInducedEmbedding embedding) {
+        return embedding.getNumVertices() < numPositions;
+    }
+
+    @Override
+    public void process(VertexInducedEmbedding embedding) {
+        if (embedding.getNumVertices() == numPositions) {
+            output(embedding);
+        }
+    }
+}
@@ -1,11 +1,26 @@
 package io.arabesque.gmlib.motif;
 
+import com.koloboke.collect.map.LongIntCursor;
+import com.koloboke.collect.map.hash.HashLongIntMap;
+import com.koloboke.collect.map.hash.HashLongIntMaps;
+import io.arabesque.aggregation.ApproximateCount;
+import io.arabesque.aggregation.reductions.ApproximateCountReduction;
 import io.arabesque.aggregation.reductions.LongSumReduction;
+import io.arabesque.computation.RootSampler;
 import io.arabesque.computation.VertexInducedComputation;
 import io.arabesque.conf.Configuration;
 import io.arabesque.embedding.VertexInducedEmbedding;
+import io.arabesque.graph.MainGraph;
+import io.arabesque.utils.collection.IntArrayList;
 import org.apache.hadoop.io.LongWritable;
 
+/**
+ * Counts the patterns of the embeddings with maxsize vertices. In approximate
+ * mode (see {@link Configuration#CONF_SAMPLING_RATE}) counts are
+ * {@link ApproximateCount}s instead of LongWritables. In incremental mode (see
+ * {@link Configuration#CONF_MAINGRAPH_DELTA_PATH}) only the embeddings with a
+ * changed pair are counted, negatively on the base graph.
+ */
 public class MotifComputation extends VertexInducedComputation<VertexInducedEmbedding> {
     public static final String AGG_MOTIFS = "motifs";
     private static final String MAXSIZE = "arabesque.motif.maxsize";
@@ -15,10 +30,37 @@ public class MotifComputation extends VertexInducedComputation<VertexInducedEmbe
 
     private int maxsize;
 
+    private boolean countLeaves;
+    private transient HashLongIntMap leafGroupCounts;
+    private transient HashLongIntMap leafGroupWords;
+    private transient LongWritable reusableLongWritableCount;
+
+    private transient RootSampler rootSampler;
+    private transient ApproximateCount reusableApproximateCount;
+
     @Override
     public void init() {
         super.init();
         maxsize = Configuration.get().getInteger(MAXSIZE, MAXSIZE_DEFAULT);
+
+        // Edge labels and parallel edges are not captured by adjacency masks
+        MainGraph mainGraph = getMainGraph();
+        countLeaves = Configuration.get().isCountLeaves() &&
+                !mainGraph.isEdgeLabelled() && !mainGraph.isMultiGraph();
+
+        leafGroupCounts = HashLongIntMaps.newMutableMap();
+        leafGroupWords = HashLongIntMaps.newMutableMap();
+        reusableLongWritableCount = new LongWritable();
+
+        rootSampler = getRootSampler();
+
+        if (rootSampler != null) {
+            if (isIncremental()) {
+                throw new RuntimeException("Approximate counting is not supported in incremental mode");
+            }
+
+            reusableApproximateCount = rootSampler.createCount();
+        }
     }
 
     @Override
@@ -27,7 +69,28 @@ public class MotifComputation extends VertexInducedComputation<VertexInducedEmbe
 
         Configuration conf = Configuration.get();
 
-        conf.registerAggregation(AGG_MOTIFS, conf.getPatternClass(), LongWritable.class, true, new LongSumReduction());
+        if (conf.isSamplingEnabled()) {
+            conf.registerAggregation(AGG_MOTIFS, conf.getPatternClass(), ApproximateCount.class, true, new ApproximateCountReduction());
+        } else {
+            conf.registerAggregation(AGG_MOTIFS, conf.getPatternClass(), LongWritable.class, true, new LongSumReduction());
+        }
+    }
+
+    @Override
+    public boolean dependsOnAggregations() {
+        return false;
+    }
+
+    // motifs are aggregated by pattern
+    @Override
+    public boolean aggregatesVertexIds() {
+        return false;
+    }
+
+    @Override
+    public boolean filter(VertexInducedEmbedding embedding) {
+        return !isIncremental() ||
+                maxsize - embedding.getNumVertices() >= getNumMissingForChange(embedding);
     }
 
     @Override
@@ -37,9 +100,82 @@ public class MotifComputation extends VertexInducedComputation<VertexInducedEmbe
 
     @Override
     public void process(VertexInducedEmbedding embedding) {
-        if (embedding.getNumWords() == maxsize) {
+        if (embedding.getNumWords() == maxsize &&
+                (!isIncremental() || getNumMissingForChange(embedding) == 0)) {
             output(embedding);
+            mapCount(embedding, 1);
+        }
+    }
+
+    @Override
+    protected int getIncrementalNumVertices() {
+        return maxsize;
+    }
+
+    private void mapCount(VertexInducedEmbedding embedding, long count) {
+        count *= getIncrementalSign();
+
+        if (rootSampler != null) {
+            rootSampler.setCount(reusableApproximateCount, embedding.getVertices().getUnchecked(0), count);
+            map(AGG_MOTIFS, embedding.getPattern(), reusableApproximateCount);
+        } else if (count == 1) {
             map(AGG_MOTIFS, embedding.getPattern(), reusableLongWritableUnit);
+        } else {
+            reusableLongWritableCount.set(count);
+            map(AGG_MOTIFS, embedding.getPattern(), reusableLongWritableCount);
         }
     }
+
+    @Override
+    protected boolean shouldCountLeaves(VertexInducedEmbedding embedding) {
+        return countLeaves && embedding.getNumVertices() == maxsize - 1;
+    }
+
+    /**
+     * Children with the same vertex label and adjacent to the same vertices of
+     * embedding induce the same pattern, so only one child per group is built
+     * (besides the children that are output).
+     */
+    @Override
+    protected long processLeaves(VertexInducedEmbedding embedding, IntArrayList leafWords) {
+        MainGraph mainGraph = getMainGraph();
+        int numLeaves = leafWords.size();
+        boolean changed = !isIncremental() || getNumMissingForChange(embedding) == 0;
+        boolean outputEnabled = isOutputEnabled();
+        long numCounted = 0;
+
+        leafGroupCounts.clear();
+        leafGroupWords.clear();
+
+        for (int i = 0; i < numLeaves; ++i) {
+            int word = leafWords.getUnchecked(i);
+
+            if (!changed && !completesChange(embedding, word)) {
+                continue;
+            }
+
+            long group = ((long) mainGraph.getVertex(word).getVertexLabel() << 32) |
+                    (getAdjacencyMask(embedding, word) & 0xFFFFFFFFL);
+
+            leafGroupCounts.addValue(group, 1);
+            leafGroupWords.putIfAbsent(group, word);
+            ++numCounted;
+
+            if (outputEnabled) {
+                embedding.addWord(word);
+                output(embedding);
+                embedding.removeLastWord();
+            }
+        }
+
+        LongIntCursor cursor = leafGroupCounts.cursor();
+
+        while (cursor.moveNext()) {
+            embedding.addWord(leafGroupWords.get(cursor.key()));
+            mapCount(embedding, cursor.value());
+            embedding.removeLastWord();
+        }
+
+        return numCounted;
+    }
 }
@@ -8,11 +8,26 @@ import io.arabesque.utils.collection.IntArrayList;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 
+/**
+ * Counts, for every vertex, the triangles it belongs to. In incremental mode
+ * (see {@link Configuration#CONF_MAINGRAPH_DELTA_PATH}) only the triangles with
+ * a changed pair are counted, negatively on the base graph.
+ */
 public class CountingTrianglesComputation extends VertexInducedComputation<VertexInducedEmbedding> {
-    private static final String AGG_OUTPUT = "output";
-    private static final LongWritable unitLongWritable = new LongWritable(1);
+    public static final String AGG_OUTPUT = "output";
 
     private final IntWritable reusableIdWritable = new IntWritable();
+    private final LongWritable reusableCountWritable = new LongWritable();
+    private final LongWritable reusableSignWritable = new LongWritable();
+
+    private boolean countLeaves;
+
+    @Override
+    public void init() {
+        super.init();
+        reusableSignWritable.set(getIncrementalSign());
+        countLeaves = Configuration.get().isCountLeaves();
+    }
 
     @Override
     public void initAggregations() {
@@ -29,8 +44,23 @@ public class CountingTrianglesComputation extends VertexInducedComputation<Verte
 
     @Override
     public boolean filter(VertexInducedEmbedding embedding) {
-        return embedding.getNumVertices() < 3 ||
-                (embedding.getNumVertices() == 3 && embedding.getNumEdges() == 3);
+        int numVertices = embedding.getNumVertices();
+
+        if (isIncremental() && 3 - numVertices < getNumMissingForChange(embedding)) {
+            return false;
+        }
+
+        return numVertices < 3 || (numVertices == 3 && embedding.getNumEdges() == 3);
+    }
+
+    @Override
+    public boolean dependsOnAggregations() {
+        return false;
+    }
+
+    @Override
+    public boolean aggregatesVertexIds() {
+        return true;
     }
 
     @Override
@@ -45,8 +75,52 @@ public class CountingTrianglesComputation extends VertexInducedComputation<Verte
 
             for (int i = 0; i < 3; ++i) {
                 reusableIdWritable.set(vertices.getUnchecked(i));
-                map(AGG_OUTPUT, reusableIdWritable, unitLongWritable);
+                map(AGG_OUTPUT, reusableIdWritable, reusableSignWritable);
             }
         }
     }
+
+    @Override
+    protected int getIncrementalNumVertices() {
+        return 3;
+    }
+
+    @Override
+    protected boolean shouldCountLeaves(VertexInducedEmbedding embedding) {
+        return countLeaves && embedding.getNumVertices() == 2;
+    }
+
+    /**
+     * Children of an edge are triangles iff the new vertex is adjacent to both
+     * endpoints: each such vertex counts one and the endpoints count them all.
+     */
+    @Override
+    protected long processLeaves(VertexInducedEmbedding embedding, IntArrayList leafWords) {
+        int numLeaves = leafWords.size();
+        long numTriangles = 0;
+        boolean changed = !isIncremental() || getNumMissingForChange(embedding) == 0;
+
+        for (int i = 0; i < numLeaves; ++i) {
+            int word = leafWords.getUnchecked(i);
+
+            if (getAdjacencyMask(embedding, word) == 3 &&
+                    (changed || completesChange(embedding, word))) {
+                reusableIdWritable.set(word);
+                map(AGG_OUTPUT, reusableIdWritable, reusableSignWritable);
+                ++numTriangles;
+            }
+        }
+
+        if (numTriangles > 0) {
+            IntArrayList vertices = embedding.getVertices();
+            reusableCountWritable.set(numTriangles * getIncrementalSign());
+
+            for (int i = 0; i < 2; ++i) {
+                reusableIdWritable.set(vertices.getUnchecked(i));
+                map(AGG_OUTPUT, reusableIdWritable, reusableCountWritable);
+            }
+        }
+
+        return numTriangles;
+    }
 }
@@ -21,6 +21,12 @@ public class BasicMainGraph implements MainGraph {
 
     private static final int INITIAL_ARRAY_SIZE = 4096;
 
+    // Neighbourhoods up to this degree are compacted into sorted arrays
+    private static final int SORTED_ARRAY_MAX_DEGREE = 64;
+    // Larger neighbourhoods use a bitset over all vertices if it takes at most this
+    // many bits per neighbour (about the cost of a hash map entry), hash maps otherwise
+    private static final int BITSET_MAX_BITS_PER_NEIGHBOUR = 64;
+
     private Vertex[] vertexIndexF;
     private Edge[] edgeIndexF;
 
@@ -28,6 +34,7 @@ public class BasicMainGraph implements MainGraph {
     private int numEdges;
 
     private VertexNeighbourhood[] vertexNeighbourhoods;
+    private boolean compactedNeighbourhoods;
 
     private boolean isEdgeLabelled;
     private boolean isMultiGraph;
@@ -46,6 +53,7 @@ public class BasicMainGraph implements MainGraph {
         edgeIndexF = null;
 
         vertexNeighbourhoods = null;
+        compactedNeighbourhoods = false;
 
         reset();
 
@@ -449,6 +457,81 @@ public class BasicMainGraph implements MainGraph {
         }
     }
 
+    /**
+     * Chooses the representation of a complete neighbourhood by its degree:
+     * sorted arrays for small ones (compact, binary search probes), bitsets
+     * for hubs adjacent to a large enough fraction of the graph (constant time
+     * probes) and hash maps in between. Multigraph neighbourhoods are kept
+     * as they are.
+     */
+    private VertexNeighbourhood createVertexNeighbourhood(VertexNeighbourhood neighbourhood) {
+        if (isMultiGraph) {
+            return neighbourhood;
+        }
+
+        int degree = neighbourhood.getNeighbourVertices().size();
+
+        if (degree <= SORTED_ARRAY_MAX_DEGREE) {
+            return new SortedArrayVertexNeighbourhood(neighbourhood);
+        } else if ((long) degree * BITSET_MAX_BITS_PER_NEIGHBOUR >= numVertices) {
+            return new BitSetVertexNeighbourhood(neighbourhood, numVertices);
+        } else {
+            return neighbourhood;
+        }
+    }
+
+    /**
+     * Replaces the neighbourhoods built while adding edges by the
+     * representation that best fits their degree. Called once the whole graph
+     * has been read, unless disabled by
+     * {@link io.arabesque.conf.Configuration#CONF_MAINGRAPH_COMPACT_NEIGHBOURHOODS};
+     * edges can still be added afterwards.
+     */
+    public void compactNeighbourhoods() {
+        compactedNeighbourhoods = true;
+
+        int numSortedArrays = 0;
+        int numBitSets = 0;
+
+        for (int i = 0; i < numVertices; ++i) {
+            VertexNeighbourhood neighbourhood = vertexNeighbourhoods[i];
+
+            if (neighbourhood == null) {
+                continue;
+            }
+
+            neighbourhood = createVertexNeighbourhood(neighbourhood);
+
+            if (neighbourhood instanceof BitSetVertexNeighbourhood) {
+                ++numBitSets;
+            } else if (neighbourhood instanceof SortedArrayVertexNeighbourhood) {
+                ++numSortedArrays;
+            }
+
+            vertexNeighbourhoods[i] = neighbourhood;
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Neighbourhoods: " + numSortedArrays + " sorted arrays, " + numBitSets + " bitsets");
+        }
+    }
+
+    public boolean hasCompactNeighbourhoods() {
+        return compactedNeighbourhoods;
+    }
+
+    /**
+     * Compacts the neighbourhoods of this graph if the ones of the graph it
+     * was rebuilt from are compacted (always for graphs other than
+     * BasicMainGraph), so that rebuilding keeps the representation.
+     */
+    public void compactNeighbourhoodsLike(MainGraph originalGraph) {
+        if (!(originalGraph instanceof BasicMainGraph) ||
+                ((BasicMainGraph) originalGraph).hasCompactNeighbourhoods()) {
+            compactNeighbourhoods();
+        }
+    }
+
     @Override
     public VertexNeighbourhood getVertexNeighbourhood(int vertexId) {
         return vertexNeighbourhoods[vertexId];
@@ -0,0 +1,56 @@
+package io.arabesque.graph;
+
+import java.util.Arrays;
+
+/**
+ * Neighbourhood of a hub vertex (simple graphs only): on top of the sorted
+ * arrays, membership is kept in a dense bitset over all vertex ids, so
+ * {@link #isNeighbourVertex(int)} is a single memory access regardless of the
+ * degree. The bitset takes numVertices / 8 bytes, which is why it is only
+ * worth it for vertices adjacent to a sizeable fraction of the graph.
+ */
+public class BitSetVertexNeighbourhood extends SortedArrayVertexNeighbourhood {
+    private long[] neighbourBits;
+
+    public BitSetVertexNeighbourhood(VertexNeighbourhood neighbourhood, int numVertices) {
+        super(neighbourhood);
+
+        neighbourBits = new long[(numVertices + 63) >>> 6];
+
+        int numNeighbours = neighbourVertices.size();
+
+        for (int i = 0; i < numNeighbours; ++i) {
+            setBit(neighbourVertices.getUnchecked(i));
+        }
+    }
+
+    private void setBit(int vertexId) {
+        int wordIdx = vertexId >>> 6;
+
+        if (wordIdx >= neighbourBits.length) {
+            neighbourBits = Arrays.copyOf(neighbourBits, Math.max(wordIdx + 1, neighbourBits.length * 2));
+        }
+
+        neighbourBits[wordIdx] |= 1L << vertexId;
+    }
+
+    @Override
+    public boolean isNeighbourVertex(int vertexId) {
+        int wordIdx = vertexId >>> 6;
+
+        return wordIdx < neighbourBits.length && (neighbourBits[wordIdx] & (1L << vertexId)) != 0;
+    }
+
+    @Override
+    public void addEdge(int neighbourVertexId, int edgeId) {
+        super.addEdge(neighbourVertexId, edgeId);
+        setBit(neighbourVertexId);
+    }
+
+    @Override
+    public String toString() {
+        return "BitSetVertexNeighbourhood{" +
+                "numWords=" + neighbourBits.length +
+                "} " + super.toString();
+    }
+}
@@ -0,0 +1,441 @@
+package io.arabesque.graph;
+
+import io.arabesque.utils.collection.IntArrayList;
+import io.arabesque.utils.collection.ReclaimableIntCollection;
+import com.koloboke.collect.IntCollection;
+import com.koloboke.collect.IntCursor;
+import com.koloboke.collect.map.hash.HashIntObjMap;
+import com.koloboke.collect.map.hash.HashIntObjMaps;
+import com.koloboke.collect.set.hash.HashIntSet;
+import com.koloboke.collect.set.hash.HashIntSets;
+import com.koloboke.collect.set.hash.HashLongSet;
+import com.koloboke.collect.set.hash.HashLongSets;
+import com.koloboke.function.IntConsumer;
+import org.apache.commons.io.input.BOMInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+/**
+ * Overlay of a batch of edge insertions and deletions on a main graph, which is
+ * not modified. Only the vertices touched by the batch get a neighbourhood of
+ * their own (a copy of the base one with the changes applied); every other
+ * query goes to the base graph.
+ *
+ * The overlay has two views: the updated graph (applied) or the base graph
+ * itself (not applied). Both know the changed pairs, i.e., the pairs of
+ * vertices whose adjacency differs between the two graphs, which is what
+ * incremental computations restrict their exploration to.
+ *
+ * Batches are text files with one change per line, "+ src dst [label]" or
+ * "- src dst", in input vertex ids. Inserted edges get ids after the ones of
+ * the base graph; ids of deleted edges are not reused. Multigraphs are not
+ * supported.
+ */
+public class DeltaMainGraph implements MainGraph {
+    private static final Logger LOG = Logger.getLogger(DeltaMainGraph.class);
+
+    private final MainGraph baseMainGraph;
+    private final boolean applied;
+    private final int numBaseEdges;
+
+    // (min << 32 | max) of the pairs whose adjacency was toggled by the batch
+    private final HashLongSet changedPairs;
+    private final HashIntSet changedVertices;
+
+    private Edge[] insertedEdges;
+    private int numInsertedEdges;
+    private Edge[] edges;
+
+    // neighbourhoods of the changed vertices in the updated graph
+    private final HashIntObjMap<VertexNeighbourhood> changedNeighbourhoods;
+
+    private int nearChangesDepth = -1;
+    private IntArrayList nearChanges;
+
+    public DeltaMainGraph(MainGraph baseMainGraph, Path filePath, boolean applied,
+            int[] originalVertexIds) throws IOException {
+        this(baseMainGraph, applied);
+
+        InputStream is = Files.newInputStream(filePath);
+        readFromInputStream(is, originalVertexIds);
+        is.close();
+
+        buildChangedNeighbourhoods();
+    }
+
+    public DeltaMainGraph(MainGraph baseMainGraph, org.apache.hadoop.fs.Path hdfsPath, boolean applied,
+            int[] originalVertexIds) throws IOException {
+        this(baseMainGraph, applied);
+
+        FileSystem fs = FileSystem.get(new org.apache.hadoop.conf.Configuration());
+        InputStream is = fs.open(hdfsPath);
+        readFromInputStream(is, originalVertexIds);
+        is.close();
+
+        buildChangedNeighbourhoods();
+    }
+
+    private DeltaMainGraph(MainGraph baseMainGraph, boolean applied) {
+        if (baseMainGraph.isMultiGraph()) {
+            throw new RuntimeException("Edge batches are not supported on multigraphs");
+        }
+
+        this.baseMainGraph = baseMainGraph;
+        this.applied = applied;
+        this.numBaseEdges = baseMainGraph.getNumberEdges();
+
+        changedPairs = HashLongSets.newMutableSet();
+        changedVertices = HashIntSets.newMutableSet();
+        changedNeighbourhoods = HashIntObjMaps.newMutableMap();
+        insertedEdges = new Edge[16];
+    }
+
+    private void readFromInputStream(InputStream is, int[] originalVertexIds) {
+        // input id -> vertex id, if vertices were renumbered after loading
+        int[] vertexIds = null;
+
+        if (originalVertexIds != null) {
+            vertexIds = new int[originalVertexIds.length];
+
+            for (int i = 0; i < originalVertexIds.length; ++i) {
+                vertexIds[originalVertexIds[i]] = i;
+            }
+        }
+
+        int numInsertions = 0;
+        int numDeletions = 0;
+        int numIgnored = 0;
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new BOMInputStream(is)));
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                StringTokenizer tokenizer = new StringTokenizer(line);
+
+                if (!tokenizer.hasMoreTokens() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String op = tokenizer.nextToken();
+                int src = toVertexId(Integer.parseInt(tokenizer.nextToken()), vertexIds);
+                int dst = toVertexId(Integer.parseInt(tokenizer.nextToken()), vertexIds);
+                boolean insertion;
+
+                if (op.equals("+")) {
+                    insertion = true;
+                } else if (op.equals("-")) {
+                    insertion = false;
+                } else {
+                    throw new RuntimeException("Invalid edge change: " + line);
+                }
+
+                long pair = pairKey(src, dst);
+
+                // changes that do not toggle an adjacency (e.g. inserting an
+                // existing edge) or that change a pair twice are ignored
+                if (src == dst || changedPairs.contains(pair) ||
+                        insertion == baseMainGraph.isNeighborVertex(src, dst)) {
+                    LOG.warn("Ignoring edge change: " + line);
+                    ++numIgnored;
+                    continue;
+                }
+
+                if (insertion) {
+                    int edgeLabel = baseMainGraph.isEdgeLabelled() ?
+                            Integer.parseInt(tokenizer.nextToken()) : 0;
+                    addInsertedEdge(Math.min(src, dst), Math.max(src, dst), edgeLabel);
+                    ++numInsertions;
+                } else {
+                    ++numDeletions;
+                }
+
+                changedPairs.add(pair);
+                changedVertices.add(src);
+                changedVertices.add(dst);
+            }
+
+            reader.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        LOG.info("Edge batch: " + numInsertions + " insertions, " + numDeletions +
+                " deletions, " + numIgnored + " ignored (" + (applied ? "applied" : "not applied") + ")");
+    }
+
+    private int toVertexId(int inputVertexId, int[] vertexIds) {
+        int vertexId = vertexIds != null ? vertexIds[inputVertexId] : inputVertexId;
+
+        if (vertexId < 0 || vertexId >= baseMainGraph.getNumberVertices()) {
+            throw new RuntimeException("Vertex " + inputVertexId + " is not in the main graph");
+        }
+
+        return vertexId;
+    }
+
+    private void addInsertedEdge(int src, int dst, int edgeLabel) {
+        int edgeId = numBaseEdges + numInsertedEdges;
+        Edge edge = baseMainGraph.isEdgeLabelled() ?
+                new LabelledEdge(edgeId, src, dst, edgeLabel) : new Edge(edgeId, src, dst);
+
+        if (numInsertedEdges == insertedEdges.length) {
+            insertedEdges = Arrays.copyOf(insertedEdges, insertedEdges.length << 1);
+        }
+
+        insertedEdges[numInsertedEdges++] = edge;
+    }
+
+    private void buildChangedNeighbourhoods() {
+        if (!applied) {
+            return;
+        }
+
+        IntCursor cursor = changedVertices.cursor();
+
+        while (cursor.moveNext()) {
+            final int vertexId = cursor.elem();
+            final VertexNeighbourhood neighbourhood = new BasicVertexNeighbourhood();
+            IntCollection baseNeighbours = baseMainGraph.getVertexNeighbours(vertexId);
+
+            if (baseNeighbours != null) {
+                IntCursor neighbourCursor = baseNeighbours.cursor();
+
+                while (neighbourCursor.moveNext()) {
+                    final int neighbourId = neighbourCursor.elem();
+
+                    if (!changedPairs.contains(pairKey(vertexId, neighbourId))) {
+                        baseMainGraph.forEachEdgeId(vertexId, neighbourId, new IntConsumer() {
+                            @Override
+                            public void accept(int edgeId) {
+                                neighbourhood.addEdge(neighbourId, edgeId);
+                            }
+                        });
+                    }
+                }
+            }
+
+            changedNeighbourhoods.put(vertexId, neighbourhood);
+        }
+
+        for (int i = 0; i < numInsertedEdges; ++i) {
+            Edge edge = insertedEdges[i];
+            changedNeighbourhoods.get(edge.getSourceId()).addEdge(edge.getDestinationId(), edge.getEdgeId());
+            changedNeighbourhoods.get(edge.getDestinationId()).addEdge(edge.getSourceId(), edge.getEdgeId());
+        }
+    }
+
+    private static long pairKey(int v1, int v2) {
+        int minv = Math.min(v1, v2);
+        int maxv = Math.max(v1, v2);
+
+        return ((long) minv << 32) | (maxv & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Whether this is the updated graph (true) or the base one (false).
+     */
+    public boolean isApplied() {
+        return applied;
+    }
+
+    public MainGraph getBaseMainGraph() {
+        return baseMainGraph;
+    }
+
+    /**
+     * Whether the adjacency of v1 and v2 differs between the base and the
+     * updated graph.
+     */
+    public boolean isChangedPair(int v1, int v2) {
+        return changedVertices.contains(v1) && changedPairs.contains(pairKey(v1, v2));
+    }
+
+    public boolean isChangedVertex(int vertexId) {
+        return changedVertices.contains(vertexId);
+    }
+
+    public int getNumberChangedPairs() {
+        return changedPairs.size();
+    }
+
+    /**
+     * Vertices at most depth hops away (in this view) from a changed vertex,
+     * sorted. The last result is kept, since every partition asks for it.
+     */
+    public synchronized IntArrayList getVerticesNearChanges(int depth) {
+        if (depth == nearChangesDepth) {
+            return nearChanges;
+        }
+
+        HashIntSet visited = HashIntSets.newMutableSet(changedVertices);
+        IntArrayList frontier = new IntArrayList(changedVertices);
+
+        for (int d = 0; d < depth && !frontier.isEmpty(); ++d) {
+            IntArrayList nextFrontier = new IntArrayList();
+
+            for (int i = 0; i < frontier.size(); ++i) {
+                IntCollection neighbours = getVertexNeighbours(frontier.getUnchecked(i));
+
+                if (neighbours == null) {
+                    continue;
+                }
+
+                IntCursor cursor = neighbours.cursor();
+
+                while (cursor.moveNext()) {
+                    if (visited.add(cursor.elem())) {
+                        nextFrontier.add(cursor.elem());
+                    }
+                }
+            }
+
+            frontier = nextFrontier;
+        }
+
+        nearChanges = new IntArrayList(visited);
+        nearChanges.sort();
+        nearChangesDepth = depth;
+
+        return nearChanges;
+    }
+
+    @Override
+    public void reset() {
+        baseMainGraph.reset();
+    }
+
+    @Override
+    public boolean isNeighborVertex(int v1, int v2) {
+        boolean neighbours = baseMainGraph.isNeighborVertex(v1, v2);
+
+        return applied && isChangedPair(v1, v2) ? !neighbours : neighbours;
+    }
+
+    @Override
+    public MainGraph addVertex(Vertex vertex) {
+        return baseMainGraph.addVertex(vertex);
+    }
+
+    @Override
+    public Vertex[] getVertices() {
+        return baseMainGraph.getVertices();
+    }
+
+    @Override
+    public Vertex getVertex(int vertexId) {
+        return baseMainGraph.getVertex(vertexId);
+    }
+
+    @Override
+    public int getNumberVertices() {
+        return baseMainGraph.getNumberVertices();
+    }
+
+    @Override
+    public synchronized Edge[] getEdges() {
+        if (!applied || numInsertedEdges == 0) {
+            return baseMainGraph.getEdges();
+        }
+
+        if (edges == null) {
+            edges = Arrays.copyOf(baseMainGraph.getEdges(), numBaseEdges + numInsertedEdges);
+            System.arraycopy(insertedEdges, 0, edges, numBaseEdges, numInsertedEdges);
+        }
+
+        return edges;
+    }
+
+    @Override
+    public Edge getEdge(int edgeId) {
+        return edgeId < numBaseEdges ? baseMainGraph.getEdge(edgeId) : insertedEdges[edgeId - numBaseEdges];
+    }
+
+    /**
+     * Size of the edge id space, i.e., ids of deleted edges are counted.
+     */
+    @Override
+    public int getNumberEdges() {
+        return applied ? numBaseEdges + numInsertedEdges : numBaseEdges;
+    }
+
+    @Override
+    public ReclaimableIntCollection getEdgeIds(int v1, int v2) {
+        if (applied && isChangedPair(v1, v2)) {
+            return changedNeighbourhoods.get(v1).getEdgesWithNeighbourVertex(v2);
+        }
+
+        return baseMainGraph.getEdgeIds(v1, v2);
+    }
+
+    @Override
+    public MainGraph addEdge(Edge edge) {
+        throw new UnsupportedOperationException("Edges of a delta main graph come from its batch");
+    }
+
+    @Override
+    public boolean areEdgesNeighbors(int edge1Id, int edge2Id) {
+        return getEdge(edge1Id).neighborWith(getEdge(edge2Id));
+    }
+
+    @Override
+    public boolean isNeighborEdge(int src1, int dest1, int edge2) {
+        Edge edge = getEdge(edge2);
+        int src2 = edge.getSourceId();
+        int dest2 = edge.getDestinationId();
+
+        return (src1 == src2 || dest1 == src2 || dest1 == dest2 || src1 == dest2);
+    }
+
+    @Override
+    public VertexNeighbourhood getVertexNeighbourhood(int vertexId) {
+        if (applied && changedVertices.contains(vertexId)) {
+            return changedNeighbourhoods.get(vertexId);
+        }
+
+        return baseMainGraph.getVertexNeighbourhood(vertexId);
+    }
+
+    @Override
+    public IntCollection getVertexNeighbours(int vertexId) {
+        if (applied && changedVertices.contains(vertexId)) {
+            return changedNeighbourhoods.get(vertexId).getNeighbourVertices();
+        }
+
+        return baseMainGraph.getVertexNeighbours(vertexId);
+    }
+
+    @Override
+    public boolean isEdgeLabelled() {
+        return baseMainGraph.isEdgeLabelled();
+    }
+
+    @Override
+    public boolean isMultiGraph() {
+        return baseMainGraph.isMultiGraph();
+    }
+
+    @Override
+    public void forEachEdgeId(int v1, int v2, IntConsumer intConsumer) {
+        if (applied && isChangedPair(v1, v2)) {
+            changedNeighbourhoods.get(v1).forEachEdgeId(v2, intConsumer);
+        } else {
+            baseMainGraph.forEachEdgeId(v1, v2, intConsumer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DeltaMainGraph(" + baseMainGraph + ", " + changedPairs.size() + " changed pairs" +
+                (applied ? ", applied)" : ")");
+    }
+}
@@ -0,0 +1,24 @@
+package io.arabesque.graph;
+
+import com.koloboke.collect.set.IntSet;
+import com.koloboke.function.IntConsumer;
+
+/**
+ * Main graph whose neighbourhoods are grouped by the label of the neighbour
+ * vertex, so that extensions restricted to a few labels can be enumerated
+ * without scanning (and rejecting) the whole neighbourhood.
+ *
+ * Incident edges are grouped by the label of the vertex on the other end of
+ * the edge as well, which is what edge-induced extensions are restricted by.
+ */
+public interface LabelIndexedMainGraph extends MainGraph {
+    int getNumVertexNeighbours(int vertexId, int neighbourLabel);
+
+    void forEachVertexNeighbour(int vertexId, int neighbourLabel, IntConsumer intConsumer);
+
+    void forEachVertexNeighbour(int vertexId, IntSet neighbourLabels, IntConsumer intConsumer);
+
+    void forEachNeighbourEdge(int vertexId, int neighbourLabel, IntConsumer intConsumer);
+
+    void forEachNeighbourEdge(int vertexId, IntSet neighbourLabels, IntConsumer intConsumer);
+}
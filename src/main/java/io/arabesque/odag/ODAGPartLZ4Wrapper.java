@@ -1,28 +1,24 @@
 package io.arabesque.odag;
 
-import net.jpountz.lz4.LZ4Compressor;
-import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.lz4.LZ4FastDecompressor;
-import org.apache.giraph.utils.ExtendedByteArrayDataOutput;
+import io.arabesque.conf.Configuration;
+import io.arabesque.utils.compression.Codec;
+import io.arabesque.utils.compression.Codecs;
+import io.arabesque.utils.compression.CompressionPolicy;
+import io.arabesque.utils.compression.NoCodec;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
 /**
  * Created by afonseca on 3/14/2015.
  */
 public class ODAGPartLZ4Wrapper extends ODAGPartWrapper {
-    private static final int MB = 1024 * 1024;
-
     private boolean uncompressed;
     private int uncompressedSize;
-
-    private LZ4Factory lz4factory;
+    private byte codecId;
 
     public ODAGPartLZ4Wrapper() {
-        lz4factory = LZ4Factory.fastestInstance();
         reset();
     }
 
@@ -45,10 +41,15 @@ public class ODAGPartLZ4Wrapper extends ODAGPartWrapper {
         compress();
     }
 
+    public int getUncompressedSize() {
+        return uncompressed ? byteArrayOutputCache.getPos() : uncompressedSize;
+    }
+
     @Override
     public void reset() {
         uncompressed = true;
         uncompressedSize = 0;
+        codecId = NoCodec.ID;
         super.reset();
     }
 
@@ -57,19 +58,19 @@ public class ODAGPartLZ4Wrapper extends ODAGPartWrapper {
             return;
         }
 
+        CompressionPolicy compression = Configuration.get().getCompressionPolicy(Configuration.COMPRESSION_ODAG);
+        Codec codec = compression.nextCodec();
+
         uncompressedSize = byteArrayOutputCache.getPos();
-        LZ4Compressor lz4Compressor = lz4factory.fastCompressor();
-        int maxCompressedLength = lz4Compressor.maxCompressedLength(uncompressedSize);
-        ByteBuffer compressed = ByteBuffer.wrap(new byte[maxCompressedLength]);
-        int compressedLength = lz4Compressor.compress(ByteBuffer.wrap(byteArrayOutputCache.getByteArray()), 0,
-                uncompressedSize, compressed, 0, maxCompressedLength);
-        byteArrayOutputCache = new ExtendedByteArrayDataOutput(compressed.array(), compressedLength);
+        byteArrayOutputCache = compression.compress(codec, byteArrayOutputCache);
+        codecId = codec.getId();
         uncompressed = false;
     }
 
     @Override
     public void write(DataOutput dataOutput) throws IOException {
         compress();
+        dataOutput.writeByte(codecId);
         dataOutput.writeInt(uncompressedSize);
         super.write(dataOutput);
     }
@@ -79,22 +80,13 @@ public class ODAGPartLZ4Wrapper extends ODAGPartWrapper {
             return;
         }
 
-        //LOG.info("Big no no");
-
-        //long start = System.currentTimeMillis();
-        LZ4FastDecompressor decompressor = lz4factory.fastDecompressor();
-
-        ByteBuffer dest = ByteBuffer.allocate(uncompressedSize);
-        ByteBuffer src = ByteBuffer.wrap(byteArrayOutputCache.getByteArray(), 0, byteArrayOutputCache.getPos());
-
-        decompressor.decompress(src, 0, dest, 0, uncompressedSize);
-
-        byteArrayOutputCache = new ExtendedByteArrayDataOutput(dest.array(), uncompressedSize);
+        byteArrayOutputCache = Codecs.decompress(codecId, byteArrayOutputCache, uncompressedSize);
         uncompressed = true;
     }
 
     @Override
     public void readFields(DataInput dataInput) throws IOException {
+        codecId = dataInput.readByte();
         uncompressedSize = dataInput.readInt();
         uncompressed = false;
         super.readFields(dataInput);
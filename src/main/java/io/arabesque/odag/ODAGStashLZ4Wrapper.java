@@ -1,26 +1,24 @@
 package io.arabesque.odag;
 
-import net.jpountz.lz4.LZ4Compressor;
-import net.jpountz.lz4.LZ4Factory;
-import org.apache.giraph.utils.ExtendedByteArrayDataOutput;
+import io.arabesque.conf.Configuration;
+import io.arabesque.utils.compression.Codec;
+import io.arabesque.utils.compression.Codecs;
+import io.arabesque.utils.compression.CompressionPolicy;
+import io.arabesque.utils.compression.NoCodec;
 import org.apache.log4j.Logger;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
 public class ODAGStashLZ4Wrapper extends ODAGStashWrapper {
     private static final Logger LOG = Logger.getLogger(ODAGStashLZ4Wrapper.class);
-    private static final int MB = 1024 * 1024;
 
     private boolean uncompressed;
     private int uncompressedSize;
-
-    private LZ4Factory lz4factory;
+    private byte codecId;
 
     public ODAGStashLZ4Wrapper() {
-        lz4factory = LZ4Factory.fastestInstance();
         reset();
     }
 
@@ -47,6 +45,7 @@ public class ODAGStashLZ4Wrapper extends ODAGStashWrapper {
     public void reset() {
         uncompressed = true;
         uncompressedSize = 0;
+        codecId = NoCodec.ID;
         super.reset();
     }
 
@@ -55,19 +54,19 @@ public class ODAGStashLZ4Wrapper extends ODAGStashWrapper {
             return;
         }
 
+        CompressionPolicy compression = Configuration.get().getCompressionPolicy(Configuration.COMPRESSION_ODAG);
+        Codec codec = compression.nextCodec();
+
         uncompressedSize = byteArrayOutputCache.getPos();
-        LZ4Compressor lz4Compressor = lz4factory.fastCompressor();
-        int maxCompressedLength = lz4Compressor.maxCompressedLength(uncompressedSize);
-        ByteBuffer compressed = ByteBuffer.wrap(new byte[maxCompressedLength]);
-        int compressedLength = lz4Compressor.compress(ByteBuffer.wrap(byteArrayOutputCache.getByteArray()), 0,
-                uncompressedSize, compressed, 0, maxCompressedLength);
-        byteArrayOutputCache = new ExtendedByteArrayDataOutput(compressed.array(), compressedLength);
+        byteArrayOutputCache = compression.compress(codec, byteArrayOutputCache);
+        codecId = codec.getId();
         uncompressed = false;
     }
 
     @Override
     public void write(DataOutput dataOutput) throws IOException {
         compress();
+        dataOutput.writeByte(codecId);
         dataOutput.writeInt(uncompressedSize);
         super.write(dataOutput);
     }
@@ -76,14 +75,14 @@ public class ODAGStashLZ4Wrapper extends ODAGStashWrapper {
         if (uncompressed) {
             return;
         }
-        ByteBuffer dest = ByteBuffer.allocate(uncompressedSize);
-        byteArrayOutputCache = new ExtendedByteArrayDataOutput(dest.array(), uncompressedSize);
 
+        byteArrayOutputCache = Codecs.decompress(codecId, byteArrayOutputCache, uncompressedSize);
         uncompressed = true;
     }
 
     @Override
     public void readFields(DataInput dataInput) throws IOException {
+        codecId = dataInput.readByte();
         uncompressedSize = dataInput.readInt();
         uncompressed = false;
         super.readFields(dataInput);
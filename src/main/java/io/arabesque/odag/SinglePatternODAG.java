@@ -75,6 +75,18 @@ public class SinglePatternODAG extends BasicODAG {
        readFields(in);
     }
 
+    /**
+     * Read-only copy of this odag, as it would be deserialized after
+     * setSerializeAsReadOnly(true), for readers in the same process.
+     */
+    public SinglePatternODAG readOnlyCopy() {
+        SinglePatternODAG odag = new SinglePatternODAG();
+        odag.pattern = pattern;
+        odag.serializeAsReadOnly = true;
+        odag.storage = new DomainStorageReadOnly(storage);
+        return odag;
+    }
+
     public void setPattern(Pattern pattern) {
         this.pattern = pattern;
     }
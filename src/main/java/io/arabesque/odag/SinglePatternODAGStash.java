@@ -6,6 +6,7 @@ import io.arabesque.embedding.Embedding;
 import io.arabesque.odag.domain.StorageReader;
 import io.arabesque.odag.domain.StorageStats;
 import io.arabesque.pattern.Pattern;
+import io.arabesque.pattern.PatternKey;
 import io.arabesque.odag.BasicODAGStash.EfficientReader;
 import org.apache.giraph.aggregators.BasicAggregator;
 import org.apache.log4j.Logger;
@@ -18,28 +19,37 @@ public class SinglePatternODAGStash extends BasicODAGStash<SinglePatternODAG,Sin
     private static final Logger LOG =
             Logger.getLogger(SinglePatternODAGStash.class);
 
-    private Map<Pattern, SinglePatternODAG> compressedEmbeddingsByPattern;
+    // Keys are copies of the PatternKeys of the patterns held by the values,
+    // since patterns (and thus their keys) may be changed by their owners
+    private Map<PatternKey, SinglePatternODAG> compressedEmbeddingsByPattern;
     private Pattern reusablePattern;
 
     public SinglePatternODAGStash() {
-        this (new HashMap<Pattern,SinglePatternODAG>());
+        this.compressedEmbeddingsByPattern = new HashMap<>();
+        this.reusablePattern = Configuration.get().createPattern();
     }
 
     public SinglePatternODAGStash (Map<Pattern,SinglePatternODAG> odagsByPattern) {
-        this.compressedEmbeddingsByPattern = odagsByPattern;
-        this.reusablePattern = Configuration.get().createPattern();
+        this();
+
+        for (Map.Entry<Pattern, SinglePatternODAG> entry : odagsByPattern.entrySet()) {
+            Pattern pattern = entry.getKey();
+            SinglePatternODAG odag = entry.getValue();
+            odag.setPattern(pattern);
+            compressedEmbeddingsByPattern.put(pattern.getKey().copy(), odag);
+        }
     }
 
     @Override
     public void addEmbedding(Embedding embedding) {
         try {
             reusablePattern.setEmbedding(embedding);
-            SinglePatternODAG embeddingsZip = compressedEmbeddingsByPattern.get(reusablePattern);
+            SinglePatternODAG embeddingsZip = compressedEmbeddingsByPattern.get(reusablePattern.getKey());
 
             if (embeddingsZip == null) {
                 Pattern patternCopy = reusablePattern.copy();
                 embeddingsZip = new SinglePatternODAG(patternCopy, embedding.getNumWords());
-                compressedEmbeddingsByPattern.put(patternCopy, embeddingsZip);
+                compressedEmbeddingsByPattern.put(patternCopy.getKey(), embeddingsZip);
             }
 
             embeddingsZip.addEmbedding(embedding);
@@ -55,10 +65,10 @@ public class SinglePatternODAGStash extends BasicODAGStash<SinglePatternODAG,Sin
     public void aggregate(SinglePatternODAG ezip) {
         Pattern pattern = ezip.getPattern();
 
-        SinglePatternODAG existingEzip = compressedEmbeddingsByPattern.get(pattern);
+        SinglePatternODAG existingEzip = compressedEmbeddingsByPattern.get(pattern.getKey());
 
         if (existingEzip == null) {
-            compressedEmbeddingsByPattern.put(pattern, ezip);
+            compressedEmbeddingsByPattern.put(pattern.getKey().copy(), ezip);
         } else {
             existingEzip.aggregate(ezip);
         }
@@ -68,13 +78,13 @@ public class SinglePatternODAGStash extends BasicODAGStash<SinglePatternODAG,Sin
     public void aggregateUsingReusable(SinglePatternODAG ezip) {
         Pattern pattern = ezip.getPattern();
 
-        SinglePatternODAG existingEzip = compressedEmbeddingsByPattern.get(pattern);
+        SinglePatternODAG existingEzip = compressedEmbeddingsByPattern.get(pattern.getKey());
 
         if (existingEzip == null) {
             Pattern patternCopy = pattern.copy();
             ezip.setPattern(patternCopy);
             existingEzip = new SinglePatternODAG(patternCopy, ezip.getNumberOfDomains());
-            compressedEmbeddingsByPattern.put(patternCopy, existingEzip);
+            compressedEmbeddingsByPattern.put(patternCopy.getKey(), existingEzip);
         }
 
         existingEzip.aggregate(ezip);
@@ -83,15 +93,15 @@ public class SinglePatternODAGStash extends BasicODAGStash<SinglePatternODAG,Sin
 
     @Override
     public void aggregateStash(SinglePatternODAGStash value) {
-        for (Map.Entry<Pattern, SinglePatternODAG> otherCompressedEmbeddingsByPatternEntry :
+        for (Map.Entry<PatternKey, SinglePatternODAG> otherCompressedEmbeddingsByPatternEntry :
                 value.compressedEmbeddingsByPattern.entrySet()) {
-            Pattern pattern = otherCompressedEmbeddingsByPatternEntry.getKey();
+            PatternKey pattern = otherCompressedEmbeddingsByPatternEntry.getKey();
             SinglePatternODAG otherCompressedEmbeddings = otherCompressedEmbeddingsByPatternEntry.getValue();
 
             SinglePatternODAG thisCompressedEmbeddings = compressedEmbeddingsByPattern.get(pattern);
 
             if (thisCompressedEmbeddings == null) {
-                compressedEmbeddingsByPattern.put(pattern, otherCompressedEmbeddings);
+                compressedEmbeddingsByPattern.put(pattern.copy(), otherCompressedEmbeddings);
             } else {
                 thisCompressedEmbeddings.aggregate(otherCompressedEmbeddings);
             }
@@ -100,10 +110,7 @@ public class SinglePatternODAGStash extends BasicODAGStash<SinglePatternODAG,Sin
 
     @Override
     public void finalizeConstruction(ExecutorService pool, int parts) {
-       for (Map.Entry<Pattern, SinglePatternODAG> entry : compressedEmbeddingsByPattern.entrySet()) {
-          Pattern pattern = entry.getKey();
-          SinglePatternODAG odag = entry.getValue();
-          odag.setPattern (pattern);
+       for (SinglePatternODAG odag : compressedEmbeddingsByPattern.values()) {
           odag.finalizeConstruction(pool, parts);
        }
     }
@@ -111,11 +118,8 @@ public class SinglePatternODAGStash extends BasicODAGStash<SinglePatternODAG,Sin
     @Override
     public void write(DataOutput dataOutput) throws IOException {
         dataOutput.writeInt(compressedEmbeddingsByPattern.size());
-        for (Map.Entry<Pattern, SinglePatternODAG> shrunkEmbeddingsByPatternEntry :
-                compressedEmbeddingsByPattern.entrySet()) {
-            Pattern pattern = shrunkEmbeddingsByPatternEntry.getKey();
-            pattern.write(dataOutput);
-            SinglePatternODAG shrunkEmbeddings = shrunkEmbeddingsByPatternEntry.getValue();
+        for (SinglePatternODAG shrunkEmbeddings : compressedEmbeddingsByPattern.values()) {
+            shrunkEmbeddings.getPattern().write(dataOutput);
             shrunkEmbeddings.write(dataOutput);
         }
     }
@@ -139,7 +143,7 @@ public class SinglePatternODAGStash extends BasicODAGStash<SinglePatternODAG,Sin
             SinglePatternODAG shrunkEmbeddings = new SinglePatternODAG(false);
             shrunkEmbeddings.setPattern(pattern);
             shrunkEmbeddings.readFields(dataInput);
-            compressedEmbeddingsByPattern.put(pattern, shrunkEmbeddings);
+            compressedEmbeddingsByPattern.put(pattern.getKey().copy(), shrunkEmbeddings);
         }
     }
 
@@ -164,7 +168,29 @@ public class SinglePatternODAGStash extends BasicODAGStash<SinglePatternODAG,Sin
     }
 
     public SinglePatternODAG getEzip(Pattern pattern) {
-        return compressedEmbeddingsByPattern.get(pattern);
+        return compressedEmbeddingsByPattern.get(pattern.getKey());
+    }
+
+    /**
+     * Drops the odags whose patterns do not pass the aggregationFilter of
+     * computation, so that they are neither serialized nor shuffled.
+     *
+     * @return number of odags dropped
+     */
+    public int aggregationFilter(Computation<? extends Embedding> computation) {
+        int numRemoved = 0;
+
+        Iterator<SinglePatternODAG> odagIterator =
+                compressedEmbeddingsByPattern.values().iterator();
+
+        while (odagIterator.hasNext()) {
+            if (!computation.aggregationFilter(odagIterator.next().getPattern())) {
+                odagIterator.remove();
+                ++numRemoved;
+            }
+        }
+
+        return numRemoved;
     }
 
     public static class Aggregator extends BasicAggregator<SinglePatternODAGStash> {
@@ -213,9 +239,8 @@ public class SinglePatternODAGStash extends BasicODAGStash<SinglePatternODAG,Sin
         //TreeMap<String, EmbeddingsZip> orderedMap = new TreeMap<>();
         TreeMap<String, SinglePatternODAG> orderedMap = new TreeMap<>();
 
-        //for (Map.Entry<Pattern, EmbeddingsZip> entry : compressedEmbeddingsByPattern.entrySet()) {
-        for (Map.Entry<Pattern, SinglePatternODAG> entry : compressedEmbeddingsByPattern.entrySet()) {
-            orderedMap.put(entry.getKey().toString(), entry.getValue());
+        for (SinglePatternODAG odag : compressedEmbeddingsByPattern.values()) {
+            orderedMap.put(odag.getPattern().toString(), odag);
         }
 
         sb.append("SinglePatternODAGStash{\n");
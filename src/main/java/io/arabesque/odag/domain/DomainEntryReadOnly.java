@@ -19,6 +19,27 @@ public class DomainEntryReadOnly extends DomainEntrySet {
 
     private int[] pointers;
 
+    public DomainEntryReadOnly() {
+    }
+
+    /**
+     * Read-only copy of a domain entry, as read back after writing it (same
+     * pointers, in the order they are written), but with no bytes involved.
+     *
+     * @param domainEntry entry to copy the pointers from
+     */
+    public DomainEntryReadOnly(DomainEntry domainEntry) {
+        IntCursor pointersCursor = domainEntry.getPointersCursor();
+
+        if (pointersCursor != null) {
+            pointers = new int[domainEntry.getNumPointers()];
+            int i = 0;
+            while (pointersCursor.moveNext()) {
+                pointers[i++] = pointersCursor.elem();
+            }
+        }
+    }
+
     @Override
     public boolean insertConnectionToWord(int p) {
         throw new RuntimeException("Not allowed");
@@ -304,6 +304,12 @@ public class DomainStorage extends Storage<DomainStorage> {
         }
     }
 
+    /**
+     * Writes this storage split by word id (wordId % outputs.length) with the
+     * format of {@link #write(DataOutput)}, entries sorted by word id and
+     * pointers sorted, so that parts can be merged in serialized form by
+     * {@link DomainStorageMerger}. Entries are removed as they are written.
+     */
     public void write(DataOutput[] outputs, boolean[] hasContent) throws IOException {
         int numParts = outputs.length;
         int[] numEntriesOfPartsInDomain = new int[numParts];
@@ -316,7 +322,10 @@ public class DomainStorage extends Storage<DomainStorage> {
         for (ConcurrentHashMap<Integer, DomainEntry> domainEntryMap : domainEntries) {
             Arrays.fill(numEntriesOfPartsInDomain, 0);
 
-            for (Integer wordId : domainEntryMap.keySet()) {
+            int[] orderedWordIds = Ints.toArray(domainEntryMap.keySet());
+            Arrays.sort(orderedWordIds);
+
+            for (int wordId : orderedWordIds) {
                 int partId = wordId % numParts;
 
                 ++numEntriesOfPartsInDomain[partId];
@@ -331,26 +340,44 @@ public class DomainStorage extends Storage<DomainStorage> {
                 }
             }
 
-            Iterator<Map.Entry<Integer, DomainEntry>> domainEntryMapIterator
-                    = domainEntryMap.entrySet().iterator();
-
-            while (domainEntryMapIterator.hasNext()) {
-                Map.Entry<Integer, DomainEntry> entry = domainEntryMapIterator.next();
-                int wordId = entry.getKey();
+            for (int wordId : orderedWordIds) {
                 int partId = wordId % numParts;
 
                 DataOutput output = outputs[partId];
 
                 output.writeInt(wordId);
 
-                DomainEntry domainEntry = entry.getValue();
-                domainEntry.write(output, writerSetConsumer);
-
-                domainEntryMapIterator.remove();
+                DomainEntry domainEntry = domainEntryMap.remove(wordId);
+                writeSorted(output, domainEntry);
             }
         }
     }
 
+    private static void writeSorted(DataOutput output, DomainEntry domainEntry) throws IOException {
+        IntCursor pointersCursor = domainEntry.getPointersCursor();
+
+        if (pointersCursor == null) {
+            output.writeBoolean(false);
+            return;
+        }
+
+        int[] pointers = new int[domainEntry.getNumPointers()];
+        int numPointers = 0;
+
+        while (pointersCursor.moveNext()) {
+            pointers[numPointers++] = pointersCursor.elem();
+        }
+
+        Arrays.sort(pointers, 0, numPointers);
+
+        output.writeBoolean(true);
+        output.writeInt(numPointers);
+
+        for (int i = 0; i < numPointers; ++i) {
+            output.writeInt(pointers[i]);
+        }
+    }
+
     @Override
     public void readFields(DataInput dataInput) throws IOException {
         this.clear();
@@ -0,0 +1,189 @@
+package io.arabesque.odag.domain;
+
+import org.apache.giraph.utils.ExtendedByteArrayDataInput;
+import org.apache.giraph.utils.ExtendedByteArrayDataOutput;
+
+import java.io.IOException;
+
+/**
+ * Merges serialized domain storages (or parts of them, as written by
+ * {@link DomainStorage#write(java.io.DataOutput[], boolean[])}) without
+ * materializing them: every domain is a k-way merge of the input entry
+ * streams, which must be sorted by word id, and pointers of entries present
+ * in several inputs are merged as sorted lists.
+ *
+ * The output follows the same format and ordering, so it can be merged again
+ * or read by either {@link DomainStorage} or {@link DomainStorageReadOnly}.
+ */
+public class DomainStorageMerger {
+    private final ExtendedByteArrayDataInput[] inputs;
+    private final int[] remainingEntries;
+    private final int[] currentWordIds;
+
+    private int[] mergedPointers;
+    private int[] tmpPointers;
+
+    private DomainStorageMerger(byte[][] parts) {
+        inputs = new ExtendedByteArrayDataInput[parts.length];
+
+        for (int i = 0; i < parts.length; ++i) {
+            inputs[i] = new ExtendedByteArrayDataInput(parts[i]);
+        }
+
+        remainingEntries = new int[parts.length];
+        currentWordIds = new int[parts.length];
+        mergedPointers = new int[16];
+        tmpPointers = new int[16];
+    }
+
+    public static byte[] merge(byte[][] parts) throws IOException {
+        if (parts.length == 1) {
+            return parts[0];
+        }
+
+        int totalSize = 0;
+
+        for (byte[] part : parts) {
+            totalSize += part.length;
+        }
+
+        ExtendedByteArrayDataOutput output = new ExtendedByteArrayDataOutput(totalSize);
+        new DomainStorageMerger(parts).mergeInto(output);
+
+        return output.toByteArray();
+    }
+
+    private void mergeInto(ExtendedByteArrayDataOutput output) throws IOException {
+        long numEmbeddings = 0;
+        int numberOfDomains = -1;
+
+        for (ExtendedByteArrayDataInput input : inputs) {
+            numEmbeddings += input.readLong();
+            int inputNumberOfDomains = input.readInt();
+
+            if (numberOfDomains != -1 && inputNumberOfDomains != numberOfDomains) {
+                throw new RuntimeException("Different number of " +
+                        "domains: " + numberOfDomains + " vs " + inputNumberOfDomains);
+            }
+
+            numberOfDomains = inputNumberOfDomains;
+        }
+
+        output.writeLong(numEmbeddings);
+        output.writeInt(numberOfDomains);
+
+        for (int domain = 0; domain < numberOfDomains; ++domain) {
+            mergeDomain(output);
+        }
+    }
+
+    private void mergeDomain(ExtendedByteArrayDataOutput output) throws IOException {
+        for (int i = 0; i < inputs.length; ++i) {
+            remainingEntries[i] = inputs[i].readInt();
+
+            if (remainingEntries[i] > 0) {
+                currentWordIds[i] = inputs[i].readInt();
+            }
+        }
+
+        // Number of entries is only known at the end
+        int numEntriesPos = output.getPos();
+        output.writeInt(0);
+        int numEntries = 0;
+
+        while (true) {
+            // Inputs are few (parts of a pattern), a linear scan beats a heap
+            int minWordId = 0;
+            boolean found = false;
+
+            for (int i = 0; i < inputs.length; ++i) {
+                if (remainingEntries[i] > 0 && (!found || currentWordIds[i] < minWordId)) {
+                    minWordId = currentWordIds[i];
+                    found = true;
+                }
+            }
+
+            if (!found) {
+                break;
+            }
+
+            boolean hasPointers = false;
+            int numMergedPointers = 0;
+
+            for (int i = 0; i < inputs.length; ++i) {
+                if (remainingEntries[i] == 0 || currentWordIds[i] != minWordId) {
+                    continue;
+                }
+
+                ExtendedByteArrayDataInput input = inputs[i];
+
+                if (input.readBoolean()) {
+                    hasPointers = true;
+                    numMergedPointers = mergePointers(input, numMergedPointers);
+                }
+
+                if (--remainingEntries[i] > 0) {
+                    currentWordIds[i] = input.readInt();
+                }
+            }
+
+            output.writeInt(minWordId);
+
+            if (hasPointers) {
+                output.writeBoolean(true);
+                output.writeInt(numMergedPointers);
+
+                for (int j = 0; j < numMergedPointers; ++j) {
+                    output.writeInt(mergedPointers[j]);
+                }
+            } else {
+                output.writeBoolean(false);
+            }
+
+            ++numEntries;
+        }
+
+        output.writeInt(numEntriesPos, numEntries);
+    }
+
+    /**
+     * Merges the sorted pointer list at the head of input with the first
+     * numMergedPointers of mergedPointers, dropping duplicates.
+     *
+     * @return the new number of merged pointers.
+     */
+    private int mergePointers(ExtendedByteArrayDataInput input, int numMergedPointers) throws IOException {
+        int numPointers = input.readInt();
+
+        if (tmpPointers.length < numMergedPointers + numPointers) {
+            tmpPointers = new int[Math.max(numMergedPointers + numPointers, tmpPointers.length << 1)];
+        }
+
+        int i = 0;
+        int n = 0;
+
+        for (int j = 0; j < numPointers; ++j) {
+            int pointer = input.readInt();
+
+            while (i < numMergedPointers && mergedPointers[i] < pointer) {
+                tmpPointers[n++] = mergedPointers[i++];
+            }
+
+            if (i < numMergedPointers && mergedPointers[i] == pointer) {
+                ++i;
+            }
+
+            tmpPointers[n++] = pointer;
+        }
+
+        while (i < numMergedPointers) {
+            tmpPointers[n++] = mergedPointers[i++];
+        }
+
+        int[] swap = mergedPointers;
+        mergedPointers = tmpPointers;
+        tmpPointers = swap;
+
+        return n;
+    }
+}
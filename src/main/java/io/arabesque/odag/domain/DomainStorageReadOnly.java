@@ -13,6 +13,7 @@ import io.arabesque.pattern.LabelledPatternEdge;
 import io.arabesque.pattern.Pattern;
 import io.arabesque.pattern.PatternEdge;
 import io.arabesque.pattern.PatternEdgeArrayList;
+import io.arabesque.pattern.PatternKey;
 import io.arabesque.utils.collection.IntArrayList;
 import io.arabesque.utils.collection.IntCollectionAddConsumer;
 import com.koloboke.collect.IntCollection;
@@ -24,12 +25,41 @@ import org.apache.log4j.Logger;
 import java.io.DataInput;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class DomainStorageReadOnly extends DomainStorage {
     private static final Logger LOG = Logger.getLogger(DomainEntryReadOnly.class);
 
+    public DomainStorageReadOnly() {
+    }
+
+    /**
+     * Read-only copy of a storage, the same readFields would give from its
+     * write, used when the storage is read in the same process it was built
+     * (e.g., the local execution engine).
+     *
+     * @param domainStorage storage to copy, not modified
+     */
+    public DomainStorageReadOnly(DomainStorage domainStorage) {
+        numEmbeddings = domainStorage.numEmbeddings;
+        setNumberOfDomains(domainStorage.numberOfDomains);
+
+        for (int i = 0; i < numberOfDomains; ++i) {
+            ConcurrentHashMap<Integer, DomainEntry> domainEntryMap = domainEntries.get(i);
+
+            for (Map.Entry<Integer, DomainEntry> entry : domainStorage.domainEntries.get(i).entrySet()) {
+                domainEntryMap.put(entry.getKey(), new DomainEntryReadOnly(entry.getValue()));
+            }
+        }
+        countsDirty = true;
+    }
+
     @Override
     public void readFields(DataInput dataInput) throws IOException { 
         this.clear();
@@ -530,9 +560,14 @@ public class DomainStorageReadOnly extends DomainStorage {
     }
 
     /**
-     * @Experimental
      * This reader is meant to work with single and multi-pattern odags. In the
      * former case, we provide and array of patterns with the single pattern.
+     *
+     * Only patterns that pass the computation's aggregationFilter are
+     * enumerated: a multi-pattern odag may be kept for some of its patterns
+     * only, and then it carries pointers that lead to the filtered ones.
+     * Patterns are matched through their keys (hash lookups) rather than
+     * compared one by one, since odags may pack many small patterns.
      * TODO: we could spend some time refactoring this class, its logic is
      * crucial to the system and yet it is very complicated.
      */
@@ -549,6 +584,10 @@ public class DomainStorageReadOnly extends DomainStorage {
         private final Deque<EnumerationStep> enumerationStack;
         private final HashIntSet singletonExtensionSet;
         private final Pattern[] patterns;
+        // patterns and edge prefixes (keys with no vertices) of the patterns
+        private final Set<Pattern> patternSet;
+        private final Set<PatternKey> patternPrefixes;
+        private final PatternKey reusablePrefix;
         private final Computation<Embedding> computation;
         private final int numPartitions;
 
@@ -563,7 +602,31 @@ public class DomainStorageReadOnly extends DomainStorage {
         private long numberOfEmbeddingsRead;
 
         public MultiPatternReader(Pattern[] patterns, Computation<Embedding> computation, int numPartitions, int numBlocks, int maxBlockSize) {
-            this.patterns = patterns;
+            List<Pattern> validPatterns = new ArrayList<>(patterns.length);
+
+            for (Pattern pattern : patterns) {
+                if (computation.aggregationFilter(pattern)) {
+                    validPatterns.add(pattern);
+                }
+            }
+
+            this.patterns = validPatterns.toArray(new Pattern[validPatterns.size()]);
+            this.patternSet = new HashSet<>(validPatterns);
+            this.patternPrefixes = new HashSet<>();
+
+            for (Pattern pattern : this.patterns) {
+                PatternKey prefix = new PatternKey();
+                PatternEdgeArrayList edges = pattern.getEdges();
+
+                patternPrefixes.add(prefix.copy());
+
+                for (int i = 0; i < edges.size(); ++i) {
+                    prefix.addEdge(edges.getUnchecked(i));
+                    patternPrefixes.add(prefix.copy());
+                }
+            }
+
+            reusablePrefix = new PatternKey();
             this.computation = computation;
             this.numPartitions = numPartitions;
             mainGraph = Configuration.get().getMainGraph();
@@ -639,27 +702,18 @@ public class DomainStorageReadOnly extends DomainStorage {
                     return false;
                 }
 
-                // incremental validation
+                // incremental validation: the edges so far must be a prefix
+                // of the edges of some pattern
                 reusableVertexEmbedding.addWord(wordId);
                 reusablePattern.setEmbedding (reusableVertexEmbedding);
-                boolean validForSomePattern = false;
-                for (Pattern pattern: patterns) {
-                   if (!reusablePattern.equals(pattern, reusablePattern.getNumberOfEdges()))
-                      continue;
+                reusablePrefix.set(reusablePattern.getKey());
+                reusablePrefix.setNumVertices(0);
 
-                   validForSomePattern = true;
-                   break;
-                }
-
-                if (!validForSomePattern){
+                if (!patternPrefixes.contains(reusablePrefix)) {
                    reusableVertexEmbedding.removeLastWord();
                    return false;
                 }
 
-
-                // final add word
-                //reusableVertexEmbedding.addWord(wordId);
-
             } else if (reusableEmbedding instanceof EdgeInducedEmbedding) {
                 EdgeInducedEmbedding reusableEdgeEmbedding = (EdgeInducedEmbedding) reusableEmbedding;
 
@@ -760,54 +814,14 @@ public class DomainStorageReadOnly extends DomainStorage {
 
         private boolean testCompleteEmbedding() {
             // NOTE: the following check is required when running in
-            // multi-pattern odag mode. The issue is that althought
-            // *aggregationFilter* was already performed at this point we may
-            // have chose there that the odag must be kept for other pattern but
-            // the ones being filtered. Thus some odags will carry invalid
-            // pointers with vertice labels that lead to invalid patterns.
-            if (!computation.aggregationFilter(reusableEmbedding.getPattern()))
-               return false;
-
-            boolean validForSomePattern = false;
-            for (Pattern pattern: patterns) {
-               if (reusableEmbedding.getNumVertices() != pattern.getNumberOfVertices()) {
-                  continue;
-               } else {
-                  reusablePattern.setEmbedding (reusableEmbedding);
-                  if (!reusablePattern.equals(pattern))
-                     continue;
-                   validForSomePattern = true;
-                   break;
-               }
-            }
+            // multi-pattern odag mode. The odag may have been kept for some of
+            // its patterns only, thus it carries pointers that lead to
+            // embeddings of patterns that did not pass *aggregationFilter*
+            // (excluded from patternSet).
+            reusablePattern.setEmbedding (reusableEmbedding);
 
-            if (!validForSomePattern) return false;
-
-            if (reusableEmbedding instanceof VertexInducedEmbedding) {
-                VertexInducedEmbedding reusableVertexEmbedding = (VertexInducedEmbedding) reusableEmbedding;
-
-                validForSomePattern = false;
-                for (Pattern pattern: patterns) {
-                   // Test if constructed embedding matches the pattern.
-                   // TODO: Perhaps we can do this incrementally in an efficient manner?
-                   int numEdgesPattern = pattern.getNumberOfEdges();
-                   int numEdgesEmbedding = reusableVertexEmbedding.getNumEdges();
-
-                   if (numEdgesEmbedding != numEdgesPattern) {
-                      continue;
-                   }
-                   
-                   reusablePattern.setEmbedding (reusableEmbedding);
-                   if (!reusablePattern.equals(pattern))
-                      continue;
-
-                   validForSomePattern = true;
-                   break;
-
-                }
-                if (!validForSomePattern) {
-                   return false;
-                }
+            if (!patternSet.contains(reusablePattern)) {
+               return false;
             }
 
             boolean valid = computation.filter(reusableEmbedding) && 
@@ -967,6 +981,10 @@ public class DomainStorageReadOnly extends DomainStorage {
         }
 
         public boolean moveNext() {
+            if (patterns.length == 0) {
+                return false;
+            }
+
             while (true) {
                 
                 targetEnumId = getNextEnumerationId(targetEnumId);
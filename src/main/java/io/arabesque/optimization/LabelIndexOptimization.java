@@ -0,0 +1,26 @@
+package io.arabesque.optimization;
+
+import io.arabesque.conf.Configuration;
+import io.arabesque.graph.MainGraph;
+import org.apache.log4j.Logger;
+
+public class LabelIndexOptimization extends BasicOptimization {
+    private static final Logger LOG = Logger.getLogger(LabelIndexOptimization.class);
+
+    @Override
+    public void applyAfterGraphLoad() {
+        Configuration conf = Configuration.get();
+
+        MainGraph mainGraph = conf.getMainGraph();
+
+        long start = System.currentTimeMillis();
+        conf.setMainGraph(new LabelIndexedMainGraphDecorator(mainGraph));
+
+        LOG.info("Indexed neighbourhoods by label in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    @Override
+    public String toString() {
+        return "LabelIndexOptimization";
+    }
+}
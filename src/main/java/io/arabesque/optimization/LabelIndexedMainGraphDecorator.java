@@ -0,0 +1,321 @@
+package io.arabesque.optimization;
+
+import io.arabesque.graph.Edge;
+import io.arabesque.graph.LabelIndexedMainGraph;
+import io.arabesque.graph.MainGraph;
+import io.arabesque.graph.Vertex;
+import io.arabesque.graph.VertexNeighbourhood;
+import io.arabesque.utils.collection.IntArrayList;
+import io.arabesque.utils.collection.ReclaimableIntCollection;
+import io.arabesque.utils.collection.UnmodifiableIntCollection;
+import com.koloboke.collect.IntCollection;
+import com.koloboke.collect.IntCursor;
+import com.koloboke.collect.set.IntSet;
+import com.koloboke.function.IntConsumer;
+
+import java.util.Arrays;
+
+/**
+ * Decorator that keeps, for each vertex, its neighbours and incident edges
+ * sorted by neighbour label (and id within each label) so that every label
+ * occupies a contiguous range. Ranges are located by binary search on the
+ * (sorted) distinct labels of the neighbourhood.
+ */
+public class LabelIndexedMainGraphDecorator implements LabelIndexedMainGraph {
+    private static final int[] EMPTY_ARRAY = new int[0];
+
+    protected MainGraph underlyingMainGraph;
+
+    // Distinct neighbour labels of each vertex, sorted
+    protected int[][] neighbourLabels;
+    // Neighbours of each vertex grouped by label: label neighbourLabels[v][i] spans
+    // [neighbourOffsets[v][i], neighbourOffsets[v][i + 1])
+    protected IntArrayList[] groupedNeighbours;
+    protected int[][] neighbourOffsets;
+    // Read-only views of groupedNeighbours handed out by getVertexNeighbours
+    protected IntCollection[] neighbourViews;
+    // Same for incident edges, grouped by the label of the other endpoint
+    protected int[][] groupedEdges;
+    protected int[][] edgeOffsets;
+
+    public LabelIndexedMainGraphDecorator(MainGraph underlyingMainGraph) {
+        this.underlyingMainGraph = underlyingMainGraph;
+
+        int numVertices = underlyingMainGraph.getNumberVertices();
+
+        neighbourLabels = new int[numVertices][];
+        groupedNeighbours = new IntArrayList[numVertices];
+        neighbourOffsets = new int[numVertices][];
+        neighbourViews = new IntCollection[numVertices];
+        groupedEdges = new int[numVertices][];
+        edgeOffsets = new int[numVertices][];
+
+        for (int i = 0; i < numVertices; ++i) {
+            VertexNeighbourhood neighbourhood = underlyingMainGraph.getVertexNeighbourhood(i);
+
+            if (neighbourhood == null) {
+                neighbourLabels[i] = EMPTY_ARRAY;
+                neighbourViews[i] = UnmodifiableIntCollection.EMPTY;
+                continue;
+            }
+
+            indexNeighbours(i, neighbourhood.getNeighbourVertices());
+            indexEdges(i, neighbourhood.getNeighbourEdges());
+        }
+    }
+
+    /**
+     * Packs label and id in a single long so that sorting groups by label first.
+     */
+    private static long labelledKey(int label, int id) {
+        return ((long) label << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static int labelOfKey(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int idOfKey(long key) {
+        return (int) key;
+    }
+
+    private long[] sortedKeys(IntCollection ids, boolean areEdges, int vertexId) {
+        long[] keys = new long[ids.size()];
+        IntCursor cursor = ids.cursor();
+        int i = 0;
+
+        while (cursor.moveNext()) {
+            int id = cursor.elem();
+            int neighbourId = id;
+
+            if (areEdges) {
+                Edge edge = underlyingMainGraph.getEdge(id);
+                neighbourId = edge.getSourceId() == vertexId ? edge.getDestinationId() : edge.getSourceId();
+            }
+
+            keys[i++] = labelledKey(underlyingMainGraph.getVertex(neighbourId).getVertexLabel(), id);
+        }
+
+        Arrays.sort(keys);
+
+        return keys;
+    }
+
+    private void indexNeighbours(int vertexId, IntCollection neighbours) {
+        long[] keys = sortedKeys(neighbours, false, vertexId);
+
+        IntArrayList labels = new IntArrayList();
+        IntArrayList offsets = new IntArrayList();
+        IntArrayList ids = new IntArrayList(keys.length);
+
+        for (int i = 0; i < keys.length; ++i) {
+            int label = labelOfKey(keys[i]);
+
+            if (labels.isEmpty() || labels.getLast() != label) {
+                labels.add(label);
+                offsets.add(i);
+            }
+
+            ids.add(idOfKey(keys[i]));
+        }
+
+        offsets.add(keys.length);
+
+        neighbourLabels[vertexId] = labels.toIntArray();
+        neighbourOffsets[vertexId] = offsets.toIntArray();
+        groupedNeighbours[vertexId] = ids;
+        neighbourViews[vertexId] = new UnmodifiableIntCollection(ids);
+    }
+
+    private void indexEdges(int vertexId, IntCollection edges) {
+        long[] keys = sortedKeys(edges, true, vertexId);
+
+        int[] labels = neighbourLabels[vertexId];
+        int[] offsets = new int[labels.length + 1];
+        int[] ids = new int[keys.length];
+        int labelIdx = 0;
+
+        // Edge labels are the same as the neighbour labels, only the ranges differ
+        // (multigraphs may have several edges per neighbour)
+        for (int i = 0; i < keys.length; ++i) {
+            int label = labelOfKey(keys[i]);
+
+            while (labels[labelIdx] != label) {
+                offsets[++labelIdx] = i;
+            }
+
+            ids[i] = idOfKey(keys[i]);
+        }
+
+        while (labelIdx < labels.length) {
+            offsets[++labelIdx] = keys.length;
+        }
+
+        edgeOffsets[vertexId] = offsets;
+        groupedEdges[vertexId] = ids;
+    }
+
+    private int findLabel(int vertexId, int label) {
+        return Arrays.binarySearch(neighbourLabels[vertexId], label);
+    }
+
+    @Override
+    public int getNumVertexNeighbours(int vertexId, int neighbourLabel) {
+        int labelIdx = findLabel(vertexId, neighbourLabel);
+
+        if (labelIdx < 0) {
+            return 0;
+        }
+
+        int[] offsets = neighbourOffsets[vertexId];
+
+        return offsets[labelIdx + 1] - offsets[labelIdx];
+    }
+
+    @Override
+    public void forEachVertexNeighbour(int vertexId, int neighbourLabel, IntConsumer intConsumer) {
+        int labelIdx = findLabel(vertexId, neighbourLabel);
+
+        if (labelIdx >= 0) {
+            forEachInRange(groupedNeighbours[vertexId], neighbourOffsets[vertexId], labelIdx, intConsumer);
+        }
+    }
+
+    @Override
+    public void forEachVertexNeighbour(int vertexId, IntSet neighbourLabels, IntConsumer intConsumer) {
+        int[] labels = this.neighbourLabels[vertexId];
+
+        for (int labelIdx = 0; labelIdx < labels.length; ++labelIdx) {
+            if (neighbourLabels.contains(labels[labelIdx])) {
+                forEachInRange(groupedNeighbours[vertexId], neighbourOffsets[vertexId], labelIdx, intConsumer);
+            }
+        }
+    }
+
+    @Override
+    public void forEachNeighbourEdge(int vertexId, int neighbourLabel, IntConsumer intConsumer) {
+        int labelIdx = findLabel(vertexId, neighbourLabel);
+
+        if (labelIdx >= 0) {
+            forEachInRange(groupedEdges[vertexId], edgeOffsets[vertexId], labelIdx, intConsumer);
+        }
+    }
+
+    @Override
+    public void forEachNeighbourEdge(int vertexId, IntSet neighbourLabels, IntConsumer intConsumer) {
+        int[] labels = this.neighbourLabels[vertexId];
+
+        for (int labelIdx = 0; labelIdx < labels.length; ++labelIdx) {
+            if (neighbourLabels.contains(labels[labelIdx])) {
+                forEachInRange(groupedEdges[vertexId], edgeOffsets[vertexId], labelIdx, intConsumer);
+            }
+        }
+    }
+
+    private void forEachInRange(IntArrayList ids, int[] offsets, int labelIdx, IntConsumer intConsumer) {
+        for (int i = offsets[labelIdx]; i < offsets[labelIdx + 1]; ++i) {
+            intConsumer.accept(ids.getUnchecked(i));
+        }
+    }
+
+    private void forEachInRange(int[] ids, int[] offsets, int labelIdx, IntConsumer intConsumer) {
+        for (int i = offsets[labelIdx]; i < offsets[labelIdx + 1]; ++i) {
+            intConsumer.accept(ids[i]);
+        }
+    }
+
+    @Override
+    public void reset() {
+        underlyingMainGraph.reset();
+    }
+
+    @Override
+    public boolean isNeighborVertex(int v1, int v2) {
+        return underlyingMainGraph.isNeighborVertex(v1, v2);
+    }
+
+    @Override
+    public MainGraph addVertex(Vertex vertex) {
+        return underlyingMainGraph.addVertex(vertex);
+    }
+
+    @Override
+    public Vertex[] getVertices() {
+        return underlyingMainGraph.getVertices();
+    }
+
+    @Override
+    public Vertex getVertex(int vertexId) {
+        return underlyingMainGraph.getVertex(vertexId);
+    }
+
+    @Override
+    public int getNumberVertices() {
+        return underlyingMainGraph.getNumberVertices();
+    }
+
+    @Override
+    public Edge[] getEdges() {
+        return underlyingMainGraph.getEdges();
+    }
+
+    @Override
+    public Edge getEdge(int edgeId) {
+        return underlyingMainGraph.getEdge(edgeId);
+    }
+
+    @Override
+    public int getNumberEdges() {
+        return underlyingMainGraph.getNumberEdges();
+    }
+
+    @Override
+    public ReclaimableIntCollection getEdgeIds(int v1, int v2) {
+        return underlyingMainGraph.getEdgeIds(v1, v2);
+    }
+
+    @Override
+    public MainGraph addEdge(Edge edge) {
+        return underlyingMainGraph.addEdge(edge);
+    }
+
+    @Override
+    public boolean areEdgesNeighbors(int edge1Id, int edge2Id) {
+        return underlyingMainGraph.areEdgesNeighbors(edge1Id, edge2Id);
+    }
+
+    @Override
+    public boolean isNeighborEdge(int src1, int dest1, int edge2) {
+        return underlyingMainGraph.isNeighborEdge(src1, dest1, edge2);
+    }
+
+    @Override
+    public VertexNeighbourhood getVertexNeighbourhood(int vertexId) {
+        return underlyingMainGraph.getVertexNeighbourhood(vertexId);
+    }
+
+    @Override
+    public IntCollection getVertexNeighbours(int vertexId) {
+        return neighbourViews[vertexId];
+    }
+
+    @Override
+    public boolean isEdgeLabelled() {
+        return underlyingMainGraph.isEdgeLabelled();
+    }
+
+    @Override
+    public boolean isMultiGraph() {
+        return underlyingMainGraph.isMultiGraph();
+    }
+
+    @Override
+    public void forEachEdgeId(int existingVertexId, int newVertexId, IntConsumer intConsumer) {
+        underlyingMainGraph.forEachEdgeId(existingVertexId, newVertexId, intConsumer);
+    }
+
+    @Override
+    public String toString() {
+        return underlyingMainGraph.toString();
+    }
+}
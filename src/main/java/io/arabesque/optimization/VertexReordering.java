@@ -0,0 +1,395 @@
+package io.arabesque.optimization;
+
+import io.arabesque.graph.BasicMainGraph;
+import io.arabesque.graph.Edge;
+import io.arabesque.graph.LabelledEdge;
+import io.arabesque.graph.MainGraph;
+import io.arabesque.graph.Vertex;
+import io.arabesque.graph.VertexNeighbourhood;
+import io.arabesque.utils.collection.IntArrayList;
+import com.koloboke.collect.IntCollection;
+import com.koloboke.collect.IntCursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Locality improving vertex orders and the rewriting of a main graph according
+ * to them. Orders are given as arrays where order[newId] = oldId, which is
+ * also the translation of new ids back to the input ones.
+ *
+ * All orders are deterministic so that every worker loading the graph ends up
+ * with the same ids.
+ */
+public class VertexReordering {
+    private final MainGraph mainGraph;
+    private final int numVertices;
+    private final int numThreads;
+
+    private int[] degrees;
+
+    public VertexReordering(MainGraph mainGraph, int numThreads) {
+        this.mainGraph = mainGraph;
+        this.numVertices = mainGraph.getNumberVertices();
+        this.numThreads = Math.max(numThreads, 1);
+    }
+
+    /**
+     * Runs task.run(start, end) over [0, numVertices) split in chunks among the
+     * configured number of threads.
+     */
+    private void parallelForVertices(final RangeTask task) {
+        if (numThreads == 1 || numVertices < numThreads) {
+            task.run(0, numVertices);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<Void>> futures = new ArrayList<>();
+        int chunkSize = (numVertices + numThreads - 1) / numThreads;
+
+        try {
+            for (int start = 0; start < numVertices; start += chunkSize) {
+                final int chunkStart = start;
+                final int chunkEnd = Math.min(start + chunkSize, numVertices);
+
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        task.run(chunkStart, chunkEnd);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Vertex reordering failed", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface RangeTask {
+        void run(int start, int end);
+    }
+
+    private int[] getDegrees() {
+        if (degrees == null) {
+            final int[] newDegrees = new int[numVertices];
+
+            parallelForVertices(new RangeTask() {
+                @Override
+                public void run(int start, int end) {
+                    for (int v = start; v < end; ++v) {
+                        IntCollection neighbours = mainGraph.getVertexNeighbours(v);
+                        newDegrees[v] = neighbours == null ? 0 : neighbours.size();
+                    }
+                }
+            });
+
+            degrees = newDegrees;
+        }
+
+        return degrees;
+    }
+
+    /**
+     * Neighbours of every vertex sorted by (degree, id), computed in parallel.
+     */
+    private int[][] getNeighboursByDegree() {
+        final int[] degrees = getDegrees();
+        final int[][] neighboursByDegree = new int[numVertices][];
+
+        parallelForVertices(new RangeTask() {
+            @Override
+            public void run(int start, int end) {
+                for (int v = start; v < end; ++v) {
+                    neighboursByDegree[v] = sortByDegree(mainGraph.getVertexNeighbours(v), degrees);
+                }
+            }
+        });
+
+        return neighboursByDegree;
+    }
+
+    private int[] getVerticesByDegree() {
+        IntArrayList allVertices = new IntArrayList(numVertices);
+
+        for (int v = 0; v < numVertices; ++v) {
+            allVertices.add(v);
+        }
+
+        return sortByDegree(allVertices, getDegrees());
+    }
+
+    private static int[] sortByDegree(IntCollection vertices, int[] degrees) {
+        if (vertices == null) {
+            return new int[0];
+        }
+
+        long[] keys = new long[vertices.size()];
+        IntCursor cursor = vertices.cursor();
+        int i = 0;
+
+        while (cursor.moveNext()) {
+            int u = cursor.elem();
+            keys[i++] = ((long) degrees[u] << 32) | u;
+        }
+
+        Arrays.sort(keys);
+
+        int[] sorted = new int[keys.length];
+
+        for (i = 0; i < keys.length; ++i) {
+            sorted[i] = (int) keys[i];
+        }
+
+        return sorted;
+    }
+
+    /**
+     * Reverse Cuthill-McKee: breadth-first search started from a vertex of
+     * minimum degree of each connected component, visiting neighbours by
+     * increasing degree, and reversed at the end. Neighbour lists are sorted in
+     * parallel; the traversal itself is sequential.
+     */
+    public int[] reverseCuthillMcKee() {
+        int[][] neighboursByDegree = getNeighboursByDegree();
+        int[] seeds = getVerticesByDegree();
+        int[] order = new int[numVertices];
+        boolean[] visited = new boolean[numVertices];
+        int tail = 0;
+
+        for (int seed : seeds) {
+            if (visited[seed]) {
+                continue;
+            }
+
+            int head = tail;
+            order[tail++] = seed;
+            visited[seed] = true;
+
+            while (head < tail) {
+                int v = order[head++];
+
+                for (int u : neighboursByDegree[v]) {
+                    if (!visited[u]) {
+                        visited[u] = true;
+                        order[tail++] = u;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0, j = numVertices - 1; i < j; ++i, --j) {
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+
+        return order;
+    }
+
+    /**
+     * Windowed Gorder heuristic: greedily picks as next vertex the one with
+     * the highest score w.r.t. the last window placed vertices, where a vertex
+     * scores one point per neighbour and per common neighbour in the window.
+     * Common neighbours are not counted through hubs (degree above the square
+     * root of the number of vertices) to bound the cost.
+     *
+     * The priority queue is updated lazily: score decreases are not pushed,
+     * stale entries are fixed when they are polled instead.
+     */
+    public int[] gorder(int window) {
+        final int[][] neighbours = getNeighboursByDegree();
+        final int hubDegree = (int) Math.sqrt(numVertices) + 1;
+
+        int[] order = new int[numVertices];
+        int[] scores = new int[numVertices];
+        boolean[] placed = new boolean[numVertices];
+        // Entries: -score in the upper half (so higher scores come first), vertex id in the lower one
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        int nextUnplaced = 0;
+
+        // Seed components from their highest degree vertex
+        int[] seeds = getVerticesByDegree();
+
+        for (int i = 0; i < numVertices; ++i) {
+            int v;
+            Long entry = null;
+
+            while ((entry = queue.poll()) != null) {
+                int candidate = (int) (long) entry;
+                int entryScore = (int) -(entry >> 32);
+
+                if (placed[candidate]) {
+                    continue;
+                }
+
+                if (entryScore == scores[candidate]) {
+                    break;
+                }
+
+                // Stale entry (score decreased meanwhile)
+                if (scores[candidate] > 0) {
+                    queue.add(queueEntry(scores[candidate], candidate));
+                }
+            }
+
+            if (entry != null) {
+                v = (int) (long) entry;
+            } else {
+                while (placed[seeds[numVertices - 1 - nextUnplaced]]) {
+                    ++nextUnplaced;
+                }
+
+                v = seeds[numVertices - 1 - nextUnplaced];
+            }
+
+            order[i] = v;
+            placed[v] = true;
+
+            updateScores(v, 1, neighbours, hubDegree, scores, placed, queue);
+
+            if (i >= window) {
+                updateScores(order[i - window], -1, neighbours, hubDegree, scores, placed, queue);
+            }
+        }
+
+        return order;
+    }
+
+    private static long queueEntry(int score, int vertexId) {
+        return ((long) -score << 32) | vertexId;
+    }
+
+    private void updateScores(int v, int delta, int[][] neighbours, int hubDegree,
+            int[] scores, boolean[] placed, PriorityQueue<Long> queue) {
+        for (int u : neighbours[v]) {
+            updateScore(u, delta, scores, placed, queue);
+
+            if (neighbours[u].length > hubDegree) {
+                continue;
+            }
+
+            for (int x : neighbours[u]) {
+                if (x != v) {
+                    updateScore(x, delta, scores, placed, queue);
+                }
+            }
+        }
+    }
+
+    private static void updateScore(int u, int delta, int[] scores, boolean[] placed, PriorityQueue<Long> queue) {
+        if (placed[u]) {
+            return;
+        }
+
+        scores[u] += delta;
+
+        // Decreases are handled lazily when entries are polled
+        if (delta > 0) {
+            queue.add(queueEntry(scores[u], u));
+        }
+    }
+
+    /**
+     * Rewrites the main graph so that vertex order[i] becomes vertex i. Edges
+     * are renumbered as well, following the order of their (new) smallest
+     * endpoint so that incident edges are also close in memory. Self-loops
+     * are kept.
+     */
+    public MainGraph reorder(final int[] order) {
+        final int[] newIds = new int[numVertices];
+
+        for (int newId = 0; newId < numVertices; ++newId) {
+            newIds[order[newId]] = newId;
+        }
+
+        // Edges going to higher (new) ids and self-loops, sorted by their new
+        // destination
+        final long[][] edgesOfVertex = new long[numVertices][];
+
+        parallelForVertices(new RangeTask() {
+            @Override
+            public void run(int start, int end) {
+                for (int newId = start; newId < end; ++newId) {
+                    int oldId = order[newId];
+                    VertexNeighbourhood neighbourhood = mainGraph.getVertexNeighbourhood(oldId);
+
+                    if (neighbourhood == null) {
+                        edgesOfVertex[newId] = new long[0];
+                        continue;
+                    }
+
+                    IntCollection edgeIds = neighbourhood.getNeighbourEdges();
+                    long[] keys = new long[edgeIds.size()];
+                    int numKeys = 0;
+                    IntCursor cursor = edgeIds.cursor();
+
+                    while (cursor.moveNext()) {
+                        int edgeId = cursor.elem();
+                        Edge edge = mainGraph.getEdge(edgeId);
+                        int oldNeighbourId = edge.getSourceId() == oldId ? edge.getDestinationId() : edge.getSourceId();
+                        int newNeighbourId = newIds[oldNeighbourId];
+
+                        if (newNeighbourId >= newId) {
+                            keys[numKeys++] = ((long) newNeighbourId << 32) | edgeId;
+                        }
+                    }
+
+                    Arrays.sort(keys, 0, numKeys);
+
+                    // a self-loop may be listed once per endpoint
+                    int numUniqueKeys = 0;
+
+                    for (int i = 0; i < numKeys; ++i) {
+                        if (numUniqueKeys == 0 || keys[i] != keys[numUniqueKeys - 1]) {
+                            keys[numUniqueKeys++] = keys[i];
+                        }
+                    }
+
+                    edgesOfVertex[newId] = Arrays.copyOf(keys, numUniqueKeys);
+                }
+            }
+        });
+
+        BasicMainGraph reorderedMainGraph = new BasicMainGraph(mainGraph.toString(),
+                mainGraph.isEdgeLabelled(), mainGraph.isMultiGraph());
+
+        for (int newId = 0; newId < numVertices; ++newId) {
+            Vertex vertex = mainGraph.getVertex(order[newId]);
+            reorderedMainGraph.addVertex(new Vertex(newId, vertex.getVertexLabel()));
+        }
+
+        for (int newId = 0; newId < numVertices; ++newId) {
+            for (long key : edgesOfVertex[newId]) {
+                int newNeighbourId = (int) (key >> 32);
+                Edge edge = mainGraph.getEdge((int) key);
+
+                if (edge instanceof LabelledEdge) {
+                    reorderedMainGraph.addEdge(new LabelledEdge(newId, newNeighbourId,
+                            ((LabelledEdge) edge).getEdgeLabel()));
+                } else {
+                    reorderedMainGraph.addEdge(new Edge(newId, newNeighbourId));
+                }
+            }
+
+            edgesOfVertex[newId] = null;
+        }
+
+        reorderedMainGraph.compactNeighbourhoodsLike(mainGraph);
+
+        return reorderedMainGraph;
+    }
+}
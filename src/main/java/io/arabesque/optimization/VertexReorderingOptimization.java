@@ -0,0 +1,85 @@
+package io.arabesque.optimization;
+
+import io.arabesque.computation.BasicComputation;
+import io.arabesque.computation.Computation;
+import io.arabesque.conf.Configuration;
+import io.arabesque.graph.MainGraph;
+import org.apache.log4j.Logger;
+
+/**
+ * Renumbers the vertices of the main graph right after loading so that
+ * neighbours get close ids, improving the cache behaviour of adjacency probes
+ * (isNeighborVertex, forEachEdgeId) during the exploration. Outputs are
+ * translated back to the input ids through
+ * {@link Configuration#getOriginalVertexIds()}. Aggregations are not, so the
+ * graph is left as it is for computations whose aggregations hold vertex ids
+ * (see {@link BasicComputation#aggregatesVertexIds()}).
+ *
+ * Should be listed before any optimization that decorates the main graph,
+ * since the graph is rebuilt from scratch.
+ */
+public class VertexReorderingOptimization extends BasicOptimization {
+    private static final Logger LOG = Logger.getLogger(VertexReorderingOptimization.class);
+
+    public static final String CONF_REORDERING = "arabesque.graph.reordering";
+    public static final String CONF_REORDERING_DEFAULT = "rcm";
+    public static final String CONF_REORDERING_WINDOW = "arabesque.graph.reordering.window";
+    public static final int CONF_REORDERING_WINDOW_DEFAULT = 5;
+    public static final String CONF_REORDERING_THREADS = "arabesque.graph.reordering.threads";
+
+    @Override
+    public void applyAfterGraphLoad() {
+        Configuration conf = Configuration.get();
+
+        Computation<?> computation = conf.createComputation();
+
+        if (computation instanceof BasicComputation &&
+                ((BasicComputation<?>) computation).aggregatesVertexIds()) {
+            LOG.warn("Vertex reordering skipped: aggregations of " +
+                    computation.getClass().getSimpleName() + " hold vertex ids");
+            return;
+        }
+
+        MainGraph mainGraph = conf.getMainGraph();
+        String method = conf.getString(CONF_REORDERING, CONF_REORDERING_DEFAULT);
+        int numThreads = conf.getInteger(CONF_REORDERING_THREADS, Runtime.getRuntime().availableProcessors());
+
+        long start = System.currentTimeMillis();
+        VertexReordering reordering = new VertexReordering(mainGraph, numThreads);
+        int[] order;
+
+        switch (method) {
+            case "rcm":
+                order = reordering.reverseCuthillMcKee();
+                break;
+            case "gorder":
+                order = reordering.gorder(conf.getInteger(CONF_REORDERING_WINDOW, CONF_REORDERING_WINDOW_DEFAULT));
+                break;
+            default:
+                throw new RuntimeException("Unknown vertex reordering: " + method);
+        }
+
+        long orderTime = System.currentTimeMillis() - start;
+
+        conf.setMainGraph(reordering.reorder(order));
+
+        // Compose with a previous reordering, if any
+        int[] previousOriginalVertexIds = conf.getOriginalVertexIds();
+
+        if (previousOriginalVertexIds != null) {
+            for (int i = 0; i < order.length; ++i) {
+                order[i] = previousOriginalVertexIds[order[i]];
+            }
+        }
+
+        conf.setOriginalVertexIds(order);
+
+        LOG.info("Reordered vertices with " + method + " in " + orderTime + "ms (+" +
+                (System.currentTimeMillis() - start - orderTime) + "ms rewriting the graph)");
+    }
+
+    @Override
+    public String toString() {
+        return "VertexReorderingOptimization";
+    }
+}
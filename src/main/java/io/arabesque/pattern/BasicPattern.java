@@ -17,9 +17,6 @@ import org.apache.log4j.Logger;
 
 import java.io.*;
 
-// TODO: use murmur hash to do pattern hashing
-//import com.google.common.hash.Hashing;
-
 public abstract class BasicPattern implements Pattern {
     private static final Logger LOG = Logger.getLogger(BasicPattern.class);
 
@@ -30,6 +27,8 @@ public abstract class BasicPattern implements Pattern {
     private PatternEdgeArrayList edges;
     // K = vertex id, V = vertex position
     private IntIntMap vertexPositions;
+    // Packed copy of the above, kept in sync for hashing and serialization
+    private PatternKey key;
     // }}
 
     // Incremental building {{
@@ -60,6 +59,7 @@ public abstract class BasicPattern implements Pattern {
         vertices = new IntArrayList();
         edges = createPatternEdgeArrayList();
         vertexPositions = positionMapFactory.newMutableMap();
+        key = new PatternKey();
         previousWords = new IntArrayList();
 
         init();
@@ -78,6 +78,7 @@ public abstract class BasicPattern implements Pattern {
         }
 
         vertexPositions.putAll(basicPattern.vertexPositions);
+        key.set(basicPattern.key);
     }
 
     protected void init() {
@@ -90,6 +91,7 @@ public abstract class BasicPattern implements Pattern {
         patternEdgePool.reclaimObjects(edges);
         edges.clear();
         vertexPositions.clear();
+        key.clear();
 
         setDirty();
 
@@ -179,6 +181,8 @@ public abstract class BasicPattern implements Pattern {
         for (int i = edges.size() - 1; i >= targetI; --i) {
             patternEdgePool.reclaimObject(edges.remove(i));
         }
+
+        key.removeLastEdges(n);
     }
 
     private void removeLastNVertices(int n) {
@@ -196,6 +200,7 @@ public abstract class BasicPattern implements Pattern {
         }
 
         vertices.removeLast(n);
+        key.setNumVertices(vertices.size());
     }
 
     /**
@@ -301,6 +306,7 @@ public abstract class BasicPattern implements Pattern {
         }
 
         edges.add(edge);
+        key.addEdge(edge);
 
         setDirty();
 
@@ -314,6 +320,7 @@ public abstract class BasicPattern implements Pattern {
             pos = vertices.size();
             vertices.add(vertexId);
             vertexPositions.put(vertexId, pos);
+            key.setNumVertices(vertices.size());
             setDirty();
         }
 
@@ -408,6 +415,7 @@ public abstract class BasicPattern implements Pattern {
 
         if (allEqual) {
             edges.sort();
+            key.setFromEdges(vertices.size(), edges);
             return false;
         }
 
@@ -452,13 +460,14 @@ public abstract class BasicPattern implements Pattern {
         }
 
         edges.sort();
+        key.setFromEdges(vertices.size(), edges);
 
         return true;
     }
 
     @Override
     public void write(DataOutput dataOutput) throws IOException {
-        edges.write(dataOutput);
+        key.write(dataOutput);
         vertices.write(dataOutput);
     }
 
@@ -471,7 +480,17 @@ public abstract class BasicPattern implements Pattern {
     public void readFields(DataInput dataInput) throws IOException {
         reset();
 
-        edges.readFields(dataInput);
+        key.readFields(dataInput);
+
+        int numEdges = key.getNumEdges();
+        edges.ensureCapacity(numEdges);
+
+        for (int i = 0; i < numEdges; ++i) {
+            PatternEdge edge = patternEdgePool.createObject();
+            key.getEdge(i, edge);
+            edges.add(edge);
+        }
+
         vertices.readFields(dataInput);
 
         for (int i = 0; i < vertices.size(); ++i) {
@@ -530,8 +549,7 @@ public abstract class BasicPattern implements Pattern {
 
         BasicPattern that = (BasicPattern) o;
 
-        return edges.equals(that.edges);
-
+        return key.equals(that.key);
     }
 
     public boolean equals(Object o, int upTo) {
@@ -553,9 +571,12 @@ public abstract class BasicPattern implements Pattern {
 
     @Override
     public int hashCode() {
-       // TODO
-        return //edges.isEmpty() ? mainGraph.getVertex(vertices.getUnchecked(0)).getVertexLabel() :
-           edges.hashCode();
+        return key.hashCode();
+    }
+
+    @Override
+    public PatternKey getKey() {
+        return key;
     }
 
     public MainGraph getMainGraph() {
@@ -33,6 +33,12 @@ public interface Pattern extends Writable, Externalizable {
     IntIntMap getCanonicalLabeling();
 
     String toOutputString();
+
+    /**
+     * Packed form of this pattern, kept up to date as the pattern changes.
+     * Copy it before storing it anywhere.
+     */
+    PatternKey getKey();
    
     ////////
     boolean equals(Object o, int upTo);
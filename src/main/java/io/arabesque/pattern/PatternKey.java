@@ -0,0 +1,230 @@
+package io.arabesque.pattern;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Compact representation of a pattern: its number of vertices followed by its
+ * edges packed as primitive ints, with a cached hash. Used as the key of maps
+ * indexed by pattern (so lookups do not walk PatternEdge objects) and as the
+ * wire format of patterns.
+ *
+ * Layout: [numVertices, numEdges, edge_0, ..., edge_n] where every edge takes
+ * (srcPos << 16 | destPos), srcLabel, destLabel and, for labelled edges, the
+ * edge label.
+ */
+public class PatternKey implements Writable, Externalizable {
+    private static final int HEADER_SIZE = 2;
+    private static final int POS_BITS = 16;
+    private static final int POS_MASK = (1 << POS_BITS) - 1;
+
+    private int[] data;
+    private int size;
+    private int edgeSize;
+
+    // 0 when not computed yet, like String.hashCode
+    private int hash;
+
+    public PatternKey() {
+        data = new int[HEADER_SIZE + 4 * 4];
+        clear();
+    }
+
+    public PatternKey(PatternKey other) {
+        data = Arrays.copyOf(other.data, other.size);
+        size = other.size;
+        edgeSize = other.edgeSize;
+        hash = other.hash;
+    }
+
+    public PatternKey copy() {
+        return new PatternKey(this);
+    }
+
+    public void set(PatternKey other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.data, 0, data, 0, other.size);
+        size = other.size;
+        edgeSize = other.edgeSize;
+        hash = other.hash;
+    }
+
+    public void clear() {
+        data[0] = 0;
+        data[1] = 0;
+        size = HEADER_SIZE;
+        edgeSize = 0;
+        hash = 0;
+    }
+
+    public int getNumVertices() {
+        return data[0];
+    }
+
+    public void setNumVertices(int numVertices) {
+        data[0] = numVertices;
+        hash = 0;
+    }
+
+    public int getNumEdges() {
+        return data[1];
+    }
+
+    public void addEdge(PatternEdge edge) {
+        int newEdgeSize = edge instanceof LabelledPatternEdge ? 4 : 3;
+
+        if (edgeSize != 0 && edgeSize != newEdgeSize) {
+            throw new IllegalArgumentException("Mixing labelled and unlabelled pattern edges");
+        }
+
+        edgeSize = newEdgeSize;
+        ensureCapacity(size + edgeSize);
+
+        data[size++] = (edge.getSrcPos() << POS_BITS) | edge.getDestPos();
+        data[size++] = edge.getSrcLabel();
+        data[size++] = edge.getDestLabel();
+
+        if (edgeSize == 4) {
+            data[size++] = ((LabelledPatternEdge) edge).getLabel();
+        }
+
+        ++data[1];
+        hash = 0;
+    }
+
+    public void removeLastEdges(int n) {
+        if (n <= 0) {
+            return;
+        }
+
+        data[1] -= n;
+        size -= n * edgeSize;
+
+        if (data[1] == 0) {
+            edgeSize = 0;
+        }
+
+        hash = 0;
+    }
+
+    /**
+     * Rebuilds the key from scratch, used after edges are reordered or
+     * relabelled in place.
+     */
+    public void setFromEdges(int numVertices, PatternEdgeArrayList edges) {
+        clear();
+        setNumVertices(numVertices);
+
+        for (int i = 0; i < edges.size(); ++i) {
+            addEdge(edges.getUnchecked(i));
+        }
+    }
+
+    /**
+     * Fills edge with the contents of the i-th packed edge.
+     */
+    public void getEdge(int i, PatternEdge edge) {
+        int offset = HEADER_SIZE + i * edgeSize;
+        int positions = data[offset];
+
+        edge.setSrcPos(positions >>> POS_BITS);
+        edge.setDestPos(positions & POS_MASK);
+        edge.setSrcLabel(data[offset + 1]);
+        edge.setDestLabel(data[offset + 2]);
+
+        if (edge instanceof LabelledPatternEdge) {
+            ((LabelledPatternEdge) edge).setLabel(edgeSize == 4 ? data[offset + 3] : 0);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length << 1));
+        }
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        WritableUtils.writeVInt(dataOutput, data[0]);
+        WritableUtils.writeVInt(dataOutput, data[1]);
+        WritableUtils.writeVInt(dataOutput, edgeSize);
+
+        for (int i = HEADER_SIZE; i < size; ++i) {
+            WritableUtils.writeVInt(dataOutput, data[i]);
+        }
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput objOutput) throws IOException {
+        write(objOutput);
+    }
+
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        clear();
+
+        data[0] = WritableUtils.readVInt(dataInput);
+        data[1] = WritableUtils.readVInt(dataInput);
+        edgeSize = WritableUtils.readVInt(dataInput);
+
+        int newSize = HEADER_SIZE + data[1] * edgeSize;
+        ensureCapacity(newSize);
+
+        for (int i = HEADER_SIZE; i < newSize; ++i) {
+            data[i] = WritableUtils.readVInt(dataInput);
+        }
+
+        size = newSize;
+        hash = 0;
+    }
+
+    @Override
+    public void readExternal(ObjectInput objInput) throws IOException, ClassNotFoundException {
+        readFields(objInput);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PatternKey that = (PatternKey) o;
+
+        if (size != that.size || hashCode() != that.hashCode()) {
+            return false;
+        }
+
+        for (int i = 0; i < size; ++i) {
+            if (data[i] != that.data[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = hash;
+
+        if (result == 0) {
+            result = 1;
+
+            for (int i = 0; i < size; ++i) {
+                result = 31 * result + data[i];
+            }
+
+            hash = result;
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PatternKey{" + Arrays.toString(Arrays.copyOf(data, size)) + "}";
+    }
+}
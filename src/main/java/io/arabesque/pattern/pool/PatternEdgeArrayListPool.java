@@ -6,6 +6,10 @@ import io.arabesque.utils.Factory;
 import io.arabesque.utils.pool.CollectionPool;
 
 public class PatternEdgeArrayListPool extends CollectionPool<PatternEdgeArrayList> {
+    // list object and its backing array of 16 references (edges are reclaimed
+    // to the PatternEdgePool)
+    private static final int OBJECT_BYTES = 112;
+
     private static final Factory<PatternEdgeArrayList> factory = new BasicFactory<PatternEdgeArrayList>() {
         @Override
         public PatternEdgeArrayList createObject() {
@@ -18,7 +22,7 @@ public class PatternEdgeArrayListPool extends CollectionPool<PatternEdgeArrayLis
     }
 
     public PatternEdgeArrayListPool() {
-        super(factory);
+        super(factory, MAX_SIZE_DEFAULT, OBJECT_BYTES);
     }
 
     @Override
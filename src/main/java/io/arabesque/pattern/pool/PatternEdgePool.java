@@ -8,13 +8,15 @@ import io.arabesque.utils.Factory;
 import io.arabesque.utils.pool.Pool;
 
 public class PatternEdgePool extends Pool<PatternEdge> {
+    // object header and four ints, five with edge labels
+    private static final int OBJECT_BYTES = 40;
 
     public static PatternEdgePool instance() {
         return PatternEdgePoolHolder.INSTANCE;
     }
 
     public PatternEdgePool(Factory<PatternEdge> factory) {
-        super(factory);
+        super(factory, MAX_SIZE_DEFAULT, OBJECT_BYTES);
     }
 
     private static class PatternEdgeFactory extends BasicFactory<PatternEdge> {
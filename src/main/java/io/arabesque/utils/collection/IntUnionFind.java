@@ -0,0 +1,95 @@
+package io.arabesque.utils.collection;
+
+import java.util.Arrays;
+
+/**
+ * Union-find (disjoint sets) over dense ids 0..size()-1, backed by int arrays.
+ * Finds compress paths (path halving) and unions link by rank, thus any
+ * sequence of operations takes nearly constant amortized time per operation.
+ */
+public class IntUnionFind {
+    private static final int INITIAL_SIZE = 16;
+
+    private int[] parents;
+    private int[] ranks;
+    private int numElements;
+
+    public IntUnionFind() {
+        this(INITIAL_SIZE);
+    }
+
+    public IntUnionFind(int capacity) {
+        parents = new int[Math.max(capacity, 1)];
+        ranks = new int[parents.length];
+        numElements = 0;
+    }
+
+    public int size() {
+        return numElements;
+    }
+
+    /**
+     * Adds a new singleton set.
+     *
+     * @return the id of its (only) element
+     */
+    public int add() {
+        if (numElements == parents.length) {
+            int newCapacity = parents.length << 1;
+            parents = Arrays.copyOf(parents, newCapacity);
+            ranks = Arrays.copyOf(ranks, newCapacity);
+        }
+
+        parents[numElements] = numElements;
+        ranks[numElements] = 0;
+
+        return numElements++;
+    }
+
+    /**
+     * @return the root (representative) of the set element i belongs to
+     */
+    public int find(int i) {
+        int parent = parents[i];
+
+        while (parent != i) {
+            int grandParent = parents[parent];
+            parents[i] = grandParent;
+            i = grandParent;
+            parent = parents[i];
+        }
+
+        return i;
+    }
+
+    /**
+     * Merges the sets elements i and j belong to.
+     *
+     * @return the root of the merged set
+     */
+    public int union(int i, int j) {
+        int rooti = find(i);
+        int rootj = find(j);
+
+        if (rooti == rootj) {
+            return rooti;
+        }
+
+        if (ranks[rooti] < ranks[rootj]) {
+            parents[rooti] = rootj;
+            return rootj;
+        }
+
+        parents[rootj] = rooti;
+
+        if (ranks[rooti] == ranks[rootj]) {
+            ++ranks[rooti];
+        }
+
+        return rooti;
+    }
+
+    public void clear() {
+        numElements = 0;
+    }
+}
@@ -0,0 +1,224 @@
+package io.arabesque.utils.collection;
+
+import com.koloboke.collect.IntCollection;
+import com.koloboke.collect.IntCursor;
+import com.koloboke.collect.IntIterator;
+import com.koloboke.function.IntConsumer;
+import com.koloboke.function.IntPredicate;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+
+/**
+ * Read-only view of an IntCollection, for collections owned by someone else
+ * (e.g. the neighbourhoods of a main graph) that are handed out to callers.
+ * Reads go to the underlying collection, so the view reflects its changes;
+ * mutators throw UnsupportedOperationException.
+ */
+public class UnmodifiableIntCollection implements IntCollection {
+    public static final UnmodifiableIntCollection EMPTY =
+            new UnmodifiableIntCollection(new IntArrayList(0));
+
+    private final IntCollection underlyingCollection;
+
+    public UnmodifiableIntCollection(IntCollection underlyingCollection) {
+        this.underlyingCollection = underlyingCollection;
+    }
+
+    @Override
+    public int size() {
+        return underlyingCollection.size();
+    }
+
+    @Override
+    public long sizeAsLong() {
+        return underlyingCollection.sizeAsLong();
+    }
+
+    @Override
+    public boolean ensureCapacity(long l) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean shrink() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return underlyingCollection.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return underlyingCollection.contains(o);
+    }
+
+    @Override
+    public boolean contains(int i) {
+        return underlyingCollection.contains(i);
+    }
+
+    @Nonnull
+    @Override
+    public Object[] toArray() {
+        return underlyingCollection.toArray();
+    }
+
+    @Nonnull
+    @Override
+    public <T> T[] toArray(@Nonnull T[] ts) {
+        return underlyingCollection.toArray(ts);
+    }
+
+    @Nonnull
+    @Override
+    public int[] toIntArray() {
+        return underlyingCollection.toIntArray();
+    }
+
+    @Nonnull
+    @Override
+    public int[] toArray(@Nonnull int[] ints) {
+        return underlyingCollection.toArray(ints);
+    }
+
+    private static class UnmodifiableIntCursor implements IntCursor {
+        private final IntCursor underlyingCursor;
+
+        public UnmodifiableIntCursor(IntCursor underlyingCursor) {
+            this.underlyingCursor = underlyingCursor;
+        }
+
+        @Override
+        public void forEachForward(@Nonnull IntConsumer intConsumer) {
+            underlyingCursor.forEachForward(intConsumer);
+        }
+
+        @Override
+        public int elem() {
+            return underlyingCursor.elem();
+        }
+
+        @Override
+        public boolean moveNext() {
+            return underlyingCursor.moveNext();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public IntCursor cursor() {
+        return new UnmodifiableIntCursor(underlyingCollection.cursor());
+    }
+
+    private static class UnmodifiableIntIterator implements IntIterator {
+        private final IntIterator underlyingIterator;
+
+        public UnmodifiableIntIterator(IntIterator underlyingIterator) {
+            this.underlyingIterator = underlyingIterator;
+        }
+
+        @Override
+        public int nextInt() {
+            return underlyingIterator.nextInt();
+        }
+
+        @Override
+        public void forEachRemaining(@Nonnull IntConsumer intConsumer) {
+            underlyingIterator.forEachRemaining(intConsumer);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return underlyingIterator.hasNext();
+        }
+
+        @Override
+        public Integer next() {
+            return underlyingIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public IntIterator iterator() {
+        return new UnmodifiableIntIterator(underlyingCollection.iterator());
+    }
+
+    @Override
+    public void forEach(@Nonnull IntConsumer intConsumer) {
+        underlyingCollection.forEach(intConsumer);
+    }
+
+    @Override
+    public boolean forEachWhile(@Nonnull IntPredicate intPredicate) {
+        return underlyingCollection.forEachWhile(intPredicate);
+    }
+
+    @Override
+    public boolean add(@Nonnull Integer integer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean add(int i) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsAll(@Nonnull Collection<?> c) {
+        return underlyingCollection.containsAll(c);
+    }
+
+    @Override
+    public boolean addAll(@Nonnull Collection<? extends Integer> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(@Nonnull Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(@Nonnull Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeInt(int i) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeIf(@Nonnull IntPredicate intPredicate) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return underlyingCollection.toString();
+    }
+}
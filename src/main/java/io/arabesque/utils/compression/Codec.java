@@ -0,0 +1,22 @@
+package io.arabesque.utils.compression;
+
+/**
+ * Block compression codec. Compressed blocks do not record their codec nor
+ * their uncompressed size: whoever stores them must keep both (see
+ * {@link Codecs#forId(byte)}).
+ */
+public interface Codec {
+    /**
+     * Identifier stored next to compressed blocks, unique among codecs.
+     */
+    byte getId();
+
+    int maxCompressedLength(int length);
+
+    /**
+     * @return the compressed length.
+     */
+    int compress(byte[] src, int srcLength, byte[] dest);
+
+    void decompress(byte[] src, int srcLength, byte[] dest, int destLength);
+}
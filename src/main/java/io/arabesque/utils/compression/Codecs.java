@@ -0,0 +1,80 @@
+package io.arabesque.utils.compression;
+
+import org.apache.giraph.utils.ExtendedByteArrayDataOutput;
+
+/**
+ * Codec lookup by name (configuration) or id (stored blocks) and helpers to
+ * compress and decompress ExtendedByteArrayDataOutput buffers.
+ *
+ * Names: none, lz4, lz4hc[:level], deflate[:level].
+ */
+public class Codecs {
+    public static final Codec NONE = new NoCodec();
+    public static final Codec LZ4 = new LZ4Codec();
+
+    private static final Codec[] DECOMPRESSORS = new Codec[] {
+            NONE,
+            LZ4,
+            new LZ4Codec(true, LZ4Codec.HC_LEVEL_DEFAULT),
+            new DeflateCodec(DeflateCodec.LEVEL_DEFAULT)
+    };
+
+    public static Codec forName(String name) {
+        String[] nameAndLevel = name.trim().toLowerCase().split(":");
+        String codecName = nameAndLevel[0];
+        Integer level = nameAndLevel.length > 1 ? Integer.parseInt(nameAndLevel[1]) : null;
+
+        switch (codecName) {
+            case "none":
+                return NONE;
+            case "lz4":
+                return LZ4;
+            case "lz4hc":
+                return new LZ4Codec(true, level != null ? level : LZ4Codec.HC_LEVEL_DEFAULT);
+            case "deflate":
+                return new DeflateCodec(level != null ? level : DeflateCodec.LEVEL_DEFAULT);
+            default:
+                throw new RuntimeException("Unknown compression codec: " + name);
+        }
+    }
+
+    /**
+     * Codec able to decompress blocks written by the codec with the given id.
+     * Levels only matter when compressing.
+     */
+    public static Codec forId(byte id) {
+        if (id < 0 || id >= DECOMPRESSORS.length) {
+            throw new RuntimeException("Unknown compression codec id: " + id);
+        }
+
+        return DECOMPRESSORS[id];
+    }
+
+    /**
+     * @return data itself with NONE, a new buffer with the compressed contents
+     * otherwise.
+     */
+    public static ExtendedByteArrayDataOutput compress(Codec codec, ExtendedByteArrayDataOutput data) {
+        if (codec.getId() == NoCodec.ID) {
+            return data;
+        }
+
+        int uncompressedSize = data.getPos();
+        byte[] compressed = new byte[codec.maxCompressedLength(uncompressedSize)];
+        int compressedLength = codec.compress(data.getByteArray(), uncompressedSize, compressed);
+
+        return new ExtendedByteArrayDataOutput(compressed, compressedLength);
+    }
+
+    public static ExtendedByteArrayDataOutput decompress(byte codecId, ExtendedByteArrayDataOutput data,
+            int uncompressedSize) {
+        if (codecId == NoCodec.ID) {
+            return data;
+        }
+
+        byte[] decompressed = new byte[uncompressedSize];
+        forId(codecId).decompress(data.getByteArray(), data.getPos(), decompressed, uncompressedSize);
+
+        return new ExtendedByteArrayDataOutput(decompressed, uncompressedSize);
+    }
+}
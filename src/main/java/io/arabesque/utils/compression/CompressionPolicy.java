@@ -0,0 +1,89 @@
+package io.arabesque.utils.compression;
+
+import org.apache.giraph.utils.ExtendedByteArrayDataOutput;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Codec choice for one data path (caches, ODAG parts...). In adaptive mode
+ * the codec is only used while it pays off: every samplePeriod-th block is
+ * compressed regardless, and if its ratio (uncompressed / compressed size) is
+ * below the threshold the following blocks are stored uncompressed until the
+ * next sample.
+ *
+ * Configured as "[adaptive:]codec", e.g. "lz4", "adaptive:deflate:6".
+ * Thread-safe; shared by every writer of the data path in the JVM.
+ */
+public class CompressionPolicy {
+    private static final Logger LOG = Logger.getLogger(CompressionPolicy.class);
+
+    private static final String ADAPTIVE_PREFIX = "adaptive:";
+
+    private final String dataPath;
+    private final Codec codec;
+    private final boolean adaptive;
+    private final double minRatio;
+    private final int samplePeriod;
+
+    private final AtomicLong numBlocks;
+    private volatile boolean disabled;
+
+    public CompressionPolicy(String dataPath, String spec, double minRatio, int samplePeriod) {
+        this.dataPath = dataPath;
+        this.adaptive = spec.startsWith(ADAPTIVE_PREFIX);
+        this.codec = Codecs.forName(adaptive ? spec.substring(ADAPTIVE_PREFIX.length()) : spec);
+        this.minRatio = minRatio;
+        this.samplePeriod = Math.max(samplePeriod, 1);
+        this.numBlocks = new AtomicLong(0);
+        this.disabled = false;
+    }
+
+    /**
+     * Codec to use for the next block; its id must be stored with the block.
+     */
+    public Codec nextCodec() {
+        if (!adaptive) {
+            return codec;
+        }
+
+        long blockNumber = numBlocks.getAndIncrement();
+
+        if (disabled && blockNumber % samplePeriod != 0) {
+            return Codecs.NONE;
+        }
+
+        return codec;
+    }
+
+    /**
+     * Compresses data with a codec obtained from {@link #nextCodec()},
+     * feeding the ratio sampling of adaptive mode.
+     */
+    public ExtendedByteArrayDataOutput compress(Codec blockCodec, ExtendedByteArrayDataOutput data) {
+        int uncompressedSize = data.getPos();
+        ExtendedByteArrayDataOutput compressed = Codecs.compress(blockCodec, data);
+
+        if (adaptive && blockCodec != Codecs.NONE && uncompressedSize > 0) {
+            double ratio = (double) uncompressedSize / Math.max(compressed.getPos(), 1);
+            boolean shouldDisable = ratio < minRatio;
+
+            if (shouldDisable != disabled) {
+                LOG.info("Compression of " + dataPath + " with " + codec + " " +
+                        (shouldDisable ? "disabled" : "enabled") + " (ratio " + ratio + ")");
+                disabled = shouldDisable;
+            }
+        }
+
+        return compressed;
+    }
+
+    public boolean isCompressing() {
+        return codec != Codecs.NONE;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionPolicy{" + dataPath + "=" + (adaptive ? ADAPTIVE_PREFIX : "") + codec + "}";
+    }
+}
@@ -0,0 +1,58 @@
+package io.arabesque.utils.compression;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * LZ4, either the fast compressor or the high compression (HC) one with a
+ * given level. Both produce the same format and share the decompressor.
+ */
+public class LZ4Codec implements Codec {
+    public static final byte ID_FAST = 1;
+    public static final byte ID_HC = 2;
+    public static final int HC_LEVEL_DEFAULT = 9;
+
+    private final byte id;
+    private final int level;
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+
+    public LZ4Codec() {
+        this(false, 0);
+    }
+
+    public LZ4Codec(boolean highCompression, int level) {
+        LZ4Factory lz4factory = LZ4Factory.fastestInstance();
+
+        this.id = highCompression ? ID_HC : ID_FAST;
+        this.level = level;
+        this.compressor = highCompression ? lz4factory.highCompressor(level) : lz4factory.fastCompressor();
+        this.decompressor = lz4factory.fastDecompressor();
+    }
+
+    @Override
+    public byte getId() {
+        return id;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return compressor.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(byte[] src, int srcLength, byte[] dest) {
+        return compressor.compress(src, 0, srcLength, dest, 0, dest.length);
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcLength, byte[] dest, int destLength) {
+        decompressor.decompress(src, 0, dest, 0, destLength);
+    }
+
+    @Override
+    public String toString() {
+        return id == ID_HC ? "lz4hc:" + level : "lz4";
+    }
+}
@@ -0,0 +1,34 @@
+package io.arabesque.utils.compression;
+
+/**
+ * Stores blocks as they are. {@link Codecs} special-cases it to avoid copies.
+ */
+public class NoCodec implements Codec {
+    public static final byte ID = 0;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcLength, byte[] dest) {
+        System.arraycopy(src, 0, dest, 0, srcLength);
+        return srcLength;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcLength, byte[] dest, int destLength) {
+        System.arraycopy(src, 0, dest, 0, destLength);
+    }
+
+    @Override
+    public String toString() {
+        return "none";
+    }
+}
@@ -13,6 +13,10 @@ public class CollectionPool<O extends Collection> extends Pool<O> {
         super(objectFactory, maxSize);
     }
 
+    public CollectionPool(Factory<O> objectFactory, int maxSize, int objectBytes) {
+        super(objectFactory, maxSize, objectBytes);
+    }
+
     private class ObjCollectionReclaimer extends ObjReclaimer {
         @Override
         public void accept(O o) {
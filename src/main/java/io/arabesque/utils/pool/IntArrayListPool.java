@@ -5,6 +5,10 @@ import io.arabesque.utils.Factory;
 import io.arabesque.utils.collection.IntArrayList;
 
 public class IntArrayListPool extends CollectionPool<IntArrayList> {
+    // list object and its backing array of 16 ints, lists that grew keep
+    // larger ones
+    private static final int OBJECT_BYTES = 112;
+
     private static final Factory<IntArrayList> factory = new BasicFactory<IntArrayList>() {
         @Override
         public IntArrayList createObject() {
@@ -17,7 +21,7 @@ public class IntArrayListPool extends CollectionPool<IntArrayList> {
     }
 
     public IntArrayListPool() {
-        super(factory);
+        super(factory, MAX_SIZE_DEFAULT, OBJECT_BYTES);
     }
 
     /*
@@ -6,6 +6,10 @@ import com.koloboke.collect.set.IntSet;
 import com.koloboke.collect.set.hash.HashIntSets;
 
 public class IntSetPool extends CollectionPool<IntSet> {
+    // set object and the int table of a default hash set, sets that grew keep
+    // larger ones
+    private static final int OBJECT_BYTES = 160;
+
     private static final Factory<IntSet> factory = new BasicFactory<IntSet>() {
         @Override
         public IntSet createObject() {
@@ -18,7 +22,7 @@ public class IntSetPool extends CollectionPool<IntSet> {
     }
 
     public IntSetPool() {
-        super(factory);
+        super(factory, MAX_SIZE_DEFAULT, OBJECT_BYTES);
     }
 
     /*
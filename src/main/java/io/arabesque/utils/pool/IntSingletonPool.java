@@ -5,12 +5,15 @@ import io.arabesque.utils.Factory;
 import io.arabesque.utils.collection.IntSingleton;
 
 public class IntSingletonPool extends Pool<IntSingleton> {
+    // object header and an int
+    private static final int OBJECT_BYTES = 16;
+
     public static IntSingletonPool instance() {
         return IntSingletonPoolHolder.INSTANCE;
     }
 
     public IntSingletonPool(Factory<IntSingleton> factory) {
-        super(factory);
+        super(factory, MAX_SIZE_DEFAULT, OBJECT_BYTES);
     }
 
 
@@ -5,22 +5,58 @@ import io.arabesque.utils.collection.ObjArrayList;
 import io.arabesque.utils.collection.ReclaimableObjCollection;
 import com.koloboke.function.Consumer;
 
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of reusable objects. Each thread takes objects from and reclaims them
+ * to its own magazine of up to maxSize objects. A thread that fills its
+ * magazine hands it to a depot shared by all threads and starts an empty one,
+ * and a thread that runs out of objects takes a full magazine from the depot.
+ * This way objects that are created by one thread and reclaimed by another
+ * flow back to the threads that need them. The magazine of a thread is only
+ * referenced by that thread, so its objects are collected once it finishes.
+ *
+ * The magazines kept by the depots of all pools are bounded in bytes, see
+ * {@link PoolRegistry#setMaxBytes(long)}. Full magazines over that bound are
+ * dropped to the garbage collector.
+ */
 public class Pool<O> {
-    private final static int MAX_SIZE_DEFAULT = 1000;
+    protected final static int MAX_SIZE_DEFAULT = 1000;
+    private final static int OBJECT_BYTES_DEFAULT = 64;
 
     private int maxSize;
+    private long magazineBytes;
     private Factory<O> objectFactory;
-    private PoolStorage poolStorage;
-    private final ObjReclaimerStorage reclaimerStorage;
+    private MagazineStorage magazineStorage;
+    private ObjReclaimerStorage reclaimerStorage;
+
+    // full magazines, shared by all threads
+    private final ConcurrentLinkedDeque<ObjArrayList<O>> depot;
+
+    // counters of all threads, for statistics. Only the counters: the objects
+    // of a thread die with it (its magazine is only held by its ThreadLocal)
+    private final ConcurrentLinkedQueue<MagazineStats> magazineStats;
 
     public Pool(Factory<O> objectFactory) {
         this(objectFactory, MAX_SIZE_DEFAULT);
     }
 
     public Pool(Factory<O> objectFactory, int maxSize) {
+        this(objectFactory, maxSize, OBJECT_BYTES_DEFAULT);
+    }
+
+    /**
+     * @param objectBytes estimated size of a pooled object (with the arrays it
+     *                    keeps once reclaimed), used to account for the bytes
+     *                    held by the depot
+     */
+    public Pool(Factory<O> objectFactory, int maxSize, int objectBytes) {
         this.objectFactory = objectFactory;
         this.maxSize = maxSize;
-        reclaimerStorage = new ObjReclaimerStorage();
+        this.magazineBytes = (long) maxSize * objectBytes;
+        depot = new ConcurrentLinkedDeque<>();
+        magazineStats = new ConcurrentLinkedQueue<>();
 
         reset();
 
@@ -29,18 +65,33 @@ public class Pool<O> {
 
     public void reset() {
         objectFactory.reset();
-        poolStorage = new PoolStorage();
+        magazineStorage = new MagazineStorage();
+        reclaimerStorage = new ObjReclaimerStorage();
+        magazineStats.clear();
+
+        while (depot.pollFirst() != null) {
+            PoolRegistry.instance().releaseBytes(magazineBytes);
+        }
     }
 
     public O createObject() {
-        ObjArrayList<O> pool = poolStorage.get();
+        Magazine magazine = magazineStorage.get();
+        ObjArrayList<O> objects = magazine.objects;
 
-        if (!pool.isEmpty()) {
-            return pool.pop();
-        }
-        else {
-            return objectFactory.createObject();
+        if (objects.isEmpty()) {
+            ObjArrayList<O> fullMagazine = depot.pollFirst();
+
+            if (fullMagazine == null) {
+                ++magazine.stats.numMisses;
+                return objectFactory.createObject();
+            }
+
+            PoolRegistry.instance().releaseBytes(magazineBytes);
+            objects = magazine.objects = fullMagazine;
         }
+
+        ++magazine.stats.numHits;
+        return objects.pop();
     }
 
     public void reclaimObject(O object) {
@@ -51,29 +102,95 @@ public class Pool<O> {
         objects.forEach(reclaimerStorage.get());
     }
 
+    /**
+     * Statistics of this pool since it was last reset, gathered from the
+     * counters of all threads (including finished ones) without stopping them
+     * (approximate while the pool is in use).
+     */
+    public PoolStats getStats() {
+        long numHits = 0;
+        long numMisses = 0;
+        long numReclaimed = 0;
+        long numDropped = 0;
+
+        for (MagazineStats stats : magazineStats) {
+            numHits += stats.numHits;
+            numMisses += stats.numMisses;
+            numReclaimed += stats.numReclaimed;
+            numDropped += stats.numDropped;
+        }
+
+        int numDepotMagazines = depot.size();
+
+        return new PoolStats(numHits, numMisses, numReclaimed, numDropped,
+                numDepotMagazines, numDepotMagazines * magazineBytes);
+    }
+
     protected ObjReclaimer createObjReclaimer() {
         return new ObjReclaimer();
     }
 
     protected class ObjReclaimer implements Consumer<O> {
-        private ObjArrayList<O> pool;
+        private final Magazine magazine;
 
         public ObjReclaimer() {
-            pool = poolStorage.get();
+            magazine = magazineStorage.get();
         }
 
         @Override
         public void accept(O o) {
-            if (pool.size() < maxSize) {
-                pool.add(o);
+            ObjArrayList<O> objects = magazine.objects;
+
+            if (objects.size() >= maxSize) {
+                objects = magazine.objects = handOver(magazine, objects);
             }
+
+            objects.add(o);
+            ++magazine.stats.numReclaimed;
         }
     }
 
-    private class PoolStorage extends ThreadLocal<ObjArrayList<O>> {
-        @Override
-        protected ObjArrayList<O> initialValue() {
+    /**
+     * Hands a full magazine over to the depot, if the depots have room for it.
+     *
+     * @return the magazine the thread goes on with
+     */
+    private ObjArrayList<O> handOver(Magazine magazine, ObjArrayList<O> fullMagazine) {
+        if (PoolRegistry.instance().reserveBytes(magazineBytes)) {
+            depot.offerFirst(fullMagazine);
             return new ObjArrayList<>(maxSize);
+        } else {
+            magazine.stats.numDropped += fullMagazine.size();
+            fullMagazine.clear();
+            return fullMagazine;
+        }
+    }
+
+    /**
+     * Objects of one thread, only referenced from its ThreadLocal.
+     */
+    private class Magazine {
+        private ObjArrayList<O> objects = new ObjArrayList<>(maxSize);
+        private final MagazineStats stats = new MagazineStats();
+    }
+
+    /**
+     * Counters of one thread. Only written by that thread and read by
+     * {@link #getStats()}, and kept after the thread dies.
+     */
+    private static class MagazineStats {
+        private long numHits;
+        private long numMisses;
+        private long numReclaimed;
+        private long numDropped;
+    }
+
+    private class MagazineStorage extends ThreadLocal<Magazine> {
+        @Override
+        protected Magazine initialValue() {
+            Magazine magazine = new Magazine();
+            magazineStats.add(magazine.stats);
+            return magazine;
         }
     }
 
@@ -1,14 +1,24 @@
 package io.arabesque.utils.pool;
 
+import io.arabesque.conf.Configuration;
+
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PoolRegistry {
     private Map<String, Pool> poolMap;
 
+    // bytes of the full magazines held by the depots of all pools
+    private final AtomicLong depotBytes;
+    private volatile long maxBytes;
+
     public PoolRegistry() {
         this.poolMap = new HashMap<>();
+        this.depotBytes = new AtomicLong(0);
+        this.maxBytes = Configuration.CONF_POOL_MAX_BYTES_DEFAULT;
     }
 
     public synchronized void register(String poolId, Pool pool) {
@@ -23,6 +33,74 @@ public class PoolRegistry {
         return poolMap.values();
     }
 
+    /**
+     * Bound on the bytes held by the depots of all pools, as estimated from
+     * the object sizes given to them. Magazines reclaimed over it are dropped.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getDepotBytes() {
+        return depotBytes.get();
+    }
+
+    /**
+     * Accounts for a magazine handed over to a depot, if all depots keep under
+     * the bound.
+     *
+     * @return whether the magazine fits
+     */
+    boolean reserveBytes(long bytes) {
+        while (true) {
+            long currentBytes = depotBytes.get();
+
+            if (currentBytes + bytes > maxBytes) {
+                return false;
+            }
+
+            if (depotBytes.compareAndSet(currentBytes, currentBytes + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    void releaseBytes(long bytes) {
+        depotBytes.addAndGet(-bytes);
+    }
+
+    public synchronized Map<String, PoolStats> getStats() {
+        Map<String, PoolStats> stats = new TreeMap<>();
+
+        for (Map.Entry<String, Pool> poolEntry : poolMap.entrySet()) {
+            stats.put(poolEntry.getKey(), poolEntry.getValue().getStats());
+        }
+
+        return stats;
+    }
+
+    public String getStatsString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<String, PoolStats> statsEntry : getStats().entrySet()) {
+            sb.append(statsEntry.getKey());
+            sb.append(": ");
+            sb.append(statsEntry.getValue());
+            sb.append('\n');
+        }
+
+        sb.append("Depot bytes: ");
+        sb.append(getDepotBytes());
+        sb.append(" of ");
+        sb.append(maxBytes);
+
+        return sb.toString();
+    }
+
     public static PoolRegistry instance() {
         return PoolRegistryHolder.INSTANCE;
     }
@@ -0,0 +1,77 @@
+package io.arabesque.utils.pool;
+
+/**
+ * Statistics of a {@link Pool}: objects taken from it (hits when pooled ones
+ * were reused, misses when new ones were created), objects reclaimed to it,
+ * reclaimed objects dropped because the depots were full, and the magazines
+ * held by its depot.
+ */
+public class PoolStats {
+    private final long numHits;
+    private final long numMisses;
+    private final long numReclaimed;
+    private final long numDropped;
+    private final int numDepotMagazines;
+    private final long depotBytes;
+
+    public PoolStats(long numHits, long numMisses, long numReclaimed, long numDropped,
+            int numDepotMagazines, long depotBytes) {
+        this.numHits = numHits;
+        this.numMisses = numMisses;
+        this.numReclaimed = numReclaimed;
+        this.numDropped = numDropped;
+        this.numDepotMagazines = numDepotMagazines;
+        this.depotBytes = depotBytes;
+    }
+
+    public long getNumHits() {
+        return numHits;
+    }
+
+    public long getNumMisses() {
+        return numMisses;
+    }
+
+    public long getNumReclaimed() {
+        return numReclaimed;
+    }
+
+    public long getNumDropped() {
+        return numDropped;
+    }
+
+    public int getNumDepotMagazines() {
+        return numDepotMagazines;
+    }
+
+    public long getDepotBytes() {
+        return depotBytes;
+    }
+
+    /**
+     * Objects taken and not reclaimed: still in use, or leaked to the garbage
+     * collector if the pool is idle
+     */
+    public long getNumLeaked() {
+        return Math.max(0, numHits + numMisses - numReclaimed);
+    }
+
+    public double getHitRate() {
+        long numTaken = numHits + numMisses;
+        return numTaken == 0 ? 0 : (double) numHits / numTaken;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{" +
+                "numHits=" + numHits +
+                ", numMisses=" + numMisses +
+                ", hitRate=" + String.format("%.3f", getHitRate()) +
+                ", numReclaimed=" + numReclaimed +
+                ", numDropped=" + numDropped +
+                ", numLeaked=" + getNumLeaked() +
+                ", numDepotMagazines=" + numDepotMagazines +
+                ", depotBytes=" + depotBytes +
+                '}';
+    }
+}
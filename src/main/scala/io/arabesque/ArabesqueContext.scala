@@ -1,5 +1,6 @@
 package io.arabesque
 
+import io.arabesque.conf.SparkConfiguration
 import io.arabesque.utils.Logging
 
 import java.util.UUID
@@ -18,11 +19,19 @@ import org.apache.spark.SparkContext
   * }}}
   *
   * @param sc a [[SparkContext]] instance
+  * @param logLevel log level of the computations
+  * @param executionEngine engine that runs the computations: "spark" (spark
+  * jobs) or "local" (threads of this jvm, see
+  * [[io.arabesque.computation.LocalMasterEngine]]), unless a computation sets
+  * its own "execution_engine"
   *
   * @return an [[io.arabesque.ArabesqueContext]]
   *
  */
-class ArabesqueContext(sc: SparkContext, logLevel: String = "info") extends Logging {
+class ArabesqueContext(
+    sc: SparkContext,
+    logLevel: String = "info",
+    val executionEngine: String = SparkConfiguration.EXECUTION_ENGINE_SPARK) extends Logging {
 
   private val uuid: UUID = UUID.randomUUID
   def tmpPath: String = s"/tmp/arabesque-${uuid}" // TODO: base dir as config
@@ -7,7 +7,18 @@ import java.util.UUID
 import io.arabesque.computation._
 import io.arabesque.conf.{Configuration, SparkConfiguration}
 import io.arabesque.embedding._
+import io.arabesque.gmlib.cliqueperc.CliquePercComputation
+import io.arabesque.gmlib.matching.{MatchingPlan, PatternMatchingComputation}
+import io.arabesque.gmlib.motif.MotifComputation
+import io.arabesque.gmlib.triangles.CountingTrianglesComputation
+import io.arabesque.pattern.{LabelledPatternEdge, Pattern}
+import io.arabesque.utils.collection.IntArrayList
 
+import org.apache.hadoop.io.{IntWritable, LongWritable, Writable}
+
+import org.apache.spark.rdd.RDD
+
+import scala.collection.JavaConverters._
 import scala.reflect.ClassTag
 
 /**
@@ -33,6 +44,7 @@ class ArabesqueGraph(
   private def resultHandler [E <: Embedding : ClassTag] (
       config: SparkConfiguration[E]): ArabesqueResult[E] = {
     config.set ("log_level", logLevel)
+    config.setIfUnset (SparkConfiguration.EXECUTION_ENGINE, arab.executionEngine)
     new ArabesqueResult [E] (arab.sparkContext, config)
   }
 
@@ -72,6 +84,44 @@ class ArabesqueGraph(
     motifs (config)
   }
 
+  /**
+   * Motif counts of the graph updated by a batch of edge changes, from the
+   * ones of this graph. Only the embeddings with a changed pair are explored,
+   * once in the updated graph (counted positively) and once in this one
+   * (counted negatively), see [[io.arabesque.graph.DeltaMainGraph]].
+   *
+   * @param maxSize number of vertices of the target motifs
+   * @param deltaPath batch of edge changes, "+ src dst" or "- src dst" lines
+   * @param baseMotifs motif counts of this graph, e.g., the aggregation
+   * *MotifComputation.AGG_MOTIFS* of *motifs(maxSize)*
+   *
+   * @return motif counts of the updated graph
+   */
+  def incrementalMotifs(maxSize: Int, deltaPath: String,
+      baseMotifs: Map[Pattern,LongWritable]): Map[Pattern,LongWritable] = {
+    val deltas = Seq(true, false).map { applied =>
+      motifs (maxSize).
+        set ("input_graph_delta_path", deltaPath).
+        set ("input_graph_delta_applied", applied).
+        aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+    }
+    applyDeltas (baseMotifs, deltas)
+  }
+
+  /**
+   * Adds signed *deltas* to *base* counts, keys whose count drops to zero are
+   * removed
+   */
+  private def applyDeltas [K <: Writable] (base: Map[K,LongWritable],
+      deltas: Seq[Map[K,LongWritable]]): Map[K,LongWritable] = {
+    val counts = scala.collection.mutable.Map.empty[K,Long]
+    base.foreach { case (k,v) => counts.update (k, v.get) }
+    for (delta <- deltas; (k,v) <- delta) {
+      counts.update (k, counts.getOrElse (k, 0L) + v.get)
+    }
+    counts.filter (_._2 != 0).map { case (k,v) => (k, new LongWritable(v)) }.toMap
+  }
+
   /** fsm */
   def fsm(config: SparkConfiguration[_ <: Embedding]): ArabesqueResult[_] = {
     resultHandler (config)
@@ -143,6 +193,27 @@ class ArabesqueGraph(
     triangles (config)
   }
 
+  /**
+   * Triangle counts (per vertex) of the graph updated by a batch of edge
+   * changes, from the ones of this graph. See *incrementalMotifs*.
+   *
+   * @param deltaPath batch of edge changes, "+ src dst" or "- src dst" lines
+   * @param baseTriangles triangle counts of this graph, i.e., the aggregation
+   * *CountingTrianglesComputation.AGG_OUTPUT* of *triangles()*
+   *
+   * @return triangle counts of the updated graph
+   */
+  def incrementalTriangles(deltaPath: String,
+      baseTriangles: Map[IntWritable,LongWritable]): Map[IntWritable,LongWritable] = {
+    val deltas = Seq(true, false).map { applied =>
+      triangles().
+        set ("input_graph_delta_path", deltaPath).
+        set ("input_graph_delta_applied", applied).
+        aggregation [IntWritable,LongWritable] (CountingTrianglesComputation.AGG_OUTPUT)
+    }
+    applyDeltas (baseTriangles, deltas)
+  }
+
   /** cliques */
   def cliques(config: SparkConfiguration[_ <: Embedding]): ArabesqueResult[_] = {
     resultHandler (config)
@@ -177,11 +248,28 @@ class ArabesqueGraph(
     cliques (config)
   }
   
-  /** cliques percolation */
+  /**
+   * Cliques percolation, see cliquesPercolation(maxSize) and
+   * [[cliquesPercolationCommunities]] for its communities
+   */
   def cliquesPercolation(config: SparkConfiguration[_ <: Embedding]): ArabesqueResult[_] = {
     resultHandler (config)
   }
 
+  /**
+   * Runs the cliques percolation computation and returns its raw result: the
+   * *maxSize*-cliques keyed by one of their (*maxSize* - 1)-cliques
+   * (aggregation "cliques") and the union-find of adjacent
+   * (*maxSize* - 1)-cliques (aggregation "membership"), as any other
+   * [[io.arabesque.ArabesqueResult]] (e.g., to change its configuration or to
+   * read its aggregations). For the communities themselves use
+   * [[cliquesPercolationCommunities]], which computes them from this result.
+   *
+   * @param maxSize clique size
+   *
+   * @return an [[io.arabesque.ArabesqueResult]] carrying the aggregations
+   * the communities are built from
+   */
   def cliquesPercolation(maxSize: Int): ArabesqueResult[_] = {
     val config = new SparkConfiguration [VertexInducedEmbedding]
     config.set ("input_graph_path", path)
@@ -192,6 +280,86 @@ class ArabesqueGraph(
     cliques (config)
   }
 
+  /**
+   * Communities of the clique percolation method: sets of *maxSize*-cliques
+   * reachable through adjacent cliques (sharing *maxSize* - 1 vertices).
+   *
+   * @param maxSize clique size
+   *
+   * @return the (sorted) vertices of each community
+   */
+  def cliquesPercolationCommunities(maxSize: Int): RDD[IntArrayList] = {
+    CliquePercComputation.communities (cliquesPercolation (maxSize))
+  }
+
+  /** pattern matching */
+  def matching(config: SparkConfiguration[_ <: Embedding]): ArabesqueResult[_] = {
+    resultHandler (config)
+  }
+
+  /**
+   * Finds the occurrences of a query pattern, each one exactly once. Only
+   * embeddings consistent with the pattern are generated.
+   *
+    * {{{
+    *   import io.arabesque.ArabesqueContext
+    *   val input_graph = "ArabesqueDir/data/cube.graph"
+    *
+    *   val graph = arab.textFile(input_graph)
+    *   val motifs = graph.motifs(3).aggregation [Pattern,LongWritable] ("motifs")
+    *   val res = graph.matching(motifs.keys.head)
+    *
+    *   res.embeddings.count()
+    *   res.embeddings.collect()
+    * }}}
+   *
+   * @param pattern query pattern, e.g., one of the patterns found by motifs
+   *
+   * @return an [[io.arabesque.ArabesqueResult]] carrying odags and embeddings
+   */
+  def matching(pattern: Pattern): ArabesqueResult[_] = {
+    // equivalences only prune the search for automorphisms, which the
+    // matching plan can still do by itself if they are not available here
+    val equivalencesOpt = scala.util.Try (
+      MatchingPlan.equivalencesToString (pattern.getVertexPositionEquivalences)).toOption
+    val edgeLabelled = pattern.getEdges.asScala.exists (_.isInstanceOf[LabelledPatternEdge])
+    val config = matchingConfig (equivalencesOpt)
+    config.set (PatternMatchingComputation.CONF_SERIALIZED_PATTERN,
+      PatternMatchingComputation.serializePattern (pattern))
+    // edge labels of the query are compared with the ones of the graph
+    if (edgeLabelled) config.set (Configuration.CONF_MAINGRAPH_EDGE_LABELLED, true)
+    matching (config)
+  }
+
+  /**
+   * Finds the occurrences of a query pattern given in its output form, e.g.,
+   * "[0,1-1,2],[0,1-2,2]" for a path centered in a vertex labelled 1,
+   * "[0(1)--(5)--1(2)]" for the edges labelled 5 between vertices labelled 1
+   * and 2, or "0(1)" for the vertices labelled 1.
+   *
+   * @param pattern query pattern edges, as in [[io.arabesque.pattern.Pattern#toOutputString]]
+   *
+   * @return an [[io.arabesque.ArabesqueResult]] carrying odags and embeddings
+   */
+  def matching(pattern: String): ArabesqueResult[_] = {
+    val config = matchingConfig (None)
+    config.set (PatternMatchingComputation.CONF_PATTERN, pattern)
+    // edge labels of the query are compared with the ones of the graph
+    if (new MatchingPlan (pattern, null).hasEdgeLabels)
+      config.set (Configuration.CONF_MAINGRAPH_EDGE_LABELLED, true)
+    matching (config)
+  }
+
+  private def matchingConfig(equivalencesOpt: Option[String]): SparkConfiguration[VertexInducedEmbedding] = {
+    val config = new SparkConfiguration [VertexInducedEmbedding]
+    config.set ("input_graph_path", path)
+    config.set ("input_graph_local", local)
+    config.set ("output_path", s"${tmpPath}/matching-${config.getUUID}")
+    equivalencesOpt.foreach (config.set (PatternMatchingComputation.CONF_EQUIVALENCES, _))
+    config.set ("computation", "io.arabesque.gmlib.matching.PatternMatchingComputation")
+    config
+  }
+
   /** api for custom computations **/
 
   /**
@@ -269,4 +437,93 @@ class ArabesqueGraph(
   def customComputation [E <: Embedding: ClassTag] (config: SparkConfiguration[E]): ArabesqueResult[E] = {
     resultHandler [E] (config)
   }
+
+  /** fused computations **/
+
+  /**
+   * Runs several computations over a single exploration: each embedding is
+   * generated once and evaluated by every query still interested in it, and a
+   * branch is expanded while some query accepts it.
+   *
+    * {{{
+    *   import io.arabesque.ArabesqueContext
+    *   val input_graph = "ArabesqueDir/data/cube.graph"
+    *
+    *   val graph = arab.textFile(input_graph)
+    *   val Seq(motifsRes, trianglesRes, cliquesRes) =
+    *     graph.fused (graph.motifs(3), graph.triangles(), graph.cliques(3))
+    *
+    *   motifsRes.aggregation ("motifs")
+    *   cliquesRes.embeddings.count()
+    * }}}
+   *
+   * Queries must be built from this graph, explore the same kind of
+   * embedding, register distinct aggregation names and have no master
+   * computation. Their remaining configurations are merged and must agree.
+   *
+   * @param queries results whose computations are fused
+   *
+   * @return one [[io.arabesque.ArabesqueResult]] per query, in the same order,
+   * backed by the single fused computation
+   */
+  def fused [E <: Embedding : ClassTag] (queries: ArabesqueResult[_ <: Embedding]*)
+      : Seq[ArabesqueResult[E]] = {
+    import Configuration._
+    import SparkConfiguration._
+
+    val ownKeys = Set (CONF_COMPUTATION_CLASS, COMPUTATION_CONTAINER,
+      CONF_OUTPUT_PATH, CONF_OUTPUT_ACTIVE, HADOOP_CONF)
+    val masterKeys = Set (CONF_MASTER_COMPUTATION_CLASS, MASTER_COMPUTATION_CONTAINER)
+
+    val config = new SparkConfiguration [E]
+    val fusedOutputPath = s"${tmpPath}/fused-${config.getUUID}"
+    val computations = new java.util.ArrayList[Computation[E]]()
+    val queryNames = new java.util.ArrayList[String]()
+    val queryOutputsActive = new java.util.ArrayList[java.lang.Boolean]()
+
+    for ((query, i) <- queries.zipWithIndex) {
+      val queryConfs = query.config.confs
+
+      masterKeys.find (queryConfs.contains) match {
+        case Some(key) =>
+          throw new RuntimeException (s"Query ${i} sets ${key}: master computations cannot be fused")
+        case None =>
+      }
+
+      for ((key, value) <- queryConfs if !ownKeys.contains(key)) config.confs.get (key) match {
+        case Some(other) if other != value =>
+          throw new RuntimeException (s"Fused queries disagree on ${key}: ${other} vs ${value}")
+        case _ =>
+          config.confs.update (key, value)
+      }
+
+      val computation = queryConfs.get (COMPUTATION_CONTAINER) match {
+        case Some(cc: ComputationContainer[_]) => cc
+        case _ =>
+          Class.forName (query.config.getString (CONF_COMPUTATION_CLASS,
+            CONF_COMPUTATION_CLASS_DEFAULT)).newInstance
+      }
+
+      computations.add (computation.asInstanceOf[Computation[E]])
+      queryNames.add (FusedComputation.queryName (i))
+      queryOutputsActive.add (query.config.getBoolean (
+        CONF_OUTPUT_ACTIVE, CONF_OUTPUT_ACTIVE_DEFAULT))
+    }
+
+    // the engine outputs if some query does, and each query only outputs
+    // its embeddings if its own output is on
+    config.set ("output_active", queryOutputsActive.contains (true))
+    config.set ("output_path", fusedOutputPath)
+
+    val fusedResult = customComputation [E] (config.withNewComputation (
+      new FusedComputation [E] (computations, queryNames, queryOutputsActive)))
+
+    for ((query, i) <- queries.zipWithIndex) yield {
+      val queryOutputPath = s"${fusedOutputPath}/${FusedComputation.queryName(i)}"
+      val queryConfig = query.config.withNewConfig ("output_path", queryOutputPath).
+        asInstanceOf[SparkConfiguration[E]]
+      queryConfig.setOutputPath (queryOutputPath)
+      new ArabesqueResult [E] (arab.sparkContext, queryConfig).fusedWith (fusedResult)
+    }
+  }
 }
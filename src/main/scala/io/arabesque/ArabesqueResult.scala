@@ -39,7 +39,18 @@ case class ArabesqueResult [E <: Embedding : ClassTag] (
    * Lazy evaluation for the results
    */
   private var masterEngineOpt: Option[SparkMasterEngine[E]] = None
+
+  /**
+   * Set when this result is one of the queries of a fused computation: the
+   * master engine is the one of the fused result, computed only once
+   */
+  private var fusedResultOpt: Option[ArabesqueResult[E]] = None
+
   def masterEngine: SparkMasterEngine[E] = masterEngineOpt match {
+    case None if fusedResultOpt.isDefined =>
+      val _masterEngine = fusedResultOpt.get.masterEngine
+      masterEngineOpt = Some(_masterEngine)
+      _masterEngine
     case None =>
       logInfo (s"starting/computing master execution engine")
       val _masterEngine = SparkMasterEngine [E] (sc, config)
@@ -57,19 +68,31 @@ case class ArabesqueResult [E <: Embedding : ClassTag] (
   private var embeddingsOpt: Option[RDD[ResultEmbedding[_]]] = None
   def embeddings: RDD[ResultEmbedding[_]] = embeddingsOpt match {
     case None if config.isOutputActive =>
-      val _embeddings = masterEngine.getEmbeddings
+      val _embeddings = masterEngine.getEmbeddings (config.getOutputPath)
       embeddingsOpt = Some(_embeddings)
       _embeddings
     case Some(_embeddings) if config.isOutputActive =>
       _embeddings
     case _ =>
+      // the computation is run again just for its embeddings, keep them in
+      // memory (cached) unless the user chose an output format
       config.set ("output_active", true)
+      if (!config.confs.contains (Configuration.CONF_OUTPUT_FORMAT)) {
+        config.set ("output_format", SparkConfiguration.OUTPUT_MEMORY)
+      }
+      fusedResultOpt = None
       masterEngineOpt = None
       embeddingsOpt = None
       odagsOpt = None
       embeddings
   }
 
+  /**
+   * Streams the embeddings to the driver, one partition at a time, e.g., to
+   * browse the results of an interactive query without collecting them all
+   */
+  def embeddingsIterator: Iterator[ResultEmbedding[_]] = embeddings.toLocalIterator
+
   /**
    * ODAGs of all supersteps
    */
@@ -83,11 +106,23 @@ case class ArabesqueResult [E <: Embedding : ClassTag] (
       _odags
   }
 
+  /**
+   * Makes this result read its aggregations and embeddings from the
+   * computation of *fusedResult*, in which this result took part as a query
+   */
+  private[arabesque] def fusedWith(fusedResult: ArabesqueResult[E]): ArabesqueResult[E] = {
+    fusedResultOpt = Some(fusedResult)
+    masterEngineOpt = None
+    embeddingsOpt = None
+    odagsOpt = None
+    this
+  }
+
   /**
    * Registered aggregations
    */
   def registeredAggregations: Array[String] = {
-    config.getAggregationsMetadata.map (_._1).toArray
+    masterEngine.config.getAggregationsMetadata.map (_._1).toArray
   }
 
   /**
@@ -210,7 +245,9 @@ case class ArabesqueResult [E <: Embedding : ClassTag] (
    * Updates the filter function of the underlying computation container.
    *
    * @param filter filter function that determines whether embeddings must be
-   * further processed or not.
+   * further processed or not. May be a
+   * [[io.arabesque.computation.ComputationContainer.EmbeddingPredicate]],
+   * called without boxing its result.
    *
    * @return new result
    */
@@ -224,7 +261,9 @@ case class ArabesqueResult [E <: Embedding : ClassTag] (
    * Updates the shouldExpand function of the underlying computation container.
    *
    * @param shouldExpand function that determines whether the embeddings
-   * produced must be extended or not.
+   * produced must be extended or not. May be a
+   * [[io.arabesque.computation.ComputationContainer.EmbeddingPredicate]],
+   * called without boxing its result.
    */
   def withShouldExpand (shouldExpand: (E,Computation[E]) => Boolean): ArabesqueResult[E] = {
     val newConfig = config.withNewComputation [E] (
@@ -237,6 +276,8 @@ case class ArabesqueResult [E <: Embedding : ClassTag] (
    * container.
    *
    * @param filter function that filters embeddings in the aggregation phase.
+   * May be a [[io.arabesque.computation.ComputationContainer.EmbeddingPredicate]],
+   * called without boxing its result.
    *
    * @return new result
    */
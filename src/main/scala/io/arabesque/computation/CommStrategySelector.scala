@@ -0,0 +1,124 @@
+package io.arabesque.computation
+
+import io.arabesque.conf.SparkConfiguration
+import io.arabesque.embedding.Embedding
+import io.arabesque.utils.Logging
+
+/**
+ * Chooses, superstep by superstep, how embeddings are carried to the next
+ * superstep when the communication strategy and/or the odag flush method are
+ * set to "auto". Decisions are based on the stats the master collects at the
+ * end of each superstep and are logged.
+ *
+ * (1) Representation: raw embeddings are cheaper while they are few (first
+ *     supersteps), odags win once the number of embeddings explodes. We
+ *     switch (once) when the raw embeddings of the next superstep, predicted
+ *     from the growth of the last one, exceed *maxEmbeddingBytes*.
+ * (2) Flush method: flushing by pattern has the least overhead but each
+ *     pattern is aggregated by a single partition, thus it is only chosen
+ *     while the largest pattern does not exceed *maxSkew* times the fair share
+ *     of a partition. Otherwise odags are split by entries (small odags, where
+ *     the per-entry overhead is negligible) or by parts.
+ */
+class CommStrategySelector(
+    numPartitions: Int,
+    maxEmbeddingBytes: Long,
+    maxSkew: Double) extends Logging {
+
+  import CommStrategySelector._
+
+  def this(config: SparkConfiguration[_ <: Embedding]) = this (
+    config.numPartitions,
+    config.getCommStrategyAutoMaxBytes,
+    config.getOdagFlushAutoMaxSkew.toDouble)
+
+  // embeddings generated in the last superstep seen
+  private var lastEmbeddingsGenerated = 0L
+
+  /**
+   * Decides whether the embeddings generated in *superstep* should be carried
+   * as odags from now on.
+   *
+   * @param superstep superstep that just finished
+   * @param embeddingsGenerated embeddings generated in that superstep
+   * @return true if the computation should switch to odags
+   */
+  def shouldSwitchToOdags(superstep: Int, embeddingsGenerated: Long): Boolean = {
+    val growth = if (lastEmbeddingsGenerated > 0)
+      embeddingsGenerated.toDouble / lastEmbeddingsGenerated
+    else 1.0
+    lastEmbeddingsGenerated = embeddingsGenerated
+
+    // embeddings of the next superstep have one more word
+    val nextBytes = rawEmbeddingBytes (
+      (embeddingsGenerated * math.max (growth, 1.0)).toLong, superstep + 2)
+    val switch = nextBytes > maxEmbeddingBytes
+
+    logInfo (s"Superstep ${superstep}: embeddings=${embeddingsGenerated}" +
+      f" growth=${growth}%.2f" +
+      s" rawBytes=${rawEmbeddingBytes (embeddingsGenerated, superstep + 1)}" +
+      s" predictedRawBytes=${nextBytes} maxBytes=${maxEmbeddingBytes}" +
+      s" -> ${if (switch) SparkConfiguration.COMM_ODAG_SP else SparkConfiguration.COMM_EMBEDDING}")
+
+    switch
+  }
+
+  /**
+   * Chooses the flush method of the odags generated in *superstep*.
+   *
+   * @param superstep superstep whose odags will be flushed
+   * @param embeddingsGenerated embeddings generated in that superstep
+   * @param patternSizes (entries, estimated bytes) of the odag of each pattern
+   * @return one of FLUSH_BY_PATTERN, FLUSH_BY_ENTRIES or FLUSH_BY_PARTS
+   */
+  def selectFlushMethod(superstep: Int, embeddingsGenerated: Long,
+      patternSizes: Seq[(Long,Long)]): String = {
+    import SparkConfiguration._
+
+    lastEmbeddingsGenerated = embeddingsGenerated
+
+    if (patternSizes.isEmpty) {
+      logInfo (s"Superstep ${superstep}: no odags -> ${FLUSH_BY_PATTERN}")
+      return FLUSH_BY_PATTERN
+    }
+
+    val totalEntries = patternSizes.map (_._1).sum
+    val odagBytes = patternSizes.map (_._2).sum
+    val maxPatternBytes = patternSizes.map (_._2).max
+    val fairShare = math.max (odagBytes.toDouble / numPartitions, 1.0)
+    val skew = maxPatternBytes / fairShare
+
+    val flushMethod = if (skew <= maxSkew)
+      FLUSH_BY_PATTERN
+    else if (totalEntries <= numPartitions * MAX_ENTRIES_PER_PARTITION)
+      FLUSH_BY_ENTRIES
+    else
+      FLUSH_BY_PARTS
+
+    logInfo (s"Superstep ${superstep}: embeddings=${embeddingsGenerated}" +
+      s" patterns=${patternSizes.size} entries=${totalEntries}" +
+      s" odagBytes=${odagBytes}" +
+      s" rawBytes=${rawEmbeddingBytes (embeddingsGenerated, superstep + 1)}" +
+      f" skew=${skew}%.2f maxSkew=${maxSkew}%.2f -> ${flushMethod}")
+
+    flushMethod
+  }
+}
+
+object CommStrategySelector {
+  // below this many entries per partition, one odag per entry is affordable
+  val MAX_ENTRIES_PER_PARTITION = 1024L
+
+  /**
+   * Raw size of embeddings with *numWords* words each (one int per word)
+   */
+  def rawEmbeddingBytes(numEmbeddings: Long, numWords: Int): Long =
+    numEmbeddings * numWords * 4L
+
+  /**
+   * Serialized size of an odag (see DomainStorage#write): word id, pointers
+   * flag and count per entry plus the pointers themselves
+   */
+  def odagBytes(numEntries: Long, numPointers: Long): Long =
+    numEntries * 9L + numPointers * 4L
+}
@@ -3,6 +3,19 @@ package io.arabesque.computation
 import io.arabesque.embedding._
 import io.arabesque.pattern.Pattern
 
+import ComputationContainer._
+
+/**
+ * Computation built from the functions of an [[io.arabesque.ArabesqueResult]]
+ * pipeline. The optional functions are resolved once, when the container is
+ * created for an execution engine: hooks that were not set call the default
+ * ones of the computation directly, and predicates are called through
+ * [[ComputationContainer.EmbeddingPredicate]], with primitive results.
+ *
+ * Containers keep the conservative defaults of
+ * [[io.arabesque.computation.BasicComputation]] for the properties their
+ * functions may break: they depend on aggregations and aggregate vertex ids.
+ */
 sealed trait ComputationContainer [E <: Embedding] extends Computation[E] {
 
   val processOpt: Option[(E,Computation[E]) => Unit]
@@ -46,46 +59,18 @@ case class EComputationContainer [E <: EdgeInducedEmbedding] (
     finishOpt: Option[(Computation[E]) => Unit] = None)
   extends EdgeInducedComputation[E] with ComputationContainer[E] {
 
-  @transient private lazy val _process: (E,Computation[E]) => Unit = processOpt.get
-  
-  @transient private lazy val _filter: (E,Computation[E]) => Boolean =
-    filterOpt.getOrElse ((e: E, c: Computation[E]) => super.filter (e))
-
-  @transient private lazy val _shouldExpand: (E,Computation[E]) => Boolean =
-    shouldExpandOpt.getOrElse ((e: E, c: Computation[E]) => super.shouldExpand(e))
-  
-  @transient private lazy val _aggregationFilter: (E,Computation[E]) => Boolean =
-    aggregationFilterOpt.getOrElse ((e: E, c: Computation[E]) => super.aggregationFilter (e))
-  
-  @transient private lazy val _pAggregationFilter: (Pattern,Computation[E]) => Boolean =
-    pAggregationFilterOpt.getOrElse ((p: Pattern, c: Computation[E]) => super.aggregationFilter (p))
-  
-  @transient private lazy val _aggregationProcess: (E,Computation[E]) => Unit =
-    aggregationProcessOpt.getOrElse ((e: E, c: Computation[E]) => super.aggregationProcess (e))
-  
-  @transient private lazy val _handleNoExpansions: (E,Computation[E]) => Unit =
-    handleNoExpansionsOpt.getOrElse ((e: E, c: Computation[E]) => super.handleNoExpansions (e))
-  
-  @transient private lazy val _init: (Computation[E]) => Unit = initOpt match {
-    case Some(thisInit) =>
-      (c: Computation[E]) => {super.init(); thisInit(c)}
-    case None =>
-      (c: Computation[E]) => {super.init()}
-  }
-
-  @transient private lazy val _initAggregations: (Computation[E]) => Unit = initAggregationsOpt match {
-    case Some(thisInitAggregations) =>
-      (c: Computation[E]) => {super.initAggregations(); thisInitAggregations(c)}
-    case None =>
-      (c: Computation[E]) => {super.initAggregations()}
-  }
-
-  @transient private lazy val _finish: (Computation[E]) => Unit = finishOpt match {
-    case Some(thisFinish) =>
-      (c: Computation[E]) => {super.finish(); thisFinish(c)}
-    case None =>
-      (c: Computation[E]) => {super.finish()}
-  }
+  // user functions are resolved once per instance, a null one falls back to
+  // the default hook with no closure in between (see [[ComputationContainer]])
+  private[this] val _process: (E,Computation[E]) => Unit = processOpt.orNull
+  private[this] val _filter: EmbeddingPredicate[E] = predicate (filterOpt)
+  private[this] val _shouldExpand: EmbeddingPredicate[E] = predicate (shouldExpandOpt)
+  private[this] val _aggregationFilter: EmbeddingPredicate[E] = predicate (aggregationFilterOpt)
+  private[this] val _pAggregationFilter: PatternPredicate[E] = patternPredicate (pAggregationFilterOpt)
+  private[this] val _aggregationProcess: (E,Computation[E]) => Unit = aggregationProcessOpt.orNull
+  private[this] val _handleNoExpansions: (E,Computation[E]) => Unit = handleNoExpansionsOpt.orNull
+  private[this] val _init: (Computation[E]) => Unit = initOpt.orNull
+  private[this] val _initAggregations: (Computation[E]) => Unit = initAggregationsOpt.orNull
+  private[this] val _finish: (Computation[E]) => Unit = finishOpt.orNull
 
   def withNewFunctions(
       processOpt: Option[(E,Computation[E]) => Unit] = processOpt,
@@ -107,15 +92,43 @@ case class EComputationContainer [E <: EdgeInducedEmbedding] (
   }
 
   override def process(e: E): Unit = _process (e, this)
-  override def filter(e: E): Boolean = _filter (e, this)
-  override def shouldExpand(e: E): Boolean = _shouldExpand (e, this)
-  override def aggregationFilter(e: E): Boolean = _aggregationFilter (e, this)
-  override def aggregationFilter(p: Pattern): Boolean = _pAggregationFilter (p, this)
-  override def aggregationProcess(e: E): Unit = _aggregationProcess (e, this)
-  override def handleNoExpansions(e: E): Unit = _handleNoExpansions (e, this)
-  override def init(): Unit = _init (this)
-  override def initAggregations(): Unit = _initAggregations (this)
-  override def finish(): Unit = _finish (this)
+
+  override def filter(e: E): Boolean =
+    if (_filter eq null) super.filter (e) else _filter.test (e, this)
+
+  override def shouldExpand(e: E): Boolean =
+    if (_shouldExpand eq null) super.shouldExpand (e) else _shouldExpand.test (e, this)
+
+  override def aggregationFilter(e: E): Boolean =
+    if (_aggregationFilter eq null) super.aggregationFilter (e)
+    else _aggregationFilter.test (e, this)
+
+  override def aggregationFilter(p: Pattern): Boolean =
+    if (_pAggregationFilter eq null) super.aggregationFilter (p)
+    else _pAggregationFilter.test (p, this)
+
+  override def aggregationProcess(e: E): Unit =
+    if (_aggregationProcess eq null) super.aggregationProcess (e)
+    else _aggregationProcess (e, this)
+
+  override def handleNoExpansions(e: E): Unit =
+    if (_handleNoExpansions eq null) super.handleNoExpansions (e)
+    else _handleNoExpansions (e, this)
+
+  override def init(): Unit = {
+    super.init()
+    if (_init ne null) _init (this)
+  }
+
+  override def initAggregations(): Unit = {
+    super.initAggregations()
+    if (_initAggregations ne null) _initAggregations (this)
+  }
+
+  override def finish(): Unit = {
+    super.finish()
+    if (_finish ne null) _finish (this)
+  }
 }
 
 case class VComputationContainer [E <: VertexInducedEmbedding] (
@@ -131,46 +144,18 @@ case class VComputationContainer [E <: VertexInducedEmbedding] (
     finishOpt: Option[(Computation[E]) => Unit] = None)
   extends VertexInducedComputation[E] with ComputationContainer[E] {
 
-  @transient private lazy val _process: (E,Computation[E]) => Unit = processOpt.get
-  
-  @transient private lazy val _filter: (E,Computation[E]) => Boolean =
-    filterOpt.getOrElse ((e: E, c: Computation[E]) => super.filter (e))
-
-  @transient private lazy val _shouldExpand: (E,Computation[E]) => Boolean =
-    shouldExpandOpt.getOrElse ((e: E, c: Computation[E]) => super.shouldExpand(e))
-  
-  @transient private lazy val _aggregationFilter: (E,Computation[E]) => Boolean =
-    aggregationFilterOpt.getOrElse ((e: E, c: Computation[E]) => super.aggregationFilter (e))
-  
-  @transient private lazy val _pAggregationFilter: (Pattern,Computation[E]) => Boolean =
-    pAggregationFilterOpt.getOrElse ((p: Pattern, c: Computation[E]) => super.aggregationFilter (p))
-  
-  @transient private lazy val _aggregationProcess: (E,Computation[E]) => Unit =
-    aggregationProcessOpt.getOrElse ((e: E, c: Computation[E]) => super.aggregationProcess (e))
-  
-  @transient private lazy val _handleNoExpansions: (E,Computation[E]) => Unit =
-    handleNoExpansionsOpt.getOrElse ((e: E, c: Computation[E]) => super.handleNoExpansions (e))
-  
-  @transient private lazy val _init: (Computation[E]) => Unit = initOpt match {
-    case Some(thisInit) =>
-      (c: Computation[E]) => {super.init(); thisInit(c)}
-    case None =>
-      (c: Computation[E]) => {super.init()}
-  }
-
-  @transient private lazy val _initAggregations: (Computation[E]) => Unit = initAggregationsOpt match {
-    case Some(thisInitAggregations) =>
-      (c: Computation[E]) => {super.initAggregations(); thisInitAggregations(c)}
-    case None =>
-      (c: Computation[E]) => {super.initAggregations()}
-  }
-
-  @transient private lazy val _finish: (Computation[E]) => Unit = finishOpt match {
-    case Some(thisFinish) =>
-      (c: Computation[E]) => {super.finish(); thisFinish(c)}
-    case None =>
-      (c: Computation[E]) => {super.finish()}
-  }
+  // user functions are resolved once per instance, a null one falls back to
+  // the default hook with no closure in between (see [[ComputationContainer]])
+  private[this] val _process: (E,Computation[E]) => Unit = processOpt.orNull
+  private[this] val _filter: EmbeddingPredicate[E] = predicate (filterOpt)
+  private[this] val _shouldExpand: EmbeddingPredicate[E] = predicate (shouldExpandOpt)
+  private[this] val _aggregationFilter: EmbeddingPredicate[E] = predicate (aggregationFilterOpt)
+  private[this] val _pAggregationFilter: PatternPredicate[E] = patternPredicate (pAggregationFilterOpt)
+  private[this] val _aggregationProcess: (E,Computation[E]) => Unit = aggregationProcessOpt.orNull
+  private[this] val _handleNoExpansions: (E,Computation[E]) => Unit = handleNoExpansionsOpt.orNull
+  private[this] val _init: (Computation[E]) => Unit = initOpt.orNull
+  private[this] val _initAggregations: (Computation[E]) => Unit = initAggregationsOpt.orNull
+  private[this] val _finish: (Computation[E]) => Unit = finishOpt.orNull
 
   def withNewFunctions(
       processOpt: Option[(E,Computation[E]) => Unit] = processOpt,
@@ -192,16 +177,97 @@ case class VComputationContainer [E <: VertexInducedEmbedding] (
   }
 
   override def process(e: E): Unit = _process (e, this)
-  override def filter(e: E): Boolean = _filter (e, this)
-  override def shouldExpand(e: E): Boolean = _shouldExpand (e, this)
-  override def aggregationFilter(e: E): Boolean = _aggregationFilter (e, this)
-  override def aggregationFilter(p: Pattern): Boolean = _pAggregationFilter (p, this)
-  override def aggregationProcess(e: E): Unit = _aggregationProcess (e, this)
-  override def handleNoExpansions(e: E): Unit = _handleNoExpansions (e, this)
-  override def init(): Unit = _init (this)
-  override def initAggregations(): Unit = _initAggregations (this)
-  override def finish(): Unit = _finish (this)
+
+  override def filter(e: E): Boolean =
+    if (_filter eq null) super.filter (e) else _filter.test (e, this)
+
+  override def shouldExpand(e: E): Boolean =
+    if (_shouldExpand eq null) super.shouldExpand (e) else _shouldExpand.test (e, this)
+
+  override def aggregationFilter(e: E): Boolean =
+    if (_aggregationFilter eq null) super.aggregationFilter (e)
+    else _aggregationFilter.test (e, this)
+
+  override def aggregationFilter(p: Pattern): Boolean =
+    if (_pAggregationFilter eq null) super.aggregationFilter (p)
+    else _pAggregationFilter.test (p, this)
+
+  override def aggregationProcess(e: E): Unit =
+    if (_aggregationProcess eq null) super.aggregationProcess (e)
+    else _aggregationProcess (e, this)
+
+  override def handleNoExpansions(e: E): Unit =
+    if (_handleNoExpansions eq null) super.handleNoExpansions (e)
+    else _handleNoExpansions (e, this)
+
+  override def init(): Unit = {
+    super.init()
+    if (_init ne null) _init (this)
+  }
+
+  override def initAggregations(): Unit = {
+    super.initAggregations()
+    if (_initAggregations ne null) _initAggregations (this)
+  }
+
+  override def finish(): Unit = {
+    super.finish()
+    if (_finish ne null) _finish (this)
+  }
 }
 
 object ComputationContainer {
+
+  /**
+   * Embedding predicate with a primitive result. Scala functions
+   * (E,Computation[E]) => Boolean box what they return, so predicates called
+   * for every candidate embedding (filter, shouldExpand, aggregationFilter)
+   * may be given as instances of this class wherever such a function is
+   * expected, e.g.:
+   *
+   * {{{
+   *   res.withFilter (new EmbeddingPredicate[VertexInducedEmbedding] {
+   *     def test(e: VertexInducedEmbedding, c: Computation[VertexInducedEmbedding]) =
+   *       e.getNumWords < 4
+   *   })
+   * }}}
+   */
+  abstract class EmbeddingPredicate [E <: Embedding]
+      extends ((E,Computation[E]) => Boolean) with Serializable {
+    def test(e: E, c: Computation[E]): Boolean
+    final override def apply(e: E, c: Computation[E]): Boolean = test (e, c)
+  }
+
+  /**
+   * Pattern predicate with a primitive result, see [[EmbeddingPredicate]]
+   */
+  abstract class PatternPredicate [E <: Embedding]
+      extends ((Pattern,Computation[E]) => Boolean) with Serializable {
+    def test(p: Pattern, c: Computation[E]): Boolean
+    final override def apply(p: Pattern, c: Computation[E]): Boolean = test (p, c)
+  }
+
+  /**
+   * *func* as an embedding predicate, or null if it is not set
+   */
+  def predicate [E <: Embedding] (func: Option[(E,Computation[E]) => Boolean])
+    : EmbeddingPredicate[E] = func match {
+    case Some(p: EmbeddingPredicate[E @unchecked]) => p
+    case Some(f) => new EmbeddingPredicate[E] {
+      def test(e: E, c: Computation[E]): Boolean = f (e, c)
+    }
+    case None => null
+  }
+
+  /**
+   * *func* as a pattern predicate, or null if it is not set
+   */
+  def patternPredicate [E <: Embedding] (func: Option[(Pattern,Computation[E]) => Boolean])
+    : PatternPredicate[E] = func match {
+    case Some(p: PatternPredicate[E @unchecked]) => p
+    case Some(f) => new PatternPredicate[E] {
+      def test(p: Pattern, c: Computation[E]): Boolean = f (p, c)
+    }
+    case None => null
+  }
 }
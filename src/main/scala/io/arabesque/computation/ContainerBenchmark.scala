@@ -0,0 +1,92 @@
+package io.arabesque.computation
+
+import io.arabesque.computation.ComputationContainer.EmbeddingPredicate
+import io.arabesque.conf.{Configuration, SparkConfiguration}
+import io.arabesque.embedding.VertexInducedEmbedding
+
+/**
+ * Per-embedding overhead of computation containers: the same vertex-induced
+ * exploration (every embedding up to a size, nothing else) as a computation
+ * class, as a container of scala functions and as a container of
+ * [[ComputationContainer.EmbeddingPredicate]]. Runs in the local engine, so
+ * the times are the ones of expansion and odags only.
+ *
+ *   java -cp arabesque.jar io.arabesque.computation.ContainerBenchmark data/citeseer.graph 4
+ *
+ * Differences between the class and the containers are the dispatch of the
+ * user functions, since the work is the same.
+ */
+object ContainerBenchmark {
+  val REPETITIONS = 3
+
+  val CONF_MAXSIZE = "arabesque.benchmark.maxsize"
+
+  /**
+   * The exploration of the benchmark, written as a computation class
+   */
+  class ExplorationComputation extends VertexInducedComputation[VertexInducedEmbedding] {
+    private var maxSize: Int = _
+
+    override def init(): Unit = {
+      super.init()
+      maxSize = Configuration.get [SparkConfiguration[VertexInducedEmbedding]].
+        getInteger (CONF_MAXSIZE, 4)
+    }
+
+    override def shouldExpand(e: VertexInducedEmbedding): Boolean = e.getNumWords < maxSize
+
+    override def process(e: VertexInducedEmbedding): Unit = {}
+  }
+
+  def main(args: Array[String]): Unit = {
+    if (args.length < 1) {
+      System.err.println ("Usage: ContainerBenchmark <graph file> [max size]")
+      System.exit (1)
+    }
+
+    val graphPath = args(0)
+    val maxSize = if (args.length > 1) args(1).toInt else 4
+
+    type E = VertexInducedEmbedding
+
+    val closures = VComputationContainer [E] (
+      processOpt = Some((e: E, c: Computation[E]) => {}),
+      shouldExpandOpt = Some((e: E, c: Computation[E]) => e.getNumWords < maxSize))
+
+    val predicates = VComputationContainer [E] (
+      processOpt = Some((e: E, c: Computation[E]) => {}),
+      shouldExpandOpt = Some(new EmbeddingPredicate[E] {
+        def test(e: E, c: Computation[E]): Boolean = e.getNumWords < maxSize
+      }))
+
+    for (i <- 0 until REPETITIONS) {
+      run ("class", graphPath, maxSize, None)
+      run ("closures", graphPath, maxSize, Some(closures))
+      run ("predicates", graphPath, maxSize, Some(predicates))
+    }
+  }
+
+  private def run(name: String, graphPath: String, maxSize: Int,
+      containerOpt: Option[ComputationContainer[VertexInducedEmbedding]]): Unit = {
+
+    val config = containerOpt match {
+      case Some(container) =>
+        new SparkConfiguration[VertexInducedEmbedding].withNewComputation (container)
+      case None =>
+        new SparkConfiguration[VertexInducedEmbedding].
+          set ("computation", classOf[ExplorationComputation].getName)
+    }
+
+    config.set ("input_graph_path", graphPath)
+    config.set ("input_graph_local", true)
+    config.set ("output_active", false)
+    config.set (CONF_MAXSIZE, maxSize)
+
+    val masterEngine = new LocalMasterEngine [VertexInducedEmbedding] (null, config)
+    val start = System.currentTimeMillis
+    masterEngine.compute()
+    masterEngine.finalizeComputation()
+
+    println (s"${name} (max size ${maxSize}): ${System.currentTimeMillis - start}ms")
+  }
+}
@@ -0,0 +1,164 @@
+package io.arabesque.computation
+
+import java.util.concurrent.atomic.AtomicLong
+
+import io.arabesque.aggregation.AggregationStorage
+import io.arabesque.embedding._
+import io.arabesque.odag.{SinglePatternODAG, SinglePatternODAGStash}
+import io.arabesque.odag.BasicODAGStash.EfficientReader
+
+import org.apache.hadoop.io.{LongWritable, Writable}
+
+import org.apache.spark.Accumulator
+import org.apache.spark.broadcast.Broadcast
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable.Map
+
+/**
+ * Underlying engine that runs an Arabesque partition as a task of the
+ * [[LocalMasterEngine]], i.e., in the same jvm as the master and with no
+ * Spark jobs involved. Expansions are packed in the outbound odags of this
+ * engine and aggregations in its own storages, both merged by the master in
+ * memory. Outputs are the ones of the spark engines.
+ *
+ * @param partitionId partition of this engine
+ * @param superstep superstep of this engine
+ * @param counters stats and user-defined aggregators, shared by the
+ * partitions of the superstep
+ * @param previousAggregations aggregations of the previous superstep, updated
+ * by the master before the outbound odags are filtered (see
+ * [[withNewAggregations]])
+ */
+class LocalEngine [E <: Embedding] (
+    val partitionId: Int,
+    val superstep: Int,
+    counters: scala.collection.Map[String,AtomicLong],
+    @volatile var previousAggregations
+      : scala.collection.Map[String,AggregationStorage[_ <: Writable, _ <: Writable]])
+  extends SparkEngine[E] {
+
+  // no spark accumulators or broadcasts: see *counters* and
+  // *previousAggregations*
+  val accums: Map[String,Accumulator[_]] = Map.empty
+  val previousAggregationsBc: Broadcast[_] = null
+
+  // outbound odags
+  val nextEmbeddingStash = new SinglePatternODAGStash
+
+  // reader parameters (as in ODAGEngine)
+  lazy val numBlocks: Int =
+    configuration.getInteger ("numBlocks", getNumberPartitions * getNumberPartitions)
+  lazy val maxBlockSize: Int =
+    configuration.getInteger ("maxBlockSize", 10000)
+
+  /**
+   * Expands the embeddings of this partition: the empty embedding in the
+   * first superstep, the blocks of *inboundStash* that belong to this
+   * partition afterwards.
+   *
+   * @param inboundStash odags aggregated in the previous superstep, finalized
+   * and shared (read-only) by every partition
+   */
+  def compute(inboundStash: SinglePatternODAGStash): Unit = {
+    logInfo (s"Computing partition(${partitionId}) of superstep ${superstep}")
+    if (computed)
+      throw new RuntimeException ("computation must be atomic")
+    if (configuration.getEmbeddingClass() == null)
+      configuration.setEmbeddingClass (computation.getEmbeddingClass())
+
+    if (superstep == 0) { // bootstrap
+      val initialEmbedd: E = configuration.createEmbedding()
+      computation.expand (initialEmbedd)
+
+    } else {
+      val reader = new EfficientReader [E] (inboundStash,
+        computation,
+        getNumberPartitions,
+        numBlocks,
+        maxBlockSize)
+
+      while (reader.hasNext) {
+        computation.expand (reader.next)
+        numEmbeddingsProcessed += 1
+      }
+    }
+
+    closeOutputs()
+    flushStatsAccumulators
+    computed = true
+  }
+
+  /**
+   * Sets the aggregations of this superstep as *previousAggregations* and
+   * drops the outbound odags whose patterns do not pass *aggregationFilter*.
+   * The filter is the one of a new computation, initialized with these
+   * aggregations (e.g. the supports read by FSM in *init*), as in
+   * [[ODAGEngineSP.withNewAggregations]]: *computation* was initialized with
+   * the aggregations of the previous superstep.
+   *
+   * @param aggregations aggregations of this superstep
+   * @return number of odags dropped
+   */
+  def withNewAggregations(aggregations
+      : scala.collection.Map[String,AggregationStorage[_ <: Writable, _ <: Writable]])
+    : Int = {
+    previousAggregations = aggregations
+
+    val filterComputation = configuration.createComputation [E]
+    filterComputation.setUnderlyingExecutionEngine (this)
+    filterComputation.init()
+    filterComputation.initAggregations()
+
+    val numFiltered = nextEmbeddingStash.aggregationFilter (filterComputation)
+    if (numFiltered > 0)
+      logInfo (s"Filtered ${numFiltered} outbound odags")
+    numFiltered
+  }
+
+  /**
+   * Outbound odags, those that pass *aggregationFilter* once
+   * [[withNewAggregations]] is called
+   */
+  def outboundOdags: Iterator[SinglePatternODAG] =
+    nextEmbeddingStash.getEzips.iterator
+
+  /**
+   * Adds an expansion (embedding) to the outbound odags, or expands it right
+   * away in depth-first mode.
+   *
+   * @param expansion embedding to be added to the stash of outbound odags
+   */
+  override def processExpansion(expansion: E) = {
+    if (depthFirst) {
+      expandDepthFirst (expansion)
+    } else {
+      nextEmbeddingStash.addEmbedding (expansion)
+      numEmbeddingsGenerated += 1
+    }
+  }
+
+  override def getAggregatedValue[A <: Writable](name: String): A =
+    previousAggregations.get (name) match {
+      case Some(aggStorage) => aggStorage.asInstanceOf[A]
+      case None =>
+        logWarning (s"Previous aggregation storage $name not found")
+        null.asInstanceOf[A]
+    }
+
+  override def aggregate(name: String, value: LongWritable): Unit = counters.get (name) match {
+    case Some(counter) =>
+      counter.addAndGet (value.get)
+    case None =>
+      logWarning (s"Aggregator/Accumulator $name not found")
+  }
+
+  override def flushStatsAccumulators: Unit = {
+    logInfo (s"Embeddings processed: ${numEmbeddingsProcessed}")
+    counters(ODAGMasterEngine.AGG_EMBEDDINGS_PROCESSED).addAndGet (numEmbeddingsProcessed)
+    logInfo (s"Embeddings generated: ${numEmbeddingsGenerated}")
+    counters(ODAGMasterEngine.AGG_EMBEDDINGS_GENERATED).addAndGet (numEmbeddingsGenerated)
+    logInfo (s"Embeddings output: ${numEmbeddingsOutput}")
+    counters(ODAGMasterEngine.AGG_EMBEDDINGS_OUTPUT).addAndGet (numEmbeddingsOutput)
+  }
+}
@@ -0,0 +1,319 @@
+package io.arabesque.computation
+
+import java.util.concurrent.{Callable, ForkJoinPool, RecursiveTask}
+import java.util.concurrent.atomic.AtomicLong
+
+import io.arabesque.aggregation.AggregationStorage
+import io.arabesque.conf.SparkConfiguration
+import io.arabesque.embedding._
+import io.arabesque.odag.{SinglePatternODAG, SinglePatternODAGStash}
+import io.arabesque.pattern.Pattern
+import io.arabesque.utils.pool.PoolRegistry
+
+import org.apache.hadoop.conf.{Configuration => HadoopConfiguration}
+import org.apache.hadoop.fs.{FileSystem, Path}
+import org.apache.hadoop.io.Writable
+
+import org.apache.spark.SparkContext
+import org.apache.spark.rdd.RDD
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable.{ArrayBuffer, Map}
+
+/**
+ * Underlying engine that runs the Arabesque master and its partitions in this
+ * jvm, with no Spark jobs involved. The partitions of a superstep
+ * ([[LocalEngine]]) are tasks of a work-stealing pool; their outbound odags
+ * (by pattern) and aggregations (by name) are merged by reduction trees in the
+ * same pool, and the merged odags are read by the next superstep as they are,
+ * shared by every partition. Nothing is serialized between supersteps.
+ *
+ * The results are the ones of the spark engines, this engine is meant for
+ * single machines and tests. A spark context, if any, is only used to hand
+ * the results out as RDDs.
+ */
+class LocalMasterEngine [E <: Embedding] (_config: SparkConfiguration[E])
+    extends SparkMasterEngine [E] {
+
+  import LocalMasterEngine._
+
+  def config: SparkConfiguration[E] = _config
+
+  def this(_sc: SparkContext, config: SparkConfiguration[E]) {
+    this (config)
+    sc = _sc
+    init()
+  }
+
+  var superstep = 0
+
+  var masterComputation: MasterComputation = _
+
+  var aggregations
+    : Map[String,AggregationStorage[_ <: Writable, _ <: Writable]] = Map.empty
+
+  // stats and user-defined aggregators of the current superstep
+  var counters: Map[String,AtomicLong] = Map.empty
+
+  // embeddings output in memory (output_format: memory)
+  private val localOutputs = ArrayBuffer.empty[(String,ResultEmbedding[_])]
+
+  private var halted = false
+
+  lazy val numThreads: Int =
+    config.getInteger ("num_compute_threads", Runtime.getRuntime.availableProcessors)
+
+  private lazy val pool = new ForkJoinPool(numThreads)
+
+  override def init(): Unit = {
+    logInfo (s"Setting log level to ${config.getLogLevel}")
+    setLogLevel (config.getLogLevel)
+
+    // more partitions than threads, so that idle threads steal the remaining
+    // ones of a skewed superstep
+    config.setIfUnset ("num_partitions", numThreads * PARTITIONS_PER_THREAD)
+    config.setHadoopConfig (
+      if (sc != null) sc.hadoopConfiguration else new HadoopConfiguration)
+    config.initialize()
+
+    // garantees that outputPath does not exist
+    if (config.isOutputActive) {
+      val fs = FileSystem.get (config.hadoopConf)
+      val outputPath = new Path(config.getOutputPath)
+      if (fs.exists (outputPath))
+        throw new RuntimeException (
+          s"Output path ${config.getOutputPath} exists. Choose another one."
+          )
+    }
+
+    // master computation
+    masterComputation = config.createMasterComputation()
+    masterComputation.setUnderlyingExecutionEngine (this)
+    masterComputation.init()
+
+    // master must know aggregators metadata
+    val computation = config.createComputation()
+    computation.initAggregations()
+
+    counters = newCounters
+  }
+
+  /**
+   * Master's computation takes place here, superstep by superstep
+   */
+  override def compute(): Unit = {
+    var inboundStash = new SinglePatternODAGStash
+    var previousAggregations
+      : scala.collection.Map[String,AggregationStorage[_ <: Writable, _ <: Writable]] =
+        Map.empty
+
+    val startTime = System.currentTimeMillis
+
+    do {
+      val superstepStart = System.currentTimeMillis
+      val _superstep = superstep
+      val _counters = counters
+      val stash = inboundStash
+
+      // [1] expand/compute the partitions
+      val execEngines = (0 until numPartitions).map (partitionId =>
+        new LocalEngine [E] (partitionId, _superstep, _counters, previousAggregations))
+
+      invokeAll (execEngines.map (execEngine => new Callable[Unit] {
+        override def call(): Unit = execEngine.compute (stash)
+      }))
+
+      // [2] aggregations of this superstep, before odags are filtered
+      val newAggregations = getAggregations (execEngines)
+      aggregations = mergeOrReplaceAggregations (aggregations, newAggregations)
+      previousAggregations = newAggregations
+      invokeAll (execEngines.map (execEngine => new Callable[Int] {
+        override def call(): Int = execEngine.withNewAggregations (newAggregations)
+      }))
+
+      logInfo (s"""Aggregations and sizes
+        ${newAggregations.mkString("\n")}
+      """)
+
+      // [3] odags of the next superstep
+      inboundStash = aggregateOdags (execEngines)
+      logInfo (s"Number of aggregated ODAGs = ${inboundStash.getNumZips}")
+
+      if (config.isOutputActive &&
+          config.getOutputFormat == SparkConfiguration.OUTPUT_MEMORY) {
+        execEngines.foreach (localOutputs ++= _.outputEmbeddings)
+      }
+
+      // whether the user chose to customize master computation, executed every
+      // superstep
+      masterComputation.compute()
+
+      val superstepFinish = System.currentTimeMillis
+      logInfo (s"Superstep $superstep finished in ${superstepFinish - superstepStart} ms")
+
+      // print stats
+      counters.foreach { case (name,counter) =>
+        logInfo (s"Accumulator[$name]: ${counter.get}")
+      }
+      counters = newCounters
+
+      superstep += 1
+
+    } while (!halted && !inboundStash.isEmpty) // while there are ODAGs to be processed
+
+    val finishTime = System.currentTimeMillis
+
+    logInfo (s"Computation has finished. It took ${finishTime - startTime} ms")
+
+    // pools are shared by the threads of this jvm, which run every partition
+    logInfo (s"Object pools:\n${PoolRegistry.instance.getStatsString}")
+  }
+
+  /**
+   * Runs *tasks* in the pool and waits for all of them, rethrowing the first
+   * failure
+   */
+  private def invokeAll[T](tasks: Seq[Callable[T]]): Seq[T] =
+    pool.invokeAll (seqAsJavaList (tasks)).map (_.get)
+
+  /**
+   * Aggregates the storages of every partition by name, one reduction tree
+   * per aggregation. Storages are aggregated as they are, no serialization
+   * involved.
+   *
+   * @param execEngines engines of the superstep, computed
+   * @return a map (name -> aggregationStorage)
+   */
+  private def getAggregations(execEngines: IndexedSeq[LocalEngine[E]])
+    : Map[String,AggregationStorage[_ <: Writable, _ <: Writable]] = {
+
+    def reduce[K <: Writable, V <: Writable](name: String): AggregationStorage[K,V] = {
+      val aggStorage = pool.invoke (new TreeReduce [LocalEngine[E],AggregationStorage[K,V]] (
+        execEngines, 0, execEngines.size,
+        _.flushAggregationsByName (name).next.asInstanceOf[AggregationStorage[K,V]],
+        (agg1, agg2) => {
+          agg1.aggregate (agg2)
+          agg1
+        }))
+      aggStorage.endedAggregation
+      aggStorage
+    }
+
+    val aggregations = Map.empty[String,AggregationStorage[_ <: Writable, _ <: Writable]]
+    for (name <- config.getAggregationsMetadata.keySet) {
+      aggregations.update (name, reduce [Writable,Writable] (name))
+    }
+    aggregations
+  }
+
+  /**
+   * Aggregates the outbound odags of every partition by pattern (those that
+   * pass *aggregationFilter*), one reduction tree per pattern. The resulting
+   * odags are read-only copies, finalized once for all the partitions.
+   *
+   * @param execEngines engines of the superstep, with updated aggregations
+   * @return stash of the next superstep
+   */
+  private def aggregateOdags(execEngines: IndexedSeq[LocalEngine[E]]): SinglePatternODAGStash = {
+    val odagsByPattern = Map.empty[Pattern,ArrayBuffer[SinglePatternODAG]]
+    for (execEngine <- execEngines; odag <- execEngine.outboundOdags) {
+      odagsByPattern.getOrElseUpdate (odag.getPattern, ArrayBuffer.empty) += odag
+    }
+
+    val aggregatedOdags = invokeAll (odagsByPattern.toSeq.map { case (pattern,odags) =>
+      new Callable[(Pattern,SinglePatternODAG)] {
+        override def call(): (Pattern,SinglePatternODAG) = {
+          val odag = new TreeReduce [SinglePatternODAG,SinglePatternODAG] (
+            odags, 0, odags.size,
+            odag => odag,
+            (odag1, odag2) => {
+              odag1.aggregate (odag2)
+              odag1
+            }).invoke()
+          (pattern, odag.readOnlyCopy)
+        }
+      }
+    })
+
+    val stash = new SinglePatternODAGStash (
+      mapAsJavaMap (aggregatedOdags.toMap[Pattern,SinglePatternODAG]))
+    stash.finalizeConstruction (pool, numThreads)
+    stash
+  }
+
+  override def haltComputation() = {
+    logInfo ("Halting master computation")
+    halted = true
+  }
+
+  override def getSuperstep(): Long = superstep
+
+  override def getAggregatedValue[T <: Writable](name: String) = aggregations.get(name) match {
+    case Some(aggStorage) => aggStorage.asInstanceOf[T]
+    case None =>
+      logWarning (s"AggregationStorage $name not found")
+      null.asInstanceOf[T]
+  }
+
+  override def setAggregatedValue[T <: Writable](name: String, value: T) = {
+    logWarning ("Setting aggregated value has no effect in local execution engine")
+  }
+
+  override def finalizeComputation(): Unit = {
+    pool.shutdown()
+  }
+
+  /**
+   * Embeddings output in memory are kept by this master, the other formats
+   * are read from the output path as in the spark engines
+   */
+  override def getEmbeddings(embeddPath: String): RDD[ResultEmbedding[_]] = {
+    if (config.isOutputActive &&
+        config.getOutputFormat == SparkConfiguration.OUTPUT_MEMORY) {
+      val outputName = if (embeddPath == config.getOutputPath)
+        SparkMasterEngine.DEFAULT_OUTPUT
+      else
+        new Path (embeddPath).getName
+
+      sc.parallelize (localOutputs.filter (_._1 == outputName).map (_._2),
+        numPartitions)
+    } else {
+      super.getEmbeddings (embeddPath)
+    }
+  }
+
+  private def newCounters: Map[String,AtomicLong] = Map(
+    ODAGMasterEngine.AGG_EMBEDDINGS_PROCESSED -> new AtomicLong(0L),
+    ODAGMasterEngine.AGG_EMBEDDINGS_GENERATED -> new AtomicLong(0L),
+    ODAGMasterEngine.AGG_EMBEDDINGS_OUTPUT -> new AtomicLong(0L)
+  )
+}
+
+object LocalMasterEngine {
+  // default number of partitions per thread of the pool
+  val PARTITIONS_PER_THREAD = 4
+
+  /**
+   * Reduces *items* in [from, until), split in halves that run in parallel
+   * (the left one forked, for idle threads to steal)
+   */
+  class TreeReduce[A,T](
+      items: IndexedSeq[A],
+      from: Int,
+      until: Int,
+      leaf: A => T,
+      op: (T,T) => T) extends RecursiveTask[T] {
+
+    override def compute(): T = {
+      if (until - from == 1) {
+        leaf (items(from))
+      } else {
+        val mid = (from + until) >>> 1
+        val left = new TreeReduce [A,T] (items, from, mid, leaf, op)
+        left.fork()
+        val right = new TreeReduce [A,T] (items, mid, until, leaf, op).compute()
+        op (left.join(), right)
+      }
+    }
+  }
+}
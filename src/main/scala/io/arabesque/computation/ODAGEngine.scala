@@ -54,8 +54,7 @@ trait ODAGEngine[
   override def finalize() = {
     super.finalize()
     // make sure we close writers
-    if (outputStreamOpt.isDefined) outputStreamOpt.get.close
-    if (embeddingWriterOpt.isDefined) embeddingWriterOpt.get.close
+    closeOutputs()
   }
 
   /**
@@ -70,6 +69,9 @@ trait ODAGEngine[
     if (configuration.getEmbeddingClass() == null)
       configuration.setEmbeddingClass (computation.getEmbeddingClass())
     expansionCompute (inboundStashes)
+    // outputs are complete, readers must not depend on this engine being
+    // garbage collected (finalize)
+    closeOutputs()
     flushStatsAccumulators
     computed = true
   }
@@ -157,13 +159,18 @@ trait ODAGEngine[
   def addOutboundEmbedding(embedding: E) = processExpansion (embedding)
 
   /**
-   * Adds an expansion (embedding) to the outbound odags.
+   * Adds an expansion (embedding) to the outbound odags, or expands it right
+   * away in depth-first mode.
    *
    * @param expansion embedding to be added to the stash of outbound odags
    */
   override def processExpansion(expansion: E) = {
-    nextEmbeddingStash.addEmbedding (expansion)
-    numEmbeddingsGenerated += 1
+    if (depthFirst) {
+      expandDepthFirst (expansion)
+    } else {
+      nextEmbeddingStash.addEmbedding (expansion)
+      numEmbeddingsGenerated += 1
+    }
   }
 }
 
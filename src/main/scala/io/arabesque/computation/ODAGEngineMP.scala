@@ -42,7 +42,6 @@ case class ODAGEngineMP [E <: Embedding] (
   /**
    * Returns a new execution engine from this with the aggregations/computation
    * variables updated (immutability)
-    configuration.getInteger (CONF_COMM_STRATEGY_ODAGMP_MAX, CONF_)
    *
    * @param aggregationsBc broadcast variable with aggregations
    * @return the new execution engine, ready for flushing
@@ -56,16 +55,24 @@ case class ODAGEngineMP [E <: Embedding] (
       previousAggregationsBc = aggregationsBc,
       accums = accums)
 
-    // set next stash with odags
+    // set next stash with odags, patterns that do not pass
+    // *aggregationFilter* (and odags left with none) are dropped right away:
+    // no flush method serializes or shuffles them
     execEngine.nextEmbeddingStash = nextEmbeddingStash
+    nextEmbeddingStash.aggregationFilter (execEngine.computation)
 
     execEngine
   }
 
-  override def flush: Iterator[(_,_)] = configuration.getOdagFlushMethod match {
+  override def flush: Iterator[(_,_)] = flush (configuration.getOdagFlushMethod)
+
+  /**
+   * Flushes outbound odags with the given method. Multi-pattern odags are
+   * either flushed whole or in parts (see [[ODAGMasterEngineMP]]).
+   */
+  def flush(flushMethod: String): Iterator[(_,_)] = flushMethod match {
     case SparkConfiguration.FLUSH_BY_PATTERN => flushByPattern
-    //case SparkConfiguration.FLUSH_BY_ENTRIES => flushByEntries
-    //case SparkConfiguration.FLUSH_BY_PARTS =>   flushByParts
+    case SparkConfiguration.FLUSH_BY_PARTS =>   flushByParts
   }
 
   /**
@@ -78,9 +85,60 @@ case class ODAGEngineMP [E <: Embedding] (
    */
   private def flushByPattern: Iterator[(Int,MultiPatternODAG)]  = {
     // consume content in *nextEmbeddingStash*
-    nextEmbeddingStash.aggregationFilter (computation)
     for ((odag,idx) <- nextEmbeddingStash.odags.iterator.zipWithIndex
          if odag != null)
       yield (idx, odag)
   }
+
+  /**
+   * Outbound odags with the patterns of each that survive
+   * *aggregationFilter*, i.e., the ones left by [[withNewAggregations]]
+   *
+   * @return iterator of triples (slot, odag, patterns)
+   */
+  private def filteredOdags: Iterator[(Int,MultiPatternODAG,Set[Pattern])] = {
+    for ((odag,idx) <- nextEmbeddingStash.odags.iterator.zipWithIndex
+         if odag != null)
+      yield (idx, odag, odag.patterns)
+  }
+
+  /**
+   * Patterns of the outbound odags, flushed along with [[flushByParts]]
+   *
+   * @return iterator of pairs (slot, patterns)
+   */
+  def outboundPatterns: Iterator[(Int,Set[Pattern])] =
+    filteredOdags.map { case (idx, _, patterns) => (idx, patterns) }
+
+  /**
+   * Flushes the domains of outbound odags by chunks of bytes, patterns are
+   * flushed apart by [[outboundPatterns]]. We assume that this execEngine is
+   * ready to do *aggregationFilter*, i.e., this execution engine was
+   * generated by [[withNewAggregations]].
+   *
+   * @return iterator of pairs ((slot,partId), bytes)
+   */
+  private def flushByParts: Iterator[((Int,Int),Array[Byte])] = {
+
+    val numPartitions = getNumberPartitions()
+    val outputs = Array.fill[ByteArrayOutputStream](numPartitions)(new ByteArrayOutputStream())
+    val dataOutputs = outputs.map (output => new DataOutputStream(output): DataOutput)
+    val hasContent = new Array[Boolean](numPartitions)
+
+    filteredOdags.flatMap { case (idx, odag, _) =>
+
+      // reset aux structures
+      var i = 0
+      while (i < numPartitions) {
+        outputs(i).reset
+        hasContent(i) = false
+        i += 1
+      }
+
+      odag.writeInParts (dataOutputs, hasContent)
+
+      for (partId <- 0 until numPartitions if hasContent(partId))
+        yield ((idx, partId), outputs(partId).toByteArray)
+    }
+  }
 }
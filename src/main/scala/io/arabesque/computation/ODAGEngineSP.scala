@@ -4,6 +4,7 @@ import java.io._
 import java.util.concurrent.{ExecutorService, Executors}
 
 import io.arabesque.aggregation.{AggregationStorage, AggregationStorageFactory}
+import io.arabesque.cache.LZ4ObjectCache
 import io.arabesque.conf.{Configuration, SparkConfiguration}
 import io.arabesque.embedding._
 import io.arabesque.odag.domain.DomainEntry
@@ -55,18 +56,64 @@ case class ODAGEngineSP [E <: Embedding](
       previousAggregationsBc = aggregationsBc,
       accums = accums)
 
-    // set next stash with odags
+    // set next stash with odags, those of patterns that do not pass
+    // *aggregationFilter* are dropped right away: no flush method serializes
+    // or shuffles them
     execEngine.nextEmbeddingStash = nextEmbeddingStash
-    
+    val numFiltered = nextEmbeddingStash.aggregationFilter (execEngine.computation)
+    if (numFiltered > 0)
+      logInfo (s"Filtered ${numFiltered} outbound odags before flushing")
+
     execEngine
   }
 
-  override def flush: Iterator[(_,_)] = configuration.getOdagFlushMethod match {
+  override def flush: Iterator[(_,_)] = flush (configuration.getOdagFlushMethod)
+
+  /**
+   * Flushes outbound odags with the given method, which the master may choose
+   * superstep by superstep (see [[CommStrategySelector]])
+   */
+  def flush(flushMethod: String): Iterator[(_,_)] = flushMethod match {
     case SparkConfiguration.FLUSH_BY_PATTERN => flushByPattern
     case SparkConfiguration.FLUSH_BY_ENTRIES => flushByEntries
     case SparkConfiguration.FLUSH_BY_PARTS =>   flushByParts
   }
 
+  /**
+   * Sizes of the outbound odags that survive *aggregationFilter*, used by the
+   * master to choose the flush method. We assume that this execEngine was
+   * generated by [[withNewAggregations]].
+   *
+   * @return iterator of pairs (pattern, (entries, estimated bytes))
+   */
+  def outboundOdagSizes: Iterator[(Pattern,(Long,Long))] = {
+    for (odag <- nextEmbeddingStash.getEzips().iterator)
+      yield {
+        val storage = odag.getStorage
+        val numEntries = storage.getNumberOfEntries.toLong
+        (odag.getPattern, (numEntries,
+          CommStrategySelector.odagBytes (numEntries, storage.getStats.sumPointersSize)))
+      }
+  }
+
+  /**
+   * Packs embeddings produced by [[SparkEmbeddingEngine]] into the outbound
+   * odags, when the computation switches from raw embeddings to odags.
+   *
+   * @param caches embedding caches of this partition
+   */
+  def stashEmbeddings(caches: Iterator[LZ4ObjectCache]): Unit = {
+    if (configuration.getEmbeddingClass() == null)
+      configuration.setEmbeddingClass (computation.getEmbeddingClass())
+
+    for (cache <- caches) {
+      cache.prepareForIteration
+      while (cache.hasNext) {
+        nextEmbeddingStash.addEmbedding (cache.next.asInstanceOf[E])
+      }
+    }
+  }
+
   /**
    * Naively flushes outbound odags.
    * We assume that this execEngine is ready to
@@ -77,9 +124,7 @@ case class ODAGEngineSP [E <: Embedding](
    */
   private def flushByPattern: Iterator[(Pattern,SinglePatternODAG)]  = {
     // consume content in *nextEmbeddingStash*
-    for (odag <- nextEmbeddingStash.getEzips().iterator
-         if computation.aggregationFilter (odag.getPattern)
-           )
+    for (odag <- nextEmbeddingStash.getEzips().iterator)
       yield (odag.getPattern, odag)
   }
 
@@ -140,9 +185,8 @@ case class ODAGEngineSP [E <: Embedding](
       override def next = nextRec
     }
 
-    // filter and flush
+    // flush (already filtered)
     nextEmbeddingStash.getEzips.iterator.
-      filter (odag => computation.aggregationFilter (odag.getPattern)).
       flatMap (new ODAGPartsIterator(_))
   }
 
@@ -163,7 +207,6 @@ case class ODAGEngineSP [E <: Embedding](
     val hasContent = new Array[Boolean](numPartitions)
 
     nextEmbeddingStash.getEzips().iterator.
-      filter (odag => computation.aggregationFilter(odag.getPattern)).
       flatMap { odag =>
 
         // reset aux structures
@@ -6,6 +6,7 @@ import io.arabesque.aggregation.{AggregationStorage, AggregationStorageMetadata}
 import io.arabesque.conf.SparkConfiguration
 import io.arabesque.embedding._
 import io.arabesque.odag._
+import io.arabesque.odag.domain.DomainStorageMerger
 import io.arabesque.pattern.Pattern
 import io.arabesque.utils.SerializableConfiguration
 import org.apache.hadoop.fs.{FileSystem, Path}
@@ -16,7 +17,7 @@ import org.apache.spark.rdd.RDD
 import org.apache.spark.{Accumulator, SparkContext}
 
 import scala.collection.JavaConversions._
-import scala.collection.mutable.Map
+import scala.collection.mutable.{ArrayBuffer, Map}
 import scala.concurrent.ExecutionContext.Implicits.global
 import scala.concurrent.duration.Duration
 import scala.concurrent.{Await, Future}
@@ -58,6 +59,10 @@ trait ODAGMasterEngine [
 
   var odags: List[RDD[O]] = List()
 
+  // whether the computation reads the aggregations of previous supersteps,
+  // e.g. to filter outbound odags by pattern (see Computation)
+  var dependsOnAggregations = true
+
   def sparkContext: SparkContext = sc
   def arabConfig: SparkConfiguration[_ <: Embedding] = config
 
@@ -80,6 +85,7 @@ trait ODAGMasterEngine [
     // master must know aggregators metadata
     val computation = config.createComputation()
     computation.initAggregations()
+    dependsOnAggregations = computation.dependsOnAggregations
 
     // stats aggregation via accumulators
     aggAccums = Map.empty
@@ -178,4 +184,59 @@ object ODAGMasterEngine {
   val AGG_EMBEDDINGS_PROCESSED = "embeddings_processed"
   val AGG_EMBEDDINGS_GENERATED = "embeddings_generated"
   val AGG_EMBEDDINGS_OUTPUT = "embeddings_output"
+
+  val MAX_PARTS_PER_MERGE = 16
+
+  /**
+   * Start and end (ms since the superstep started) of the phases of a
+   * superstep, which may overlap when they run in futures
+   */
+  class SuperstepTimeline(superstep: Int) {
+    private val start = System.currentTimeMillis
+    private val phases = ArrayBuffer.empty[(String,Long,Long)]
+
+    def phase[T](name: String)(body: => T): T = {
+      val phaseStart = System.currentTimeMillis - start
+      try {
+        body
+      } finally {
+        val phaseEnd = System.currentTimeMillis - start
+        synchronized { phases += ((name, phaseStart, phaseEnd)) }
+      }
+    }
+
+    override def toString: String = synchronized {
+      phases.sortBy (_._2).
+        map { case (name,phaseStart,phaseEnd) => s"${name}[${phaseStart},${phaseEnd}]" }.
+        mkString (s"Superstep ${superstep} timeline (ms): ", " ", "")
+    }
+  }
+
+  /**
+   * Merges serialized ODAG parts with the same key through
+   * [[DomainStorageMerger]], without materializing them. Parts are buffered
+   * and merged at most MAX_PARTS_PER_MERGE at a time.
+   */
+  def mergeSerializedParts[K: ClassTag](parts: RDD[(K, Array[Byte])])
+    : RDD[(K, Array[Byte])] = {
+
+    def bufferPart(buffer: ArrayBuffer[Array[Byte]], part: Array[Byte]) = {
+      buffer += part
+      if (buffer.size >= MAX_PARTS_PER_MERGE) {
+        val merged = DomainStorageMerger.merge (buffer.toArray)
+        buffer.clear()
+        buffer += merged
+      }
+      buffer
+    }
+
+    parts.combineByKey (
+      (part: Array[Byte]) => ArrayBuffer(part),
+      (buffer: ArrayBuffer[Array[Byte]], part: Array[Byte]) => bufferPart (buffer, part),
+      (buffer1: ArrayBuffer[Array[Byte]], buffer2: ArrayBuffer[Array[Byte]]) => {
+        buffer2.foreach (part => bufferPart (buffer1, part))
+        buffer1
+      }
+    ).mapValues (buffer => DomainStorageMerger.merge (buffer.toArray))
+  }
 }
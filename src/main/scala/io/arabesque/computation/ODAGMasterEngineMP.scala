@@ -126,19 +126,22 @@ class ODAGMasterEngineMP [E <: Embedding] (_config: SparkConfiguration[E])
        */
 
       // we choose the flush method for ODAGs: load-balancing vs. overhead
-      val aggregatedOdags = config.getOdagFlushMethod match {
+      val _flushMethod = flushMethod
+      val updatedEngines = execEngines.
+        map (_.withNewAggregations (previousAggregationsBc)) // update previousAggregations
+      val aggregatedOdags = _flushMethod match {
         case SparkConfiguration.FLUSH_BY_PATTERN =>
-          val odags = execEngines.
-            map (_.withNewAggregations (previousAggregationsBc)). // update previousAggregations
-            flatMap (_.flush).
+          val odags = updatedEngines.
+            flatMap (_.flush (_flushMethod)).
             asInstanceOf[RDD[(Int,MultiPatternODAG)]]
           aggregatedOdagsByPattern (odags)
 
-        case SparkConfiguration.FLUSH_BY_ENTRIES =>
-          sc.makeRDD (Seq.empty[(Int,MultiPatternODAG)])
-
         case SparkConfiguration.FLUSH_BY_PARTS =>
-          sc.makeRDD (Seq.empty[(Int,MultiPatternODAG)])
+          val odags = updatedEngines.
+            flatMap (_.flush (_flushMethod)).
+            asInstanceOf[RDD[((Int,Int),Array[Byte])]]
+          val patterns = updatedEngines.flatMap (_.outboundPatterns)
+          aggregatedOdagsByParts (odags, patterns)
       }
 
       odags = aggregatedOdags.values :: odags
@@ -182,6 +185,7 @@ class ODAGMasterEngineMP [E <: Embedding] (_config: SparkConfiguration[E])
       }
 
       // the exec engines have no use anymore, make room for the next round
+      collectOutputs (execEngines)
       execEngines.unpersist()
 
       // whether the user chose to customize master computation, executed every
@@ -240,6 +244,47 @@ class ODAGMasterEngineMP [E <: Embedding] (_config: SparkConfiguration[E])
     execEngines
   }
 
+  /**
+   * Multi-pattern odags are keyed by stash slot rather than by entry, thus
+   * they are flushed whole (by pattern) or by parts
+   */
+  private lazy val flushMethod: String = config.getOdagFlushMethod match {
+    case SparkConfiguration.FLUSH_BY_PATTERN =>
+      SparkConfiguration.FLUSH_BY_PATTERN
+    case SparkConfiguration.FLUSH_BY_PARTS =>
+      SparkConfiguration.FLUSH_BY_PARTS
+    case unsupported =>
+      logWarning (s"Flush method ${unsupported} is not supported by" +
+        s" ${SparkConfiguration.COMM_ODAG_MP}, flushing by parts")
+      SparkConfiguration.FLUSH_BY_PARTS
+  }
+
+  private def aggregatedOdagsByParts(
+      odags: RDD[((Int,Int),Array[Byte])],
+      patterns: RDD[(Int,Set[Pattern])]) = {
+
+    // (flushByParts)
+    // Domains are merged in serialized form, first by (slot, partId) and then
+    // by slot, and joined with the union of the patterns of the slot
+    val mergedParts = ODAGMasterEngine.mergeSerializedParts (odags).
+      map { case ((slot,_),part) => (slot,part) }
+
+    val slotPatterns = patterns.reduceByKey (_ union _)
+
+    val aggregatedOdags = ODAGMasterEngine.mergeSerializedParts (mergedParts).
+      join (slotPatterns).
+      map { case (slot,(bytes,patterns)) =>
+        val dataInput = new DataInputStream(new ByteArrayInputStream(bytes))
+        val odag = new MultiPatternODAG(true)
+        odag.patterns = patterns
+        odag.getStorage.readFields (dataInput)
+        odag.setSerializeAsReadOnly (true)
+        (slot,odag)
+      }
+
+    aggregatedOdags
+  }
+
   private def aggregatedOdagsByPattern(odags: RDD[(Int,MultiPatternODAG)]) = {
 
     // (flushByPattern)
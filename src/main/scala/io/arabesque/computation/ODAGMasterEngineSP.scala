@@ -3,6 +3,7 @@ package io.arabesque.computation
 import java.io.{ByteArrayInputStream, DataInputStream}
 
 import io.arabesque.aggregation.{AggregationStorage, AggregationStorageMetadata}
+import io.arabesque.cache.LZ4ObjectCache
 import io.arabesque.conf.SparkConfiguration
 import io.arabesque.embedding._
 import io.arabesque.odag._
@@ -37,6 +38,8 @@ class ODAGMasterEngineSP [E <: Embedding] (_config: SparkConfiguration[E])
   
   def config: SparkConfiguration[E] = _config
 
+  private lazy val commStrategySelector = new CommStrategySelector (config)
+
   def this(_sc: SparkContext, config: SparkConfiguration[E]) {
     this (config)
     sc = _sc
@@ -58,22 +61,86 @@ class ODAGMasterEngineSP [E <: Embedding] (_config: SparkConfiguration[E])
     logInfo (s"SparkConfiguration estimated size = ${SizeEstimator.estimate(config)} bytes")
     logInfo (s"HadoopConfiguration estimated size = ${SizeEstimator.estimate(config.hadoopConf)} bytes")
 
-    // setup an RDD to simulate empty partitions and a broadcast variable to
-    // communicate the global aggregated ODAGs on each step
-    val superstepRDD = sc.makeRDD (Seq.empty[Any], numPartitions).cache
-    var aggregatedOdagsBc: Broadcast[scala.collection.Map[Pattern,SinglePatternODAG]] =
+    val aggregatedOdagsBc: Broadcast[scala.collection.Map[Pattern,SinglePatternODAG]] =
       sc.broadcast (Map.empty)
 
-    var previousAggregationsBc: Broadcast[_] = sc.broadcast (
+    val previousAggregationsBc: Broadcast[_] = sc.broadcast (
       Map.empty[String,AggregationStorage[_ <: Writable, _ <: Writable]]
     )
 
+    runSupersteps (configBc, aggregatedOdagsBc, previousAggregationsBc)
+  }
+
+  /**
+   * Carries on a computation whose previous supersteps exchanged raw
+   * embeddings (comm_strategy = auto): the embeddings generated in the last
+   * superstep are packed into odags, aggregated and expanded from the current
+   * superstep on. Aggregations, accumulators and master computation must have
+   * been handed over already.
+   *
+   * @param caches embedding caches generated in the previous superstep
+   * @param previousAggregationsBc aggregations of the previous superstep
+   * @param embeddingsGenerated number of embeddings in *caches*
+   */
+  def resumeFromEmbeddings(caches: RDD[LZ4ObjectCache],
+      previousAggregationsBc: Broadcast[_], embeddingsGenerated: Long): Unit = {
+    val configBc = sc.broadcast(config)
+    val _aggAccums = aggAccums
+    val lastSuperstep = superstep - 1
+
+    val execEngines = caches.mapPartitionsWithIndex { (idx, cacheIter) =>
+      configBc.value.initialize()
+
+      val execEngine = new ODAGEngineSP [E] (
+        partitionId = idx,
+        superstep = lastSuperstep,
+        accums = _aggAccums,
+        previousAggregationsBc = previousAggregationsBc
+      )
+      execEngine.init()
+      execEngine.stashEmbeddings (cacheIter)
+      Iterator(execEngine)
+    }.persist (MEMORY_ONLY)
+
+    val flushMethod = selectFlushMethod (lastSuperstep, execEngines,
+      previousAggregationsBc, embeddingsGenerated)
+    val aggregatedOdags = flushAndAggregate (execEngines,
+      previousAggregationsBc, flushMethod)
+
+    odags = aggregatedOdags.values :: odags
+    val aggregatedOdagsLocal = aggregatedOdags.collectAsMap
+    logInfo (s"Number of aggregated ODAGs = ${aggregatedOdagsLocal.size}")
+    execEngines.unpersist()
+
+    if (!aggregatedOdagsLocal.isEmpty) {
+      runSupersteps (configBc, sc.broadcast (aggregatedOdagsLocal),
+        previousAggregationsBc)
+    }
+  }
+
+  /**
+   * Runs supersteps from the current one until there are no ODAGs left
+   */
+  private def runSupersteps(
+      configBc: Broadcast[SparkConfiguration[E]],
+      initialOdagsBc: Broadcast[scala.collection.Map[Pattern,SinglePatternODAG]],
+      initialAggregationsBc: Broadcast[_]): Unit = {
+
+    // setup an RDD to simulate empty partitions and a broadcast variable to
+    // communicate the global aggregated ODAGs on each step
+    val superstepRDD = sc.makeRDD (Seq.empty[Any], numPartitions).cache
+    var aggregatedOdagsBc = initialOdagsBc
+    var previousAggregationsBc = initialAggregationsBc
+
     val startTime = System.currentTimeMillis
 
     do {
 
       val _aggAccums = aggAccums
       val superstepStart = System.currentTimeMillis
+      val timeline = new ODAGMasterEngine.SuperstepTimeline (superstep)
+      val _superstep = superstep
+      val stalePreviousAggregationsBc = previousAggregationsBc
 
       val execEngines = getExecutionEngines (
         superstepRDD = superstepRDD,
@@ -88,14 +155,47 @@ class ODAGMasterEngineSP [E <: Embedding] (_config: SparkConfiguration[E])
       execEngines.persist (MEMORY_ONLY)
 
       // Materialize execEngines
-      execEngines.foreachPartition (_ => {})
+      timeline.phase ("expansion") {
+        execEngines.foreachPartition (_ => {})
+      }
 
-      /** [1] We extract and aggregate the *aggregations* globally.
+      /** From here on the engines are only read: the jobs below are submitted
+       *  from futures, so that they share the executors.
+       *
+       *  [1] We extract and aggregate the *aggregations* globally.
        *  That gives us the opportunity to do aggregationFilter in the generated
-       *  ODAGs before collecting/broadcasting */
+       *  ODAGs before collecting/broadcasting.
+       *
+       *  [2] The remaining ODAGs are flushed for global aggregation. If the
+       *  computation does not depend on aggregations there is nothing to
+       *  filter, so this starts along with [1] instead of waiting for it.
+       */
+      def aggregateOdags(aggregationsBc: Broadcast[_]) = timeline.phase ("odags") {
+        // we choose the flush method for ODAGs: load-balancing vs. overhead
+        val flushMethod = selectFlushMethod (_superstep, execEngines,
+          aggregationsBc,
+          embeddingsGenerated = accumValue (ODAGMasterEngine.AGG_EMBEDDINGS_GENERATED))
+        val aggregatedOdags = flushAndAggregate (execEngines,
+          aggregationsBc, flushMethod)
+        (aggregatedOdags, aggregatedOdags.collectAsMap)
+      }
+
+      val aggregationsFuture = Future {
+        timeline.phase ("aggregations") {
+          Await.result (getAggregations (execEngines, numPartitions), Duration.Inf)
+        }
+      }
+
+      val pipelinedOdagsFuture = if (!dependsOnAggregations) {
+        Some(Future { aggregateOdags (stalePreviousAggregationsBc) })
+      } else {
+        None
+      }
+
+      val outputsFuture = Future {
+        timeline.phase ("outputs") { collectOutputs (execEngines) }
+      }
 
-      // create futures (two jobs submitted roughly simultaneously)
-      val aggregationsFuture = getAggregations (execEngines, numPartitions)
       // aggregations
       Await.ready (aggregationsFuture, atMost = Duration.Inf)
       aggregationsFuture.value.get match {
@@ -108,7 +208,6 @@ class ODAGMasterEngineSP [E <: Embedding] (_config: SparkConfiguration[E])
             map(tup => (tup._1,tup._2)).mkString("\n")}
           """)
 
-          previousAggregationsBc.unpersist()
           previousAggregationsBc = sc.broadcast (previousAggregations)
 
         case Failure(e) =>
@@ -121,38 +220,15 @@ class ODAGMasterEngineSP [E <: Embedding] (_config: SparkConfiguration[E])
        *  engines, if this applies; and (ii) flush the remaining ODAGs for
        *  global aggregation.
        */
-
-      // we choose the flush method for ODAGs: load-balancing vs. overhead
-      val aggregatedOdags = config.getOdagFlushMethod match {
-        case SparkConfiguration.FLUSH_BY_PATTERN =>
-          val odags = execEngines.
-            map (_.withNewAggregations (previousAggregationsBc)). // update previousAggregations
-            flatMap (_.flush).
-            asInstanceOf[RDD[(Pattern,SinglePatternODAG)]]
-          aggregatedOdagsByPattern (odags)
-
-        case SparkConfiguration.FLUSH_BY_ENTRIES =>
-          val odags = execEngines.
-            map (_.withNewAggregations (previousAggregationsBc)). // update previousAggregations
-            flatMap (_.flush).
-            asInstanceOf[RDD[((Pattern,Int,Int), SinglePatternODAG)]]
-          aggregatedOdagsByEntries (odags)
-
-        case SparkConfiguration.FLUSH_BY_PARTS =>
-          val odags = execEngines.
-            map (_.withNewAggregations (previousAggregationsBc)). // update previousAggregations
-            flatMap (_.flush).
-            asInstanceOf[RDD[((Pattern,Int),Array[Byte])]]
-          aggregatedOdagsByParts (odags)
+      val odagsFuture = pipelinedOdagsFuture.getOrElse {
+        Future { aggregateOdags (previousAggregationsBc) }
       }
 
-      odags = aggregatedOdags.values :: odags
-
-      val odagsFuture = Future { aggregatedOdags.collectAsMap  }
       // odags
       Await.ready (odagsFuture, atMost = Duration.Inf)
       odagsFuture.value.get match {
-        case Success(aggregatedOdagsLocal) =>
+        case Success((aggregatedOdags, aggregatedOdagsLocal)) =>
+          odags = aggregatedOdags.values :: odags
           logInfo (s"Number of aggregated ODAGs = ${aggregatedOdagsLocal.size}")
           aggregatedOdagsBc.unpersist()
           aggregatedOdagsBc = sc.broadcast (aggregatedOdagsLocal)
@@ -179,15 +255,29 @@ class ODAGMasterEngineSP [E <: Embedding] (_config: SparkConfiguration[E])
           throw e
       }
 
+      // the odags no longer read the aggregations of the previous superstep
+      stalePreviousAggregationsBc.unpersist()
+
+      Await.ready (outputsFuture, atMost = Duration.Inf)
+      outputsFuture.value.get match {
+        case Success(_) =>
+        case Failure(e) =>
+          logError (s"Error in collecting outputs ${e.getMessage}")
+          throw e
+      }
+
       // the exec engines have no use anymore, make room for the next round
       execEngines.unpersist()
 
       // whether the user chose to customize master computation, executed every
       // superstep
-      masterComputation.compute()
+      timeline.phase ("master") {
+        masterComputation.compute()
+      }
 
       val superstepFinish = System.currentTimeMillis
       logInfo (s"Superstep $superstep finished in ${superstepFinish - superstepStart} ms")
+      logInfo (timeline.toString)
 
       // print stats
       aggAccums = aggAccums.map { case (name,accum) =>
@@ -238,6 +328,64 @@ class ODAGMasterEngineSP [E <: Embedding] (_config: SparkConfiguration[E])
     execEngines
   }
 
+  /**
+   * Flush method of this superstep: the configured one or, if it is "auto",
+   * the one [[CommStrategySelector]] chooses from the sizes of the outbound
+   * odags of every pattern.
+   */
+  private def selectFlushMethod(
+      superstep: Int,
+      execEngines: RDD[ODAGEngineSP[E]],
+      previousAggregationsBc: Broadcast[_],
+      embeddingsGenerated: Long): String = config.getOdagFlushMethod match {
+    case SparkConfiguration.FLUSH_AUTO =>
+      val patternSizes = execEngines.
+        map (_.withNewAggregations (previousAggregationsBc)).
+        flatMap (_.outboundOdagSizes).
+        reduceByKey { case ((entries1,bytes1), (entries2,bytes2)) =>
+          (entries1 + entries2, bytes1 + bytes2)
+        }.
+        values.
+        collect
+
+      commStrategySelector.selectFlushMethod (superstep, embeddingsGenerated,
+        patternSizes)
+
+    case flushMethod =>
+      flushMethod
+  }
+
+  private def accumValue(name: String): Long =
+    aggAccums(name).value.asInstanceOf[Long]
+
+  /**
+   * Flushes the outbound odags of every execution engine with *flushMethod*
+   * and aggregates them by pattern
+   */
+  private def flushAndAggregate(
+      execEngines: RDD[ODAGEngineSP[E]],
+      previousAggregationsBc: Broadcast[_],
+      flushMethod: String): RDD[(Pattern,SinglePatternODAG)] = {
+
+    val flushed = execEngines.
+      map (_.withNewAggregations (previousAggregationsBc)). // update previousAggregations
+      flatMap (_.flush (flushMethod))
+
+    flushMethod match {
+      case SparkConfiguration.FLUSH_BY_PATTERN =>
+        aggregatedOdagsByPattern (
+          flushed.asInstanceOf[RDD[(Pattern,SinglePatternODAG)]])
+
+      case SparkConfiguration.FLUSH_BY_ENTRIES =>
+        aggregatedOdagsByEntries (
+          flushed.asInstanceOf[RDD[((Pattern,Int,Int), SinglePatternODAG)]])
+
+      case SparkConfiguration.FLUSH_BY_PARTS =>
+        aggregatedOdagsByParts (
+          flushed.asInstanceOf[RDD[((Pattern,Int),Array[Byte])]])
+    }
+  }
+
   private def aggregatedOdagsByPattern(odags: RDD[(Pattern,SinglePatternODAG)]) = {
 
     // (flushByPattern)
@@ -280,35 +428,19 @@ class ODAGMasterEngineSP [E <: Embedding] (_config: SparkConfiguration[E])
   private def aggregatedOdagsByParts(odags: RDD[((Pattern,Int), Array[Byte])]) = {
 
     // (flushByParts)
-    val aggregatedOdags = odags.combineByKey (
-      (byteArray: Array[Byte]) => {
-        val dataInput = new DataInputStream(new ByteArrayInputStream(byteArray))
-        val _odag = new SinglePatternODAG(false)
-        _odag.readFields (dataInput)
-        _odag
-      },
-      (odag: SinglePatternODAG, byteArray: Array[Byte]) => {
-        val dataInput = new DataInputStream(new ByteArrayInputStream(byteArray))
-        val _odag = new SinglePatternODAG(false)
-        _odag.readFields (dataInput)
-        odag.aggregate (_odag)
-        odag
-      },
-      (odag1: SinglePatternODAG, odag2: SinglePatternODAG) => {
-        odag1.aggregate (odag2)
-        odag1
+    // Parts are merged in serialized form, first by (pattern, partId) and then
+    // by pattern, and only the final ODAGs are materialized (read-only)
+    val mergedParts = ODAGMasterEngine.mergeSerializedParts (odags).
+      map { case ((pattern,_),part) => (pattern,part) }
+
+    val aggregatedOdags = ODAGMasterEngine.mergeSerializedParts (mergedParts).
+      map { case (pattern,bytes) =>
+        val dataInput = new DataInputStream(new ByteArrayInputStream(bytes))
+        val odag = new SinglePatternODAG(true)
+        odag.readFields (dataInput)
+        odag.setSerializeAsReadOnly (true)
+        (pattern,odag)
       }
-    ).
-    map { case ((pattern,_),odag) =>
-      (pattern,odag)
-    }.reduceByKey { (odag1,odag2) =>
-      odag1.aggregate (odag2)
-      odag1
-    }.
-    map { tup =>
-      tup._2.setSerializeAsReadOnly (true)
-      tup
-    }
 
     aggregatedOdags
   }
@@ -64,8 +64,7 @@ case class SparkEmbeddingEngine[O <: Embedding](
   override def finalize() = {
     super.finalize()
     // make sure we close writers
-    if (outputStreamOpt.isDefined) outputStreamOpt.get.close
-    if (embeddingWriterOpt.isDefined) embeddingWriterOpt.get.close
+    closeOutputs()
   }
 
   /**
@@ -75,6 +74,9 @@ case class SparkEmbeddingEngine[O <: Embedding](
    */
   def compute(inboundCaches: Iterator[LZ4ObjectCache]) = {
     expansionCompute (inboundCaches)
+    // outputs are complete, readers must not depend on this engine being
+    // garbage collected (finalize)
+    closeOutputs()
     flushStatsAccumulators
   }
 
@@ -149,15 +151,20 @@ case class SparkEmbeddingEngine[O <: Embedding](
   def addOutboundEmbedding(embedding: O) = processExpansion (embedding)
 
   /**
-   * Adds an expansion (embedding) to the outbound odags.
+   * Adds an expansion (embedding) to the outbound odags, or expands it right
+   * away in depth-first mode.
    *
    * @param expansion embedding to be added to the stash of outbound odags
    */
   override def processExpansion(expansion: O) = {
-    val destId = (nextGlobalId % getNumberPartitions).toInt
-    val cache = embeddingCaches(destId)
-    cache.addObject (expansion)
-    numEmbeddingsGenerated += 1
+    if (depthFirst) {
+      expandDepthFirst (expansion)
+    } else {
+      val destId = (nextGlobalId % getNumberPartitions).toInt
+      val cache = embeddingCaches(destId)
+      cache.addObject (expansion)
+      numEmbeddingsGenerated += 1
+    }
   }
 
   def flush: Iterator[(Int,LZ4ObjectCache)] = {
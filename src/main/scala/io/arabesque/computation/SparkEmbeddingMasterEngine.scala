@@ -4,6 +4,7 @@ import io.arabesque.aggregation.{AggregationStorage, AggregationStorageMetadata}
 import io.arabesque.cache.LZ4ObjectCache
 import io.arabesque.conf.SparkConfiguration
 import io.arabesque.embedding._
+import io.arabesque.odag.BasicODAG
 import io.arabesque.utils.SerializableConfiguration
 import org.apache.hadoop.fs.{FileSystem, Path}
 import org.apache.hadoop.io.Writable
@@ -47,6 +48,16 @@ class SparkEmbeddingMasterEngine[E <: Embedding]
 
   private var masterComputation: MasterComputation = _
 
+  // comm_strategy = auto: embeddings are exchanged as odags once the
+  // selector decides so, by a master engine that takes over the computation
+  private lazy val commStrategySelector: Option[CommStrategySelector] =
+    if (config.getCommStrategy == SparkConfiguration.COMM_AUTO)
+      Some(new CommStrategySelector (config))
+    else
+      None
+
+  private var odagMasterEngineOpt: Option[ODAGMasterEngineSP[E]] = None
+
   def this(_sc: SparkContext, config: SparkConfiguration[E]) {
     this (config)
     sc = _sc
@@ -116,6 +127,9 @@ class SparkEmbeddingMasterEngine[E <: Embedding]
 
     val startTime = System.currentTimeMillis
 
+    var switchToOdags = false
+    var embeddingsGenerated = 0L
+
     do {
 
       val _aggAccums = aggAccums
@@ -160,6 +174,7 @@ class SparkEmbeddingMasterEngine[E <: Embedding]
 
       // barrier: get rid of the old engines
       _execEngines.unpersist()
+      collectOutputs (execEngines)
 
       /** [2] We shuffle the embeddings and prepare to the next superstep
        */
@@ -175,6 +190,11 @@ class SparkEmbeddingMasterEngine[E <: Embedding]
       val superstepFinish = System.currentTimeMillis
       logInfo (s"Superstep $superstep finished in ${superstepFinish - superstepStart} ms")
       
+      // representation of the embeddings generated in this superstep
+      embeddingsGenerated = aggAccums(AGG_EMBEDDINGS_GENERATED).value.asInstanceOf[Long]
+      switchToOdags = commStrategySelector.exists (
+        _.shouldSwitchToOdags (superstep, embeddingsGenerated))
+
       // print stats
       aggAccums = aggAccums.map { case (name,accum) =>
         logInfo (s"Accumulator[$name]: ${accum.value}")
@@ -184,7 +204,11 @@ class SparkEmbeddingMasterEngine[E <: Embedding]
       superstep += 1
 
       // while there are embeddings to be processed
-    } while (!sc.isStopped && !superstepRDD.isEmpty)
+    } while (!sc.isStopped && !switchToOdags && !superstepRDD.isEmpty)
+
+    if (!sc.isStopped && switchToOdags && !superstepRDD.isEmpty) {
+      resumeWithOdags (superstepRDD, previousAggregationsBc, embeddingsGenerated)
+    }
 
     val finishTime = System.currentTimeMillis
 
@@ -192,6 +216,40 @@ class SparkEmbeddingMasterEngine[E <: Embedding]
     
   }
 
+  /**
+   * Hands the computation over to an odag master engine, which packs the
+   * embeddings of the last superstep into odags and carries on from there.
+   * The state kept by this engine is updated when it finishes.
+   */
+  private def resumeWithOdags(caches: RDD[LZ4ObjectCache],
+      previousAggregationsBc: Broadcast[_], embeddingsGenerated: Long): Unit = {
+    logInfo (s"Switching to ${SparkConfiguration.COMM_ODAG_SP} at superstep ${superstep}")
+
+    val odagMasterEngine = new ODAGMasterEngineSP [E] (config)
+    odagMasterEngine.sc = sc
+    odagMasterEngine.superstep = superstep
+    odagMasterEngine.aggAccums = aggAccums
+    odagMasterEngine.aggregations = aggregations
+    odagMasterEngine.masterComputation = masterComputation
+    odagMasterEngine.outputEmbeddings = outputEmbeddings
+    masterComputation.setUnderlyingExecutionEngine (odagMasterEngine)
+    odagMasterEngineOpt = Some(odagMasterEngine)
+
+    odagMasterEngine.resumeFromEmbeddings (caches, previousAggregationsBc,
+      embeddingsGenerated)
+
+    superstep = odagMasterEngine.superstep
+    aggAccums = odagMasterEngine.aggAccums
+    aggregations = odagMasterEngine.aggregations
+    outputEmbeddings = odagMasterEngine.outputEmbeddings
+    masterComputation.setUnderlyingExecutionEngine (this)
+  }
+
+  override def getOdags: RDD[_ <: BasicODAG] = odagMasterEngineOpt match {
+    case Some(odagMasterEngine) => odagMasterEngine.getOdags
+    case None => super.getOdags
+  }
+
   /**
    * Creates an RDD of execution engines 
    * TODO
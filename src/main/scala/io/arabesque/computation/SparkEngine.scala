@@ -14,7 +14,7 @@ import org.apache.hadoop.io.SequenceFile.{Writer => SeqWriter}
 import org.apache.spark.Accumulator
 import org.apache.spark.broadcast.Broadcast
 
-import scala.collection.mutable.Map
+import scala.collection.mutable.{ArrayBuffer, Map}
 import scala.reflect.ClassTag
 
 trait SparkEngine [E <: Embedding] 
@@ -160,9 +160,61 @@ trait SparkEngine [E <: Embedding]
       logWarning (s"Aggregator/Accumulator $name not found")
   }
 
+  // depth-first exploration: from the configured superstep on, expansions are
+  // expanded right away instead of being passed on to the next superstep
+  @transient lazy val depthFirst: Boolean = {
+    val depthFirstSuperstep = configuration.getDepthFirstSuperstep
+    depthFirstSuperstep > 0 && superstep >= depthFirstSuperstep &&
+      !computation.dependsOnAggregations
+  }
+
+  // one reusable embedding per level below the embeddings of this superstep
+  @transient lazy val depthFirstEmbeddings = ArrayBuffer.empty[E]
+  @transient var depthFirstLevel = 0
+
+  /**
+   * Expands *expansion* to completion, i.e., its descendants are processed and
+   * expanded within this call. The expansion is copied into the embedding of
+   * its level, which keeps the words it shares with its previous occupant
+   * (siblings differ only in their last word).
+   *
+   * @param expansion embedding being expanded by the computation
+   */
+  def expandDepthFirst(expansion: E): Unit = {
+    if (depthFirstLevel == depthFirstEmbeddings.size) {
+      depthFirstEmbeddings += configuration.createEmbedding [E] ()
+    }
+
+    val embedding = depthFirstEmbeddings(depthFirstLevel)
+    val words = expansion.getWords
+    val numWords = expansion.getNumWords
+
+    // longest common prefix
+    val currentWords = embedding.getWords
+    val maxCommon = math.min (embedding.getNumWords, numWords)
+    var i = 0
+    while (i < maxCommon && currentWords.getUnchecked(i) == words.getUnchecked(i)) {
+      i += 1
+    }
+
+    while (embedding.getNumWords > i) {
+      embedding.removeLastWord()
+    }
+
+    while (i < numWords) {
+      embedding.addWord (words.getUnchecked(i))
+      i += 1
+    }
+
+    depthFirstLevel += 1
+    numEmbeddingsProcessed += 1
+    computation.expand (embedding)
+    depthFirstLevel -= 1
+  }
+
   // output
   @transient val outputFunc = {
-    import SparkConfiguration.{OUTPUT_PLAIN_TEXT, OUTPUT_SEQUENCE_FILE}
+    import SparkConfiguration.{OUTPUT_COLUMNAR, OUTPUT_MEMORY, OUTPUT_PLAIN_TEXT, OUTPUT_SEQUENCE_FILE}
     configuration.getOutputFormat match {
       case OUTPUT_PLAIN_TEXT if configuration.isOutputActive => (e: Embedding) => {
         outputPlainText(e)
@@ -174,6 +226,21 @@ trait SparkEngine [E <: Embedding]
         numEmbeddingsOutput += 1
       }
 
+      case OUTPUT_MEMORY if configuration.isOutputActive => (e: Embedding) => {
+        outputEmbeddings += ((SparkMasterEngine.DEFAULT_OUTPUT, ResultEmbedding (e)))
+        numEmbeddingsOutput += 1
+      }
+
+      case OUTPUT_COLUMNAR if configuration.isOutputActive => (e: Embedding) => {
+        val columnarWriter = columnarWriterOpt.getOrElse {
+          val writer = createColumnarWriter (outputPath)
+          columnarWriterOpt = Some(writer)
+          writer
+        }
+        columnarWriter.append (e)
+        numEmbeddingsOutput += 1
+      }
+
       case _ => (e: Embedding) => {}
     }
   }
@@ -182,8 +249,22 @@ trait SparkEngine [E <: Embedding]
 
   @transient var outputStreamOpt: Option[OutputStreamWriter] = None
 
+  @transient var columnarWriterOpt: Option[ColumnarEmbeddingWriter] = None
+
+  // writers of named outputs, e.g., one per query of a fused computation
+  @transient lazy val namedEmbeddingWriters: Map[String,SeqWriter] = Map.empty
+
+  @transient lazy val namedOutputStreams: Map[String,OutputStreamWriter] = Map.empty
+
+  @transient lazy val namedColumnarWriters: Map[String,ColumnarEmbeddingWriter] = Map.empty
+
   @transient lazy val outputPath: Path = new Path(configuration.getOutputPath)
 
+  // embeddings output in memory (output name, embedding), collected by the
+  // master engine while this engine is cached
+  @transient lazy val outputEmbeddings: ArrayBuffer[(String,ResultEmbedding[_])] =
+    ArrayBuffer.empty
+
   /**
    * Output the embedding using te configured output function 'outputFunc'
    *
@@ -191,6 +272,61 @@ trait SparkEngine [E <: Embedding]
    */
   override def output(embedding: Embedding) = outputFunc(embedding)
 
+  /**
+   * Output the embedding to a named output, stored under
+   * outputPath/outputName using the configured output format
+   *
+   * @param outputName name of the output
+   * @param embedding embedding to output
+   */
+  override def output(outputName: String, embedding: Embedding) = {
+    import SparkConfiguration.{OUTPUT_COLUMNAR, OUTPUT_MEMORY, OUTPUT_PLAIN_TEXT, OUTPUT_SEQUENCE_FILE}
+    configuration.getOutputFormat match {
+      case OUTPUT_PLAIN_TEXT if configuration.isOutputActive =>
+        val outputStream = namedOutputStreams.getOrElseUpdate (outputName,
+          createOutputStream (new Path(outputPath, outputName)))
+        outputStream.write(embedding.toOutputString)
+        outputStream.write("\n")
+        numEmbeddingsOutput += 1
+
+      case OUTPUT_SEQUENCE_FILE if configuration.isOutputActive =>
+        val embeddingWriter = namedEmbeddingWriters.getOrElseUpdate (outputName,
+          createEmbeddingWriter (new Path(outputPath, outputName), embedding))
+        embeddingWriter.append (NullWritable.get, ResultEmbedding (embedding))
+        numEmbeddingsOutput += 1
+
+      case OUTPUT_MEMORY if configuration.isOutputActive =>
+        outputEmbeddings += ((outputName, ResultEmbedding (embedding)))
+        numEmbeddingsOutput += 1
+
+      case OUTPUT_COLUMNAR if configuration.isOutputActive =>
+        val columnarWriter = namedColumnarWriters.getOrElseUpdate (outputName,
+          createColumnarWriter (new Path(outputPath, outputName)))
+        columnarWriter.append (embedding)
+        numEmbeddingsOutput += 1
+
+      case _ =>
+    }
+  }
+
+  /**
+   * Closes every output writer opened by this engine (once)
+   */
+  def closeOutputs(): Unit = {
+    if (outputStreamOpt.isDefined) outputStreamOpt.get.close
+    if (embeddingWriterOpt.isDefined) embeddingWriterOpt.get.close
+    if (columnarWriterOpt.isDefined) columnarWriterOpt.get.close
+    namedOutputStreams.values.foreach (_.close)
+    namedEmbeddingWriters.values.foreach (_.close)
+    namedColumnarWriters.values.foreach (_.close)
+    outputStreamOpt = None
+    embeddingWriterOpt = None
+    columnarWriterOpt = None
+    namedOutputStreams.clear
+    namedEmbeddingWriters.clear
+    namedColumnarWriters.clear
+  }
+
   /**
    * Output embedding to a sequence file
    */
@@ -201,22 +337,7 @@ trait SparkEngine [E <: Embedding]
       numEmbeddingsOutput += 1
 
     case None =>
-      // we must decide at runtime the concrete Writable to be used
-      val resEmbeddingClass = if (embedding.isInstanceOf[EdgeInducedEmbedding])
-        classOf[EEmbedding]
-      else if (embedding.isInstanceOf[VertexInducedEmbedding])
-        classOf[VEmbedding]
-      else
-        classOf[ResultEmbedding[_]] // not allowed, will crash and should not happen
-
-      // instantiate the embedding writer (sequence file)
-      val superstepPath = new Path(outputPath, s"${getSuperstep}")
-      val partitionPath = new Path(superstepPath, s"${partitionId}")
-      val embeddingWriter = SequenceFile.createWriter(configuration.hadoopConf,
-        SeqWriter.file(partitionPath),
-        SeqWriter.keyClass(classOf[NullWritable]),
-        SeqWriter.valueClass(resEmbeddingClass))
-
+      val embeddingWriter = createEmbeddingWriter (outputPath, embedding)
       embeddingWriterOpt = Some(embeddingWriter)
       
       val resEmbedding = ResultEmbedding (embedding)
@@ -224,6 +345,44 @@ trait SparkEngine [E <: Embedding]
       numEmbeddingsOutput += 1
   }
 
+  /**
+   * Creates the sequence file writer of this partition under *basePath*
+   */
+  private def createEmbeddingWriter(basePath: Path, embedding: Embedding): SeqWriter = {
+    // we must decide at runtime the concrete Writable to be used
+    val resEmbeddingClass = if (embedding.isInstanceOf[EdgeInducedEmbedding])
+      classOf[EEmbedding]
+    else if (embedding.isInstanceOf[VertexInducedEmbedding])
+      classOf[VEmbedding]
+    else
+      classOf[ResultEmbedding[_]] // not allowed, will crash and should not happen
+
+    // instantiate the embedding writer (sequence file)
+    val superstepPath = new Path(basePath, s"${getSuperstep}")
+    val partitionPath = new Path(superstepPath, s"${partitionId}")
+    SequenceFile.createWriter(configuration.hadoopConf,
+      SeqWriter.file(partitionPath),
+      SeqWriter.keyClass(classOf[NullWritable]),
+      SeqWriter.valueClass(resEmbeddingClass))
+  }
+
+  /**
+   * Creates the columnar writer of this partition under *basePath*, the
+   * dictionary of patterns is only created if patterns are written
+   */
+  private def createColumnarWriter(basePath: Path): ColumnarEmbeddingWriter = {
+    import ColumnarEmbeddingWriter.{DATA_SUFFIX, DICTIONARY_SUFFIX}
+    logInfo (s"[partitionId=${getPartitionId}] Creating columnar writer in ${basePath}")
+    val fs = FileSystem.get(configuration.hadoopConf)
+    val superstepPath = new Path(basePath, s"${getSuperstep}")
+    new ColumnarEmbeddingWriter(
+      fs.create(new Path(superstepPath, s"${partitionId}${DATA_SUFFIX}")),
+      () => fs.create(new Path(superstepPath, s"${partitionId}${DICTIONARY_SUFFIX}")),
+      configuration.isOutputColumnarPatterns,
+      configuration.getOutputColumnarBlockRows,
+      configuration.getCompressionPolicy(Configuration.COMPRESSION_OUTPUT))
+  }
+
   /**
    * Output embedding to a plain text
    */
@@ -233,15 +392,22 @@ trait SparkEngine [E <: Embedding]
       outputStream.write("\n")
 
     case None =>
-      logInfo (s"[partitionId=${getPartitionId}] Creating output stream")
-      val fs = FileSystem.get(configuration.hadoopConf)
-      val superstepPath = new Path(outputPath, s"${getSuperstep}")
-      val partitionPath = new Path(superstepPath, s"${partitionId}")
-      val outputStream = new OutputStreamWriter(fs.create(partitionPath))
+      val outputStream = createOutputStream (outputPath)
       outputStreamOpt = Some(outputStream)
       outputStream.write(embedding.toOutputString)
       outputStream.write("\n")
   }
+
+  /**
+   * Creates the plain text output stream of this partition under *basePath*
+   */
+  private def createOutputStream(basePath: Path): OutputStreamWriter = {
+    logInfo (s"[partitionId=${getPartitionId}] Creating output stream in ${basePath}")
+    val fs = FileSystem.get(configuration.hadoopConf)
+    val superstepPath = new Path(basePath, s"${getSuperstep}")
+    val partitionPath = new Path(superstepPath, s"${partitionId}")
+    new OutputStreamWriter(fs.create(partitionPath))
+  }
   
   // other functions
   override def getPartitionId() = partitionId
@@ -9,6 +9,7 @@ import org.apache.hadoop.fs.{FileSystem, Path}
 import org.apache.hadoop.io.{NullWritable, Writable}
 import org.apache.spark.rdd.RDD
 import org.apache.spark.SparkContext
+import org.apache.spark.storage.StorageLevel.MEMORY_AND_DISK
 import scala.reflect.ClassTag
 
 import scala.collection.mutable.Map
@@ -74,17 +75,64 @@ trait SparkMasterEngine [E <: Embedding]
     sc.makeRDD (Seq.empty[BasicODAG])
   }
 
-  def getEmbeddings: RDD[ResultEmbedding[_]] = {
+  def getEmbeddings: RDD[ResultEmbedding[_]] = getEmbeddings (config.getOutputPath)
+
+  // embeddings output in memory (output_format: memory), one rdd of
+  // (output name, embedding) per superstep
+  private[computation] var outputEmbeddings: List[RDD[(String,ResultEmbedding[_])]] = Nil
+
+  /**
+   * Keeps the embeddings output in memory by *execEngines*, if the output
+   * format is memory. Must be called while the engines are cached: the
+   * embeddings are materialized before the engines are unpersisted.
+   *
+   * @param execEngines engines of the superstep, computed and cached
+   */
+  def collectOutputs(execEngines: RDD[_ <: SparkEngine[E]]): Unit = {
+    if (config.isOutputActive &&
+        config.getOutputFormat == SparkConfiguration.OUTPUT_MEMORY) {
+      val outputs = execEngines.
+        flatMap (_.outputEmbeddings).
+        setName (s"outputs-${outputEmbeddings.size}").
+        persist (MEMORY_AND_DISK)
+      outputs.foreachPartition (_ => {})
+      outputEmbeddings = outputs :: outputEmbeddings
+    }
+  }
+
+  /**
+   * Reads the embeddings written under *embeddPath*, e.g., the output of a
+   * single query in a fused computation. With the memory output format the
+   * embeddings kept by the engines are returned instead (cached, no files
+   * involved), the output path only telling the output name.
+   */
+  def getEmbeddings(embeddPath: String): RDD[ResultEmbedding[_]] = {
 
-    val embeddPath = s"${config.getOutputPath}"
     val fs = FileSystem.get (sc.hadoopConfiguration)
 
-    if (config.isOutputActive && fs.exists (new Path (embeddPath))) {
-      logInfo (s"Reading embedding words from: ${config.getOutputPath}")
+    if (config.isOutputActive &&
+        config.getOutputFormat == SparkConfiguration.OUTPUT_MEMORY) {
+      val outputName = if (embeddPath == config.getOutputPath)
+        SparkMasterEngine.DEFAULT_OUTPUT
+      else
+        new Path (embeddPath).getName
+
+      if (outputEmbeddings.isEmpty)
+        sc.emptyRDD[ResultEmbedding[_]]
+      else
+        sc.union (outputEmbeddings).
+          filter (_._1 == outputName).
+          map (_._2)
+
+    } else if (config.isOutputActive && fs.exists (new Path (embeddPath))) {
+      logInfo (s"Reading embedding words from: ${embeddPath}")
       config.getOutputFormat match {
         case SparkConfiguration.OUTPUT_PLAIN_TEXT =>
           sc.textFile (s"${embeddPath}/*").map (ResultEmbedding(_))
 
+        case SparkConfiguration.OUTPUT_COLUMNAR =>
+          ColumnarEmbeddingReader.embeddings (sc, embeddPath)
+
         case SparkConfiguration.OUTPUT_SEQUENCE_FILE =>
           // we must decide at runtime the concrete Writable to be used
           val resEmbeddingClass = if (config.getEmbeddingClass == classOf[EdgeInducedEmbedding])
@@ -110,7 +158,20 @@ trait SparkMasterEngine [E <: Embedding]
 object SparkMasterEngine {
   import Configuration._
   import SparkConfiguration._
-  def apply[E <: Embedding] (sc: SparkContext, config: SparkConfiguration[E]) =
+
+  // name of the output of *output(embedding)*, as opposed to named outputs
+  val DEFAULT_OUTPUT = ""
+
+  def apply[E <: Embedding] (sc: SparkContext, config: SparkConfiguration[E])
+      : SparkMasterEngine[E] =
+    config.getString(EXECUTION_ENGINE, EXECUTION_ENGINE_SPARK) match {
+      case EXECUTION_ENGINE_LOCAL =>
+        new LocalMasterEngine [E] (sc, config)
+      case _ =>
+        sparkMasterEngine [E] (sc, config)
+    }
+
+  private def sparkMasterEngine[E <: Embedding] (sc: SparkContext, config: SparkConfiguration[E]) =
       config.getString(CONF_COMM_STRATEGY, CONF_COMM_STRATEGY_DEFAULT) match {
     case COMM_ODAG_SP =>
       new ODAGMasterEngineSP [E] (sc, config)
@@ -118,5 +179,8 @@ object SparkMasterEngine {
       new ODAGMasterEngineMP [E] (sc, config)
     case COMM_EMBEDDING =>
       new SparkEmbeddingMasterEngine [E] (sc, config)
+    case COMM_AUTO =>
+      // starts with raw embeddings and may switch to odags
+      new SparkEmbeddingMasterEngine [E] (sc, config)
   }
 }
@@ -4,13 +4,16 @@ import io.arabesque.computation._
 import io.arabesque.conf.Configuration._
 import io.arabesque.embedding.Embedding
 import io.arabesque.graph.MainGraph
+import io.arabesque.optimization.{ConfigBasedOptimizationSetDescriptor, OptimizationSetDescriptor}
 import io.arabesque.pattern.Pattern
-import io.arabesque.utils.{Logging, SerializableConfiguration}
+import io.arabesque.utils.{KryoRegistrator, Logging, SerializableConfiguration}
+import io.arabesque.utils.pool.PoolRegistry
 
 import org.apache.spark.SparkConf
 
 import org.apache.hadoop.conf.{Configuration => HadoopConfiguration}
 
+import scala.collection.JavaConverters._
 import scala.collection.mutable.Map
 
 /**
@@ -122,6 +125,11 @@ case class SparkConfiguration[O <: Embedding](confs: Map[String,Any])
 
       case _ =>
     }
+
+    if (getBoolean ("kryo_serializer", true)) {
+      KryoRegistrator.register (conf)
+    }
+
     logInfo (s"Spark configurations:\n${conf.getAll.mkString("\n")}")
     conf
   }
@@ -136,6 +144,9 @@ case class SparkConfiguration[O <: Embedding](confs: Map[String,Any])
       case Some(cc: ComputationContainer[_]) =>
         cc.shallowCopy().asInstanceOf[Computation[E]]
 
+      case Some(fc: FusedComputation[_]) =>
+        copyComputation [E] (fc)
+
       case Some(c) =>
         throw new RuntimeException (s"Invalid computation type: ${c}")
 
@@ -144,6 +155,25 @@ case class SparkConfiguration[O <: Embedding](confs: Map[String,Any])
     }
   }
 
+  /**
+   * Each execution engine needs its own computation instance: containers are
+   * shallow copied, fused computations copy their queries and any other
+   * computation is instantiated again from its class.
+   */
+  private def copyComputation [E <: Embedding] (computation: Computation[_]): Computation[E] =
+      computation match {
+    case cc: ComputationContainer[_] =>
+      cc.shallowCopy().asInstanceOf[Computation[E]]
+
+    case fc: FusedComputation[_] =>
+      val queries = new java.util.ArrayList[Computation[E]]()
+      fc.getQueries.asScala.foreach (q => queries.add (copyComputation [E] (q)))
+      new FusedComputation [E] (queries, fc.getQueryNames)
+
+    case c =>
+      c.getClass.newInstance.asInstanceOf[Computation[E]]
+  }
+
   /**
    * Returns the computation container associated with this configuration, if
    * available. A computation container holds a custom computation that is
@@ -223,29 +253,53 @@ case class SparkConfiguration[O <: Embedding](confs: Map[String,Any])
     // computation classes
     updateIfExists ("master_computation", CONF_MASTER_COMPUTATION_CLASS)
     updateIfExists ("computation", CONF_COMPUTATION_CLASS)
+    updateIfExists ("fused_computations", CONF_FUSED_COMPUTATION_CLASSES)
 
     // communication strategy
     updateIfExists ("comm_strategy", CONF_COMM_STRATEGY)
+    updateIfExists ("auto_max_bytes", CONF_COMM_STRATEGY_AUTO_MAX_BYTES)
 
     // odag flush method
     updateIfExists ("flush_method", CONF_ODAG_FLUSH_METHOD)
+    updateIfExists ("flush_max_skew", CONF_ODAG_FLUSH_AUTO_MAX_SKEW)
     updateIfExists ("num_odag_parts", CONF_EZIP_AGGREGATORS)
 
     // input
     updateIfExists ("input_graph_path", CONF_MAINGRAPH_PATH)
     updateIfExists ("input_graph_local", CONF_MAINGRAPH_LOCAL)
+    updateIfExists ("input_graph_delta_path", CONF_MAINGRAPH_DELTA_PATH)
+    updateIfExists ("input_graph_delta_applied", CONF_MAINGRAPH_DELTA_APPLIED)
+    updateIfExists ("compact_neighbourhoods", CONF_MAINGRAPH_COMPACT_NEIGHBOURHOODS)
+
+    // optimizations
+    updateIfExists ("optimizations", ConfigBasedOptimizationSetDescriptor.CONF_OPTIMIZATION_CLASSES)
  
     // output
     updateIfExists ("output_active", CONF_OUTPUT_ACTIVE)
     updateIfExists ("output_path", CONF_OUTPUT_PATH)
     updateIfExists ("output_format", CONF_OUTPUT_FORMAT)
+    updateIfExists ("output_patterns", CONF_OUTPUT_COLUMNAR_PATTERNS)
 
     // aggregation
     updateIfExists ("incremental_aggregation", CONF_INCREMENTAL_AGGREGATION)
+
+    // depth-first exploration
+    updateIfExists ("depth_first_superstep", CONF_DEPTH_FIRST_SUPERSTEP)
+
+    // leaf counting
+    updateIfExists ("count_leaves", CONF_COUNT_LEAVES)
+
+    // object pools
+    updateIfExists ("pool_max_bytes", CONF_POOL_MAX_BYTES)
    
     // max number of odags in case of odag communication strategy
     updateIfExists ("max_odags", CONF_COMM_STRATEGY_ODAGMP_MAX)
 
+    // approximate counting
+    updateIfExists ("sampling_rate", CONF_SAMPLING_RATE)
+    updateIfExists ("sampling_mode", CONF_SAMPLING_MODE)
+    updateIfExists ("sampling_max_roots", CONF_SAMPLING_MAX_ROOTS)
+
   }
 
   /**
@@ -255,19 +309,46 @@ case class SparkConfiguration[O <: Embedding](confs: Map[String,Any])
    */
   override def initialize(): Unit = synchronized {
     if (Configuration.isUnset || uuid != Configuration.get[SparkConfiguration[O]].uuid) {
-      initializeInJvm()
+      val graphLoaded = initializeInJvm()
       Configuration.set (this)
+
+      // optimizations read this configuration through Configuration.get, so
+      // they can only be applied once it is set in this jvm
+      if (graphLoaded) {
+        applyOptimizations()
+        applyGraphDelta()
+      }
     }
   }
 
+  /**
+   * Applies the optimizations listed in *optimizations* to the main graph just
+   * loaded. Unlike giraph, the startup hooks run right before the ones after
+   * graph loading.
+   */
+  private def applyOptimizations(): Unit = {
+    val optimizationSetDescriptor = getClass (CONF_OPTIMIZATIONSETDESCRIPTOR_CLASS,
+      CONF_OPTIMIZATIONSETDESCRIPTOR_CLASS_DEFAULT).newInstance.asInstanceOf[OptimizationSetDescriptor]
+    val optimizationSet = optimizationSetDescriptor.describe()
+
+    logInfo (s"Active optimizations: ${optimizationSet}")
+
+    optimizationSet.applyStartup()
+    optimizationSet.applyAfterGraphLoad()
+  }
+
   /**
    * Called whether no arabesque configuration is set in the running jvm
+   *
+   * @return whether the main graph was loaded
    */
-  private def initializeInJvm(): Unit = {
+  private def initializeInJvm(): Boolean = {
 
     fixAssignments
 
     // common configs
+    PoolRegistry.instance.setMaxBytes (getPoolMaxBytes)
+
     setMainGraphClass (
       getClass (CONF_MAINGRAPH_CLASS, CONF_MAINGRAPH_CLASS_DEFAULT).
       asInstanceOf[Class[_ <: MainGraph]]
@@ -293,14 +374,16 @@ case class SparkConfiguration[O <: Embedding](confs: Map[String,Any])
     setOutputPath (getString(CONF_OUTPUT_PATH, CONF_OUTPUT_PATH_DEFAULT))
     
     // main graph
-    if ( (getMainGraph() == null && initialized)
-         || (getString ("spark_master", "local[*]") startsWith "local[")
-         ) {
+    val loadGraph = (getMainGraph() == null && initialized) ||
+      (getString ("spark_master", "local[*]") startsWith "local[")
+
+    if (loadGraph) {
       logInfo ("Main graph is null, gonna read it")
       setMainGraph (createGraph())
     }
 
     initialized = true
+    loadGraph
   }
 
   def getValue(key: String, defaultValue: Any): Any = confs.get(key) match {
@@ -317,6 +400,29 @@ case class SparkConfiguration[O <: Embedding](confs: Map[String,Any])
   override def getBoolean(key: String, defaultValue: java.lang.Boolean) =
     getValue(key, defaultValue).asInstanceOf[Boolean]
 
+  override def getLong(key: String, defaultValue: java.lang.Long) =
+    getValue(key, defaultValue) match {
+      case value: Number => value.longValue: java.lang.Long
+      case value: String => value.toLong: java.lang.Long
+    }
+
+  override def getFloat(key: String, defaultValue: java.lang.Float) =
+    getValue(key, defaultValue) match {
+      case value: Number => value.floatValue: java.lang.Float
+      case value: String => value.toFloat: java.lang.Float
+    }
+
+  /**
+   * Class lists are given as comma separated class names
+   */
+  override def getClasses(key: String, defaultValues: Class[_]*): Array[Class[_]] =
+      getValue(key, null) match {
+    case null =>
+      defaultValues.toArray
+    case classNames: String =>
+      classNames.split(",").map(_.trim).filter(_.nonEmpty).map (Class.forName(_))
+  }
+
 }
 
 object SparkConfiguration {
@@ -328,11 +434,18 @@ object SparkConfiguration {
   val FLUSH_BY_PATTERN = "flush_by_pattern" // good for regular distributions
   val FLUSH_BY_ENTRIES = "flush_by_entries" // good for irregular distributions but small embedding domains
   val FLUSH_BY_PARTS = "flush_by_parts"     // good for irregular distributions, period
+  val FLUSH_AUTO = "auto"                   // chosen every superstep from the odags' sizes
 
   // communication strategies
   val COMM_ODAG_SP = "odag_sp"              // pack embeddings with single-pattern odags
   val COMM_ODAG_MP = "odag_mp"              // pack embeddings with multi-pattern odags
   val COMM_EMBEDDING = "embedding"          // pack embeddings with compressed caches (e.g., LZ4)
+  val COMM_AUTO = "auto"                    // start with caches, switch to single-pattern odags
+
+  // execution engines
+  val EXECUTION_ENGINE = "execution_engine"
+  val EXECUTION_ENGINE_SPARK = "spark"      // supersteps as spark jobs
+  val EXECUTION_ENGINE_LOCAL = "local"      // supersteps in this jvm, see LocalMasterEngine
 
   // hadoop conf
   val HADOOP_CONF = "hadoop_conf"
@@ -344,4 +457,6 @@ object SparkConfiguration {
   // output format
   val OUTPUT_PLAIN_TEXT = "plain_text"
   val OUTPUT_SEQUENCE_FILE = "sequence_file"
+  val OUTPUT_MEMORY = "memory"              // kept by the engines, see SparkMasterEngine.getEmbeddings
+  val OUTPUT_COLUMNAR = "columnar"          // compressed int column blocks, see ColumnarEmbeddingWriter
 }
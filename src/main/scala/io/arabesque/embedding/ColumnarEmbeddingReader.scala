@@ -0,0 +1,173 @@
+package io.arabesque.embedding
+
+import java.io.{BufferedInputStream, BufferedReader, DataInputStream, InputStream, InputStreamReader}
+import java.nio.ByteBuffer
+
+import io.arabesque.utils.SerializableConfiguration
+import io.arabesque.utils.compression.{Codecs, NoCodec}
+
+import org.apache.hadoop.fs.Path
+
+import org.apache.spark.SparkContext
+import org.apache.spark.rdd.RDD
+
+/**
+ * Reads the blocks written by a [[ColumnarEmbeddingWriter]], either as they
+ * are (columns, e.g., for scans that need a few of them) or as
+ * [[ResultEmbedding]]s. The stream is closed once the last block is read.
+ *
+ * @param in stream of a data file
+ */
+class ColumnarEmbeddingReader(in: InputStream) {
+  import ColumnarEmbeddingReader._
+  import ColumnarEmbeddingWriter._
+
+  private val dataIn = new DataInputStream(new BufferedInputStream(in))
+
+  if (dataIn.readInt != MAGIC) {
+    dataIn.close()
+    throw new RuntimeException ("Not a columnar embedding file")
+  }
+
+  private val version = dataIn.readByte
+  if (version != VERSION) {
+    dataIn.close()
+    throw new RuntimeException (s"Unsupported columnar embedding version: ${version}")
+  }
+
+  /**
+   * Blocks of this file, in the order they were written (read once, as the
+   * iterators below)
+   */
+  lazy val blocks: Iterator[Block] = new Iterator[Block] {
+    private var nextBlock = readBlock()
+    override def hasNext: Boolean = nextBlock != null
+    override def next(): Block = {
+      val block = nextBlock
+      nextBlock = readBlock()
+      block
+    }
+  }
+
+  def embeddings: Iterator[ResultEmbedding[_]] =
+    blocks.flatMap (block => Iterator.range (0, block.numRows).map (block.embedding))
+
+  /**
+   * Embeddings and the ids of their patterns (see the dictionary of this file)
+   */
+  def embeddingsWithPatternIds: Iterator[(ResultEmbedding[_],Int)] =
+    blocks.flatMap (block => Iterator.range (0, block.numRows).
+      map (row => (block.embedding (row), block.patternId (row))))
+
+  private def readBlock(): Block = {
+    val numRows = dataIn.readInt
+    if (numRows == 0) {
+      dataIn.close()
+      return null
+    }
+
+    val kind = dataIn.readByte
+    val numWords = dataIn.readInt
+    val hasPatterns = dataIn.readBoolean
+    val codecId = dataIn.readByte
+    val uncompressedSize = dataIn.readInt
+    val compressedSize = dataIn.readInt
+
+    val compressed = new Array[Byte](compressedSize)
+    dataIn.readFully (compressed)
+    val data = if (codecId == NoCodec.ID) compressed else {
+      val decompressed = new Array[Byte](uncompressedSize)
+      Codecs.forId (codecId).decompress (compressed, compressedSize,
+        decompressed, uncompressedSize)
+      decompressed
+    }
+
+    val columns = new Array[Int](uncompressedSize / 4)
+    ByteBuffer.wrap (data, 0, uncompressedSize).asIntBuffer.get (columns)
+
+    Block(kind, numWords, numRows, hasPatterns, columns)
+  }
+}
+
+object ColumnarEmbeddingReader {
+  import ColumnarEmbeddingWriter._
+
+  /**
+   * Embeddings of a block, column-major: (column, row) at column * numRows + row
+   */
+  case class Block(
+      kind: Byte,
+      numWords: Int,
+      numRows: Int,
+      hasPatterns: Boolean,
+      columns: Array[Int]) {
+
+    def numWordColumns: Int = ColumnarEmbeddingWriter.numWordColumns (kind, numWords)
+
+    def get(column: Int, row: Int): Int = columns(column * numRows + row)
+
+    def patternId(row: Int): Int =
+      if (hasPatterns) get (numWordColumns, row) else -1
+
+    def embedding(row: Int): ResultEmbedding[_] = if (kind == EDGE_INDUCED) {
+      val edges = new Array[(Int,Int)](numWords)
+      var i = 0
+      while (i < numWords) {
+        edges(i) = (get (2 * i, row), get (2 * i + 1, row))
+        i += 1
+      }
+      new EEmbedding(edges)
+    } else {
+      val vertices = new Array[Int](numWords)
+      var i = 0
+      while (i < numWords) {
+        vertices(i) = get (i, row)
+        i += 1
+      }
+      new VEmbedding(vertices)
+    }
+  }
+
+  /**
+   * Reads a dictionary file: pattern id -> pattern (output string)
+   */
+  def readDictionary(in: InputStream): Map[Int,String] = {
+    val reader = new BufferedReader(new InputStreamReader(in))
+    try {
+      Iterator.continually (reader.readLine).takeWhile (_ != null).map { line =>
+        val sep = line.indexOf ('\t')
+        (line.substring (0, sep).toInt, line.substring (sep + 1))
+      }.toMap
+    } finally {
+      reader.close()
+    }
+  }
+
+  /**
+   * Embeddings written under *path* (one directory per superstep, one data
+   * file per partition)
+   */
+  def embeddings(sc: SparkContext, path: String): RDD[ResultEmbedding[_]] = {
+    sc.binaryFiles (s"${path}/*/*${DATA_SUFFIX}").flatMap { case (_,stream) =>
+      new ColumnarEmbeddingReader(stream.open).embeddings
+    }
+  }
+
+  /**
+   * Embeddings written under *path* along with their patterns, read from the
+   * dictionary next to each data file
+   */
+  def embeddingsWithPatterns(sc: SparkContext, path: String): RDD[(ResultEmbedding[_],String)] = {
+    val hadoopConf = new SerializableConfiguration(sc.hadoopConfiguration)
+    sc.binaryFiles (s"${path}/*/*${DATA_SUFFIX}").flatMap { case (dataPath,stream) =>
+      val dictionaryPath = new Path(
+        dataPath.stripSuffix (DATA_SUFFIX) + DICTIONARY_SUFFIX)
+      val fs = dictionaryPath.getFileSystem (hadoopConf.value)
+      val dictionary = if (fs.exists (dictionaryPath))
+        readDictionary (fs.open (dictionaryPath)) else Map.empty[Int,String]
+      new ColumnarEmbeddingReader(stream.open).embeddingsWithPatternIds.map {
+        case (embedding,patternId) => (embedding, dictionary.getOrElse (patternId, null))
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package io.arabesque.embedding
+
+import java.io.{BufferedOutputStream, DataOutputStream, OutputStream, OutputStreamWriter}
+
+import com.koloboke.collect.map.hash.{HashObjIntMap, HashObjIntMaps}
+
+import io.arabesque.conf.SparkConfiguration
+import io.arabesque.graph.MainGraph
+import io.arabesque.pattern.Pattern
+import io.arabesque.utils.compression.CompressionPolicy
+
+import org.apache.giraph.utils.ExtendedByteArrayDataOutput
+
+/**
+ * Writes embeddings as blocks of fixed-width int columns, compressed with the
+ * codec of the "output" data path (lz4 by default, see
+ * Configuration.getCompressionPolicy). Embeddings output in a superstep have
+ * the same number of words, thus a block of *blockRows* embeddings is
+ * *numWords* columns of vertex ids (vertex-induced) or 2 x *numWords* columns
+ * of edge endpoints (edge-induced, source and destination of each word),
+ * optionally followed by a column of pattern ids. Pattern ids are local to
+ * the file and resolved by its dictionary (one "id<TAB>pattern" per line).
+ *
+ * Layout: MAGIC, VERSION, then blocks of
+ * {{{
+ *   numRows kind numWords hasPatterns codecId uncompressedSize compressedSize bytes
+ * }}}
+ * terminated by a block of 0 rows. See [[ColumnarEmbeddingReader]].
+ *
+ * @param out stream of the data file, closed with this writer
+ * @param dictionaryOut opens the dictionary file, only if patterns are written
+ * @param withPatterns whether to write the pattern id column
+ * @param blockRows embeddings per block
+ * @param compression compression of the blocks
+ */
+class ColumnarEmbeddingWriter(
+    out: OutputStream,
+    dictionaryOut: () => OutputStream,
+    withPatterns: Boolean,
+    blockRows: Int,
+    compression: CompressionPolicy) {
+
+  import ColumnarEmbeddingWriter._
+
+  private val dataOut = new DataOutputStream(new BufferedOutputStream(out))
+  dataOut.writeInt (MAGIC)
+  dataOut.writeByte (VERSION)
+
+  // vertex ids are translated back to the input ones if the main graph was
+  // reordered after loading (as in ResultEmbedding)
+  private val originalVertexIds = SparkConfiguration.get.getOriginalVertexIds
+  private lazy val mainGraph = SparkConfiguration.get.getMainGraph[MainGraph]
+
+  // current block, column-major: (column, row) at column * blockRows + row
+  private var kind: Byte = VERTEX_INDUCED
+  private var numWords = 0
+  private var numColumns = 0
+  private var columns: Array[Int] = _
+  private var numRows = 0
+
+  private lazy val patternIds: HashObjIntMap[Pattern] =
+    HashObjIntMaps.getDefaultFactory[Pattern]().withDefaultValue(-1).newMutableMap()
+  private lazy val dictionary = new OutputStreamWriter(dictionaryOut())
+
+  private var closed = false
+
+  def append(embedding: Embedding): Unit = {
+    val embeddingKind = if (embedding.isInstanceOf[EdgeInducedEmbedding])
+      EDGE_INDUCED else VERTEX_INDUCED
+    val embeddingWords = embedding.getNumWords
+
+    if (numRows > 0 && (embeddingKind != kind || embeddingWords != numWords)) {
+      flushBlock()
+    }
+
+    if (numRows == 0) {
+      kind = embeddingKind
+      numWords = embeddingWords
+      numColumns = numWordColumns (kind, numWords) + (if (withPatterns) 1 else 0)
+      if (columns == null || columns.length < numColumns * blockRows) {
+        columns = new Array[Int](numColumns * blockRows)
+      }
+    }
+
+    if (kind == EDGE_INDUCED) {
+      val edges = embedding.getEdges
+      var i = 0
+      while (i < numWords) {
+        val edge = mainGraph.getEdge (edges.getUnchecked (i))
+        columns((2 * i) * blockRows + numRows) = outputVertexId (edge.getSourceId)
+        columns((2 * i + 1) * blockRows + numRows) = outputVertexId (edge.getDestinationId)
+        i += 1
+      }
+    } else {
+      val vertices = embedding.getVertices
+      var i = 0
+      while (i < numWords) {
+        columns(i * blockRows + numRows) = outputVertexId (vertices.getUnchecked (i))
+        i += 1
+      }
+    }
+
+    if (withPatterns) {
+      columns((numColumns - 1) * blockRows + numRows) = patternId (embedding.getPattern)
+    }
+
+    numRows += 1
+    if (numRows == blockRows) {
+      flushBlock()
+    }
+  }
+
+  private def outputVertexId(vertexId: Int): Int =
+    if (originalVertexIds == null) vertexId else originalVertexIds(vertexId)
+
+  private def patternId(pattern: Pattern): Int = {
+    var id = patternIds.getInt (pattern)
+    if (id < 0) {
+      id = patternIds.size
+      patternIds.put (pattern.copy, id)
+      dictionary.write (s"${id}\t${pattern.toOutputString}\n")
+    }
+    id
+  }
+
+  private def flushBlock(): Unit = if (numRows > 0) {
+    val data = new ExtendedByteArrayDataOutput(numRows * numColumns * 4)
+    var c = 0
+    while (c < numColumns) {
+      val offset = c * blockRows
+      var r = 0
+      while (r < numRows) {
+        data.writeInt (columns(offset + r))
+        r += 1
+      }
+      c += 1
+    }
+
+    val uncompressedSize = data.getPos
+    val codec = compression.nextCodec
+    val compressed = compression.compress (codec, data)
+
+    dataOut.writeInt (numRows)
+    dataOut.writeByte (kind)
+    dataOut.writeInt (numWords)
+    dataOut.writeBoolean (withPatterns)
+    dataOut.writeByte (codec.getId)
+    dataOut.writeInt (uncompressedSize)
+    dataOut.writeInt (compressed.getPos)
+    dataOut.write (compressed.getByteArray, 0, compressed.getPos)
+
+    numRows = 0
+  }
+
+  def close(): Unit = if (!closed) {
+    flushBlock()
+    dataOut.writeInt (0)
+    dataOut.close()
+    if (withPatterns && !patternIds.isEmpty) dictionary.close()
+    closed = true
+  }
+}
+
+object ColumnarEmbeddingWriter {
+  val MAGIC = 0x41524243 // "ARBC"
+  val VERSION: Byte = 1
+
+  val VERTEX_INDUCED: Byte = 0
+  val EDGE_INDUCED: Byte = 1
+
+  // file name suffixes of the data and dictionary files of a partition
+  val DATA_SUFFIX = ".col"
+  val DICTIONARY_SUFFIX = ".dict"
+
+  def numWordColumns(kind: Byte, numWords: Int): Int =
+    if (kind == EDGE_INDUCED) 2 * numWords else numWords
+}
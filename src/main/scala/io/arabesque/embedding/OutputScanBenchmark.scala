@@ -0,0 +1,99 @@
+package io.arabesque.embedding
+
+import io.arabesque.ArabesqueContext
+import io.arabesque.conf.SparkConfiguration
+import io.arabesque.utils.KryoRegistrator
+
+import org.apache.hadoop.fs.{FileSystem, Path}
+
+import org.apache.spark.{SparkConf, SparkContext}
+
+/**
+ * Size and scan time of the output formats: the embeddings of motifs are
+ * written once as plain text, sequence files and columnar blocks, then every
+ * output is read back and counted a few times. The columnar output is also
+ * scanned block by block, reading a single column (the first word of every
+ * embedding) without building the embeddings, which is what column scans of
+ * [[ColumnarEmbeddingReader]] are for.
+ *
+ *   java -cp arabesque.jar io.arabesque.embedding.OutputScanBenchmark data/citeseer.graph 4
+ *
+ * The first scan of every output is reported apart, since it warms up the
+ * page cache and the jit.
+ */
+object OutputScanBenchmark {
+  val REPETITIONS = 5
+
+  def main(args: Array[String]): Unit = {
+    if (args.length < 1) {
+      System.err.println ("Usage: OutputScanBenchmark <graph file> [max size] [spark master]")
+      System.exit (1)
+    }
+
+    val graphPath = args(0)
+    val maxSize = if (args.length > 1) args(1).toInt else 4
+    val master = if (args.length > 2) args(2) else "local[*]"
+
+    val conf = new SparkConf().
+      setMaster (master).
+      setAppName ("OutputScanBenchmark")
+    KryoRegistrator.register (conf)
+
+    val sc = new SparkContext(conf)
+    val arab = new ArabesqueContext(sc, "warn")
+    val fs = FileSystem.get (sc.hadoopConfiguration)
+
+    try {
+      val arabGraph = arab.textFile (graphPath, local = true)
+
+      for (outputFormat <- Seq(SparkConfiguration.OUTPUT_PLAIN_TEXT,
+          SparkConfiguration.OUTPUT_SEQUENCE_FILE,
+          SparkConfiguration.OUTPUT_COLUMNAR)) {
+
+        val outputPath = s"${arab.tmpPath}/${outputFormat}"
+        val motifsRes = arabGraph.motifs (maxSize).
+          set ("comm_strategy", SparkConfiguration.COMM_ODAG_SP).
+          set ("output_active", true).
+          set ("output_path", outputPath).
+          set ("output_format", outputFormat)
+
+        val embeddings = motifsRes.embeddings
+        val size = fs.getContentSummary (new Path (outputPath)).getLength
+
+        // embeddings are not cached, every count reads the output again
+        report (s"${outputFormat} embeddings", size) (embeddings.count)
+
+        if (outputFormat == SparkConfiguration.OUTPUT_COLUMNAR) {
+          val files = sc.binaryFiles (s"${outputPath}/*/*${ColumnarEmbeddingWriter.DATA_SUFFIX}")
+          report (s"${outputFormat} first column", size) {
+            files.map { case (_,stream) =>
+              var sum = 0L
+              new ColumnarEmbeddingReader(stream.open).blocks.foreach { block =>
+                var row = 0
+                while (row < block.numRows) {
+                  sum += block.get (0, row)
+                  row += 1
+                }
+              }
+              sum
+            }.reduce (_ + _)
+          }
+        }
+      }
+    } finally {
+      sc.stop()
+      arab.stop()
+    }
+  }
+
+  private def report(name: String, size: Long)(scan: => Long): Unit = {
+    val times = for (i <- 0 until REPETITIONS) yield {
+      val start = System.currentTimeMillis
+      scan
+      System.currentTimeMillis - start
+    }
+    val warm = times.tail
+    println (s"${name}: ${size} bytes, first scan ${times.head}ms, " +
+      s"then min ${warm.min}ms avg ${warm.sum / warm.size}ms")
+  }
+}
@@ -1,7 +1,7 @@
 package io.arabesque.embedding
 
 import io.arabesque.conf.SparkConfiguration
-import io.arabesque.graph.BasicMainGraph
+import io.arabesque.graph.MainGraph
 
 import org.apache.hadoop.io.Writable
 
@@ -53,19 +53,33 @@ object ResultEmbedding {
   }
 
   def apply(embedding: Embedding) = {
+    // vertex ids are translated back to the input ones if the main graph was
+    // reordered after loading
+    val originalVertexIds = SparkConfiguration.get.getOriginalVertexIds
+    def outputVertexId(vertexId: Int): Int =
+      if (originalVertexIds == null) vertexId else originalVertexIds(vertexId)
+
     if (embedding.isInstanceOf[EdgeInducedEmbedding]) {
-      val mainGraph = SparkConfiguration.get.getMainGraph[BasicMainGraph]
+      val mainGraph = SparkConfiguration.get.getMainGraph[MainGraph]
       val edges = new Array [(Int,Int)] (embedding.getNumEdges)
       val edgesIter = embedding.getEdges.iterator
       var i = 0
       while (edgesIter.hasNext) {
         val e = mainGraph.getEdge(edgesIter.next)
-        edges(i) = (e.getSourceId, e.getDestinationId)
+        edges(i) = (outputVertexId (e.getSourceId), outputVertexId (e.getDestinationId))
         i += 1
       }
       new EEmbedding (edges)
     } else {
-      new VEmbedding (embedding.getVertices.toIntArray)
+      val vertices = embedding.getVertices.toIntArray
+      if (originalVertexIds != null) {
+        var i = 0
+        while (i < vertices.length) {
+          vertices(i) = originalVertexIds(vertices(i))
+          i += 1
+        }
+      }
+      new VEmbedding (vertices)
     }
   }
 }
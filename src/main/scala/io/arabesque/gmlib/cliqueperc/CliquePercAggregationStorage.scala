@@ -1,29 +1,96 @@
 package io.arabesque.gmlib.cliqueperc
 
-import io.arabesque.aggregation.AggregationStorage
-import io.arabesque.conf.SparkConfiguration
-import io.arabesque.embedding.VertexInducedEmbedding
-import io.arabesque.utils.collection.{IntArrayList, UnionFindOps}
+import com.koloboke.collect.map.hash.{HashObjIntMap, HashObjIntMaps}
 
-import org.apache.hadoop.io.{ArrayPrimitiveWritable, IntWritable, NullWritable}
+import io.arabesque.aggregation.AggregationStorage
+import io.arabesque.utils.collection.{IntArrayList, IntUnionFind}
 
 import scala.collection.JavaConverters._
 
+/**
+ * Membership of (k-1)-cliques to communities. Subsets are given dense ids as
+ * they are seen and their union-find forest is kept in int arrays (see
+ * [[io.arabesque.utils.collection.IntUnionFind]]); the mapping of this
+ * storage is the flattened forest, i.e., each subset maps to the root subset
+ * of its set, and it is what travels between partitions.
+ */
 class CliquePercAggregationStorage extends AggregationStorage[IntArrayList,IntArrayList] {
 
+  // not externalized: rebuilt from the mapping when needed
+  private val ids: HashObjIntMap[IntArrayList] =
+    HashObjIntMaps.getDefaultFactory[IntArrayList]().withDefaultValue(-1).newMutableMap()
+  private val subsets = new java.util.ArrayList[IntArrayList]()
+  private val forest = new IntUnionFind()
+  private var flattened = true
+
+  /**
+   * Returns the dense id of *subset*, assigning a new one (a singleton set)
+   * if it was not seen before. *subset* may be reused afterwards.
+   */
+  def getId(subset: IntArrayList): Int = {
+    loadForest()
+    idOf (subset)
+  }
+
+  /**
+   * Merges the sets of the subsets with ids *i* and *j*.
+   */
+  def union(i: Int, j: Int): Unit = {
+    forest.union (i, j)
+    flattened = false
+  }
+
   /**
    * This aggregation must be overrided because we must perform the union of
-   * different union-find subsets (not necessarily disjoint).
+   * different union-find subsets (not necessarily disjoint). Both forests are
+   * flat, thus merging them is a pass over the mapping of the other.
    */
   override def aggregate(os: AggregationStorage[IntArrayList,IntArrayList]): Unit = {
-    for ((k,_) <- os.getMapping.asScala) {
-      val parent = UnionFindOps.find [IntArrayList] (
-        v => os.getValue (v), (k,v) => os.aggregateWithReusables (k,v), k)
-      if (!(parent equals k)) {
-        UnionFindOps.union [IntArrayList] (
-          v => this.getValue (v), (k,v) => this.aggregateWithReusables (k,v), parent, k)
-      }
+    if (!getName.equals (os.getName)) {
+      throw new RuntimeException ("Aggregating storages with different names")
+    }
+
+    os match {
+      case cpos: CliquePercAggregationStorage => cpos.flatten()
+      case _ =>
     }
+
+    loadForest()
+    for ((k,parent) <- os.getMapping.asScala) {
+      union (idOf (k), idOf (parent))
+    }
+    flatten()
+  }
+
+  /**
+   * Rewrites the mapping as subset -> root subset of its set
+   */
+  def flatten(): Unit = if (!flattened) {
+    keyValueMap.clear()
+    var i = 0
+    while (i < forest.size) {
+      keyValueMap.put (subsets.get (i), subsets.get (forest.find (i)))
+      i += 1
+    }
+    flattened = true
+  }
+
+  private def idOf(subset: IntArrayList): Int = {
+    var id = ids.getInt (subset)
+    if (id < 0) {
+      val key = new IntArrayList(subset)
+      id = forest.add()
+      ids.put (key, id)
+      subsets.add (key)
+      flattened = false
+    }
+    id
   }
 
+  // a deserialized storage only carries its mapping
+  private def loadForest(): Unit = if (forest.size == 0 && !keyValueMap.isEmpty) {
+    for ((k,parent) <- keyValueMap.asScala.toList) {
+      forest.union (idOf (k), idOf (parent))
+    }
+  }
 }
@@ -1,14 +1,15 @@
 package io.arabesque.gmlib.cliqueperc
 
+import io.arabesque.ArabesqueResult
 import io.arabesque.aggregation.AggregationStorage
 import io.arabesque.aggregation.reductions.ReductionFunctionContainer
 import io.arabesque.computation.VertexInducedComputation
 import io.arabesque.conf.SparkConfiguration
 import io.arabesque.embedding.{Embedding, VertexInducedEmbedding}
 import io.arabesque.graph.BasicMainGraph
-import io.arabesque.utils.collection.{IntArrayList, UnionFindOps}
+import io.arabesque.utils.collection.IntArrayList
 
-import org.apache.hadoop.io.IntWritable
+import org.apache.spark.rdd.RDD
 
 import scala.collection.JavaConverters._
 
@@ -18,11 +19,6 @@ class CliquePercComputation extends VertexInducedComputation[VertexInducedEmbedd
   private var maxsize: Int = _
   private lazy val membershipAggStorage: CliquePercAggregationStorage =
     getAggregationStorage (MEMBERSHIP).asInstanceOf[CliquePercAggregationStorage]
-  private val reusableInt: IntWritable = new IntWritable()
-  private val updateCallback = 
-    (k: IntArrayList, v: IntArrayList) => membershipAggStorage.aggregateWithReusables(k,v)
-  private val queryCallback = 
-    (v: IntArrayList) => membershipAggStorage.getValue(v)
 
   override def init(): Unit = {
     super.init()
@@ -34,15 +30,15 @@ class CliquePercComputation extends VertexInducedComputation[VertexInducedEmbedd
     val conf = SparkConfiguration.get
 
     // aggregation for clique adjacencies.
-    // Key: vertice;
-    // Value: parent representing the set the vertice belongs according to an union-find structure
+    // Key: (k-1)-clique;
+    // Value: root (k-1)-clique of the set it belongs to according to an union-find structure
     conf.registerAggregation(MEMBERSHIP, classOf[CliquePercAggregationStorage], classOf[IntArrayList],
       classOf[IntArrayList], false,
       new ReductionFunctionContainer [IntArrayList] ((k1, k2) => {k1.set (k2); k1})
     );
 
     // aggregation for cliques, that will compose a community.
-    // Key: any vertice from the embedding to represent the clique (we choose to
+    // Key: any (k-1)-clique of the embedding to represent the clique (we choose to
     // take the first)
     // Value: embedding representing a clique
     val embeddingReduce = (e1: VertexInducedEmbedding, e2: VertexInducedEmbedding) => {
@@ -59,6 +55,9 @@ class CliquePercComputation extends VertexInducedComputation[VertexInducedEmbedd
       classOf[VertexInducedEmbedding], false, new ReductionFunctionContainer(embeddingReduce))
   }
   
+  // both aggregations are keyed by (k-1)-cliques, i.e., vertex ids
+  override def aggregatesVertexIds(): Boolean = true
+
   private def isClique(e: VertexInducedEmbedding): Boolean = {
     e.getNumEdgesAddedWithExpansion() == e.getNumVertices() - 1
   }
@@ -73,12 +72,13 @@ class CliquePercComputation extends VertexInducedComputation[VertexInducedEmbedd
 
   override def process(e: VertexInducedEmbedding): Unit = {
     if (e.getNumVertices == maxsize) { // process only cliques
+      // (k-1)-subsets of a clique are adjacent, the first one represents it
       val subsetsIter = e.getVertices.combinations (maxsize - 1)
-      val repr = UnionFindOps.find (queryCallback, updateCallback, new IntArrayList(subsetsIter.next))
+      val repr = subsetsIter.next
       map (CLIQUES, repr, e)
+      val reprId = membershipAggStorage.getId (repr)
       while (subsetsIter.hasNext) {
-        val subset = subsetsIter.next
-        UnionFindOps.union (queryCallback, updateCallback, subset, repr)
+        membershipAggStorage.union (reprId, membershipAggStorage.getId (subsetsIter.next))
       }
     }
   }
@@ -90,4 +90,31 @@ object CliquePercComputation {
 
   val MEMBERSHIP = "membership"
   val CLIQUES = "cliques"
+
+  /**
+   * Communities found by a clique percolation computation: the cliques of
+   * each set of adjacent (k-1)-cliques are joined with their roots and merged
+   * by key, without collecting the membership in the driver.
+   *
+   * @param res result of a [[CliquePercComputation]]
+   * @return the (sorted) vertices of each community
+   */
+  def communities(res: ArabesqueResult[_]): RDD[IntArrayList] = {
+    val roots = res.aggregationRDD [IntArrayList,IntArrayList] (MEMBERSHIP).
+      map { case (subset,root) => (subset.value, root.value) }
+    val cliques = res.aggregationRDD [IntArrayList,VertexInducedEmbedding] (CLIQUES).
+      map { case (repr,e) => (repr.value, new IntArrayList(e.value.getVertices)) }
+
+    cliques.join (roots).
+      map { case (_, (vertices,root)) => (root, vertices) }.
+      reduceByKey { (vertices1,vertices2) =>
+        val iter = vertices2.iterator
+        while (iter.hasNext) {
+          val v = iter.nextInt
+          if (!vertices1.contains (v)) vertices1.add (v)
+        }
+        vertices1
+      }.
+      map { case (_, vertices) => vertices.sort(); vertices }
+  }
 }
@@ -12,6 +12,12 @@ import java.io._
 
 import scala.collection.JavaConversions._
 
+/**
+ * ODAG that packs the embeddings of several patterns, so that workloads with
+ * many small patterns do not pay the per-odag overhead of one odag per pattern
+ * (see [[MultiPatternODAGStash]]). The readers enumerate only the embeddings
+ * of its patterns.
+ */
 class MultiPatternODAG extends BasicODAG {
 
   def config: SparkConfiguration[_ <: Embedding] =
@@ -51,7 +57,12 @@ class MultiPatternODAG extends BasicODAG {
     storage.addEmbedding (embedding)
   }
 
-  override def getPattern: Pattern = ???
+  /**
+   * Any of the patterns in this odag, e.g., to tell the odags of a stash
+   * apart. Patterns of a multi-pattern stash slot hash to that slot.
+   */
+  override def getPattern: Pattern =
+    if (patterns.isEmpty) null else patterns.head
    
   override def aggregate(other: BasicODAG): Unit = other match {
     case mpOdag: MultiPatternODAG =>
@@ -84,6 +95,7 @@ class MultiPatternODAG extends BasicODAG {
   
   override def readFields(dataInput: DataInput): Unit = {
     this.clear
+    patterns = Set.empty
     val numPatterns = dataInput.readInt
     for (i <- 0 until numPatterns) {
       val pattern = config.createPattern
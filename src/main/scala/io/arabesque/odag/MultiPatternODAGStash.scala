@@ -10,6 +10,11 @@ import io.arabesque.conf.{Configuration, SparkConfiguration}
 
 import scala.collection.JavaConverters._
 
+/**
+ * Stash of at most *maxOdags* multi-pattern odags: embeddings go to the odag of
+ * the slot their (quick) pattern hashes to, so a bounded number of odags holds
+ * every pattern.
+ */
 class MultiPatternODAGStash
     extends BasicODAGStash[MultiPatternODAG,MultiPatternODAGStash] with Serializable {
 
@@ -40,12 +45,17 @@ class MultiPatternODAGStash
       }
   }
 
+  /**
+   * Slot of the odag that holds *pattern*
+   */
+  def slot(pattern: Pattern): Int = {
+    val cand = pattern.hashCode % getNumZips
+    cand + (if (cand < 0) getNumZips else 0)
+  }
+
   override def addEmbedding(embedding: Embedding): Unit = {
     reusablePattern.setEmbedding (embedding)
-    val idx = {
-      val cand = reusablePattern.hashCode % getNumZips
-      cand + (if (cand < 0) getNumZips else 0)
-    }
+    val idx = slot (reusablePattern)
 
     if (odags(idx) == null) {
       // initialize multi-pattern odag
@@ -57,11 +67,44 @@ class MultiPatternODAGStash
     odags(idx).addEmbedding (embedding, reusablePattern)
   }
 
-  override def aggregate(odag: MultiPatternODAG): Unit = ???
+  /**
+   * Aggregates *odag* into the odag of its slot, which must have been built
+   * by a stash with the same number of slots. *odag* is kept by this stash.
+   */
+  override def aggregate(odag: MultiPatternODAG): Unit = {
+    if (odag.patterns.isEmpty)
+      return
+
+    val idx = slot (odag.getPattern)
+
+    if (odags(idx) == null) {
+      odags(idx) = odag
+      numOdags += 1
+    } else {
+      odags(idx).aggregate (odag)
+    }
+  }
+
+  /**
+   * Same as [[aggregate]] but *odag* is copied, so it can be reused
+   */
+  override def aggregateUsingReusable(odag: MultiPatternODAG): Unit = {
+    if (odag.patterns.isEmpty)
+      return
+
+    val idx = slot (odag.getPattern)
 
-  override def aggregateUsingReusable(odag: MultiPatternODAG): Unit = ???
+    if (odags(idx) == null) {
+      odags(idx) = new MultiPatternODAG (odag.getNumberOfDomains)
+      numOdags += 1
+    }
+
+    odags(idx).aggregate (odag)
+  }
 
   override def aggregateStash(other: MultiPatternODAGStash): Unit = {
+    for (odag <- other.odags.iterator if odag != null)
+      aggregate (odag)
   }
    
   override def finalizeConstruction(
@@ -71,7 +114,7 @@ class MultiPatternODAGStash
       odag.finalizeConstruction (pool, parts)
   }
 
-  override def isEmpty(): Boolean = odags.isEmpty
+  override def isEmpty(): Boolean = numOdags == 0
 
   override def getNumZips(): Int =
     if (odags != null) odags.size else 0
@@ -81,46 +124,29 @@ class MultiPatternODAGStash
 
   override def clear(): Unit = {
     for (i <- 0 until odags.size) odags(i) = null
+    numOdags = 0
   }
 
-  //override def readExternal(objInput: ObjectInput): Unit = {
-  //  readFields (objInput)
-  //}
-
-  //override def writeExternal(objOutput: ObjectOutput): Unit = {
-  //  write (objOutput)
-  //}
-  
-  override def readFields(dataInput: DataInput): Unit = ???
-  override def write(dataOutput: DataOutput): Unit = ???
-  
-  //override def readExternal(objInput: ObjectInput): Unit = {
-  //  odags = new Array(objInput.readInt)
-  //  numOdags = objInput.readInt
-  //  var readOdags = 0
-  //  for (i <- 0 until numOdags) {
-  //    val odag = new MultiPatternODAG
-  //    odag.readExternal (objInput)
-  //    odags(odag.patterns.head.hashCode % odags.size) = odag
-  //    readOdags += 1
-  //  }
-  //  assert (odags.filter(_ != null).size == readOdags)
-  //  assert (numOdags == readOdags)
-  //}
-
-  //override def writeExternal(objOutput: ObjectOutput): Unit = {
-  //  objOutput.writeInt (odags.size)
-  //  objOutput.writeInt (numOdags)
-  //  var writtenOdags = 0
-  //  odags.foreach {
-  //    case odag if odag != null =>
-  //      odag.writeExternal (objOutput)
-  //      writtenOdags += 1
-  //    case _ =>
-  //  }
-  //  assert (odags.filter(_ != null).size == writtenOdags)
-  //  assert (writtenOdags == numOdags)
-  //}
+  override def readFields(dataInput: DataInput): Unit = {
+    odags = new Array(dataInput.readInt)
+    numOdags = dataInput.readInt
+    for (i <- 0 until numOdags) {
+      val idx = dataInput.readInt
+      val odag = new MultiPatternODAG (false)
+      odag.readFields (dataInput)
+      odags(idx) = odag
+    }
+  }
+
+  override def write(dataOutput: DataOutput): Unit = {
+    val slots = (0 until odags.size).filter (odags(_) != null)
+    dataOutput.writeInt (odags.size)
+    dataOutput.writeInt (slots.size)
+    for (idx <- slots) {
+      dataOutput.writeInt (idx)
+      odags(idx).write (dataOutput)
+    }
+  }
 }
 
 object MultiPatternODAGStash {
@@ -0,0 +1,138 @@
+package io.arabesque.utils
+
+import java.io.Externalizable
+
+import com.esotericsoftware.kryo.{Kryo, Serializer}
+import com.esotericsoftware.kryo.io._
+import com.esotericsoftware.kryo.serializers.JavaSerializer
+
+import io.arabesque.aggregation.{AggregationStorage, ApproximateCount, EndAggregationFunction, PatternAggregationStorage}
+import io.arabesque.aggregation.reductions.ReductionFunction
+import io.arabesque.cache.LZ4ObjectCache
+import io.arabesque.conf.SparkConfiguration
+import io.arabesque.embedding._
+import io.arabesque.odag.{MultiPatternODAG, SinglePatternODAG}
+import io.arabesque.odag.domain.{DomainStorage, DomainStorageReadOnly}
+import io.arabesque.pattern.{JBlissPattern, PatternKey, VICPattern}
+import io.arabesque.utils.collection.IntArrayList
+
+import org.apache.hadoop.io.Writable
+
+import org.apache.spark.SparkConf
+import org.apache.spark.serializer.{KryoSerializer, KryoRegistrator => SparkKryoRegistrator}
+
+/**
+ * Registers arabesque types with Kryo, so that shuffles (odags, caches),
+ * broadcasts (odags, aggregations) and task results (aggregations) carry a
+ * class id and the writable representation of each object instead of java
+ * serialization class descriptors and block headers.
+ */
+class KryoRegistrator extends SparkKryoRegistrator {
+  override def registerClasses(kryo: Kryo): Unit = {
+    // odags read a flag telling the storage to create before its contents
+    kryo.register (classOf[SinglePatternODAG], new ExternalizableSerializer[SinglePatternODAG])
+    kryo.register (classOf[MultiPatternODAG], new ExternalizableSerializer[MultiPatternODAG])
+    kryo.register (classOf[DomainStorage], new WritableSerializer[DomainStorage])
+    kryo.register (classOf[DomainStorageReadOnly], new WritableSerializer[DomainStorageReadOnly])
+
+    kryo.register (classOf[LZ4ObjectCache], new WritableSerializer[LZ4ObjectCache])
+
+    kryo.register (classOf[PatternKey], new WritableSerializer[PatternKey])
+    kryo.register (classOf[JBlissPattern], new WritableSerializer[JBlissPattern])
+    kryo.register (classOf[VICPattern], new WritableSerializer[VICPattern])
+
+    kryo.register (classOf[VertexInducedEmbedding], new WritableSerializer[VertexInducedEmbedding])
+    kryo.register (classOf[EdgeInducedEmbedding], new WritableSerializer[EdgeInducedEmbedding])
+    kryo.register (classOf[VEmbedding], new WritableSerializer[VEmbedding])
+    kryo.register (classOf[EEmbedding], new WritableSerializer[EEmbedding])
+
+    kryo.register (classOf[IntArrayList], new WritableSerializer[IntArrayList])
+    kryo.register (classOf[ApproximateCount], new WritableSerializer[ApproximateCount])
+
+    // aggregations carry their key/value classes and functions, their
+    // writable form relies on the metadata registered in the configuration
+    kryo.register (classOf[AggregationStorage[_,_]],
+      new ExternalizableSerializer[AggregationStorage[_,_]])
+    kryo.register (classOf[PatternAggregationStorage[_,_]],
+      new ExternalizableSerializer[PatternAggregationStorage[_,_]])
+    // aggregation storages of applications (e.g., clique percolation)
+    kryo.addDefaultSerializer (classOf[AggregationStorage[_,_]],
+      new ExternalizableSerializer[AggregationStorage[_,_]])
+
+    // user functions and configurations may close over anything, they keep
+    // java serialization (as with the java serializer)
+    kryo.addDefaultSerializer (classOf[ReductionFunction[_]], classOf[JavaSerializer])
+    kryo.addDefaultSerializer (classOf[EndAggregationFunction[_,_]], classOf[JavaSerializer])
+    kryo.register (classOf[SparkConfiguration[_ <: Embedding]], new JavaSerializer)
+    kryo.register (classOf[SerializableConfiguration], new JavaSerializer)
+    kryo.register (classOf[SerializableWritable[_]], new JavaSerializer)
+  }
+}
+
+object KryoRegistrator {
+  val SERIALIZER = "spark.serializer"
+  val REGISTRATOR = "spark.kryo.registrator"
+  val BUFFER_MAX = "spark.kryoserializer.buffer.max"
+
+  // whole odags and aggregations are serialized at once (broadcasts, task
+  // results), far beyond kryo's default limit of 64m
+  val BUFFER_MAX_DEFAULT = "1g"
+
+  /**
+   * Makes *conf* use Kryo with arabesque types registered. A serializer set
+   * by the user (e.g., spark-submit --conf spark.serializer=...) is kept, and
+   * registrators set by the user are kept along with ours.
+   *
+   * @param conf spark configuration, mutated
+   * @return the same *conf*
+   */
+  def register(conf: SparkConf): SparkConf = {
+    conf.setIfMissing (SERIALIZER, classOf[KryoSerializer].getName)
+
+    if (conf.get (SERIALIZER) == classOf[KryoSerializer].getName) {
+      val registrator = classOf[KryoRegistrator].getName
+      conf.getOption (REGISTRATOR) match {
+        case Some(registrators) if registrators.split (",").map (_.trim) contains registrator =>
+        case Some(registrators) =>
+          conf.set (REGISTRATOR, s"${registrators},${registrator}")
+        case None =>
+          conf.set (REGISTRATOR, registrator)
+      }
+      conf.setIfMissing (BUFFER_MAX, BUFFER_MAX_DEFAULT)
+    }
+
+    conf
+  }
+}
+
+/**
+ * Serializes writables whose readFields restores the whole object.
+ */
+class WritableSerializer[T <: Writable] extends Serializer[T] {
+  override def write(kryo: Kryo, output: Output, obj: T): Unit = {
+    obj.write (new KryoDataOutput (output))
+  }
+
+  override def read(kryo: Kryo, input: Input, clazz: Class[T]): T = {
+    val obj = kryo.newInstance (clazz)
+    obj.readFields (new KryoDataInput (input))
+    obj
+  }
+}
+
+/**
+ * Serializes externalizables through their writeExternal/readExternal, nested
+ * objects (readObject/writeObject) are handled by Kryo itself.
+ */
+class ExternalizableSerializer[T <: Externalizable] extends Serializer[T] {
+  override def write(kryo: Kryo, output: Output, obj: T): Unit = {
+    obj.writeExternal (new KryoObjectOutput (kryo, output))
+  }
+
+  override def read(kryo: Kryo, input: Input, clazz: Class[T]): T = {
+    val obj = kryo.newInstance (clazz)
+    kryo.reference (obj)
+    obj.readExternal (new KryoObjectInput (kryo, input))
+    obj
+  }
+}
@@ -9,9 +9,11 @@ import org.apache.hadoop.io._
 import scala.collection.JavaConverters._
 
 /**
- * This object implements the operations of an union-find structure.
- * TODO: implement union-find optimizations
- * ("path compression" and "union by rank")
+ * This object implements the operations of an union-find structure over
+ * writables reached through callbacks (e.g., an aggregation storage). It does
+ * no path compression nor union by rank: values may be reused instances of the
+ * underlying storage. Elements that can be given dense ids should use
+ * [[io.arabesque.utils.collection.IntUnionFind]] instead.
  */
 object UnionFindOps {
 
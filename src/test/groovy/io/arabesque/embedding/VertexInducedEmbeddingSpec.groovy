@@ -86,6 +86,31 @@ class VertexInducedEmbeddingSpec extends EmbeddingSpec {
         // we now have a square
     }
 
+    def "Edges should be correct when only requested after modifications of that embedding"() {
+        given: "a simple labelled graph"
+        setMainGraph(TEST_GRAPH_LABELLED)
+        and: "an empty embedding"
+        Embedding embedding = createEmbedding()
+
+        when: "we build the star and remove its last 2 vertices without asking for edges"
+        [0, 3, 4, 1, 2].each { embedding.addWord(it) }
+        embedding.removeLastWord()
+        embedding.removeLastWord()
+        then: "edges added with the last vertex should be counted from the adjacency"
+        embedding.getNumEdgesAddedWithExpansion() == 1
+
+        when: "we add vertex 5"
+        embedding.addWord(5)
+        then: "we should have the edges of the square"
+        embedding.getNumEdgesAddedWithExpansion() == 2
+        embedding.getEdges().asList() == [2, 3, 4, 5]
+
+        when: "we remove vertex 5 after its edges were resolved"
+        embedding.removeLastWord()
+        then: "its edges should be removed"
+        embedding.getEdges().asList() == [2, 3]
+    }
+
     //@Override
     def "Embedding structure should remain correct throughout modifications of that embedding in a multi graph"() {
         given: "a multi labelled graph"
@@ -0,0 +1,103 @@
+package io.arabesque.gmlib.matching
+
+import io.arabesque.conf.Configuration
+import io.arabesque.graph.LabelledEdge
+import io.arabesque.graph.MainGraph
+import io.arabesque.pattern.Pattern
+import io.arabesque.pattern.VICPattern
+import io.arabesque.testutils.EmbeddingUtils
+import io.arabesque.testutils.graphs.EdgeLabelledTestGraph
+import io.arabesque.testutils.graphs.TestGraph
+import org.apache.giraph.conf.GiraphConfiguration
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class MatchingPlanSpec extends Specification {
+    Configuration configuration
+
+    def setup() {
+        configuration = Mock(Configuration)
+        Configuration.set(configuration)
+    }
+
+    def setMainGraph(MainGraph mainGraph) {
+        configuration.getMainGraph() >> mainGraph
+        configuration.isGraphEdgeLabelled() >> mainGraph.isEdgeLabelled()
+        configuration.isGraphMulti() >> mainGraph.isMultiGraph()
+        configuration.getUnderlyingConfiguration() >> new ImmutableClassesGiraphConfiguration(new GiraphConfiguration())
+        Configuration.set(configuration)
+    }
+
+    def "plan of a single vertex pattern takes the vertex label from the main graph"() {
+        given: "a single vertex pattern of an edge labelled graph"
+        setMainGraph(new EdgeLabelledTestGraph())
+        Pattern pattern = new VICPattern()
+        pattern.setEmbedding(EmbeddingUtils.createVertexEmbedding([6]))
+
+        when:
+        MatchingPlan plan = new MatchingPlan(pattern, null)
+
+        then:
+        plan.getNumPositions() == 1
+        plan.getLabel(0) == 3
+        plan.getAnchorDepth(0) == -1
+        !plan.hasEdgeLabels()
+    }
+
+    def "plan of the single vertex pattern #patternStr"() {
+        when:
+        MatchingPlan plan = new MatchingPlan(patternStr, null)
+
+        then:
+        plan.getNumPositions() == 1
+        plan.getLabel(0) == label
+
+        where:
+        patternStr | label
+        "0(3)"     | 3
+        "0(-1)"    | -1
+    }
+
+    def "plan of an edge labelled pattern keeps the labels of its edges"() {
+        given: "a triangle of an edge labelled graph"
+        TestGraph graph = new EdgeLabelledTestGraph()
+        setMainGraph(graph)
+        Pattern pattern = new VICPattern()
+        pattern.setEmbedding(EmbeddingUtils.createVertexEmbedding(TestGraph.EMBEDDING_TRIANGLE_VERTICES))
+
+        when:
+        MatchingPlan plan = new MatchingPlan(pattern, null)
+
+        then: "every pair of adjacent positions requires the label of the edge between their vertices"
+        plan.hasEdgeLabels()
+        (1..<plan.getNumPositions()).every { int depth ->
+            plan.getNeighbourDepths(depth).every { int otherDepth ->
+                int vertex = pattern.getVertices().getUnchecked(plan.getPosition(depth))
+                int otherVertex = pattern.getVertices().getUnchecked(plan.getPosition(otherDepth))
+                List<Integer> expected = graph.getEdgeIds(vertex, otherVertex).collect { int edgeId ->
+                    ((LabelledEdge) graph.getEdge(edgeId)).getEdgeLabel()
+                }
+
+                plan.getEdgeLabels(depth, otherDepth).toIntArray() as List == expected
+            }
+        }
+    }
+
+    def "pattern #patternStr needs #numConditions symmetry breaking conditions"() {
+        when:
+        MatchingPlan plan = new MatchingPlan(patternStr, null)
+
+        then:
+        (0..<plan.getNumPositions()).sum { int depth ->
+            plan.getSmallerThanDepths(depth).length + plan.getGreaterThanDepths(depth).length
+        } == numConditions
+
+        where:
+        patternStr                              | numConditions
+        "[0,0-1,1],[0,0-2,1]"                   | 1
+        "[0(0)--(0)--1(1)],[0(0)--(0)--2(1)]"   | 1
+        "[0(0)--(0)--1(1)],[0(0)--(5)--2(1)]"   | 0
+    }
+}
@@ -0,0 +1,154 @@
+package io.arabesque.graph
+
+import com.koloboke.collect.IntCollection
+import com.koloboke.function.IntConsumer
+import spock.lang.Shared
+import spock.lang.Specification
+
+class BasicMainGraphSpec extends Specification {
+    static final int NUM_VERTICES = 5000
+
+    /**
+     * Vertex 0 is a hub (bitset once compacted), vertex 1 has a medium degree
+     * (hash map) and the rest have a few random neighbours (sorted arrays).
+     */
+    @Shared List<List<Integer>> edges = createEdges()
+
+    BasicMainGraph hashGraph
+    BasicMainGraph compactGraph
+
+    def setup() {
+        hashGraph = createGraph(false)
+        compactGraph = createGraph(true)
+    }
+
+    def "compaction picks the representation by degree"() {
+        expect:
+        !hashGraph.hasCompactNeighbourhoods()
+        compactGraph.hasCompactNeighbourhoods()
+        compactGraph.getVertexNeighbourhood(0) instanceof BitSetVertexNeighbourhood
+        compactGraph.getVertexNeighbourhood(1) instanceof BasicVertexNeighbourhood
+        compactGraph.getVertexNeighbourhood(2) instanceof SortedArrayVertexNeighbourhood
+    }
+
+    def "neighbour queries are the same before and after compaction"() {
+        expect:
+        sameNeighbourQueries(hashGraph, compactGraph)
+    }
+
+    def "edges added after compaction are seen as before compaction"() {
+        given:
+        List<List<Integer>> newEdges = [[0, NUM_VERTICES - 1], [1, NUM_VERTICES - 2], [2, NUM_VERTICES - 3]].findAll {
+            !hashGraph.isNeighborVertex(it[0], it[1])
+        }
+
+        when:
+        [hashGraph, compactGraph].each { BasicMainGraph graph ->
+            newEdges.eachWithIndex { List<Integer> edge, int i ->
+                graph.addEdge(new Edge(edges.size() + i, edge[0], edge[1]))
+            }
+        }
+
+        then:
+        newEdges.every { compactGraph.isNeighborVertex(it[0], it[1]) && compactGraph.isNeighborVertex(it[1], it[0]) }
+        sameNeighbourQueries(hashGraph, compactGraph)
+    }
+
+    def "rebuilt graphs keep the representation of the original one"() {
+        given:
+        BasicMainGraph rebuiltFromHash = new BasicMainGraph("rebuilt")
+        BasicMainGraph rebuiltFromCompact = new BasicMainGraph("rebuilt")
+
+        when:
+        rebuiltFromHash.compactNeighbourhoodsLike(hashGraph)
+        rebuiltFromCompact.compactNeighbourhoodsLike(compactGraph)
+
+        then:
+        !rebuiltFromHash.hasCompactNeighbourhoods()
+        rebuiltFromCompact.hasCompactNeighbourhoods()
+    }
+
+    static List<List<Integer>> createEdges() {
+        Random random = new Random(NUM_VERTICES)
+        Set<List<Integer>> pairs = new LinkedHashSet<>()
+
+        (1..100).each { pairs << [0, it] }
+        (101..170).each { pairs << [1, it] }
+
+        for (int v = 2; v < NUM_VERTICES; ++v) {
+            3.times {
+                int u = 2 + random.nextInt(NUM_VERTICES - 2)
+
+                if (u != v && !pairs.contains([u, v])) {
+                    pairs << [v, u]
+                }
+            }
+        }
+
+        pairs as List
+    }
+
+    BasicMainGraph createGraph(boolean compact) {
+        BasicMainGraph graph = new BasicMainGraph("compaction")
+
+        for (int v = 0; v < NUM_VERTICES; ++v) {
+            graph.addVertex(new Vertex(v, v % 3))
+        }
+
+        edges.eachWithIndex { List<Integer> edge, int id ->
+            graph.addEdge(new Edge(id, edge[0], edge[1]))
+        }
+
+        if (compact) {
+            graph.compactNeighbourhoods()
+        }
+
+        graph
+    }
+
+    /**
+     * Compares, for every vertex, its neighbours and incident edges and, for
+     * its neighbours plus a sample of other vertices, adjacency and the edges
+     * between them
+     */
+    static boolean sameNeighbourQueries(MainGraph expected, MainGraph actual) {
+        Random random = new Random(0)
+
+        for (int v = 0; v < NUM_VERTICES; ++v) {
+            assert toSet(actual.getVertexNeighbours(v)) == toSet(expected.getVertexNeighbours(v))
+            assert toSet(actual.getVertexNeighbourhood(v).getNeighbourEdges()) ==
+                    toSet(expected.getVertexNeighbourhood(v).getNeighbourEdges())
+
+            Set<Integer> others = toSet(expected.getVertexNeighbours(v)) + [0, 1] +
+                    (0..<20).collect { random.nextInt(NUM_VERTICES) }
+
+            for (int u : others) {
+                assert actual.isNeighborVertex(v, u) == expected.isNeighborVertex(v, u)
+                assert toSet(actual.getEdgeIds(v, u)) == toSet(expected.getEdgeIds(v, u))
+                assert edgeIdsOf(actual, v, u) == edgeIdsOf(expected, v, u)
+            }
+
+            List<Integer> incidentEdges = toSet(expected.getVertexNeighbourhood(v).getNeighbourEdges()) as List
+
+            for (int e : incidentEdges.take(5)) {
+                int otherEdge = random.nextInt(expected.getNumberEdges())
+                Edge edge = expected.getEdge(otherEdge)
+
+                assert actual.areEdgesNeighbors(e, otherEdge) == expected.areEdgesNeighbors(e, otherEdge)
+                assert actual.isNeighborEdge(v, edge.getSourceId(), e) == expected.isNeighborEdge(v, edge.getSourceId(), e)
+            }
+        }
+
+        true
+    }
+
+    static Set<Integer> toSet(IntCollection collection) {
+        collection == null ? [] as Set : (collection.toIntArray() as List) as Set
+    }
+
+    static Set<Integer> edgeIdsOf(MainGraph graph, int v1, int v2) {
+        Set<Integer> edgeIds = []
+        graph.forEachEdgeId(v1, v2, { int id -> edgeIds << id } as IntConsumer)
+        edgeIds
+    }
+}
@@ -0,0 +1,151 @@
+package io.arabesque.odag.domain
+
+import io.arabesque.embedding.Embedding
+import io.arabesque.utils.collection.IntArrayList
+import org.apache.giraph.utils.ExtendedByteArrayDataInput
+import org.apache.giraph.utils.ExtendedByteArrayDataOutput
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class DomainStorageMergerSpec extends Specification {
+    static final int NUM_DOMAINS = 3
+    static final int NUM_WORDS = 20
+
+    def "merging #numStorages serialized storages equals aggregating them"() {
+        given:
+        List<List<List<Integer>>> embeddingsOfStorages = createEmbeddings(numStorages)
+
+        DomainStorage aggregated = new DomainStorage(NUM_DOMAINS)
+        embeddingsOfStorages.each { aggregated.aggregate(createStorage(it)) }
+
+        byte[][] serialized = embeddingsOfStorages.collect {
+            writeParts(createStorage(it), 1)[0]
+        } as byte[][]
+
+        when:
+        DomainStorage merged = readStorage(DomainStorageMerger.merge(serialized))
+
+        then:
+        merged.getNumberOfDomains() == NUM_DOMAINS
+        merged.numEmbeddings == aggregated.numEmbeddings
+        merged.numEmbeddings == embeddingsOfStorages.sum { it.size() }
+        domainsOf(merged) == domainsOf(aggregated)
+
+        where:
+        numStorages << [1, 2, 5]
+    }
+
+    def "merging merged storages equals merging all of them at once"() {
+        given:
+        List<List<List<Integer>>> embeddingsOfStorages = createEmbeddings(4)
+
+        byte[][] serialized = embeddingsOfStorages.collect {
+            writeParts(createStorage(it), 1)[0]
+        } as byte[][]
+
+        when:
+        byte[] mergedAtOnce = DomainStorageMerger.merge(serialized)
+        byte[] mergedTwice = DomainStorageMerger.merge([
+                DomainStorageMerger.merge([serialized[0], serialized[1]] as byte[][]),
+                DomainStorageMerger.merge([serialized[2], serialized[3]] as byte[][])
+        ] as byte[][])
+
+        then:
+        mergedTwice == mergedAtOnce
+    }
+
+    def "merging the parts of #numStorages storages split in #numParts parts equals aggregating them"() {
+        given:
+        List<List<List<Integer>>> embeddingsOfStorages = createEmbeddings(numStorages)
+
+        DomainStorage aggregated = new DomainStorage(NUM_DOMAINS)
+        embeddingsOfStorages.each { aggregated.aggregate(createStorage(it)) }
+
+        List<byte[][]> partsOfStorages = embeddingsOfStorages.collect {
+            writeParts(createStorage(it), numParts)
+        }
+
+        when:
+        List<Map<Integer, Set<Integer>>> mergedDomains = (0..<NUM_DOMAINS).collect { [:] }
+
+        for (int partId = 0; partId < numParts; ++partId) {
+            byte[][] partOfStorages = partsOfStorages.collect { it[partId] } as byte[][]
+            DomainStorage mergedPart = readStorage(DomainStorageMerger.merge(partOfStorages))
+
+            domainsOf(mergedPart).eachWithIndex { Map<Integer, Set<Integer>> domain, int i ->
+                assert domain.keySet().every { it % numParts == partId }
+                mergedDomains[i].putAll(domain)
+            }
+        }
+
+        then:
+        mergedDomains == domainsOf(aggregated)
+
+        where:
+        numStorages | numParts
+        2           | 2
+        5           | 3
+    }
+
+    /**
+     * Random embeddings of NUM_DOMAINS words for each storage, with words
+     * drawn from a small range so that storages share entries.
+     */
+    static List<List<List<Integer>>> createEmbeddings(int numStorages) {
+        Random random = new Random(numStorages)
+
+        (0..<numStorages).collect {
+            (0..<(10 + random.nextInt(40))).collect {
+                (0..<NUM_DOMAINS).collect { random.nextInt(NUM_WORDS) }
+            }
+        }
+    }
+
+    DomainStorage createStorage(List<List<Integer>> embeddings) {
+        DomainStorage storage = new DomainStorage(NUM_DOMAINS)
+
+        embeddings.each { List<Integer> words ->
+            Embedding embedding = Stub(Embedding)
+            embedding.getNumWords() >> words.size()
+            embedding.getWords() >> new IntArrayList(words)
+            storage.addEmbedding(embedding)
+        }
+
+        storage
+    }
+
+    static byte[][] writeParts(DomainStorage storage, int numParts) {
+        ExtendedByteArrayDataOutput[] outputs = (0..<numParts).collect {
+            new ExtendedByteArrayDataOutput()
+        } as ExtendedByteArrayDataOutput[]
+
+        storage.write(outputs, new boolean[numParts])
+
+        outputs.collect { it.toByteArray() } as byte[][]
+    }
+
+    static DomainStorage readStorage(byte[] serialized) {
+        DomainStorage storage = new DomainStorage()
+        storage.readFields(new ExtendedByteArrayDataInput(serialized))
+        storage
+    }
+
+    /**
+     * Word ids of each domain with the pointers of their entries
+     */
+    static List<Map<Integer, Set<Integer>>> domainsOf(DomainStorage storage) {
+        storage.getDomainEntries().collect { Map<Integer, DomainEntry> domain ->
+            domain.collectEntries { Integer wordId, DomainEntry entry ->
+                Set<Integer> pointers = new TreeSet<>()
+                def pointersCursor = entry.getPointersCursor()
+
+                while (pointersCursor != null && pointersCursor.moveNext()) {
+                    pointers << pointersCursor.elem()
+                }
+
+                [(wordId): pointers]
+            }
+        }
+    }
+}
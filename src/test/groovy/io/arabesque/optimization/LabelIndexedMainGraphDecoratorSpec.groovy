@@ -0,0 +1,162 @@
+package io.arabesque.optimization
+
+import io.arabesque.graph.BasicMainGraph
+import io.arabesque.graph.Edge
+import io.arabesque.graph.MainGraph
+import io.arabesque.graph.Vertex
+import io.arabesque.testutils.graphs.EdgeLabelledMultiTestGraph
+import io.arabesque.testutils.graphs.LabelledTestGraph
+import com.koloboke.collect.IntCollection
+import com.koloboke.collect.set.IntSet
+import com.koloboke.collect.set.hash.HashIntSets
+import com.koloboke.function.IntConsumer
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class LabelIndexedMainGraphDecoratorSpec extends Specification {
+    static final List<Integer> LABELS = [0, 1, 2, 3]
+
+    def "neighbours of #graphName are the ones of the underlying graph"() {
+        given:
+        LabelIndexedMainGraphDecorator indexedGraph = new LabelIndexedMainGraphDecorator(graph)
+
+        expect:
+        (0..<graph.getNumberVertices()).every { int v ->
+            toSet(indexedGraph.getVertexNeighbours(v)) == toSet(graph.getVertexNeighbours(v))
+        }
+
+        where:
+        graph << [new LabelledTestGraph(), new EdgeLabelledMultiTestGraph()]
+        graphName = graph.getClass().getSimpleName()
+    }
+
+    def "neighbours of #graphName by label are the neighbours with that label"() {
+        given:
+        LabelIndexedMainGraphDecorator indexedGraph = new LabelIndexedMainGraphDecorator(graph)
+
+        expect:
+        (0..<graph.getNumberVertices()).every { int v ->
+            LABELS.every { int label ->
+                Set<Integer> expected = neighboursWithLabels(graph, v, [label])
+
+                idsOf { indexedGraph.forEachVertexNeighbour(v, label, it) } == expected &&
+                        indexedGraph.getNumVertexNeighbours(v, label) == expected.size()
+            }
+        }
+
+        where:
+        graph << [new LabelledTestGraph(), new EdgeLabelledMultiTestGraph()]
+        graphName = graph.getClass().getSimpleName()
+    }
+
+    def "neighbours of #graphName with labels #labels are the neighbours with any of them"() {
+        given:
+        LabelIndexedMainGraphDecorator indexedGraph = new LabelIndexedMainGraphDecorator(graph)
+        IntSet labelSet = HashIntSets.newImmutableSet(labels as int[])
+
+        expect:
+        (0..<graph.getNumberVertices()).every { int v ->
+            idsOf { indexedGraph.forEachVertexNeighbour(v, labelSet, it) } ==
+                    neighboursWithLabels(graph, v, labels)
+        }
+
+        where:
+        [graph, labels] << [[new LabelledTestGraph(), new EdgeLabelledMultiTestGraph()],
+                            [[], [0], [1, 2], LABELS]].combinations()
+        graphName = graph.getClass().getSimpleName()
+    }
+
+    def "edges of #graphName by label are the edges whose other endpoint has that label"() {
+        given:
+        LabelIndexedMainGraphDecorator indexedGraph = new LabelIndexedMainGraphDecorator(graph)
+
+        expect:
+        (0..<graph.getNumberVertices()).every { int v ->
+            LABELS.every { int label ->
+                Set<Integer> expected = edgesWithLabels(graph, v, [label])
+                IntSet labelSet = HashIntSets.newImmutableSet([label] as int[])
+
+                idsOf { indexedGraph.forEachNeighbourEdge(v, label, it) } == expected &&
+                        idsOf { indexedGraph.forEachNeighbourEdge(v, labelSet, it) } == expected
+            }
+        }
+
+        where:
+        graph << [new LabelledTestGraph(), new EdgeLabelledMultiTestGraph()]
+        graphName = graph.getClass().getSimpleName()
+    }
+
+    def "neighbours are read-only"() {
+        given:
+        LabelIndexedMainGraphDecorator indexedGraph = new LabelIndexedMainGraphDecorator(new LabelledTestGraph())
+        IntCollection neighbours = indexedGraph.getVertexNeighbours(0)
+
+        when:
+        mutation(neighbours)
+
+        then:
+        thrown(UnsupportedOperationException)
+        toSet(indexedGraph.getVertexNeighbours(0)) == [1, 2, 3, 4] as Set
+
+        where:
+        mutation << [
+                { IntCollection c -> c.add(5) },
+                { IntCollection c -> c.removeInt(1) },
+                { IntCollection c -> c.clear() },
+                { IntCollection c -> def cursor = c.cursor(); cursor.moveNext(); cursor.remove() }
+        ]
+    }
+
+    def "vertices without neighbours have an empty neighbourhood"() {
+        given:
+        MainGraph graph = new BasicMainGraph("isolated")
+        graph.addVertex(new Vertex(0, 0))
+        graph.addVertex(new Vertex(1, 1))
+        graph.addVertex(new Vertex(2, 0))
+        graph.addEdge(new Edge(0, 0, 1))
+
+        LabelIndexedMainGraphDecorator indexedGraph = new LabelIndexedMainGraphDecorator(graph)
+
+        expect:
+        indexedGraph.getVertexNeighbours(2) != null
+        indexedGraph.getVertexNeighbours(2).isEmpty()
+        indexedGraph.getNumVertexNeighbours(2, 0) == 0
+        idsOf { indexedGraph.forEachVertexNeighbour(2, 0, it) }.isEmpty()
+        idsOf { indexedGraph.forEachNeighbourEdge(2, 1, it) }.isEmpty()
+        toSet(indexedGraph.getVertexNeighbours(0)) == [1] as Set
+    }
+
+    static Set<Integer> toSet(IntCollection collection) {
+        collection == null ? [] as Set : (collection.toIntArray() as List) as Set
+    }
+
+    /**
+     * Ids passed to the consumer given to forEach
+     */
+    static Set<Integer> idsOf(Closure forEach) {
+        Set<Integer> ids = []
+        forEach({ int id -> ids << id } as IntConsumer)
+        ids
+    }
+
+    static Set<Integer> neighboursWithLabels(MainGraph graph, int vertexId, List<Integer> labels) {
+        toSet(graph.getVertexNeighbours(vertexId)).findAll {
+            graph.getVertex(it).getVertexLabel() in labels
+        }
+    }
+
+    static Set<Integer> edgesWithLabels(MainGraph graph, int vertexId, List<Integer> labels) {
+        def neighbourhood = graph.getVertexNeighbourhood(vertexId)
+
+        if (neighbourhood == null) {
+            return [] as Set
+        }
+
+        toSet(neighbourhood.getNeighbourEdges()).findAll {
+            Edge edge = graph.getEdge(it)
+            int neighbourId = edge.getSourceId() == vertexId ? edge.getDestinationId() : edge.getSourceId()
+            graph.getVertex(neighbourId).getVertexLabel() in labels
+        }
+    }
+}
@@ -352,6 +352,38 @@ abstract class PatternSpec extends Specification {
         mainGraph << TEST_GRAPHS
     }
 
+    def "Pattern key should match a key built from scratch after incremental sets and canonicalization [#mainGraph]"(
+            MainGraph mainGraph) {
+        given: "a graph (#mainGraph)"
+        setMainGraph(mainGraph)
+        and: "a pattern set incrementally from two edge induced embeddings"
+        Pattern pattern = createPattern()
+        pattern.setEmbedding(EmbeddingUtils.createEdgeEmbedding([7, 4, 2, 3]))
+        Embedding embedding = EmbeddingUtils.createEdgeEmbedding([7, 4, 2, 0])
+        pattern.setEmbedding(embedding)
+        and: "a pattern set from scratch from the last embedding"
+        Pattern freshPattern = createPattern()
+        freshPattern.setEmbedding(embedding)
+
+        expect: "both keys and patterns to be equal"
+        pattern.getKey() == freshPattern.getKey()
+        pattern.hashCode() == freshPattern.hashCode()
+        pattern == freshPattern
+
+        when: "both patterns are turned canonical"
+        pattern.turnCanonical()
+        freshPattern.turnCanonical()
+
+        then: "keys should still reflect the edges"
+        pattern.getKey() == freshPattern.getKey()
+        PatternKey rebuiltKey = new PatternKey()
+        rebuiltKey.setFromEdges(pattern.getNumberOfVertices(), pattern.getEdges())
+        pattern.getKey() == rebuiltKey
+
+        where: "we try this with all test graphs"
+        mainGraph << TEST_GRAPHS
+    }
+
     def "Pattern from vertices #vertexIds should be consistent after read/write [#mainGraph]"(
             MainGraph mainGraph, List<Integer> vertexIds) {
         given: "a graph (#mainGraph)"
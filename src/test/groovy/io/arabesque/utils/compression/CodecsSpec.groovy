@@ -0,0 +1,128 @@
+package io.arabesque.utils.compression
+
+import org.apache.giraph.utils.ExtendedByteArrayDataOutput
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class CodecsSpec extends Specification {
+    static final int BLOCK_SIZE = 64 * 1024
+
+    def "#name has id #id and round-trips #dataName data"() {
+        given:
+        Codec codec = Codecs.forName(name)
+        ExtendedByteArrayDataOutput data = createBlock(compressible)
+        byte[] original = Arrays.copyOf(data.getByteArray(), data.getPos())
+
+        when:
+        ExtendedByteArrayDataOutput compressed = Codecs.compress(codec, data)
+        ExtendedByteArrayDataOutput decompressed = Codecs.decompress(codec.getId(), compressed, original.length)
+
+        then:
+        codec.getId() == (byte) id
+        Codecs.forId(codec.getId()).getId() == codec.getId()
+        decompressed.getPos() == original.length
+        Arrays.copyOf(decompressed.getByteArray(), decompressed.getPos()) == original
+        !compressible || id == NoCodec.ID || compressed.getPos() < original.length
+
+        where:
+        name        | id                | compressible
+        "none"      | NoCodec.ID        | true
+        "none"      | NoCodec.ID        | false
+        "lz4"       | LZ4Codec.ID_FAST  | true
+        "lz4"       | LZ4Codec.ID_FAST  | false
+        "lz4hc"     | LZ4Codec.ID_HC    | true
+        "lz4hc"     | LZ4Codec.ID_HC    | false
+        "lz4hc:4"   | LZ4Codec.ID_HC    | true
+        "lz4hc:4"   | LZ4Codec.ID_HC    | false
+        "deflate"   | DeflateCodec.ID   | true
+        "deflate"   | DeflateCodec.ID   | false
+        "deflate:1" | DeflateCodec.ID   | true
+        "deflate:1" | DeflateCodec.ID   | false
+
+        dataName = compressible ? "compressible" : "random"
+    }
+
+    def "unknown codecs are rejected"() {
+        when:
+        Codecs.forName("zstd")
+
+        then:
+        thrown(RuntimeException)
+
+        when:
+        Codecs.forId((byte) 4)
+
+        then:
+        thrown(RuntimeException)
+    }
+
+    def "#spec always picks #expectedName"() {
+        given:
+        CompressionPolicy policy = new CompressionPolicy("test", spec, 1.5, 4)
+
+        expect:
+        (0..<8).every {
+            Codec codec = policy.nextCodec()
+            policy.compress(codec, createBlock(false))
+            codec.toString() == expectedName
+        }
+        policy.isCompressing() == (expectedName != "none")
+
+        where:
+        spec        | expectedName
+        "none"      | "none"
+        "lz4"       | "lz4"
+        "deflate:3" | "deflate:3"
+    }
+
+    def "adaptive policy stores blocks uncompressed between samples while the ratio is below the threshold"() {
+        given:
+        CompressionPolicy policy = new CompressionPolicy("test", "adaptive:" + name, 1.5, 4)
+
+        when: "incompressible blocks"
+        List<String> codecsOfRandomBlocks = (0..<8).collect {
+            Codec codec = policy.nextCodec()
+            policy.compress(codec, createBlock(false))
+            codec.toString()
+        }
+
+        then: "only the samples are compressed"
+        codecsOfRandomBlocks == [codec, "none", "none", "none", codec, "none", "none", "none"]
+
+        when: "compressible blocks"
+        List<String> codecsOfCompressibleBlocks = (0..<8).collect {
+            Codec codec = policy.nextCodec()
+            policy.compress(codec, createBlock(true))
+            codec.toString()
+        }
+
+        then: "compression is enabled again from the next sample on"
+        codecsOfCompressibleBlocks == [codec, codec, codec, codec, codec, codec, codec, codec]
+
+        where:
+        name        | codec
+        "lz4"       | "lz4"
+        "deflate:6" | "deflate:6"
+    }
+
+    /**
+     * Block of BLOCK_SIZE bytes: a short repeated sequence if compressible,
+     * random bytes otherwise.
+     */
+    static ExtendedByteArrayDataOutput createBlock(boolean compressible) {
+        byte[] bytes = new byte[BLOCK_SIZE]
+
+        if (compressible) {
+            for (int i = 0; i < bytes.length; ++i) {
+                bytes[i] = (byte) (i % 7)
+            }
+        } else {
+            new Random(BLOCK_SIZE).nextBytes(bytes)
+        }
+
+        ExtendedByteArrayDataOutput block = new ExtendedByteArrayDataOutput()
+        block.write(bytes)
+        block
+    }
+}
@@ -13,6 +13,7 @@ class CubeGraphSuite extends FunSuite with BeforeAndAfterAll {
   private var sc: SparkContext = _
   private var arab: ArabesqueContext = _
   private var arabGraph: ArabesqueGraph = _
+  private var edgeLabelledArabGraph: ArabesqueGraph = _
 
   /** set up spark context */
   override def beforeAll: Unit = {
@@ -28,6 +29,8 @@ class CubeGraphSuite extends FunSuite with BeforeAndAfterAll {
 
     sampleGraphPath = "data/cube.graph"
     arabGraph = arab.textFile (sampleGraphPath)
+    // same cube, edges labelled 5 or 6
+    edgeLabelledArabGraph = arab.textFile ("data/cube-edge-labelled.graph")
 
   }
 
@@ -104,4 +107,80 @@ class CubeGraphSuite extends FunSuite with BeforeAndAfterAll {
     assert(embeddings.count == numTriangles)
   }
 
+  test ("[matching] arabesque API") {
+    // Test output for pattern matching: single labelled edges and a path
+    // whose symmetric ends must be matched only once
+
+    // Expected output
+    val patterns = List("[0,1-1,2]", "[0,2-1,2]", "[0,1-1,2],[0,1-2,2]")
+    val numMatches = List(6, 2, 3)
+
+    for ((pattern, expected) <- patterns zip numMatches) {
+      val matchingRes = arabGraph.matching(pattern)
+
+      val embeddings = matchingRes.embeddings
+
+      assert(embeddings.count == expected)
+    }
+  }
+
+  test ("[matching] single vertex queries") {
+    // Test output for pattern matching of single vertices, given in output
+    // form and as the patterns found by motifs
+    import io.arabesque.gmlib.motif.MotifComputation
+    import io.arabesque.pattern.Pattern
+    import org.apache.hadoop.io.LongWritable
+
+    val patterns = List("0(1)", "0(2)", "0(3)")
+    val numMatches = List(3, 4, 1)
+
+    for ((pattern, expected) <- patterns zip numMatches) {
+      assert(arabGraph.matching(pattern).embeddings.count == expected)
+    }
+
+    val motifs = arabGraph.motifs(1).
+      aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+
+    assert(motifs.size == 3)
+
+    for ((pattern, count) <- motifs) {
+      assert(arabGraph.matching(pattern).embeddings.count == count.get)
+    }
+  }
+
+  test ("[matching] edge labelled queries") {
+    // Test output for pattern matching on the edge labelled cube: edge
+    // labels must match and break the symmetry of the path centered in 1
+    import io.arabesque.conf.Configuration
+    import io.arabesque.gmlib.motif.MotifComputation
+    import io.arabesque.pattern.Pattern
+    import org.apache.hadoop.io.LongWritable
+
+    val patterns = List("[0(1)--(5)--1(2)]", "[0(1)--(6)--1(2)]",
+      "[0(1)--(5)--1(2)],[0(1)--(6)--2(2)]")
+    val numMatches = List(2, 4, 2)
+
+    for ((pattern, expected) <- patterns zip numMatches) {
+      val matchingRes = edgeLabelledArabGraph.matching(pattern)
+
+      val embeddings = matchingRes.embeddings
+
+      assert(embeddings.count == expected)
+    }
+
+    // the labelled patterns found by motifs are matched as many times as
+    // motifs counted them
+    val motifs = edgeLabelledArabGraph.motifs(3).
+      set (Configuration.CONF_MAINGRAPH_EDGE_LABELLED, true).
+      aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+
+    assert(motifs.nonEmpty)
+
+    for ((pattern, count) <- motifs) {
+      val embeddings = edgeLabelledArabGraph.matching(pattern).embeddings
+      assert(embeddings.count == count.get)
+      assert(embeddings.distinct.count == count.get)
+    }
+  }
+
 }
@@ -3,6 +3,7 @@ package io.arabesque
 import io.arabesque.computation._
 import io.arabesque.conf.{Configuration, SparkConfiguration}
 import io.arabesque.embedding._
+import io.arabesque.utils.KryoRegistrator
 
 import org.apache.spark.{SparkConf, SparkContext}
 
@@ -25,6 +26,7 @@ class SparkArabesqueSuite extends FunSuite with BeforeAndAfterAll {
    val conf = new SparkConf().
      setMaster(master).
      setAppName(appName)
+   KryoRegistrator.register (conf)
 
    sc = new SparkContext(conf)
    arab = new ArabesqueContext(sc, "warn")
@@ -103,6 +105,193 @@ class SparkArabesqueSuite extends FunSuite with BeforeAndAfterAll {
    assert (embeddings.count == motifsNumEmbeddings)
    assert (embeddings.distinct.count == motifsNumEmbeddings)
  }
+ test ("[motifs,memory] embeddings kept by the engines") {
+   import org.apache.hadoop.fs.{FileSystem, Path}
+   for (commStrategy <- Seq(COMM_ODAG_SP, COMM_EMBEDDING)) {
+     val motifsRes = arabGraph.motifs (3).
+       set ("comm_strategy", commStrategy).
+       set ("output_active", true).
+       set ("output_format", OUTPUT_MEMORY)
+     val embeddings = motifsRes.embeddings
+     assert (embeddings.count == motifsNumEmbeddings)
+     assert (embeddings.distinct.count == motifsNumEmbeddings)
+     assert (motifsRes.embeddingsIterator.size == motifsNumEmbeddings)
+     val fs = FileSystem.get (sc.hadoopConfiguration)
+     assert (!fs.exists (new Path (motifsRes.config.getOutputPath)))
+   }
+ }
+ test ("[motifs,columnar] size of output formats") {
+   import org.apache.hadoop.fs.{FileSystem, Path}
+   import io.arabesque.embedding.ColumnarEmbeddingReader
+   val fs = FileSystem.get (sc.hadoopConfiguration)
+   def run(outputFormat: String) = {
+     val motifsRes = arabGraph.motifs (3).
+       set ("comm_strategy", COMM_ODAG_SP).
+       set ("output_active", true).
+       set ("output_format", outputFormat).
+       set ("output_patterns", true)
+     val embeddings = motifsRes.embeddings
+     assert (embeddings.count == motifsNumEmbeddings)
+     val size = fs.getContentSummary (new Path (motifsRes.config.getOutputPath)).getLength
+     (motifsRes, embeddings, size)
+   }
+
+   val (columnarRes, columnarEmbeddings, columnarSize) = run (OUTPUT_COLUMNAR)
+   val (_, textEmbeddings, textSize) = run (OUTPUT_PLAIN_TEXT)
+   val (_, seqEmbeddings, seqSize) = run (OUTPUT_SEQUENCE_FILE)
+
+   assert (columnarEmbeddings.distinct.count == motifsNumEmbeddings)
+   assert (columnarEmbeddings.subtract (seqEmbeddings).count == 0)
+   assert (columnarSize < textSize)
+   assert (columnarSize < seqSize)
+
+   val withPatterns = ColumnarEmbeddingReader.embeddingsWithPatterns (
+     sc, columnarRes.config.getOutputPath)
+   assert (withPatterns.filter (_._2 == null).count == 0)
+   assert (withPatterns.map (_._2).distinct.count > 1)
+ }
+ test ("[motifs,local] local execution engine") {
+   import org.apache.hadoop.io.LongWritable
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.pattern.Pattern
+
+   val sparkRes = arabGraph.motifs (3).
+     set ("comm_strategy", COMM_ODAG_SP)
+   val localRes = arabGraph.motifs (3).
+     set ("execution_engine", EXECUTION_ENGINE_LOCAL).
+     set ("num_compute_threads", 2)
+   assert (localRes.masterEngine.isInstanceOf[LocalMasterEngine[_]])
+
+   val embeddings = localRes.embeddings
+   assert (embeddings.count == motifsNumEmbeddings)
+   assert (embeddings.distinct.count == motifsNumEmbeddings)
+
+   val localMotifs = localRes.aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+   val sparkMotifs = sparkRes.aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+   assert (localMotifs == sparkMotifs)
+
+   // the same through the context, from which computations inherit the engine
+   val localArab = new ArabesqueContext(sc, "warn", EXECUTION_ENGINE_LOCAL)
+   val fsmRes = localArab.textFile (sampleGraphPath).fsm (100, 3)
+   assert (fsmRes.embeddings.count == fsmNumEmbeddings)
+   localArab.stop()
+ }
+ test ("[fsm,local] supports of the local execution engine") {
+   import io.arabesque.gmlib.fsm.{DomainSupport, FSMComputation}
+   import io.arabesque.pattern.Pattern
+
+   val sparkRes = arabGraph.fsm (100, 3).
+     set ("comm_strategy", COMM_ODAG_SP)
+   val localRes = arabGraph.fsm (100, 3).
+     set ("execution_engine", EXECUTION_ENGINE_LOCAL).
+     set ("num_compute_threads", 2)
+
+   // outbound odags are filtered by the supports of their own superstep
+   assert (localRes.embeddings.count == fsmNumEmbeddings)
+
+   val localSupports = localRes.aggregation [Pattern,DomainSupport] (
+     FSMComputation.AGG_SUPPORT).mapValues (_.getSupport)
+   val sparkSupports = sparkRes.aggregation [Pattern,DomainSupport] (
+     FSMComputation.AGG_SUPPORT).mapValues (_.getSupport)
+   assert (!localSupports.isEmpty)
+   assert (localSupports == sparkSupports)
+ }
+ test ("[motifs,local,pools] object pools shared by the local engine threads") {
+   import org.apache.hadoop.io.LongWritable
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.pattern.Pattern
+   import io.arabesque.utils.pool.PoolRegistry
+   import scala.collection.JavaConverters._
+
+   val registry = PoolRegistry.instance
+   val savedMaxBytes = registry.getMaxBytes
+   try {
+     val motifs = arabGraph.motifs (3).
+       aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+
+     // room for a couple of magazines, most are dropped
+     val localRes = arabGraph.motifs (3).
+       set ("execution_engine", EXECUTION_ENGINE_LOCAL).
+       set ("num_compute_threads", 4).
+       set ("pool_max_bytes", 2L * 1000 * 112)
+     assert (localRes.aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS) == motifs)
+     assert (registry.getStats.asScala.values.map (_.getNumHits).sum > 0)
+   } finally {
+     registry.setMaxBytes (savedMaxBytes)
+   }
+ }
+ test ("[pools] magazines handed between threads and dropped over the bound") {
+   import io.arabesque.utils.BasicFactory
+   import io.arabesque.utils.pool.{Pool, PoolRegistry}
+
+   val maxSize = 10
+   val objectBytes = 8
+   val magazineBytes = maxSize * objectBytes
+
+   def inThread(body: => Unit): Unit = {
+     val thread = new Thread(new Runnable {
+       override def run(): Unit = body
+     })
+     thread.start()
+     thread.join()
+   }
+
+   val registry = PoolRegistry.instance
+   val savedMaxBytes = registry.getMaxBytes
+   try {
+     val pool = new Pool [Array[Int]] (new BasicFactory[Array[Int]] {
+       override def createObject(): Array[Int] = new Array[Int](1)
+     }, maxSize, objectBytes)
+
+     // depots of the other pools keep what they hold, this one has room for
+     // two magazines
+     val baseBytes = registry.getDepotBytes
+     registry.setMaxBytes (baseBytes + 2 * magazineBytes)
+
+     // a thread reclaims three magazines and one object: two magazines are
+     // handed to the depot, the third one is dropped
+     inThread {
+       val objects = Seq.fill (3 * maxSize + 1) (pool.createObject())
+       objects.foreach (pool.reclaimObject)
+     }
+     val reclaimedStats = pool.getStats
+     assert (reclaimedStats.getNumMisses == 3 * maxSize + 1)
+     assert (reclaimedStats.getNumReclaimed == 3 * maxSize + 1)
+     assert (reclaimedStats.getNumDropped == maxSize)
+     assert (reclaimedStats.getNumDepotMagazines == 2)
+     assert (registry.getDepotBytes == baseBytes + 2 * magazineBytes)
+
+     // another thread takes the two magazines from the depot, then misses
+     inThread {
+       Seq.fill (2 * maxSize + 1) (pool.createObject())
+     }
+     val takenStats = pool.getStats
+     assert (takenStats.getNumHits == 2 * maxSize)
+     assert (takenStats.getNumMisses == 3 * maxSize + 2)
+     assert (takenStats.getNumDepotMagazines == 0)
+     assert (registry.getDepotBytes == baseBytes)
+   } finally {
+     registry.setMaxBytes (savedMaxBytes)
+   }
+ }
+ test ("[motifs,depth-first] depth-first exploration") {
+   import org.apache.hadoop.io.LongWritable
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.pattern.Pattern
+
+   val motifs = arabGraph.motifs (3).
+     aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+
+   for (engine <- Seq(EXECUTION_ENGINE_SPARK, EXECUTION_ENGINE_LOCAL);
+        commStrategy <- Seq(COMM_ODAG_SP, COMM_EMBEDDING)) {
+     val dfRes = arabGraph.motifs (3).
+       set ("execution_engine", engine).
+       set ("comm_strategy", commStrategy).
+       set ("depth_first_superstep", 1)
+     assert (dfRes.embeddings.count == motifsNumEmbeddings)
+     assert (dfRes.aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS) == motifs)
+   }
+ }
  test ("[motifs,custom computation equivalence] arabesque API") {
    import org.apache.hadoop.io.LongWritable
    import io.arabesque.pattern.Pattern
@@ -134,6 +323,36 @@ class SparkArabesqueSuite extends FunSuite with BeforeAndAfterAll {
 
  }
 
+ test ("[motifs,kryo] serialization of odags and aggregations") {
+   import org.apache.hadoop.io.LongWritable
+   import org.apache.spark.serializer.{JavaSerializer, KryoSerializer}
+   import io.arabesque.aggregation.AggregationStorage
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.odag.BasicODAG
+   import io.arabesque.pattern.Pattern
+
+   val motifsRes = arabGraph.motifs (3).
+     set ("comm_strategy", COMM_ODAG_SP)
+   val kryo = new KryoSerializer (sc.getConf).newInstance
+   val java = new JavaSerializer (sc.getConf).newInstance
+
+   val odags = motifsRes.odags.collect.asInstanceOf[Array[BasicODAG]]
+   assert (!odags.isEmpty)
+   odags.foreach { odag =>
+     val kryoBytes = kryo.serialize (odag)
+     assert (kryoBytes.remaining < java.serialize (odag).remaining)
+     val odagCopy = kryo.deserialize [BasicODAG] (kryoBytes)
+     assert (odagCopy.getNumberOfEnumerations == odag.getNumberOfEnumerations)
+   }
+
+   val motifs = motifsRes.aggregationStorage [Pattern,LongWritable] (
+     MotifComputation.AGG_MOTIFS)
+   val kryoBytes = kryo.serialize (motifs)
+   assert (kryoBytes.remaining < java.serialize (motifs).remaining)
+   val motifsCopy = kryo.deserialize [AggregationStorage[Pattern,LongWritable]] (kryoBytes)
+   assert (motifsCopy.getMapping == motifs.getMapping)
+ }
+
  val fsmNumEmbeddings = 31414
  test ("[fsm,odag] arabesque API") {
    val fsmRes = arabGraph.fsm (100, 3).
@@ -190,6 +409,58 @@ class SparkArabesqueSuite extends FunSuite with BeforeAndAfterAll {
  }
 
  val trianglesNumEmbeddings = 0
+ test ("[motifs,triangles,incremental] edge batch") {
+   import java.io.{File, PrintWriter}
+   import org.apache.hadoop.io.{IntWritable, LongWritable}
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.gmlib.triangles.CountingTrianglesComputation
+   import io.arabesque.pattern.Pattern
+   import scala.collection.mutable.{Map, TreeSet}
+
+   // sample graph as adjacency sets
+   val labels = Map.empty[Int,String]
+   val adj = Map.empty[Int,TreeSet[Int]]
+   for (line <- scala.io.Source.fromFile (sampleGraphPath).getLines) {
+     val tokens = line.trim.split ("\\s+")
+     val v = tokens(0).toInt
+     labels.update (v, tokens(1))
+     adj.getOrElseUpdate (v, TreeSet.empty) ++= tokens.drop(2).map (_.toInt)
+   }
+
+   // delete an edge, close a triangle
+   val (u, v) = adj.collectFirst { case (u,ns) if ns.nonEmpty => (u, ns.head) }.get
+   val (x, y) = adj.iterator.map (_._2).filter (_.size >= 2).flatMap { ns =>
+     for (a <- ns; b <- ns if a < b && !adj(a).contains(b)) yield (a, b)
+   }.next
+   adj(u) -= v; adj(v) -= u
+   adj(x) += y; adj(y) += x
+
+   val dir = java.nio.file.Files.createTempDirectory ("arabesque-delta").toFile
+   def write(name: String, lines: Iterable[String]): String = {
+     val file = new File(dir, name)
+     val writer = new PrintWriter(file)
+     lines.foreach (writer.println)
+     writer.close()
+     file.getPath
+   }
+   val deltaPath = write ("batch.delta", Seq(s"- $u $v", s"+ $x $y"))
+   val updatedGraphPath = write ("updated.graph", adj.keys.toSeq.sorted.map (v =>
+     (Seq(v.toString, labels(v)) ++ adj(v).map (_.toString)).mkString (" ")))
+   val updatedGraph = arab.textFile (updatedGraphPath)
+
+   val baseMotifs = arabGraph.motifs (3).
+     aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+   val updatedMotifs = updatedGraph.motifs (3).
+     aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+   assert (arabGraph.incrementalMotifs (3, deltaPath, baseMotifs) == updatedMotifs)
+
+   val baseTriangles = arabGraph.triangles().
+     aggregation [IntWritable,LongWritable] (CountingTrianglesComputation.AGG_OUTPUT)
+   val updatedTriangles = updatedGraph.triangles().
+     aggregation [IntWritable,LongWritable] (CountingTrianglesComputation.AGG_OUTPUT)
+   assert (updatedTriangles.nonEmpty)
+   assert (arabGraph.incrementalTriangles (deltaPath, baseTriangles) == updatedTriangles)
+ }
  test ("[triangles,odag] arabesque API") {
    val trianglesRes = arabGraph.triangles().
      set ("comm_strategy", COMM_ODAG_SP)
@@ -274,6 +545,259 @@ class SparkArabesqueSuite extends FunSuite with BeforeAndAfterAll {
    assert (embeddings.distinct.count == cliquesNumEmbeddings)
  }
  
+ test ("[motifs,cliques,fsm,odag_mp] multi-pattern and single-pattern odags") {
+   import org.apache.hadoop.io.LongWritable
+   import io.arabesque.gmlib.fsm.{DomainSupport, FSMComputation}
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.pattern.Pattern
+
+   // few slots, so that odags hold several patterns
+   def odagMp(res: ArabesqueResult[_], flushMethod: String) = res.
+     set ("comm_strategy", COMM_ODAG_MP).
+     set ("flush_method", flushMethod).
+     set ("max_odags", 2)
+
+   val motifs = arabGraph.motifs (3).
+     set ("comm_strategy", COMM_ODAG_SP).
+     aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+   val cliques = arabGraph.cliques (3).
+     set ("comm_strategy", COMM_ODAG_SP).embeddings
+   val supports = arabGraph.fsm (100, 3).
+     set ("comm_strategy", COMM_ODAG_SP).
+     aggregation [Pattern,DomainSupport] (FSMComputation.AGG_SUPPORT).mapValues (_.getSupport)
+
+   for (flushMethod <- Seq(FLUSH_BY_PATTERN, FLUSH_BY_PARTS)) {
+     val motifsRes = odagMp (arabGraph.motifs (3), flushMethod)
+     assert (motifsRes.embeddings.count == motifsNumEmbeddings)
+     assert (motifsRes.aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS) == motifs)
+
+     val mpCliques = odagMp (arabGraph.cliques (3), flushMethod).embeddings
+     assert (mpCliques.count == cliquesNumEmbeddings)
+     assert (mpCliques.subtract (cliques).count == 0)
+
+     val fsmRes = odagMp (arabGraph.fsm (100, 3), flushMethod)
+     assert (fsmRes.embeddings.count == fsmNumEmbeddings)
+     assert (fsmRes.aggregation [Pattern,DomainSupport] (FSMComputation.AGG_SUPPORT).
+       mapValues (_.getSupport) == supports)
+   }
+ }
+ test ("[motifs,cliques,fsm,auto] switching to odags mid-run and flush methods chosen per superstep") {
+   import org.apache.hadoop.io.LongWritable
+   import io.arabesque.gmlib.fsm.{DomainSupport, FSMComputation}
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.pattern.Pattern
+
+   // maxBytes 1 switches to odags after the first superstep, a huge one
+   // never does; maxSkew 0 never flushes by pattern, a huge one always does
+   def auto(res: ArabesqueResult[_], maxBytes: Long, maxSkew: Float) = res.
+     set ("comm_strategy", COMM_AUTO).
+     set ("auto_max_bytes", maxBytes).
+     set ("flush_method", FLUSH_AUTO).
+     set ("flush_max_skew", maxSkew)
+
+   val motifs = arabGraph.motifs (3).
+     set ("comm_strategy", COMM_ODAG_SP).
+     aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+   val cliques = arabGraph.cliques (3).
+     set ("comm_strategy", COMM_ODAG_SP).embeddings
+   val supports = arabGraph.fsm (100, 3).
+     set ("comm_strategy", COMM_ODAG_SP).
+     aggregation [Pattern,DomainSupport] (FSMComputation.AGG_SUPPORT).mapValues (_.getSupport)
+
+   for (maxBytes <- Seq(1L, Long.MaxValue); maxSkew <- Seq(0.0f, Float.MaxValue)) {
+     val switches = maxBytes == 1L
+
+     val motifsRes = auto (arabGraph.motifs (3), maxBytes, maxSkew)
+     assert (motifsRes.embeddings.count == motifsNumEmbeddings)
+     assert (motifsRes.aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS) == motifs)
+     assert ((motifsRes.odags.count != 0) == switches)
+
+     val autoCliques = auto (arabGraph.cliques (3), maxBytes, maxSkew).embeddings
+     assert (autoCliques.count == cliquesNumEmbeddings)
+     assert (autoCliques.subtract (cliques).count == 0)
+
+     val fsmRes = auto (arabGraph.fsm (100, 3), maxBytes, maxSkew)
+     assert (fsmRes.embeddings.count == fsmNumEmbeddings)
+     assert (fsmRes.aggregation [Pattern,DomainSupport] (FSMComputation.AGG_SUPPORT).
+       mapValues (_.getSupport) == supports)
+   }
+ }
+ test ("[motifs,cliques,triangles,leaves] leaf counting and full expansion") {
+   import org.apache.hadoop.io.{IntWritable, LongWritable}
+   import io.arabesque.gmlib.clique.CliqueComputation
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.gmlib.triangles.CountingTrianglesComputation
+   import io.arabesque.pattern.Pattern
+
+   def motifs(countLeaves: Boolean) = arabGraph.motifs (3).
+     set ("count_leaves", countLeaves).
+     aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+   assert (motifs (true) == motifs (false))
+
+   def triangles(countLeaves: Boolean) = arabGraph.triangles().
+     set ("count_leaves", countLeaves).
+     aggregation [IntWritable,LongWritable] (CountingTrianglesComputation.AGG_OUTPUT)
+   assert (triangles (true) == triangles (false))
+
+   // leaves are still output, and only counted with leaf counting on
+   val countedRes = arabGraph.cliques (3).set ("count_leaves", true)
+   val expandedRes = arabGraph.cliques (3).set ("count_leaves", false)
+   val counted = countedRes.embeddings
+   assert (counted.count == cliquesNumEmbeddings)
+   assert (counted.subtract (expandedRes.embeddings).count == 0)
+   assert (countedRes.aggregation [IntWritable,LongWritable] (CliqueComputation.AGG_CLIQUES).
+     values.map (_.get).sum == cliquesNumEmbeddings)
+   assert (!expandedRes.registeredAggregations.contains (CliqueComputation.AGG_CLIQUES))
+
+   // off by default
+   assert (!arabGraph.cliques (3).registeredAggregations.contains (CliqueComputation.AGG_CLIQUES))
+
+   // no output: every leaf is counted without being built
+   val notOutputRes = arabGraph.cliques (3).
+     set ("count_leaves", true).
+     set ("output_active", false)
+   assert (notOutputRes.aggregation [IntWritable,LongWritable] (CliqueComputation.AGG_CLIQUES).
+     values.map (_.get).sum == cliquesNumEmbeddings)
+ }
+ test ("[motifs,cliques,triangles,reordering] results with and without vertex reordering") {
+   import org.apache.hadoop.io.{IntWritable, LongWritable}
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.gmlib.triangles.CountingTrianglesComputation
+   import io.arabesque.graph.{BasicMainGraph, Edge, Vertex}
+   import io.arabesque.optimization.{VertexReordering, VertexReorderingOptimization}
+   import io.arabesque.pattern.Pattern
+
+   val motifs = arabGraph.motifs (3).
+     aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+   val cliques = arabGraph.cliques (3).embeddings
+   val triangles = arabGraph.triangles().
+     aggregation [IntWritable,LongWritable] (CountingTrianglesComputation.AGG_OUTPUT)
+
+   for (method <- Seq("rcm", "gorder")) {
+     def reordered(res: ArabesqueResult[_]) = res.
+       set ("optimizations", classOf[VertexReorderingOptimization].getName).
+       set (VertexReorderingOptimization.CONF_REORDERING, method)
+
+     assert (reordered (arabGraph.motifs (3)).
+       aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS) == motifs)
+
+     // embeddings are output with the input ids
+     val reorderedCliques = reordered (arabGraph.cliques (3)).embeddings
+     assert (reorderedCliques.count == cliquesNumEmbeddings)
+     assert (reorderedCliques.subtract (cliques).count == 0)
+
+     // triangles are aggregated by vertex id, the graph is not reordered
+     assert (reordered (arabGraph.triangles()).
+       aggregation [IntWritable,LongWritable] (CountingTrianglesComputation.AGG_OUTPUT) == triangles)
+   }
+
+   // self-loops are kept
+   val graph = new BasicMainGraph ("self-loop")
+   for (v <- 0 until 3) graph.addVertex (new Vertex (v, 1))
+   graph.addEdge (new Edge (0, 1))
+   graph.addEdge (new Edge (1, 1))
+   graph.addEdge (new Edge (1, 2))
+   val reordering = new VertexReordering (graph, 1)
+   val order = reordering.reverseCuthillMcKee
+   val reorderedGraph = reordering.reorder (order)
+   val newIds = order.zipWithIndex.toMap
+   assert (reorderedGraph.getNumberEdges == 3)
+   assert (reorderedGraph.isNeighborVertex (newIds(1), newIds(1)))
+   assert (reorderedGraph.isNeighborVertex (newIds(0), newIds(1)))
+   assert (reorderedGraph.isNeighborVertex (newIds(1), newIds(2)))
+ }
+ test ("[motifs,cliques,compaction] results with and without compacted neighbourhoods") {
+   import org.apache.hadoop.io.LongWritable
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.pattern.Pattern
+
+   def motifs(compact: Boolean) = arabGraph.motifs (3).
+     set ("compact_neighbourhoods", compact).
+     aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+
+   def cliques(compact: Boolean) = arabGraph.cliques (3).
+     set ("compact_neighbourhoods", compact).embeddings
+
+   assert (motifs (false) == motifs (true))
+
+   val hashCliques = cliques (false)
+   assert (hashCliques.count == cliquesNumEmbeddings)
+   assert (hashCliques.subtract (cliques (true)).count == 0)
+ }
+ test ("[motifs,cliques,fused] fused and separate queries") {
+   import org.apache.hadoop.io.LongWritable
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.pattern.Pattern
+
+   val motifsRes = arabGraph.motifs (3)
+   val cliquesRes = arabGraph.cliques (3)
+
+   val Seq(fusedMotifsRes, fusedCliquesRes) = arabGraph.fused [VertexInducedEmbedding] (
+     arabGraph.motifs (3), arabGraph.cliques (3))
+
+   assert (fusedMotifsRes.aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS) ==
+     motifsRes.aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS))
+
+   val cliques = cliquesRes.embeddings
+   val fusedCliques = fusedCliquesRes.embeddings
+   assert (fusedCliques.count == cliquesNumEmbeddings)
+   assert (fusedCliques.distinct.count == cliquesNumEmbeddings)
+   assert (fusedCliques.subtract (cliques).count == 0)
+ }
+ test ("[motifs,matching,fused] fused queries with their own word filters and outputs") {
+   import org.apache.hadoop.io.LongWritable
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.pattern.Pattern
+   import org.apache.hadoop.fs.{FileSystem, Path}
+
+   val motifsRes = arabGraph.motifs (3)
+   val motifs = motifsRes.aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS)
+   val (pattern, count) = motifs.filter (_._1.getNumberOfVertices == 3).maxBy (_._2.get)
+
+   // matching words pass its own filter, not only the canonicality check of
+   // motifs, and motifs do not output anything
+   val Seq(fusedMotifsRes, fusedMatchingRes) = arabGraph.fused [VertexInducedEmbedding] (
+     arabGraph.motifs (3).set ("output_active", false), arabGraph.matching (pattern))
+
+   assert (fusedMotifsRes.aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS) == motifs)
+
+   val matches = fusedMatchingRes.embeddings
+   assert (matches.count == count.get)
+   assert (matches.distinct.count == count.get)
+   assert (matches.subtract (arabGraph.matching (pattern).embeddings).count == 0)
+
+   val fs = FileSystem.get (sc.hadoopConfiguration)
+   assert (!fs.exists (new Path (fusedMotifsRes.config.getOutputPath)))
+ }
+ test ("[motifs,matching] matches of the most frequent motifs") {
+   import org.apache.hadoop.io.LongWritable
+   import io.arabesque.gmlib.motif.MotifComputation
+   import io.arabesque.optimization.LabelIndexOptimization
+   import io.arabesque.pattern.Pattern
+
+   val motifs = arabGraph.motifs (3).
+     aggregation [Pattern,LongWritable] (MotifComputation.AGG_MOTIFS).
+     filter (_._1.getNumberOfVertices == 3).
+     toSeq.sortBy (- _._2.get).take (3)
+
+   // candidates are taken from graph neighbourhoods (plain or label indexed)
+   // and expanded right away with depth-first exploration
+   val settings = Seq(
+     Map[String,Any](),
+     Map[String,Any]("optimizations" -> classOf[LabelIndexOptimization].getName),
+     Map[String,Any]("depth_first_superstep" -> 1),
+     Map[String,Any]("optimizations" -> classOf[LabelIndexOptimization].getName,
+       "depth_first_superstep" -> 1))
+
+   for ((pattern, count) <- motifs; setting <- settings) {
+     val matchingRes = setting.foldLeft (arabGraph.matching (pattern)) {
+       case (res, (key, value)) => res.set (key, value)
+     }
+     val embeddings = matchingRes.embeddings
+     assert (embeddings.count == count.get)
+     assert (embeddings.distinct.count == count.get)
+   }
+ }
  test ("[cliques percolation] arabesque API") {
    import io.arabesque.utils.collection.{IntArrayList, UnionFindOps}
    import scala.collection.JavaConverters._
@@ -297,5 +821,12 @@ class SparkArabesqueSuite extends FunSuite with BeforeAndAfterAll {
    }
 
    assert (communities.count == 234)
+
+   // communities joined with the membership, no broadcast
+   import io.arabesque.gmlib.cliqueperc.CliquePercComputation
+   val communityVertices = CliquePercComputation.communities (cliquepercRes)
+   assert (communityVertices.count == 234)
+   assert (communityVertices.map (_.size).collect.sorted sameElements
+     communities.map (_._2.getNumVertices).collect.sorted)
  }
 } 